@@ -212,10 +212,18 @@ public final class TFileSystem extends FileSystem {
         throw new UnsupportedOperationException("Not supported yet.");
     }
 
-    /** @throws UnsupportedOperationException always */
+    /**
+     * Returns a new watch service for {@link TPath}s.
+     * Directories in the platform file system get watched by the native file
+     * change notification facility of the operating system.
+     * Directories in archive files get watched by the operations of this
+     * class which change their entries.
+     *
+     * @return A new watch service for {@link TPath}s.
+     */
     @Override
     public WatchService newWatchService() throws IOException {
-        throw new UnsupportedOperationException("Not supported yet.");
+        return new TWatchService();
     }
 
     SeekableByteChannel newByteChannel(
@@ -234,10 +242,11 @@ public final class TFileSystem extends FileSystem {
         } else {
             final BitField<FsAccessOption>
                     o = path.outputOptions(options).set(CACHE);
+            final WatchEvent.Kind<Path> kind = TWatchService.outputKind(path);
             try {
-                return controller
+                return TWatchService.decorate(path, kind, controller
                         .output(o, name, null)
-                        .channel(null);
+                        .channel(null));
             } catch (final IOException ex) {
                 // TODO: Filter FileAlreadyExistsException.
                 if (o.get(EXCLUSIVE) && null != controller.node(o, name))
@@ -257,9 +266,10 @@ public final class TFileSystem extends FileSystem {
 
     OutputStream newOutputStream(TPath path, OpenOption... options)
     throws IOException {
-        return getController()
+        final WatchEvent.Kind<Path> kind = TWatchService.outputKind(path);
+        return TWatchService.decorate(path, kind, getController()
                 .output(path.outputOptions(options), path.getNodeName(), null)
-                .stream(null);
+                .stream(null));
     }
 
     DirectoryStream<Path> newDirectoryStream(
@@ -349,10 +359,12 @@ public final class TFileSystem extends FileSystem {
                         .initCause(ex);
             throw ex;
         }
+        TWatchService.signal(path, StandardWatchEventKinds.ENTRY_CREATE);
     }
 
     void delete(TPath path) throws IOException {
         getController().unlink(path.getAccessPreferences(), path.getNodeName());
+        TWatchService.signal(path, StandardWatchEventKinds.ENTRY_DELETE);
     }
 
     FsNode stat(TPath path) throws IOException {
@@ -449,6 +461,7 @@ public final class TFileSystem extends FileSystem {
             controller.setTime(
                     path.getAccessPreferences(), path.getNodeName(),
                     times);
+            TWatchService.signal(path, StandardWatchEventKinds.ENTRY_MODIFY);
         }
     } // FsNodeAttributeView
 
@@ -355,6 +355,10 @@ public final class TFileSystemProvider extends FileSystemProvider {
         final OutputSocket<?> output = dst.output(o,
                 preserve ? input.target() : null);
         IoSockets.copy(input, output);
+        TWatchService.signal(dst,
+                null == dstEntry || dstEntry.isType(DIRECTORY)
+                    ? StandardWatchEventKinds.ENTRY_CREATE
+                    : StandardWatchEventKinds.ENTRY_MODIFY);
     }
 
     @Override
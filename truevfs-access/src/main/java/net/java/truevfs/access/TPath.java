@@ -780,16 +780,28 @@ public final class TPath implements Path, TRex {
     @Override
     public TPath toPath() { return this; }
 
-    /** @throws UnsupportedOperationException always */
+    /**
+     * Registers this directory with the given watch service.
+     *
+     * @throws ProviderMismatchException if the watch service has not been
+     *         created by {@link TFileSystem#newWatchService()}.
+     */
     @Override
     public WatchKey register(WatchService watcher, Kind<?>[] events, Modifier... modifiers) throws IOException {
-        throw new UnsupportedOperationException("Not supported yet.");
+        if (!(watcher instanceof TWatchService))
+            throw new ProviderMismatchException();
+        return ((TWatchService) watcher).register(this, events, modifiers);
     }
 
-    /** @throws UnsupportedOperationException always */
+    /**
+     * Registers this directory with the given watch service.
+     *
+     * @throws ProviderMismatchException if the watch service has not been
+     *         created by {@link TFileSystem#newWatchService()}.
+     */
     @Override
     public WatchKey register(WatchService watcher, Kind<?>... events) throws IOException {
-        throw new UnsupportedOperationException("Not supported yet.");
+        return register(watcher, events, new Modifier[0]);
     }
 
     @Override
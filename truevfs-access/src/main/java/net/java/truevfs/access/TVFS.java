@@ -9,10 +9,16 @@ import net.java.truecommons.shed.Filter;
 import net.java.truecommons.shed.Visitor;
 import net.java.truevfs.kernel.spec.*;
 
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 
 import static net.java.truevfs.access.ExpertFeature.Reason.THE_PRESENCE_OR_ABSENCE_OF_SOME_OPTIONS_MAY_YIELD_UNWANTED_SIDE_EFFECTS;
+import static net.java.truevfs.kernel.spec.FsAccessOption.CACHE;
+import static net.java.truevfs.kernel.spec.FsAccessOption.GROW;
+import static net.java.truevfs.kernel.spec.FsSyncOption.FORCE_CLOSE_IO;
+import static net.java.truevfs.kernel.spec.FsSyncOptions.RESET;
+import static net.java.truevfs.kernel.spec.FsSyncOptions.SYNC;
 import static net.java.truevfs.kernel.spec.FsSyncOptions.UMOUNT;
 import static net.java.truevfs.kernel.spec.FsUriModifier.CANONICALIZE;
 
@@ -277,4 +283,84 @@ public final class TVFS {
                 .run();
     }
 
+    /**
+     * Applies the given batch of file system operations to the given archive
+     * file as a single transaction:
+     * If the batch terminates normally, then all of its changes get committed
+     * with exactly one sync of the archive file, so that it gets rewritten at
+     * most once.
+     * Otherwise, all of its changes get aborted and the archive file gets
+     * restored to its last committed version - or deleted if it didn't exist
+     * before.
+     * <p>
+     * While the batch is running, the access preference
+     * {@link FsAccessOption#CACHE} gets set and {@link FsAccessOption#GROW}
+     * gets cleared in the {@linkplain TConfig#current() current configuration}.
+     * This buffers all entry data until the commit, so that updating an entry
+     * more than once never requires an intermediate sync.
+     * Note that the transaction is not isolated however:
+     * If some other thread syncs the archive file while the batch is running,
+     * e.g. by calling {@link #umount()}, then the changes made so far get
+     * committed with it.
+     * Likewise, deleting the archive file itself cannot get rolled back.
+     *
+     * @param  <V> the type of the result of the batch.
+     * @param  <X> the type of the exception which may get thrown by the batch.
+     * @param  archive the archive file.
+     * @param  batch the batch of file system operations.
+     * @return The result of the batch.
+     * @throws IllegalArgumentException if {@code archive} is not an archive
+     *         file.
+     * @throws FsSyncException if committing or aborting the changes fails.
+     *         In the latter case, it gets added as a suppressed exception to
+     *         the exception thrown by the batch.
+     * @throws IOException at the discretion of the batch.
+     * @throws X at the discretion of the batch.
+     */
+    public static <V, X extends Exception> V batch(
+            final TFile archive,
+            final Batch<V, X> batch)
+    throws IOException, X {
+        if (!archive.isArchive())
+            throw new IllegalArgumentException(archive + " (not an archive file)");
+        final FsMountPoint mountPoint = mountPoint(archive);
+        final boolean exists = archive.exists();
+        final V result;
+        try {
+            try (TConfig config = TConfig.open()) {
+                config.setAccessPreference(CACHE, true);
+                config.setAccessPreference(GROW, false);
+                result = batch.call();
+            }
+        } catch (final Throwable ex) {
+            try {
+                sync(mountPoint, RESET.set(FORCE_CLOSE_IO));
+                if (!exists && archive.exists()) archive.rm();
+            } catch (final IOException ex2) {
+                ex.addSuppressed(ex2);
+            }
+            throw ex;
+        }
+        sync(mountPoint, SYNC);
+        return result;
+    }
+
+    /**
+     * A batch of file system operations for use with
+     * {@link #batch(TFile, Batch)}.
+     *
+     * @param <V> the type of the result of the batch.
+     * @param <X> the type of the exception which may get thrown by the batch.
+     */
+    public interface Batch<V, X extends Exception> {
+
+        /**
+         * Runs this batch of file system operations.
+         *
+         * @return The result of the batch.
+         * @throws IOException on any I/O error.
+         * @throws X at the discretion of the implementation.
+         */
+        V call() throws IOException, X;
+    }
 }
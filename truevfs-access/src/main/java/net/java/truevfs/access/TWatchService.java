@@ -0,0 +1,582 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.access;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.*;
+import java.nio.file.WatchEvent.Kind;
+import java.nio.file.WatchEvent.Modifier;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.CheckForNull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import net.java.truecommons.io.DecoratingOutputStream;
+import net.java.truecommons.io.DecoratingSeekableChannel;
+import static java.nio.file.StandardWatchEventKinds.*;
+import static net.java.truecommons.cio.Entry.Type.DIRECTORY;
+import net.java.truevfs.kernel.spec.FsMountPoint;
+import net.java.truevfs.kernel.spec.FsNode;
+import net.java.truevfs.kernel.spec.FsNodePath;
+
+/**
+ * A {@link WatchService} implementation for use with NIO.2.
+ * <p>
+ * Directories in the platform file system get watched by delegating to a
+ * watch service of the {@linkplain FileSystems#getDefault() default file
+ * system}, which is backed by the native file change notification facility
+ * of the operating system, e.g. inotify on Linux.
+ * <p>
+ * Directories in archive files get watched by the operations of the
+ * {@link TFileSystem} which change their entries:
+ * Creating a directory or copying a file signals an {@code ENTRY_CREATE}
+ * event, deleting a file or directory signals an {@code ENTRY_DELETE} event
+ * and updating the last modification time signals an {@code ENTRY_MODIFY}
+ * event.
+ * Writing a file signals an {@code ENTRY_CREATE} or {@code ENTRY_MODIFY}
+ * event when its stream or channel gets closed.
+ * Note that changes which get applied by the {@link TFile} API or directly
+ * by the TrueVFS Kernel do not signal any events.
+ * <p>
+ * Furthermore, the top level archive file gets watched in its parent
+ * directory in the platform file system.
+ * Whenever it gets changed, e.g. by a third party or when syncing the
+ * archive file system, an {@code OVERFLOW} event gets signalled for all
+ * watched directories in the archive file, which tells the client to rescan
+ * them.
+ *
+ * @author Christian Schlichtherle
+ */
+@ThreadSafe
+final class TWatchService implements WatchService {
+
+    /** The event kinds for watching a top level archive file. */
+    private static final Set<Kind<?>> ARCHIVE_FILE_KINDS = new HashSet<Kind<?>>(
+            Arrays.asList(ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY));
+
+    /** The open watch services which watch any archive directories. */
+    private static final Set<TWatchService> services
+            = Collections.newSetFromMap(new ConcurrentHashMap<TWatchService, Boolean>());
+
+    private final BlockingQueue<Key> signalled = new LinkedBlockingQueue<>();
+
+    @GuardedBy("this")
+    private final Map<FsNodePath, Key> archiveKeys = new HashMap<>();
+
+    @GuardedBy("this")
+    private final Map<Path, HostDirectory> hostDirectories = new HashMap<>();
+
+    @GuardedBy("this")
+    private @CheckForNull WatchService host;
+
+    private volatile boolean closed;
+
+    /**
+     * Returns the kind of the event to signal when writing the entry with the
+     * given path or {@code null} if the parent directory of the entry is not
+     * watched.
+     * This method needs to get called before writing the entry.
+     */
+    static @CheckForNull Kind<Path> outputKind(TPath path) throws IOException {
+        if (!isWatched(path)) return null;
+        return null == path.stat() ? ENTRY_CREATE : ENTRY_MODIFY;
+    }
+
+    /**
+     * Decorates the given output stream so that it signals an event of the
+     * given kind for the given path when it gets closed.
+     *
+     * @param kind the kind of the event as returned by
+     *        {@link #outputKind(TPath)}.
+     */
+    static OutputStream decorate(
+            final TPath path,
+            final @CheckForNull Kind<Path> kind,
+            final OutputStream out) {
+        return null == kind ? out : new EventOutputStream(path, kind, out);
+    }
+
+    /**
+     * Decorates the given seekable byte channel so that it signals an event
+     * of the given kind for the given path when it gets closed.
+     *
+     * @param kind the kind of the event as returned by
+     *        {@link #outputKind(TPath)}.
+     */
+    static SeekableByteChannel decorate(
+            final TPath path,
+            final @CheckForNull Kind<Path> kind,
+            final SeekableByteChannel channel) {
+        return null == kind ? channel : new EventSeekableChannel(path, kind, channel);
+    }
+
+    /**
+     * Signals an event of the given kind for the given path to all watch
+     * services which watch its parent directory in an archive file.
+     */
+    static void signal(final TPath path, final Kind<Path> kind) {
+        if (services.isEmpty() || !path.isEntry()) return;
+        final TPath parent = path.getParent();
+        if (null == parent) return;
+        final FsNodePath directory = parent.getNodePath();
+        final Path name = path.getFileName();
+        for (final TWatchService service : services) {
+            final Key key = service.archiveKey(directory);
+            if (null != key) key.signal(kind, name, 1);
+        }
+    }
+
+    private static boolean isWatched(final TPath path) {
+        if (services.isEmpty() || !path.isEntry()) return false;
+        final TPath parent = path.getParent();
+        if (null == parent) return false;
+        final FsNodePath directory = parent.getNodePath();
+        for (final TWatchService service : services)
+            if (null != service.archiveKey(directory)) return true;
+        return false;
+    }
+
+    private synchronized @CheckForNull Key archiveKey(FsNodePath directory) {
+        return archiveKeys.get(directory);
+    }
+
+    WatchKey register(
+            final TPath directory,
+            final Kind<?>[] events,
+            final Modifier... modifiers)
+    throws IOException {
+        if (0 < modifiers.length)
+            throw new UnsupportedOperationException("Modifiers are not supported.");
+        final Set<Kind<?>> kinds = new HashSet<>();
+        for (final Kind<?> event : events) {
+            if (ENTRY_CREATE == event || ENTRY_DELETE == event || ENTRY_MODIFY == event)
+                kinds.add(event);
+            else if (OVERFLOW != event)
+                throw new UnsupportedOperationException(event.name());
+        }
+        if (kinds.isEmpty())
+            throw new IllegalArgumentException("No events to register!");
+        checkOpen();
+        final FsNode node = directory.stat();
+        if (null == node || !node.isType(DIRECTORY))
+            throw new NotDirectoryException(directory.toString());
+        return directory.isArchive() || directory.isEntry()
+                ? registerArchive(directory, kinds)
+                : registerHost(directory, kinds);
+    }
+
+    private synchronized Key registerArchive(
+            final TPath directory,
+            final Set<Kind<?>> kinds)
+    throws IOException {
+        checkOpen();
+        final FsNodePath path = directory.getNodePath();
+        Key key = archiveKeys.get(path);
+        if (null != key) {
+            key.kinds = kinds;
+            return key;
+        }
+        final Path file = hostFile(directory.getMountPoint());
+        key = new Key(directory, kinds, null, file);
+        if (null != file) {
+            final HostDirectory hd = hostDirectory(file.getParent(), ARCHIVE_FILE_KINDS);
+            Set<Key> keys = hd.archives.get(file.getFileName());
+            if (null == keys)
+                hd.archives.put(file.getFileName(), keys = new HashSet<>());
+            keys.add(key);
+        }
+        archiveKeys.put(path, key);
+        services.add(this);
+        return key;
+    }
+
+    private synchronized Key registerHost(
+            final TPath directory,
+            final Set<Kind<?>> kinds)
+    throws IOException {
+        checkOpen();
+        final URI uri = directory.getNodePath().getUri();
+        if (!"file".equals(uri.getScheme()))
+            throw new UnsupportedOperationException("Cannot watch " + directory + "!");
+        final HostDirectory hd = hostDirectory(Paths.get(uri), kinds);
+        Key key = hd.key;
+        if (null != key) {
+            key.kinds = kinds;
+            return key;
+        }
+        return hd.key = new Key(directory, kinds, hd.directory, null);
+    }
+
+    /**
+     * Returns the path of the top level archive file for the given mount
+     * point in the platform file system or {@code null} if it's not located
+     * in the platform file system.
+     */
+    private static @CheckForNull Path hostFile(FsMountPoint mountPoint) {
+        while (null != mountPoint.getParent().getParent())
+            mountPoint = mountPoint.getParent();
+        final URI uri = mountPoint.getPath().getUri();
+        return "file".equals(uri.getScheme()) ? Paths.get(uri) : null;
+    }
+
+    @GuardedBy("this")
+    private HostDirectory hostDirectory(
+            final Path directory,
+            final Set<Kind<?>> kinds)
+    throws IOException {
+        HostDirectory hd = hostDirectories.get(directory);
+        if (null == hd) {
+            hd = new HostDirectory(directory);
+            hostDirectories.put(directory, hd);
+        }
+        if (hd.kinds.addAll(kinds) || null == hd.watchKey) {
+            try {
+                hd.watchKey = directory.register(host(),
+                        hd.kinds.toArray(new Kind<?>[hd.kinds.size()]));
+            } catch (final IOException ex) {
+                release(hd);
+                throw ex;
+            }
+        }
+        return hd;
+    }
+
+    @GuardedBy("this")
+    private WatchService host() throws IOException {
+        WatchService host = this.host;
+        if (null == host) {
+            host = this.host = FileSystems.getDefault().newWatchService();
+            final Thread thread = new Thread(new Dispatcher(host),
+                    "TrueVFS Watch Service Dispatcher");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        return host;
+    }
+
+    private synchronized void cancel(final Key key) {
+        if (null != key.host) {
+            final HostDirectory hd = hostDirectories.get(key.host);
+            if (null != hd && key == hd.key) {
+                hd.key = null;
+                release(hd);
+            }
+        } else {
+            final FsNodePath path = key.directory.getNodePath();
+            if (key == archiveKeys.get(path)) archiveKeys.remove(path);
+            if (archiveKeys.isEmpty()) services.remove(this);
+            final Path file = key.file;
+            if (null != file) {
+                final HostDirectory hd = hostDirectories.get(file.getParent());
+                if (null != hd) {
+                    final Set<Key> keys = hd.archives.get(file.getFileName());
+                    if (null != keys && keys.remove(key) && keys.isEmpty())
+                        hd.archives.remove(file.getFileName());
+                    release(hd);
+                }
+            }
+        }
+    }
+
+    @GuardedBy("this")
+    private void release(final HostDirectory hd) {
+        if (null != hd.key || !hd.archives.isEmpty()) return;
+        hostDirectories.remove(hd.directory);
+        final WatchKey watchKey = hd.watchKey;
+        if (null != watchKey) watchKey.cancel();
+    }
+
+    /** Dispatches the events of the given host watch key. */
+    private void dispatch(final WatchKey watchKey) {
+        final List<WatchEvent<?>> events = watchKey.pollEvents();
+        final boolean valid = watchKey.reset();
+        final Key key;
+        final Map<Path, List<Key>> archives = new HashMap<>();
+        synchronized (this) {
+            final HostDirectory hd = hostDirectories.get((Path) watchKey.watchable());
+            if (null == hd || watchKey != hd.watchKey) return;
+            key = hd.key;
+            for (final Map.Entry<Path, Set<Key>> entry : hd.archives.entrySet())
+                archives.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+            if (!valid) hostDirectories.remove(hd.directory);
+        }
+        for (final WatchEvent<?> event : events) {
+            final Kind<?> kind = event.kind();
+            if (OVERFLOW == kind) {
+                if (null != key) key.signal(OVERFLOW, null, event.count());
+                for (final List<Key> keys : archives.values())
+                    for (final Key k : keys)
+                        k.signal(OVERFLOW, null, 1);
+            } else {
+                final Path name = (Path) event.context();
+                if (null != key)
+                    key.signal(kind, new TPath(name.toString()), event.count());
+                final List<Key> keys = archives.get(name);
+                if (null != keys)
+                    for (final Key k : keys)
+                        k.signal(OVERFLOW, null, 1);
+            }
+        }
+        if (!valid && null != key) key.invalidate();
+    }
+
+    private void checkOpen() {
+        if (closed) throw new ClosedWatchServiceException();
+    }
+
+    @Override
+    public WatchKey poll() {
+        return check(signalled.poll());
+    }
+
+    @Override
+    public WatchKey poll(long timeout, TimeUnit unit)
+    throws InterruptedException {
+        return check(signalled.poll(timeout, unit));
+    }
+
+    @Override
+    public WatchKey take() throws InterruptedException {
+        return check(signalled.take());
+    }
+
+    private @CheckForNull WatchKey check(final @CheckForNull Key key) {
+        if (closed) {
+            if (null != key) signalled.offer(key); // wake up next waiter
+            throw new ClosedWatchServiceException();
+        }
+        return key;
+    }
+
+    @Override
+    public void close() throws IOException {
+        final WatchService host;
+        final List<Key> keys = new ArrayList<>();
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            host = this.host;
+            keys.addAll(archiveKeys.values());
+            for (final HostDirectory hd : hostDirectories.values())
+                if (null != hd.key) keys.add(hd.key);
+            archiveKeys.clear();
+            hostDirectories.clear();
+        }
+        services.remove(this);
+        for (final Key key : keys) key.valid = false;
+        signalled.clear();
+        signalled.offer(new Key(null, Collections.<Kind<?>>emptySet(), null, null));
+        if (null != host) host.close();
+    }
+
+    private static final class EventOutputStream extends DecoratingOutputStream {
+        final TPath path;
+        final Kind<Path> kind;
+        boolean closed;
+
+        EventOutputStream(
+                final TPath path,
+                final Kind<Path> kind,
+                final OutputStream out) {
+            super(out);
+            this.path = path;
+            this.kind = kind;
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+            if (!closed) {
+                closed = true;
+                signal(path, kind);
+            }
+        }
+    } // EventOutputStream
+
+    private static final class EventSeekableChannel
+    extends DecoratingSeekableChannel {
+        final TPath path;
+        final Kind<Path> kind;
+        boolean closed;
+
+        EventSeekableChannel(
+                final TPath path,
+                final Kind<Path> kind,
+                final SeekableByteChannel channel) {
+            super(channel);
+            this.path = path;
+            this.kind = kind;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+            if (!closed) {
+                closed = true;
+                signal(path, kind);
+            }
+        }
+    } // EventSeekableChannel
+
+    /** A directory in the platform file system which gets watched. */
+    private static final class HostDirectory {
+        final Path directory;
+
+        /** The union of the event kinds of all users. */
+        final Set<Kind<?>> kinds = new HashSet<>();
+
+        /** The watch key of the default file system. */
+        @CheckForNull WatchKey watchKey;
+
+        /** The key for watching this directory, if any. */
+        @CheckForNull Key key;
+
+        /** The keys for watching the archive files in this directory. */
+        final Map<Path, Set<Key>> archives = new HashMap<>();
+
+        HostDirectory(final Path directory) { this.directory = directory; }
+    } // HostDirectory
+
+    private final class Dispatcher implements Runnable {
+        final WatchService host;
+
+        Dispatcher(final WatchService host) { this.host = host; }
+
+        @Override
+        public void run() {
+            while (true) {
+                final WatchKey watchKey;
+                try {
+                    watchKey = host.take();
+                } catch (final ClosedWatchServiceException | InterruptedException ex) {
+                    return;
+                }
+                dispatch(watchKey);
+            }
+        }
+    } // Dispatcher
+
+    private final class Key implements WatchKey {
+        final TPath directory;
+
+        /** The directory in the platform file system if this is a host key. */
+        final @CheckForNull Path host;
+
+        /** The top level archive file if this is an archive key. */
+        final @CheckForNull Path file;
+
+        volatile Set<Kind<?>> kinds;
+
+        volatile boolean valid = true;
+
+        @GuardedBy("this")
+        private List<Event<?>> events = new ArrayList<>();
+
+        @GuardedBy("this")
+        private boolean ready = true;
+
+        Key(    final TPath directory,
+                final Set<Kind<?>> kinds,
+                final @CheckForNull Path host,
+                final @CheckForNull Path file) {
+            this.directory = directory;
+            this.kinds = kinds;
+            this.host = host;
+            this.file = file;
+        }
+
+        @SuppressWarnings("unchecked")
+        <T> void signal(final Kind<T> kind, final @CheckForNull Object context, final int count) {
+            if (OVERFLOW != kind && !kinds.contains(kind)) return;
+            synchronized (this) {
+                if (!valid) return;
+                final int size = events.size();
+                final Event<?> last = 0 < size ? events.get(size - 1) : null;
+                if (null != last && last.kind == kind && Objects.equals(last.context, context))
+                    last.count += count;
+                else
+                    events.add(new Event<>(kind, (T) context, count));
+                if (ready) {
+                    ready = false;
+                    signalled.offer(this);
+                }
+            }
+        }
+
+        synchronized void invalidate() {
+            if (!valid) return;
+            valid = false;
+            if (ready) {
+                ready = false;
+                signalled.offer(this);
+            }
+        }
+
+        @Override
+        public boolean isValid() { return valid; }
+
+        @Override
+        public synchronized List<WatchEvent<?>> pollEvents() {
+            final List<WatchEvent<?>> result = Collections.<WatchEvent<?>>unmodifiableList(events);
+            events = new ArrayList<>();
+            return result;
+        }
+
+        @Override
+        public synchronized boolean reset() {
+            if (!valid) return false;
+            if (!ready) {
+                if (events.isEmpty()) ready = true;
+                else signalled.offer(this);
+            }
+            return true;
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (this) {
+                if (!valid) return;
+                valid = false;
+            }
+            TWatchService.this.cancel(this);
+        }
+
+        @Override
+        public TPath watchable() { return directory; }
+    } // Key
+
+    private static final class Event<T> implements WatchEvent<T> {
+        final Kind<T> kind;
+        final @CheckForNull T context;
+        int count;
+
+        Event(final Kind<T> kind, final @CheckForNull T context, final int count) {
+            this.kind = kind;
+            this.context = context;
+            this.count = count;
+        }
+
+        @Override
+        public Kind<T> kind() { return kind; }
+
+        @Override
+        public int count() { return count; }
+
+        @Override
+        public @CheckForNull T context() { return context; }
+
+        @Override
+        public String toString() {
+            return String.format("%s[kind=%s, count=%d, context=%s]",
+                    getClass().getName(), kind, count, context);
+        }
+    } // Event
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import net.java.truecommons.io.ByteBufferChannel;
+import net.java.truevfs.comp.zip.crypto.BufferedPartialBlockCipher;
+import net.java.truevfs.comp.zip.crypto.CipherOutputStream;
+import net.java.truevfs.comp.zip.crypto.CipherReadOnlyChannel;
+import net.java.truevfs.comp.zip.crypto.CtrBlockCipher;
+import net.java.truevfs.comp.zip.crypto.JceCtrBlockCipher;
+import net.java.truevfs.comp.zip.crypto.SeekableBlockCipher;
+import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.crypto.params.ParametersWithIV;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of encrypting and decrypting data with AES in CTR
+ * mode as used by RAES and WinZip AES, comparing the pure Java
+ * {@link AESEngine} of Bouncy Castle with the AES implementation of the JCE.
+ * <p>
+ * The benchmarks {@link #read} and {@link #readDirect} decrypt the data
+ * sequentially into a heap or direct buffer.
+ * The benchmark {@link #seek} measures the latency of reading a small record
+ * at a random position.
+ * <p>
+ * Run it with e.g. {@code sbt "benchmark/jmh:run CipherBenchmark"} and add
+ * {@code -prof gc} in order to measure the allocation rate, too.
+ * See {@code baseline/crypto.txt} for the recorded baseline.
+ *
+ * @author Christian Schlichtherle
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class CipherBenchmark {
+
+    @Param({ "bc", "jce" })
+    String engine;
+
+    @Param({ "16", "24", "32" })
+    int keyLength;
+
+    @Param("1048576")
+    int size;
+
+    private ParametersWithIV param;
+    private byte[] plain, cipher, buffer;
+    private ByteBuffer direct;
+    private Random rnd;
+    private CipherReadOnlyChannel channel;
+
+    @Setup
+    public void setup() throws IOException {
+        final Random rnd = this.rnd = new Random(0);
+        final byte[] key = new byte[keyLength];
+        rnd.nextBytes(key);
+        final byte[] iv = new byte[16];
+        rnd.nextBytes(iv);
+        param = new ParametersWithIV(new KeyParameter(key), iv);
+        plain = new byte[size];
+        rnd.nextBytes(plain);
+        cipher = new byte[size];
+        buffer = new byte[8 * 1024];
+        direct = ByteBuffer.allocateDirect(buffer.length);
+        final SeekableBlockCipher c = newCipher();
+        c.init(true, param);
+        final int blockSize = c.getBlockSize();
+        for (int off = 0; off < size; off += blockSize)
+            c.processBlock(plain, off, cipher, off);
+        channel = newChannel();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        channel.close();
+    }
+
+    private CipherReadOnlyChannel newChannel() {
+        final SeekableBlockCipher c = newCipher();
+        c.init(false, param);
+        return new CipherReadOnlyChannel(c,
+                new ByteBufferChannel(ByteBuffer.wrap(cipher).asReadOnlyBuffer()));
+    }
+
+    private SeekableBlockCipher newCipher() {
+        switch (engine) {
+            case "bc": return new CtrBlockCipher(new AESEngine());
+            case "jce": return new JceCtrBlockCipher();
+            default: throw new IllegalArgumentException(engine);
+        }
+    }
+
+    /** Encrypts the data through a {@link CipherOutputStream}. */
+    @Benchmark
+    public void write() throws IOException {
+        final BufferedPartialBlockCipher c = new BufferedPartialBlockCipher(newCipher());
+        c.init(true, param);
+        try (OutputStream out = new CipherOutputStream(c, new NullOutputStream())) {
+            final int bufferSize = buffer.length;
+            for (int off = 0; off < size; off += bufferSize)
+                out.write(plain, off, Math.min(bufferSize, size - off));
+        }
+    }
+
+    /** Decrypts the data through a {@link CipherReadOnlyChannel}. */
+    @Benchmark
+    public long read() throws IOException {
+        return read(ByteBuffer.wrap(buffer));
+    }
+
+    /**
+     * Decrypts the data through a {@link CipherReadOnlyChannel} into a direct
+     * buffer.
+     */
+    @Benchmark
+    public long readDirect() throws IOException {
+        direct.clear();
+        return read(direct);
+    }
+
+    private long read(final ByteBuffer dst) throws IOException {
+        long total = 0;
+        try (CipherReadOnlyChannel channel = newChannel()) {
+            for (int read; 0 <= (read = channel.read(dst)); dst.clear())
+                total += read;
+        }
+        return total;
+    }
+
+    /**
+     * Reads a record of 512 bytes at a random position of a
+     * {@link CipherReadOnlyChannel}.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public int seek() throws IOException {
+        final ByteBuffer dst = ByteBuffer.wrap(buffer, 0, 512);
+        channel.position(rnd.nextInt(size - 512 + 1));
+        int total = 0;
+        for (int read; dst.hasRemaining() && 0 <= (read = channel.read(dst)); )
+            total += read;
+        return total;
+    }
+
+    private static final class NullOutputStream extends OutputStream {
+        @Override
+        public void write(int b) { }
+
+        @Override
+        public void write(byte[] b, int off, int len) { }
+    }
+}
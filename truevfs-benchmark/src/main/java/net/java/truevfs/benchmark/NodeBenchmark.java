@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import net.java.truecommons.shed.BitField;
+import net.java.truevfs.access.TConfig;
+import net.java.truevfs.access.TFile;
+import net.java.truevfs.access.TFileOutputStream;
+import net.java.truevfs.access.TVFS;
+import net.java.truevfs.kernel.spec.FsAccessOption;
+import net.java.truevfs.kernel.spec.FsController;
+import net.java.truevfs.kernel.spec.FsNode;
+import net.java.truevfs.kernel.spec.FsNodeName;
+import net.java.truevfs.kernel.spec.FsNodePath;
+import net.java.truevfs.kernel.spec.sl.FsManagerLocator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the latency and the allocation rate of looking up the nodes of a
+ * mounted archive file, both directly via its file system controller and by
+ * walking its directory tree.
+ * <p>
+ * Run it with e.g. {@code sbt "benchmark/jmh:run -prof gc NodeBenchmark"} and
+ * compare the normalized allocation rate {@code gc.alloc.rate.norm}, which is
+ * the number of bytes allocated per operation.
+ *
+ * @author Christian Schlichtherle
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class NodeBenchmark {
+
+    private static final int ENTRIES_PER_DIRECTORY = 100;
+
+    @Param("1000")
+    int entries;
+
+    private File temp;
+    private TFile archive;
+    private FsController controller;
+    private BitField<FsAccessOption> options;
+    private FsNodeName[] names;
+
+    @Setup
+    public void setup() throws IOException {
+        temp = Files.createTempDirectory("truevfs-benchmark").toFile();
+        archive = new TFile(temp, "archive.zip");
+        names = new FsNodeName[entries];
+        for (int i = 0; i < entries; i++) {
+            final TFile member = new TFile(archive,
+                    "directory" + i / ENTRIES_PER_DIRECTORY + "/entry" + i);
+            try (OutputStream out = new TFileOutputStream(member)) {
+                out.write(i);
+            }
+            names[i] = member.getNodeName();
+        }
+        TVFS.umount();
+
+        final TConfig config = TConfig.current();
+        final FsNodePath path = new TFile(archive, "directory0").getNodePath();
+        controller = FsManagerLocator.SINGLETON.get().controller(
+                config.getArchiveDetector(), path.getMountPoint());
+        options = config.getAccessPreferences();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        TVFS.umount();
+        TFile.rm_r(temp);
+    }
+
+    /** Rotates through the archive entries on a per thread basis. */
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+
+        int next(final int bound) {
+            final int current = next;
+            next = current + 1 < bound ? current + 1 : 0;
+            return current;
+        }
+    }
+
+    @Benchmark
+    public FsNode nodeOfFile(final Cursor cursor) throws IOException {
+        return controller.node(options, names[cursor.next(entries)]);
+    }
+
+    @Benchmark
+    public FsNode nodeOfRoot() throws IOException {
+        return controller.node(options, FsNodeName.ROOT);
+    }
+
+    @Benchmark
+    public long walk() {
+        return walk(archive);
+    }
+
+    private static long walk(final TFile directory) {
+        long total = 0;
+        for (final TFile member : directory.listFiles())
+            total += member.isDirectory() ? walk(member) : member.length();
+        return total;
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import net.java.truecommons.io.AbstractSink;
+import net.java.truecommons.io.AbstractSource;
+import net.java.truecommons.io.ByteBufferChannel;
+import net.java.truecommons.io.Source;
+import net.java.truecommons.key.spec.common.AesKeyStrength;
+import net.java.truevfs.driver.zip.raes.crypto.RaesOutputStream;
+import net.java.truevfs.driver.zip.raes.crypto.RaesParameters;
+import net.java.truevfs.driver.zip.raes.crypto.RaesReadOnlyChannel;
+import net.java.truevfs.driver.zip.raes.crypto.Type0RaesParameters;
+import net.java.truevfs.driver.zip.raes.crypto.Type1RaesParameters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures writing and reading RAES files of type 0 and type 1 across key
+ * strengths and file sizes.
+ * <p>
+ * The benchmarks {@link #write} and {@link #read} measure the throughput of
+ * encrypting and decrypting a file, including the key derivation and
+ * authentication.
+ * The benchmark {@link #open} measures the latency of opening a RAES file,
+ * which is dominated by the key derivation.
+ * The benchmark {@link #seek} measures the latency of reading a small
+ * record at a random position of an open RAES file.
+ * <p>
+ * Run it with e.g. {@code sbt "benchmark/jmh:run RaesBenchmark"} and add
+ * {@code -prof gc} in order to measure the allocation rate, too.
+ * See {@code baseline/crypto.txt} for the recorded baseline.
+ *
+ * @author Christian Schlichtherle
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class RaesBenchmark {
+
+    @Param({ "0", "1" })
+    int type;
+
+    @Param({ "BITS_128", "BITS_192", "BITS_256" })
+    AesKeyStrength keyStrength;
+
+    @Param({ "1024", "1048576" })
+    int size;
+
+    private RaesParameters param;
+    private byte[] plain, raes, buffer;
+    private Random rnd;
+    private RaesReadOnlyChannel channel;
+
+    @Setup
+    public void setup() throws IOException {
+        rnd = new Random(0);
+        plain = new byte[size];
+        rnd.nextBytes(plain);
+        buffer = new byte[8 * 1024];
+        switch (type) {
+            case 0: param = new Type0Parameters(); break;
+            case 1: param = new Type1Parameters(); break;
+            default: throw new IllegalArgumentException("" + type);
+        }
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream(size + 1024);
+        try (OutputStream out = RaesOutputStream.create(param, new Sink(baos))) {
+            out.write(plain);
+        }
+        raes = baos.toByteArray();
+        channel = RaesReadOnlyChannel.create(param, newSource());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        channel.close();
+    }
+
+    private Source newSource() {
+        return new AbstractSource() {
+            @Override
+            public SeekableByteChannel channel() {
+                return new ByteBufferChannel(
+                        ByteBuffer.wrap(raes).asReadOnlyBuffer());
+            }
+        };
+    }
+
+    /** Encrypts the data to a null output stream. */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void write() throws IOException {
+        try (OutputStream out = RaesOutputStream.create(param,
+                new Sink(new NullOutputStream()))) {
+            final int bufferSize = buffer.length;
+            for (int off = 0; off < size; off += bufferSize)
+                out.write(plain, off, Math.min(bufferSize, size - off));
+        }
+    }
+
+    /**
+     * Authenticates and decrypts the data like the ZIP.RAES driver does for
+     * small files.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public long read() throws IOException {
+        long total = 0;
+        try (RaesReadOnlyChannel channel = RaesReadOnlyChannel.create(param,
+                newSource())) {
+            if (!channel.isChunkAuthenticated())
+                channel.authenticate();
+            final ByteBuffer dst = ByteBuffer.wrap(buffer);
+            for (int read; 0 <= (read = channel.read(dst)); dst.clear())
+                total += read;
+        }
+        return total;
+    }
+
+    /** Opens the RAES file, which derives the keys from the password. */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public AesKeyStrength open() throws IOException {
+        try (RaesReadOnlyChannel channel = RaesReadOnlyChannel.create(param,
+                newSource())) {
+            return channel.getKeyStrength();
+        }
+    }
+
+    /** Reads a record of 512 bytes at a random position. */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int seek() throws IOException {
+        final ByteBuffer dst = ByteBuffer.wrap(buffer, 0, Math.min(512, size));
+        channel.position(rnd.nextInt(size - dst.remaining() + 1));
+        int total = 0;
+        for (int read; dst.hasRemaining() && 0 <= (read = channel.read(dst)); )
+            total += read;
+        return total;
+    }
+
+    private class Type0Parameters implements Type0RaesParameters {
+        @Override
+        public char[] getPasswordForWriting() {
+            return "secret".toCharArray();
+        }
+
+        @Override
+        public char[] getPasswordForReading(boolean invalid) {
+            if (invalid) throw new IllegalStateException();
+            return "secret".toCharArray();
+        }
+
+        @Override
+        public AesKeyStrength getKeyStrength() {
+            return keyStrength;
+        }
+
+        @Override
+        public void setKeyStrength(AesKeyStrength keyStrength) {
+        }
+    } // Type0Parameters
+
+    private final class Type1Parameters
+    extends Type0Parameters implements Type1RaesParameters {
+    } // Type1Parameters
+
+    private static final class Sink extends AbstractSink {
+        private final OutputStream out;
+
+        Sink(final OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public OutputStream stream() {
+            return out;
+        }
+    } // Sink
+
+    private static final class NullOutputStream extends OutputStream {
+        @Override
+        public void write(int b) { }
+
+        @Override
+        public void write(byte[] b, int off, int len) { }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+import net.java.truecommons.key.spec.common.AesKeyStrength;
+import net.java.truevfs.comp.zip.WinZipAesParameters;
+import net.java.truevfs.comp.zip.ZipEntry;
+import net.java.truevfs.comp.zip.ZipOutputStream;
+import net.java.truevfs.comp.zip.crypto.SecureRandoms;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of shaking the salt for encrypted writes, comparing a new
+ * {@link SecureRandom} per entry with the shared per-thread instance of
+ * {@link SecureRandoms}.
+ * <p>
+ * The benchmark {@link #salt} measures salt generation in isolation on
+ * multiple threads.
+ * The benchmark {@link #write} writes many small WinZip AES entries on each
+ * thread.
+ * Note that the latter is dominated by the key derivation function, so expect
+ * the difference to show mostly in the former.
+ * Writing 100k entries takes minutes, so you may want to use less entries.
+ * <p>
+ * Run it with e.g.
+ * {@code sbt "benchmark/jmh:run SecureRandomBenchmark -p entries=1000"}.
+ *
+ * @author Christian Schlichtherle
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Threads(4)
+public class SecureRandomBenchmark {
+
+    @Param({ "new", "shared" })
+    String random;
+
+    @Param("100000")
+    int entries;
+
+    private final byte[] salt = new byte[16];
+
+    private SecureRandom random() {
+        switch (random) {
+            case "new": return new SecureRandom();
+            case "shared": return SecureRandoms.get();
+            default: throw new IllegalArgumentException(random);
+        }
+    }
+
+    /** Shakes a salt of the size used for AES-256 by WinZip AES. */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 5)
+    public byte[] salt() {
+        random().nextBytes(salt);
+        return salt;
+    }
+
+    /** Writes small WinZip AES entries to a null output stream. */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 3)
+    public void write() throws IOException {
+        final byte[] data = new byte[100];
+        try (ZipOutputStream zos = new ZipOutputStream(new NullOutputStream())) {
+            zos.setCryptoParameters(new Parameters());
+            for (int i = 0; i < entries; i++) {
+                final ZipEntry entry = new ZipEntry("entry" + i);
+                entry.setEncrypted(true);
+                zos.putNextEntry(entry);
+                zos.write(data);
+            }
+        }
+    }
+
+    private final class Parameters
+    implements WinZipAesParameters, SecureRandoms.Provider {
+        @Override
+        public SecureRandom getSecureRandom() {
+            return random();
+        }
+
+        @Override
+        public byte[] getWritePassword(String name) {
+            return "secret".getBytes();
+        }
+
+        @Override
+        public byte[] getReadPassword(String name, boolean invalid) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public AesKeyStrength getKeyStrength(String name) {
+            return AesKeyStrength.BITS_128;
+        }
+
+        @Override
+        public void setKeyStrength(String name, AesKeyStrength keyStrength) {
+        }
+    } // Parameters
+
+    private static final class NullOutputStream extends OutputStream {
+        @Override
+        public void write(int b) { }
+
+        @Override
+        public void write(byte[] b, int off, int len) { }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import net.java.truevfs.access.TFile;
+import net.java.truevfs.access.TFileOutputStream;
+import net.java.truevfs.access.TVFS;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of stat-heavy workloads, i.e. querying the nodes
+ * of a mounted archive file and of prospective archive files which turn out
+ * to be false positives.
+ * <p>
+ * Run it with e.g. {@code sbt "benchmark/jmh:run -t 4 StatBenchmark"} in order
+ * to measure the contention between four concurrent threads.
+ *
+ * @author Christian Schlichtherle
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class StatBenchmark {
+
+    @Param("1000")
+    int entries;
+
+    private File temp;
+    private TFile archive;
+    private TFile[] members;
+    private TFile missing, directory, plain;
+
+    @Setup
+    public void setup() throws IOException {
+        temp = Files.createTempDirectory("truevfs-benchmark").toFile();
+        archive = new TFile(temp, "archive.zip");
+        members = new TFile[entries];
+        for (int i = 0; i < entries; i++) {
+            final TFile member = members[i] = new TFile(archive, "entry" + i);
+            try (OutputStream out = new TFileOutputStream(member)) {
+                out.write(i);
+            }
+        }
+        TVFS.umount();
+
+        // Prospective archive files which are false positives:
+        missing = new TFile(new TFile(temp, "missing.zip"), "entry");
+        final File dir = new File(temp, "directory.zip");
+        if (!dir.mkdir())
+            throw new IOException(dir + " (cannot create directory)");
+        directory = new TFile(dir);
+        final File file = new File(temp, "plain.zip");
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write("This is not a ZIP file.".getBytes("US-ASCII"));
+        }
+        plain = new TFile(file);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        TVFS.umount();
+        TFile.rm_r(temp);
+    }
+
+    /** Rotates through the archive entries on a per thread basis. */
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+
+        int next(final int bound) {
+            final int current = next;
+            next = current + 1 < bound ? current + 1 : 0;
+            return current;
+        }
+    }
+
+    @Benchmark
+    public boolean existsInArchive(final Cursor cursor) {
+        return members[cursor.next(entries)].exists();
+    }
+
+    @Benchmark
+    public long lengthInArchive(final Cursor cursor) {
+        return members[cursor.next(entries)].length();
+    }
+
+    @Benchmark
+    public boolean isDirectoryOfArchive() {
+        return archive.isDirectory();
+    }
+
+    @Benchmark
+    public boolean existsInMissingArchive() {
+        return missing.exists();
+    }
+
+    @Benchmark
+    public boolean isDirectoryOfFalsePositiveDirectory() {
+        return directory.isDirectory();
+    }
+
+    @Benchmark
+    public boolean isFileOfFalsePositiveFile() {
+        return plain.isFile();
+    }
+}
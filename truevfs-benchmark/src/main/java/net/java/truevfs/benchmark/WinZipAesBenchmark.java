@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import net.java.truecommons.io.ByteBufferChannel;
+import net.java.truecommons.key.spec.common.AesKeyStrength;
+import net.java.truevfs.comp.zip.WinZipAesParameters;
+import net.java.truevfs.comp.zip.ZipEntry;
+import net.java.truevfs.comp.zip.ZipFile;
+import net.java.truevfs.comp.zip.ZipOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of writing and reading a WinZip AES entry across
+ * key strengths and entry sizes.
+ * Each operation derives the key from the password, so for small entries,
+ * the results show the latency of the key derivation.
+ * <p>
+ * The entry data is incompressible, so deflating it adds little more than a
+ * copy.
+ * Run it with e.g. {@code sbt "benchmark/jmh:run WinZipAesBenchmark"} and add
+ * {@code -prof gc} in order to measure the allocation rate, too.
+ * See {@code baseline/crypto.txt} for the recorded baseline.
+ *
+ * @author Christian Schlichtherle
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class WinZipAesBenchmark {
+
+    @Param({ "BITS_128", "BITS_192", "BITS_256" })
+    AesKeyStrength keyStrength;
+
+    @Param({ "1024", "1048576" })
+    int size;
+
+    private byte[] plain, zip, buffer;
+
+    @Setup
+    public void setup() throws IOException {
+        plain = new byte[size];
+        new Random(0).nextBytes(plain);
+        buffer = new byte[8 * 1024];
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream(size + 1024);
+        write(baos);
+        zip = baos.toByteArray();
+    }
+
+    private void write(final OutputStream out) throws IOException {
+        try (ZipOutputStream zos = new ZipOutputStream(out)) {
+            zos.setCryptoParameters(new Parameters());
+            final ZipEntry entry = new ZipEntry("entry");
+            entry.setEncrypted(true);
+            zos.putNextEntry(entry);
+            final int bufferSize = buffer.length;
+            for (int off = 0; off < size; off += bufferSize)
+                zos.write(plain, off, Math.min(bufferSize, size - off));
+        }
+    }
+
+    /** Encrypts the entry to a null output stream. */
+    @Benchmark
+    public void write() throws IOException {
+        write(new NullOutputStream());
+    }
+
+    /** Authenticates and decrypts the entry. */
+    @Benchmark
+    public long read() throws IOException {
+        long total = 0;
+        try (ZipFile zf = new ZipFile(new ByteBufferChannel(
+                ByteBuffer.wrap(zip).asReadOnlyBuffer()))) {
+            zf.setCryptoParameters(new Parameters());
+            try (InputStream in = zf.getCheckedInputStream("entry")) {
+                for (int read; 0 <= (read = in.read(buffer)); )
+                    total += read;
+            }
+        }
+        return total;
+    }
+
+    private final class Parameters implements WinZipAesParameters {
+        @Override
+        public byte[] getWritePassword(String name) {
+            return "secret".getBytes();
+        }
+
+        @Override
+        public byte[] getReadPassword(String name, boolean invalid) {
+            if (invalid) throw new IllegalStateException();
+            return "secret".getBytes();
+        }
+
+        @Override
+        public AesKeyStrength getKeyStrength(String name) {
+            return keyStrength;
+        }
+
+        @Override
+        public void setKeyStrength(String name, AesKeyStrength keyStrength) {
+        }
+    } // Parameters
+
+    private static final class NullOutputStream extends OutputStream {
+        @Override
+        public void write(int b) { }
+
+        @Override
+        public void write(byte[] b, int off, int len) { }
+    }
+}
@@ -8,6 +8,7 @@ import edu.umd.cs.findbugs.annotations.CleanupObligation;
 import edu.umd.cs.findbugs.annotations.CreatesObligation;
 import edu.umd.cs.findbugs.annotations.DischargesObligation;
 import net.java.truecommons.io.*;
+import net.java.truecommons.key.spec.common.AesKeyStrength;
 import net.java.truecommons.shed.HashMaps;
 import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
 
@@ -23,6 +24,7 @@ import java.io.InputStream;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.charset.Charset;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.zip.CRC32;
 import java.util.zip.CheckedInputStream;
 import java.util.zip.Inflater;
@@ -81,6 +83,9 @@ implements Closeable, Iterable<E> {
      */
     public static final Charset DEFAULT_CHARSET = Constants.DEFAULT_CHARSET;
 
+    /** The source for reading the ZIP file from. */
+    private final Source source;
+
     /** The nullable seekable byte channel. */
     private @CheckForNull SeekableByteChannel channel;
 
@@ -110,6 +115,25 @@ implements Closeable, Iterable<E> {
     /** The number of open resources for reading the entries in this ZIP file. */
     private int open;
 
+    /**
+     * The maximum time to wait for the background checks to stop when
+     * closing this ZIP file in milliseconds.
+     */
+    private static final long CHECKS_TIMEOUT_MILLIS = 1000;
+
+    /** Maps entry names to the results of checking them in the background. */
+    private final Map<String, Future<?>> checks = new HashMap<>();
+
+    /**
+     * The channels which have been opened from the source for checking
+     * entries in the background and have not yet been closed.
+     * This is also the lock for {@link #checksClosed}.
+     */
+    private final Set<SeekableByteChannel> checkChannels = new HashSet<>();
+
+    /** Whether or not background checks must not open any more channels. */
+    private boolean checksClosed;
+
     /**
      * Reads the given {@code zip} file in order to provide random access
      * to its entries.
@@ -128,6 +152,7 @@ implements Closeable, Iterable<E> {
             final ZipFileParameters<E> param)
     throws ZipException, EOFException, IOException {
         this.param = param;
+        this.source = source;
         final SeekableByteChannel channel = this.channel = source.channel();
         try {
             length = channel.size();
@@ -836,6 +861,165 @@ implements Closeable, Iterable<E> {
      */
     protected abstract @CheckForNull ZipCryptoParameters getCryptoParameters();
 
+    /**
+     * Returns whether or not the Message Authentication Code (MAC) of an
+     * encrypted entry shall get computed while the client reads the entry
+     * rather than in a separate pass before returning the entry stream.
+     * If this method returns {@code true} and the MAC does not match, then a
+     * {@link ZipAuthenticationException} gets thrown when the end of the entry
+     * stream is reached or when {@link InputStream#close} is called on it
+     * (post-check).
+     * This saves reading the entry data twice, but the client must not act
+     * on the data before the entry stream has been successfully closed.
+     * <p>
+     * The implementation in the class {@link AbstractZipFile} returns
+     * {@code false}.
+     *
+     * @return Whether or not the MAC of an encrypted entry shall get computed
+     *         while the client reads the entry.
+     */
+    protected boolean getStreamingCheck() {
+        return false;
+    }
+
+    /**
+     * Starts checking/authenticating the content of the given entries in the
+     * background using the given executor.
+     * Each entry gets checked like with
+     * {@link #getCheckedInputStream(String)} using a separate channel from
+     * the source of this ZIP file.
+     * The results get cached per entry:
+     * When reading an entry which has been successfully checked in the
+     * background, the check gets skipped.
+     * Otherwise, if checking the entry is still in progress or has failed,
+     * then it gets checked again as usual when reading it.
+     * Pending checks get cancelled when this ZIP file gets closed and
+     * {@link #close()} waits a bounded time for any running checks to stop.
+     * Any channel which is still open thereafter gets closed, so that no
+     * channel from the source outlives this ZIP file.
+     * <p>
+     * Note that checking encrypted entries may require to obtain the
+     * parameters for decryption, e.g. by prompting the user for a password,
+     * in the background.
+     *
+     * @param entries the entries to check.
+     * @param executor the executor for checking the entries.
+     * @throws IOException if this ZIP file has been closed or obtaining the
+     *         parameters for decryption fails.
+     */
+    public void checkInBackground(
+            final Iterable<? extends ZipEntry> entries,
+            final Executor executor)
+    throws IOException {
+        channel();
+        ZipCryptoParameters param = null;
+        for (final ZipEntry entry : entries) {
+            if (entry.isDirectory() || checks.containsKey(entry.getName()))
+                continue;
+            if (entry.isEncrypted() && null == param)
+                param = getCryptoParameters();
+            final FutureTask<Void> task = new FutureTask<>(
+                    new Check(entry, param));
+            checks.put(entry.getName(), task);
+            executor.execute(task);
+        }
+    }
+
+    /**
+     * Returns {@code true} if and only if the entry with the given name has
+     * been successfully checked in the background.
+     */
+    private boolean checked(final String name) {
+        final Future<?> check = checks.get(name);
+        if (null == check || !check.isDone()) return false;
+        try {
+            check.get();
+            return true;
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (final ExecutionException | CancellationException ex) {
+            return false;
+        }
+    }
+
+    /** Checks the content of an entry in the background. */
+    private final class Check implements Callable<Void> {
+        final ZipEntry entry;
+        final @CheckForNull ZipCryptoParameters param;
+
+        Check(final ZipEntry entry, final @CheckForNull ZipCryptoParameters param) {
+            this.entry = entry;
+            this.param = param;
+        }
+
+        @Override
+        public Void call() throws IOException {
+            final SeekableByteChannel channel = source.channel();
+            try {
+                synchronized (checkChannels) {
+                    if (checksClosed)
+                        throw new CancellationException();
+                    checkChannels.add(channel);
+                }
+                try (final InputStream in = getInputStream(channel, entry,
+                        true, true, false, param)) {
+                    // Closing the stream completes the check.
+                }
+            } finally {
+                synchronized (checkChannels) {
+                    checkChannels.remove(channel);
+                    checkChannels.notifyAll();
+                }
+                channel.close();
+            }
+            return null;
+        }
+    } // Check
+
+    /**
+     * Cancels all background checks and waits a bounded time until they have
+     * closed their channels.
+     * Thereafter, any channel which is still open gets closed.
+     */
+    private void closeChecks() throws IOException {
+        for (final Future<?> check : checks.values())
+            check.cancel(true);
+        checks.clear();
+        final List<SeekableByteChannel> channels;
+        synchronized (checkChannels) {
+            checksClosed = true;
+            final long deadline = System.currentTimeMillis()
+                    + CHECKS_TIMEOUT_MILLIS;
+            boolean interrupted = false;
+            for (long timeout; !checkChannels.isEmpty()
+                    && 0 < (timeout = deadline - System.currentTimeMillis()); ) {
+                try {
+                    checkChannels.wait(timeout);
+                } catch (final InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted)
+                Thread.currentThread().interrupt();
+            channels = new ArrayList<>(checkChannels);
+            checkChannels.clear();
+        }
+        IOException ex = null;
+        for (final SeekableByteChannel channel : channels) {
+            try {
+                channel.close();
+            } catch (final IOException ex2) {
+                if (null == ex)
+                    ex = ex2;
+                else
+                    ex.addSuppressed(ex2);
+            }
+        }
+        if (null != ex)
+            throw ex;
+    }
+
     /**
      * Equivalent to {@link #getInputStream(String, Boolean, boolean)
      * getInputStream(name, null, true)}.
@@ -909,23 +1093,34 @@ implements Closeable, Iterable<E> {
         Objects.requireNonNull(name);
         final ZipEntry entry = entries.get(name);
         if (null == entry) return null;
-        long pos = entry.getOffset();
-        assert UNKNOWN != pos;
-        pos = mapper.map(pos);
+        if (process) {
+            if (null == check) check = entry.isEncrypted();
+            // Skip the check if it has already succeeded in the background.
+            if (check && checked(name)) check = false;
+        }
+        return getInputStream(channel, entry, check, process,
+                getStreamingCheck(), null);
+    }
+
+    @CreatesObligation
+    private InputStream getInputStream(
+            final SeekableByteChannel channel,
+            final ZipEntry entry,
+            @CheckForNull Boolean check,
+            final boolean process,
+            final boolean streaming,
+            @CheckForNull ZipCryptoParameters param)
+    throws ZipException, IOException {
+        final String name = entry.getName();
         final MutableBuffer lfh = MutableBuffer
                 .allocate(LFH_MIN_LEN)
-                .littleEndian()
-                .load(channel.position(pos));
-        if (LFH_SIG != lfh.getUInt())
-            throw new ZipException(name + " (expected local file header)");
-        lfh.position(LFH_FILE_NAME_LENGTH_POS);
-        pos += LFH_MIN_LEN
-                + lfh.getUShort() // file name length
-                + lfh.getUShort(); // extra field length
+                .littleEndian();
+        final long pos = loadLocalFileHeader(channel, entry, lfh);
         SeekableByteChannel echannel;
         try {
-            echannel = new EntryReadOnlyChannel(
-                    pos, entry.getCompressedSize());
+            echannel = channel == this.channel
+                    ? new EntryReadOnlyChannel(pos, entry.getCompressedSize())
+                    : new IntervalReadOnlyChannel(channel, pos, entry.getCompressedSize());
         } catch (RuntimeException e) {
             throw (ZipException) new ZipException(
                     name + " (invalid Local File Header, Data Descriptor or Central File Header)")
@@ -938,22 +1133,26 @@ implements Closeable, Iterable<E> {
             }
             if (null == check) check = entry.isEncrypted();
             int method = entry.getMethod();
+            WinZipAesReadOnlyChannel authenticating = null;
             if (entry.isEncrypted()) {
                 if (WINZIP_AES != method)
                     throw new ZipException(name
                             + " (encrypted compression method "
                             + method
                             + " is not supported)");
+                if (null == param) param = getCryptoParameters();
                 final WinZipAesReadOnlyChannel
                         eechannel = new WinZipAesReadOnlyChannel(echannel,
                                 new WinZipAesEntryParameters(
                                     parameters(
                                         WinZipAesParameters.class,
-                                        getCryptoParameters()),
-                                    entry));
+                                        param),
+                                    entry),
+                                check && streaming);
                 echannel = eechannel;
                 if (check) {
-                    eechannel.authenticate();
+                    if (streaming) authenticating = eechannel;
+                    else eechannel.authenticate();
                     // Disable redundant CRC-32 check.
                     check = false;
                 }
@@ -1005,6 +1204,8 @@ implements Closeable, Iterable<E> {
                             + " is not supported)");
             }
             if (check) in = new Crc32InputStream(in, bufSize, entry);
+            if (null != authenticating)
+                in = new AuthenticatingInputStream(in, authenticating);
             return in;
         } catch (final Throwable e1) {
             try {
@@ -1016,6 +1217,124 @@ implements Closeable, Iterable<E> {
         }
     }
 
+    /**
+     * Loads the Local File Header of the given entry from the given channel
+     * into the given buffer and returns the position of the entry data.
+     */
+    private long loadLocalFileHeader(
+            final SeekableByteChannel channel,
+            final ZipEntry entry,
+            final MutableBuffer lfh)
+    throws IOException {
+        long pos = entry.getOffset();
+        assert UNKNOWN != pos;
+        pos = mapper.map(pos);
+        lfh.load(channel.position(pos));
+        if (LFH_SIG != lfh.getUInt())
+            throw new ZipException(entry.getName() + " (expected local file header)");
+        lfh.position(LFH_FILE_NAME_LENGTH_POS);
+        return pos
+                + LFH_MIN_LEN
+                + lfh.getUShort() // file name length
+                + lfh.getUShort(); // extra field length
+    }
+
+    /**
+     * Returns {@code true} if and only if the entry with the given name is
+     * encrypted according to the WinZip AES specification and can get copied
+     * byte-for-byte, including its salt, password verification value and
+     * MAC, to a ZIP output stream which uses the given parameters for
+     * encryption.
+     * This is the case if the key strength and the password for writing the
+     * entry with the given parameters are the same as for reading it.
+     * This gets verified by authenticating the entry data with the password
+     * for writing it.
+     * Then, the entry can get written by calling
+     * {@link AbstractZipOutputStream#putNextEntry(ZipEntry, boolean)
+     * putNextEntry(entry, false)}, which saves decrypting and encrypting it
+     * again.
+     * <p>
+     * Note that this may prompt the user for the password for writing the
+     * entry.
+     *
+     * @param  name the name of the entry.
+     * @param  param the parameters for encrypting the entry.
+     * @return Whether or not the entry can get copied byte-for-byte to a ZIP
+     *         output stream which uses the given parameters for encryption.
+     * @throws IOException on any I/O error.
+     */
+    public boolean isRawCopyable(
+            final String name,
+            final @CheckForNull ZipCryptoParameters param)
+    throws IOException {
+        final SeekableByteChannel channel = channel();
+        final ZipEntry entry = entries.get(Objects.requireNonNull(name));
+        if (null == entry
+                || !entry.isEncrypted()
+                || WINZIP_AES != entry.getMethod())
+            return false;
+        final WinZipAesExtraField field
+                = (WinZipAesExtraField) entry.getExtraField(WINZIP_AES_ID);
+        if (null == field) return false;
+        try {
+            final WinZipAesParameters
+                    output = parameters(WinZipAesParameters.class, param);
+            if (field.getKeyStrength() != output.getKeyStrength(name))
+                return false;
+            final long pos = loadLocalFileHeader(channel, entry,
+                    MutableBuffer.allocate(LFH_MIN_LEN).littleEndian());
+            try (final WinZipAesReadOnlyChannel eechannel
+                    = new WinZipAesReadOnlyChannel(
+                        new EntryReadOnlyChannel(pos, entry.getCompressedSize()),
+                        new WinZipAesEntryParameters(
+                            new WritePasswordParameters(output), entry))) {
+                eechannel.authenticate();
+            }
+            return true;
+        } catch (final ZipParametersException | ZipCryptoException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Adapts the parameters for writing WinZip AES entries to parameters for
+     * reading them in order to authenticate the password for writing.
+     * Note that this adapter deliberately does not provide a
+     * {@link net.java.truevfs.comp.zip.crypto.DerivedKeyCache} because a
+     * cached key has been derived from the password for reading.
+     */
+    private static final class WritePasswordParameters
+    implements WinZipAesParameters {
+        final WinZipAesParameters param;
+
+        WritePasswordParameters(final WinZipAesParameters param) {
+            this.param = param;
+        }
+
+        @Override
+        public byte[] getWritePassword(String name) throws ZipKeyException {
+            return param.getWritePassword(name);
+        }
+
+        @Override
+        public byte[] getReadPassword(String name, boolean invalid)
+        throws ZipKeyException {
+            if (invalid)
+                throw new ZipKeyException(name + " (password for writing does not match)");
+            return param.getWritePassword(name);
+        }
+
+        @Override
+        public AesKeyStrength getKeyStrength(String name)
+        throws ZipKeyException {
+            return param.getKeyStrength(name);
+        }
+
+        @Override
+        public void setKeyStrength(String name, AesKeyStrength keyStrength) {
+        }
+    } // WritePasswordParameters
+
     private static int getBufferSize(final ZipEntry entry) {
         long size = entry.getSize();
         if (MAX_FLATER_BUF_LENGTH < size)
@@ -1043,8 +1362,12 @@ implements Closeable, Iterable<E> {
     public void close() throws IOException {
         final SeekableByteChannel channel = this.channel;
         if (null != channel) {
-            channel.close();
-            this.channel = null;
+            try {
+                closeChecks();
+            } finally {
+                channel.close();
+                this.channel = null;
+            }
         }
     }
 
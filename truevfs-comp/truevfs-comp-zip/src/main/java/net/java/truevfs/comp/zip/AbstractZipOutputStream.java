@@ -328,6 +328,12 @@ implements Iterable<E> {
      *         an output ZIP file.
      *         The entries' CRC-32, compressed size and uncompressed
      *         size properties must be set in advance.
+     *         If the entry is encrypted according to the WinZip AES
+     *         specification, then its data gets copied including its salt,
+     *         password verification value and MAC, so its WinZip AES extra
+     *         field must be present, too.
+     *         Use {@link AbstractZipFile#isRawCopyable} in order to check if
+     *         this is feasible.
      * @throws ZipException If and only if writing the entry is impossible
      *         because the resulting file would not comply to the ZIP file
      *         format specification.
@@ -725,6 +731,12 @@ implements Iterable<E> {
                     throw new ZipException(entry.getName()
                             + " (unknown uncompressed size)");
             }
+            if (!this.process
+                    && entry.isEncrypted()
+                    && WINZIP_AES == entry.getMethod()
+                    && null == entry.getExtraField(WINZIP_AES_ID))
+                throw new ZipException(entry.getName()
+                        + " (missing WinZip AES extra field)");
             if (UNKNOWN == entry.getPlatform())
                 entry.setRawPlatform(PLATFORM_FAT);
             if (UNKNOWN == entry.getTime())
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.comp.zip;
+
+import edu.umd.cs.findbugs.annotations.CreatesObligation;
+import java.io.IOException;
+import java.io.InputStream;
+import javax.annotation.WillCloseWhenClosed;
+import javax.annotation.concurrent.NotThreadSafe;
+import net.java.truecommons.io.DecoratingInputStream;
+
+/**
+ * Authenticates the content of a WinZip AES entry when reaching the end of
+ * the decorated input stream or in its method {@link #close()}, whatever
+ * happens first.
+ * The WinZip AES read-only channel should have been constructed for streaming
+ * authentication, so that the MAC gets computed while the client reads the
+ * entry rather than in a separate pass.
+ * If authentication fails, then a {@link ZipAuthenticationException} gets
+ * thrown.
+ *
+ * @author Christian Schlichtherle
+ */
+@NotThreadSafe
+final class AuthenticatingInputStream extends DecoratingInputStream {
+
+    private final WinZipAesReadOnlyChannel channel;
+    private boolean authenticated;
+
+    @CreatesObligation
+    AuthenticatingInputStream(
+            final @WillCloseWhenClosed InputStream in,
+            final WinZipAesReadOnlyChannel channel) {
+        super(in);
+        this.channel = channel;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int read = in.read();
+        if (-1 == read)
+            authenticate();
+        return read;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len)
+    throws IOException {
+        final int read = in.read(b, off, len);
+        if (-1 == read)
+            authenticate();
+        return read;
+    }
+
+    private void authenticate() throws IOException {
+        if (authenticated)
+            return;
+        channel.authenticate();
+        authenticated = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            authenticate();
+        } catch (final Throwable ex) {
+            try {
+                in.close();
+            } catch (final Throwable ex2) {
+                ex.addSuppressed(ex2);
+            }
+            throw ex;
+        }
+        in.close();
+    }
+}
@@ -4,8 +4,12 @@
  */
 package net.java.truevfs.comp.zip;
 
+import java.security.SecureRandom;
+import javax.annotation.CheckForNull;
 import javax.annotation.concurrent.ThreadSafe;
 import net.java.truecommons.key.spec.common.AesKeyStrength;
+import net.java.truevfs.comp.zip.crypto.DerivedKeyCache;
+import net.java.truevfs.comp.zip.crypto.SecureRandoms;
 
 /**
  * The parameters of this interface are used with WinZip AES encrypted entries.
@@ -46,4 +50,14 @@ final class WinZipAesEntryParameters {
     byte[] getReadPassword(boolean invalid) throws ZipKeyException {
         return param.getReadPassword(entry.getName(), invalid);
     }
+
+    @CheckForNull DerivedKeyCache getDerivedKeyCache() {
+        return param instanceof DerivedKeyCache.Provider
+                ? ((DerivedKeyCache.Provider) param).getDerivedKeyCache()
+                : null;
+    }
+
+    SecureRandom getSecureRandom() {
+        return SecureRandoms.of(param);
+    }
 }
\ No newline at end of file
@@ -5,7 +5,6 @@
 package net.java.truevfs.comp.zip;
 
 import java.io.IOException;
-import java.security.SecureRandom;
 import java.util.Arrays;
 import javax.annotation.concurrent.NotThreadSafe;
 import net.java.truecommons.io.DecoratingOutputStream;
@@ -13,6 +12,7 @@ import net.java.truecommons.io.LittleEndianOutputStream;
 import net.java.truecommons.key.spec.KeyStrength;
 import net.java.truevfs.comp.zip.crypto.BufferedPartialBlockCipher;
 import net.java.truevfs.comp.zip.crypto.CipherOutputStream;
+import net.java.truevfs.comp.zip.crypto.PipelinedOutputStream;
 import org.bouncycastle.crypto.BufferedBlockCipher;
 import org.bouncycastle.crypto.Mac;
 import org.bouncycastle.crypto.PBEParametersGenerator;
@@ -53,6 +53,9 @@ final class WinZipAesOutputStream extends DecoratingOutputStream {
     /** The message authentication code (MAC) output stream. */
     private final MacOutputStream mos;
 
+    /** The pipeline for computing the MAC on another thread. */
+    private final PipelinedOutputStream pos;
+
     /**
      * The low level data output stream.
      * Used for writing the header and footer.
@@ -74,7 +77,7 @@ final class WinZipAesOutputStream extends DecoratingOutputStream {
 
             // Shake the salt.
             final byte[] salt = new byte[keyStrengthBytes / 2];
-            new SecureRandom().nextBytes(salt);
+            param.getSecureRandom().nextBytes(salt);
 
             // Init password.
             final byte[] passwd = param.getWritePassword();
@@ -115,8 +118,9 @@ final class WinZipAesOutputStream extends DecoratingOutputStream {
             // Init chain of output streams as Encrypt-then-MAC.
             this.leos = leos;
             mos = new MacOutputStream(mac);
+            pos = new PipelinedOutputStream(mos);
             out = new CipherOutputStream(cipher,
-                    new TeeOutputStream(leos, mos));
+                    new TeeOutputStream(leos, pos));
 
             // Write header.
             leos.write(salt);
@@ -144,6 +148,7 @@ final class WinZipAesOutputStream extends DecoratingOutputStream {
         ((CipherOutputStream) out).finish();
 
         // Compute and write the first half of the MAC to the footer.
+        pos.flush();
         final byte[] buf = mos.getMac();
         leos.write(buf, 0, buf.length / 2);
     }
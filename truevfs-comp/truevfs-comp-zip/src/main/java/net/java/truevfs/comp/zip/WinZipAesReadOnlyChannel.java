@@ -10,6 +10,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.SeekableByteChannel;
 import java.util.Arrays;
+import javax.annotation.CheckForNull;
 import javax.annotation.WillCloseWhenClosed;
 import javax.annotation.concurrent.NotThreadSafe;
 import net.java.truecommons.io.IntervalReadOnlyChannel;
@@ -20,6 +21,8 @@ import net.java.truecommons.key.spec.util.SuspensionPenalty;
 import static net.java.truevfs.comp.zip.ExtraField.WINZIP_AES_ID;
 import static net.java.truevfs.comp.zip.WinZipAesOutputStream.*;
 import net.java.truevfs.comp.zip.crypto.CipherReadOnlyChannel;
+import net.java.truevfs.comp.zip.crypto.DerivedKeyCache;
+import net.java.truevfs.comp.zip.crypto.MacReadOnlyChannel;
 import net.java.truevfs.comp.zip.crypto.SeekableBlockCipher;
 import org.bouncycastle.crypto.Mac;
 import org.bouncycastle.crypto.PBEParametersGenerator;
@@ -58,10 +61,34 @@ final class WinZipAesReadOnlyChannel extends ReadOnlyChannel {
 
     private final ZipEntry entry;
 
+    /**
+     * The channel which computes the MAC while the encrypted data gets read
+     * or {@code null} if the MAC gets computed in a separate pass.
+     */
+    private final @CheckForNull MacReadOnlyChannel macChannel;
+
     @CreatesObligation
     WinZipAesReadOnlyChannel(
             final @WillCloseWhenClosed SeekableByteChannel channel,
             final WinZipAesEntryParameters param)
+    throws IOException {
+        this(channel, param, false);
+    }
+
+    /**
+     * Constructs a new WinZip AES read-only channel.
+     *
+     * @param channel the channel for reading the entry data.
+     * @param param the WinZip AES entry parameters.
+     * @param streaming whether or not the MAC shall get computed while the
+     *        encrypted data gets read rather than in a separate pass when
+     *        calling {@link #authenticate()}.
+     */
+    @CreatesObligation
+    WinZipAesReadOnlyChannel(
+            final @WillCloseWhenClosed SeekableByteChannel channel,
+            final WinZipAesEntryParameters param,
+            final boolean streaming)
     throws IOException {
         super(channel);
 
@@ -115,41 +142,54 @@ final class WinZipAesReadOnlyChannel extends ReadOnlyChannel {
         authenticationCode = footer.buffer();
 
         // Derive cipher and MAC parameters.
+        // Here comes the strange part about WinZip AES encryption:
+        // Its unorthodox use of the Password-Based Key Derivation
+        // Function 2 (PBKDF2) of PKCS #5 V2.0 alias RFC 2898.
+        // Yes, the password verifier is only a 16 bit value.
+        // So we must use the MAC for password verification, too.
+        assert AES_BLOCK_SIZE_BITS <= keyStrengthBits;
+        final int keyParamBits = 2 * keyStrengthBits + PWD_VERIFIER_BITS;
+        final DerivedKeyCache cache = param.getDerivedKeyCache();
         final PBEParametersGenerator gen = new PKCS5S2ParametersGenerator();
-        KeyParameter keyParam;
-        ParametersWithIV aesCtrParam;
-        KeyParameter sha1MacParam;
+        DerivedKeyCache.Key cacheKey;
+        byte[] key;
+        boolean cached;
         long lastTry = 0; // don't enforce suspension on first prompt!
         do {
             final byte[] passwd = param.getReadPassword(0 != lastTry);
             assert null != passwd;
 
-            gen.init(passwd, salt.array(), ITERATION_COUNT);
-            // Here comes the strange part about WinZip AES encryption:
-            // Its unorthodox use of the Password-Based Key Derivation
-            // Function 2 (PBKDF2) of PKCS #5 V2.0 alias RFC 2898.
-            // Yes, the password verifier is only a 16 bit value.
-            // So we must use the MAC for password verification, too.
-            assert AES_BLOCK_SIZE_BITS <= keyStrengthBits;
-            keyParam = (KeyParameter) gen.generateDerivedParameters(
-                    2 * keyStrengthBits + PWD_VERIFIER_BITS);
+            // Lookup the derived key by the password or derive it.
+            cacheKey = null == cache ? null
+                    : new DerivedKeyCache.Key("PBKDF2WithHmacSHA1",
+                        salt.array(), ITERATION_COUNT, keyParamBits, passwd);
+            key = null == cache ? null : cache.get(cacheKey);
+            cached = null != key;
+            if (!cached) {
+                gen.init(passwd, salt.array(), ITERATION_COUNT);
+                key = ((KeyParameter) gen.generateDerivedParameters(
+                        keyParamBits)).getKey();
+            }
             Arrays.fill(passwd, (byte) 0);
 
-            // Can you believe they "forgot" the nonce in the CTR mode IV?! :-(
-            final byte[] ctrIv = new byte[AES_BLOCK_SIZE_BITS / 8];
-            aesCtrParam = new ParametersWithIV(
-                    new KeyParameter(keyParam.getKey(), 0, keyStrengthBytes),
-                    ctrIv); // yes, the IV is an array of zero bytes!
-            sha1MacParam = new KeyParameter(
-                    keyParam.getKey(),
-                    keyStrengthBytes,
-                    keyStrengthBytes);
-
             lastTry = SuspensionPenalty.enforce(lastTry);
 
             // Verify password.
-        } while (!passwdVerifier.equals(ByteBuffer.wrap(
-                keyParam.getKey()).position(2 * keyStrengthBytes)));
+        } while (!passwdVerifier.equals(ByteBuffer.wrap(key)
+                .position(2 * keyStrengthBytes)));
+        if (null != cache && !cached)
+            cache.put(cacheKey, key);
+
+        // Can you believe they "forgot" the nonce in the CTR mode IV?! :-(
+        final byte[] ctrIv = new byte[AES_BLOCK_SIZE_BITS / 8];
+        final ParametersWithIV aesCtrParam = new ParametersWithIV(
+                new KeyParameter(key, 0, keyStrengthBytes),
+                ctrIv); // yes, the IV is an array of zero bytes!
+        final KeyParameter sha1MacParam = new KeyParameter(
+                key,
+                keyStrengthBytes,
+                keyStrengthBytes);
+        Arrays.fill(key, (byte) 0);
 
         // Init parameters and entry for authenticate().
         this.sha1MacParam = sha1MacParam;
@@ -158,8 +198,16 @@ final class WinZipAesReadOnlyChannel extends ReadOnlyChannel {
         // Init cipher and channel.
         final SeekableBlockCipher cipher = new WinZipAesCipher();
         cipher.init(false, aesCtrParam);
-        this.channel = new CipherReadOnlyChannel(cipher,
-                new IntervalReadOnlyChannel(channel.position(start), size));
+        SeekableByteChannel cchannel
+                = new IntervalReadOnlyChannel(channel.position(start), size);
+        if (streaming) {
+            final Mac mac = newMac();
+            mac.init(sha1MacParam);
+            cchannel = this.macChannel = new MacReadOnlyChannel(mac, cchannel);
+        } else {
+            this.macChannel = null;
+        }
+        this.channel = new CipherReadOnlyChannel(cipher, cchannel);
 
         // Commit key strength.
         param.setKeyStrength(keyStrength);
@@ -169,15 +217,24 @@ final class WinZipAesReadOnlyChannel extends ReadOnlyChannel {
      * Authenticates all encrypted data in this read-only channel.
      * This method can get called multiple times to detect if the file has been
      * tampered with meanwhile.
+     * However, if this channel has been constructed for streaming
+     * authentication, then the MAC gets computed while the encrypted data gets
+     * read and this method only reads the remainder, if any.
+     * In this case, subsequent calls return the same result.
      *
      * @throws ZipAuthenticationException If the computed MAC does not match
      *         the MAC declared in the WinZip AES entry.
      * @throws IOException On any I/O related issue.
      */
     void authenticate() throws IOException {
-        final Mac mac = newMac();
-        mac.init(sha1MacParam);
-        final byte[] buf = ((CipherReadOnlyChannel) channel).mac(mac);
+        final byte[] buf;
+        if (null != macChannel) {
+            buf = macChannel.mac();
+        } else {
+            final Mac mac = newMac();
+            mac.init(sha1MacParam);
+            buf = ((CipherReadOnlyChannel) channel).mac(mac);
+        }
         if (!authenticationCode.equals(ByteBuffer.wrap(buf, 0, buf.length / 2)))
             throw new ZipAuthenticationException(entry.getName()
                     + " (authenticated WinZip AES entry content has been tampered with)");
@@ -13,6 +13,7 @@ import static java.nio.file.Files.newByteChannel;
 import java.nio.file.Path;
 import java.util.Enumeration;
 import java.util.Iterator;
+import java.util.concurrent.Executor;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.zip.ZipException;
@@ -53,6 +54,8 @@ public class ZipFile extends AbstractZipFile<ZipEntry> {
 
     private volatile @CheckForNull ZipCryptoParameters cryptoParameters;
 
+    private volatile boolean streamingCheck;
+
     /**
      * Equivalent to {@link #ZipFile(Path, Charset, boolean, boolean)
      * ZipFile(file, DEFAULT_CHARSET, true, false)}
@@ -310,6 +313,37 @@ public class ZipFile extends AbstractZipFile<ZipEntry> {
         this.cryptoParameters = cryptoParameters;
     }
 
+    @Override
+    public boolean getStreamingCheck() {
+        return streamingCheck;
+    }
+
+    /**
+     * Sets whether or not the Message Authentication Code (MAC) of an
+     * encrypted entry shall get computed while the client reads the entry
+     * rather than in a separate pass before returning the entry stream.
+     *
+     * @param streamingCheck whether or not the MAC of an encrypted entry
+     *        shall get computed while the client reads the entry.
+     * @see   #getStreamingCheck()
+     */
+    public void setStreamingCheck(final boolean streamingCheck) {
+        this.streamingCheck = streamingCheck;
+    }
+
+    @Override
+    public void checkInBackground(
+            Iterable<? extends ZipEntry> entries,
+            Executor executor)
+    throws IOException {
+        lock.lock();
+        try {
+            super.checkInBackground(entries, executor);
+        } finally {
+            lock.unlock();
+        }
+    }
+
     @Override
     @SuppressWarnings("deprecation")
     protected InputStream getInputStream(
@@ -9,11 +9,14 @@ import net.java.truecommons.io.ReadOnlyChannel;
 import net.java.truecommons.io.Streams;
 import org.bouncycastle.crypto.Mac;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.WillCloseWhenClosed;
 import javax.annotation.concurrent.NotThreadSafe;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.SeekableByteChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Objects;
 
 import static java.lang.Math.min;
@@ -22,12 +25,22 @@ import static java.lang.Math.min;
  * Provides buffered random read-only access to the plain text of an encrypted
  * file.
  * Note that this channel maintains its own virtual file pointer.
+ * <p>
+ * The encrypted data gets read into a buffer and decrypted in runs of
+ * blocks up to the size of the buffer rather than block by block.
+ * Runs of full blocks get decrypted straight into the array of a heap
+ * destination buffer.
+ * Any other data, e.g. for a direct destination buffer or a partial block,
+ * gets decrypted into a page of the size of the buffer first.
+ * The last few pages are cached, so that seek-heavy readers, e.g. a ZIP file
+ * reading the headers of its entries, do not need to read and decrypt the
+ * same data again.
  *
  * @see    CipherOutputStream
  * @author Christian Schlichtherle
  */
 //
-// Note that this is mostly a copy of
+// Note that this is loosely based on
 // net.java.truecommons.io.BufferedReadOnlyChannel which has been tuned for
 // performance.
 //
@@ -36,16 +49,22 @@ public final class CipherReadOnlyChannel extends ReadOnlyChannel {
 
     private static final long INVALID = Long.MIN_VALUE;
 
+    /** The maximum number of decrypted pages to cache. */
+    private static final int PAGES = 4;
+
     /** The seekable block cipher for random access decryption. */
     private final SeekableBlockCipher cipher;
 
+    /** The block size of the cipher. */
+    private final int blockSize;
+
     /** The virtual position of this channel. */
     private long pos;
 
     /**
      * The position in the decorated channel where the buffer with the
      * encrypted data starts.
-     * This is always a multiple of the cipher's block size.
+     * This is always a multiple of the size of the buffer.
      */
     private long bufferStart = INVALID;
 
@@ -53,17 +72,29 @@ public final class CipherReadOnlyChannel extends ReadOnlyChannel {
      * The buffer for the encrypted channel data.
      * The size of the buffer is a multiple of the cipher's block size.
      */
-    private byte[] buffer;
+    private final byte[] buffer;
 
     /**
-     * The position in the decorated channel where the block with the
-     * decrypted data starts.
-     * This is always a multiple of the cipher's block size.
+     * The cache of pages with decrypted channel data in access order.
+     * Each page has the size of the buffer and is keyed by the position in
+     * the decorated channel where it starts.
      */
-    private long blockStart = INVALID;
-
-    /** The buffer for the decrypted channel data. */
-    private byte[] block;
+    private final Map<Long, byte[]> pages
+            = new LinkedHashMap<Long, byte[]>(2 * PAGES, 0.75f, true) {
+                private static final long serialVersionUID = 0;
+
+                @Override
+                protected boolean removeEldestEntry(
+                        final Map.Entry<Long, byte[]> eldest) {
+                    if (size() <= PAGES)
+                        return false;
+                    spare = eldest.getValue();
+                    return true;
+                }
+            };
+
+    /** The array of the page last evicted from the cache, if any. */
+    private @CheckForNull byte[] spare;
 
     /**
      * Constructs a new cipher read-only channel.
@@ -94,8 +125,7 @@ public final class CipherReadOnlyChannel extends ReadOnlyChannel {
             int bufferSize) {
         super(Objects.requireNonNull(channel));
         this.cipher = Objects.requireNonNull(cipher);
-        final int blockSize = cipher.getBlockSize();
-        block = new byte[blockSize];
+        final int blockSize = this.blockSize = cipher.getBlockSize();
         if (bufferSize < blockSize)
             bufferSize = blockSize;
         buffer = new byte[bufferSize / blockSize * blockSize]; // round down to multiple of block size
@@ -148,63 +178,93 @@ public final class CipherReadOnlyChannel extends ReadOnlyChannel {
 
         // Setup.
         int total = 0; // amount of data copied to dst
-        final int blockSize = block.length;
-
-        // Partial read of block data at the start.
-        positionBlock();
-        if (pos != blockStart) {
-            assert pos % blockSize != 0;
-            final int blockPos = (int) (pos - blockStart);
-            int blockLimit = min(remaining, blockSize - blockPos);
-            blockLimit = (int) min(blockLimit, size - pos);
-            assert blockLimit > 0;
-            dst.put(block, blockPos, blockLimit);
-            total += blockLimit;
-            pos += blockLimit;
-        }
+        final int blockSize = this.blockSize;
+        final int pageSize = buffer.length;
 
-        if (total < remaining && pos < size && dst.hasArray()) {
-            // Full read of block data in the middle.
-            final SeekableBlockCipher cipher = this.cipher;
-            final byte[] buffer = this.buffer;
-            final byte[] dstArray = dst.array();
-            final int dstArrayOffset = dst.arrayOffset();
-            int dstPosition = dst.position();
-            final int dstCapacity = dst.capacity();
-            long blockCounter = pos / blockSize;
-            while (total + blockSize <= remaining
-                    && dstPosition + blockSize <= dstCapacity
-                    && pos + blockSize <= size) {
-                assert pos % blockSize == 0;
+        while (total < remaining && pos < size) {
+            final long pageStart = pos / pageSize * pageSize;
+            final int pagePos = (int) (pos - pageStart);
+            int limit = (int) min(min(remaining - total, size - pos),
+                                  pageSize - pagePos);
+            assert 0 < limit;
+            byte[] page = pages.get(pageStart);
+            if (null == page && dst.hasArray() && 0 == pagePos % blockSize
+                    && blockSize <= limit) {
+                // Decrypt full blocks straight into the destination array.
+                limit = limit / blockSize * blockSize;
                 positionBuffer();
-                cipher.setBlockCounter(blockCounter++);
-                final int bufferOff = (int) (pos - bufferStart);
-                final int blockLimit = cipher.processBlock(
-                        buffer, bufferOff,
-                        dstArray, dstArrayOffset + dstPosition);
-                assert blockLimit == blockSize;
-                dst.position(dstPosition += blockLimit);
-                total += blockLimit;
-                pos += blockLimit;
+                assert bufferStart == pageStart;
+                final int dstPosition = dst.position();
+                cipher.setBlockCounter(pos / blockSize);
+                decrypt(buffer, pagePos, limit,
+                        dst.array(), dst.arrayOffset() + dstPosition);
+                dst.position(dstPosition + limit);
+            } else {
+                if (null == page)
+                    page = page(pageStart, size);
+                dst.put(page, pagePos, limit);
             }
-        }
-
-        // Read of remaining block data.
-        while (total < remaining && pos < size) {
-            assert pos % blockSize == 0;
-            positionBlock();
-            final int blockPos = (int) (pos - blockStart);
-            int blockLimit = min(remaining - total, blockSize - blockPos);
-            blockLimit = (int) min(blockLimit, size - pos);
-            assert blockLimit > 0;
-            dst.put(block, blockPos, blockLimit);
-            total += blockLimit;
-            pos += blockLimit;
+            total += limit;
+            pos += limit;
         }
 
         return total;
     }
 
+    /**
+     * Returns the page which starts at the given position after decrypting
+     * it from the buffer and caching it.
+     * The page starts at the position of the buffer.
+     *
+     * @throws IOException on any I/O error.
+     *         The page is not cached in this case.
+     */
+    private byte[] page(final long pageStart, final long size)
+    throws IOException {
+        positionBuffer();
+        assert bufferStart == pageStart;
+        final int blockSize = this.blockSize;
+        final int pageLimit = (int) min(buffer.length, size - pageStart);
+        byte[] page = spare;
+        if (null == page)
+            page = new byte[buffer.length];
+        else
+            spare = null;
+        cipher.setBlockCounter(pageStart / blockSize);
+        decrypt(buffer, 0, (pageLimit + blockSize - 1) / blockSize * blockSize,
+                page, 0);
+        pages.put(pageStart, page);
+        return page;
+    }
+
+    /**
+     * Decrypts the given length of data, which must be a multiple of the
+     * cipher's block size, starting at the cipher's current block counter.
+     */
+    private void decrypt(
+            final byte[] in,
+            int inOff,
+            final int length,
+            final byte[] out,
+            int outOff) {
+        final SeekableBlockCipher cipher = this.cipher;
+        final int blockSize = this.blockSize;
+        assert 0 == length % blockSize;
+        if (cipher instanceof JceCtrBlockCipher) {
+            final int processed = ((JceCtrBlockCipher) cipher).processBlocks(
+                    in, inOff, length / blockSize, out, outOff);
+            assert processed == length;
+        } else {
+            for (final int inEnd = inOff + length; inOff < inEnd; ) {
+                final int processed = cipher.processBlock(
+                        in, inOff, out, outOff);
+                assert processed == blockSize;
+                inOff += blockSize;
+                outOff += blockSize;
+            }
+        }
+    }
+
     @Override
     public long position() throws IOException {
         checkOpen();
@@ -220,42 +280,6 @@ public final class CipherReadOnlyChannel extends ReadOnlyChannel {
         return this;
     }
 
-    /**
-     * Positions the block so that it holds the decrypted data referenced by
-     * the virtual file pointer.
-     *
-     * @throws IOException on any I/O error.
-     *         The block is not positioned in this case.
-     */
-    private void positionBlock() throws IOException {
-        final byte[] block = this.block;
-        final int blockSize = block.length;
-
-        // Check position.
-        final long pos = this.pos;
-        long blockStart = this.blockStart;
-        if (blockStart <= pos) {
-            final long nextBlockStart = blockStart + blockSize;
-            if (pos < nextBlockStart)
-                return;
-        }
-
-        // Move position.
-        final SeekableBlockCipher cipher = this.cipher;
-        assert null != cipher;
-        positionBuffer();
-        final long blockCounter = pos / blockSize;
-        cipher.setBlockCounter(blockCounter);
-        this.blockStart = blockStart = blockCounter * blockSize;
-
-        // Decrypt block from buffer.
-        final int bufferPos = (int) (blockStart - bufferStart);
-        final int processed = cipher.processBlock(
-                buffer, bufferPos,
-                block, 0);
-        assert processed == blockSize;
-    }
-
     /**
      * Positions the buffer so that it holds the encrypted data
      * referenced by the virtual channel pointer.
@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.comp.zip.crypto;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+import javax.annotation.CheckForNull;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import org.bouncycastle.crypto.Mac;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.macs.HMac;
+import org.bouncycastle.crypto.params.KeyParameter;
+
+/**
+ * A bounded cache for keys which have been derived from a password by a
+ * password based key derivation function (PBKDF).
+ * Deriving a key is deliberately slow, so repeatedly opening the same
+ * encrypted entry or mounting the same encrypted archive file can reuse the
+ * derived key rather than deriving it again.
+ * <p>
+ * The cache gets looked up by a {@link Key} which consists of the name of the
+ * PBKDF, the salt, the iteration count, the length of the derived key and a
+ * keyed digest of the password.
+ * So a client must always obtain the password first and a cached key can
+ * only get found with the same password it has been derived from.
+ * Clients should still verify a cached key with the means provided by the
+ * file format, e.g. a password verifier, before using it.
+ * <p>
+ * Each cached key expires after a time to live and gets evicted on a
+ * least-recently-used basis when the maximum size is exceeded.
+ * A client should {@link #clear} the cache whenever it releases or resets
+ * the keys the cached keys have been derived from.
+ * When a cached key is expired, evicted or cleared, its bytes get zeroed.
+ *
+ * @author Christian Schlichtherle
+ */
+@ThreadSafe
+public final class DerivedKeyCache {
+
+    /**
+     * The key string for the system property which defines the maximum
+     * number of derived keys in a cache ({@value}).
+     */
+    public static final String MAXIMUM_SIZE_PROPERTY_KEY
+            = "net.java.truevfs.comp.zip.crypto.DerivedKeyCache.maximumSize";
+
+    /**
+     * The default value of the system property which defines the maximum
+     * number of derived keys in a cache.
+     */
+    public static final int MAXIMUM_SIZE_DEFAULT_VALUE = 1000;
+
+    /**
+     * The key string for the system property which defines the time to live
+     * of a derived key in a cache in milliseconds ({@value}).
+     * Set this to zero in order to disable caching.
+     */
+    public static final String TIME_TO_LIVE_MILLIS_PROPERTY_KEY
+            = "net.java.truevfs.comp.zip.crypto.DerivedKeyCache.timeToLiveMillis";
+
+    /**
+     * The default value of the system property which defines the time to live
+     * of a derived key in a cache in milliseconds.
+     */
+    public static final long TIME_TO_LIVE_MILLIS_DEFAULT_VALUE = 5 * 60 * 1000;
+
+    private static final Map<Object, DerivedKeyCache>
+            caches = new WeakHashMap<>();
+
+    private final int maximumSize;
+    private final long timeToLiveMillis;
+    private final LinkedHashMap<Key, Value> map;
+
+    /**
+     * Returns the derived key cache for the given scope, e.g. a key manager.
+     * The cache gets created on demand using the maximum size and time to
+     * live from the respective system properties and is weakly referenced by
+     * the scope.
+     *
+     * @param  scope the scope of the derived key cache.
+     * @return The derived key cache for the given scope.
+     */
+    public static DerivedKeyCache of(final Object scope) {
+        Objects.requireNonNull(scope);
+        synchronized (caches) {
+            DerivedKeyCache cache = caches.get(scope);
+            if (null == cache)
+                caches.put(scope, cache = new DerivedKeyCache());
+            return cache;
+        }
+    }
+
+    /**
+     * Constructs a new derived key cache using the maximum size and time to
+     * live from the respective system properties.
+     */
+    public DerivedKeyCache() {
+        this(   Integer.getInteger(MAXIMUM_SIZE_PROPERTY_KEY,
+                                   MAXIMUM_SIZE_DEFAULT_VALUE),
+                Long.getLong(TIME_TO_LIVE_MILLIS_PROPERTY_KEY,
+                             TIME_TO_LIVE_MILLIS_DEFAULT_VALUE));
+    }
+
+    /**
+     * Constructs a new derived key cache.
+     *
+     * @param maximumSize the maximum number of derived keys in this cache.
+     * @param timeToLiveMillis the time to live of a derived key in this cache
+     *        in milliseconds.
+     */
+    public DerivedKeyCache(final int maximumSize, final long timeToLiveMillis) {
+        this.maximumSize = Math.max(0, maximumSize);
+        this.timeToLiveMillis = Math.max(0, timeToLiveMillis);
+        this.map = new LinkedHashMap<Key, Value>(16, 0.75f, true) {
+            private static final long serialVersionUID = 0L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Key, Value> e) {
+                if (size() <= DerivedKeyCache.this.maximumSize)
+                    return false;
+                e.getValue().clear();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Returns a copy of the derived key which is mapped to the given key or
+     * {@code null} if no derived key is mapped or it has expired.
+     * The caller should zero the returned array when done.
+     *
+     * @param  key the key.
+     * @return A copy of the derived key which is mapped to the given key or
+     *         {@code null} if no derived key is mapped or it has expired.
+     */
+    public synchronized @CheckForNull byte[] get(final Key key) {
+        final Value value = map.get(key);
+        if (null == value)
+            return null;
+        if (value.expired(System.currentTimeMillis())) {
+            map.remove(key);
+            value.clear();
+            return null;
+        }
+        return value.bytes.clone();
+    }
+
+    /**
+     * Maps a copy of the given derived key to the given key.
+     *
+     * @param key the key.
+     * @param derived the derived key.
+     */
+    public synchronized void put(final Key key, final byte[] derived) {
+        if (0 >= maximumSize || 0 >= timeToLiveMillis)
+            return;
+        final long now = System.currentTimeMillis();
+        for (final Iterator<Value> i = map.values().iterator(); i.hasNext(); ) {
+            final Value value = i.next();
+            if (value.expired(now)) {
+                i.remove();
+                value.clear();
+            }
+        }
+        final Value old = map.put(key,
+                new Value(derived.clone(), now + timeToLiveMillis));
+        if (null != old)
+            old.clear();
+    }
+
+    /**
+     * Returns the number of derived keys in this cache, including any
+     * expired keys which have not yet been removed.
+     *
+     * @return The number of derived keys in this cache.
+     */
+    public synchronized int size() { return map.size(); }
+
+    /** Removes and zeroes all derived keys in this cache. */
+    public synchronized void clear() {
+        for (final Value value : map.values())
+            value.clear();
+        map.clear();
+    }
+
+    /**
+     * Implementations of this interface provide a derived key cache.
+     * This interface may be implemented by cryptographic parameters in order
+     * to enable caching of derived keys.
+     */
+    public interface Provider {
+
+        /**
+         * Returns the derived key cache to use.
+         *
+         * @return The derived key cache to use.
+         */
+        DerivedKeyCache getDerivedKeyCache();
+    }
+
+    /**
+     * The key for looking up a derived key.
+     * The password is only part of this key in the form of a digest which is
+     * keyed with a secret random number, so that a key does not reveal the
+     * password.
+     */
+    @Immutable
+    public static final class Key {
+        private static final byte[] SECRET = new byte[32];
+        static { new SecureRandom().nextBytes(SECRET); }
+
+        private final byte[] bytes;
+        private final int hash;
+
+        /**
+         * Constructs a new key.
+         *
+         * @param algorithm the name of the PBKDF.
+         * @param salt the salt.
+         * @param iterationCount the iteration count.
+         * @param bits the length of the derived key in bits.
+         * @param password the password.
+         */
+        public Key(
+                final String algorithm,
+                final byte[] salt,
+                final int iterationCount,
+                final int bits,
+                final byte[] password) {
+            final Mac mac = new HMac(new SHA256Digest());
+            mac.init(new KeyParameter(SECRET));
+            final byte[] name = algorithm.getBytes(StandardCharsets.UTF_8);
+            final byte[] bytes = this.bytes = new byte[
+                    name.length + 1 + 8 + salt.length + mac.getMacSize()];
+            System.arraycopy(name, 0, bytes, 0, name.length);
+            int off = name.length + 1;
+            off = putInt(iterationCount, bytes, off);
+            off = putInt(bits, bytes, off);
+            System.arraycopy(salt, 0, bytes, off, salt.length);
+            off += salt.length;
+            mac.update(password, 0, password.length);
+            mac.doFinal(bytes, off);
+            this.hash = Arrays.hashCode(bytes);
+        }
+
+        private static int putInt(int i, final byte[] buf, int off) {
+            for (int j = 0; j < 4; j++) {
+                buf[off++] = (byte) i;
+                i >>= 8;
+            }
+            return off;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            return this == obj || obj instanceof Key
+                    && Arrays.equals(bytes, ((Key) obj).bytes);
+        }
+
+        @Override
+        public int hashCode() { return hash; }
+    } // Key
+
+    private static final class Value {
+        final byte[] bytes;
+        final long expires;
+
+        Value(final byte[] bytes, final long expires) {
+            this.bytes = bytes;
+            this.expires = expires;
+        }
+
+        boolean expired(long now) { return expires <= now; }
+
+        void clear() { Arrays.fill(bytes, (byte) 0); }
+    } // Value
+}
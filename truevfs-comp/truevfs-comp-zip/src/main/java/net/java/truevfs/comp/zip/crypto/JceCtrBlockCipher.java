@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.comp.zip.crypto;
+
+import java.security.GeneralSecurityException;
+import javax.annotation.CheckForNull;
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import org.bouncycastle.crypto.BlockCipher;
+import org.bouncycastle.crypto.CipherParameters;
+import org.bouncycastle.crypto.DataLengthException;
+import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.crypto.params.ParametersWithIV;
+
+/**
+ * Implements Counter (CTR) mode (alias Segmented Integer Counter - SIC)
+ * on top of the AES implementation of the Java Cryptography Extension (JCE).
+ * This class produces the same output as a {@link CtrBlockCipher} with an
+ * {@link AESEngine}, but the JCE implementation on HotSpot uses the AES
+ * instructions of the CPU, if present.
+ * <p>
+ * In order to amortize the overhead of calling the JCE, the key stream gets
+ * computed for a batch of consecutive blocks at once by encrypting their
+ * counter blocks in ECB mode.
+ * Processing a block then just XORs the input with the key stream.
+ * Setting the block counter within the current batch is free, so sequential
+ * and nearly sequential access do not need to recompute the key stream.
+ * <p>
+ * If the JCE does not support the key, e.g. because of a restricted policy,
+ * then the key stream gets computed by an {@link AESEngine} instead.
+ *
+ * @author Christian Schlichtherle
+ */
+@NotThreadSafe
+public class JceCtrBlockCipher implements SeekableBlockCipher {
+
+    private static final long INVALID = Long.MIN_VALUE;
+
+    /** The number of blocks in a batch of the key stream. */
+    private static final int BATCH_BLOCKS = 256;
+
+    protected final int blockSize = 16;
+    protected long blockCounter;
+    protected final byte[] IV = new byte[blockSize];
+
+    private final byte[] counters = new byte[BATCH_BLOCKS * blockSize];
+    private final byte[] keyStream = new byte[BATCH_BLOCKS * blockSize];
+
+    /** The index of the first block in the key stream. */
+    private long keyStreamStart = INVALID;
+
+    private @CheckForNull Cipher cipher;
+    private @CheckForNull BlockCipher engine;
+
+    @Override
+    public void init(
+            final boolean forEncryption, // not used for CTR mode
+            final CipherParameters params) {
+        final ParametersWithIV ivParams = (ParametersWithIV) params;
+        final byte[] iv = ivParams.getIV();
+        System.arraycopy(iv, 0, IV, 0, IV.length);
+        reset();
+        keyStreamStart = INVALID;
+        final KeyParameter keyParam = (KeyParameter) ivParams.getParameters();
+        try {
+            final Cipher cipher = Cipher.getInstance("AES/ECB/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE,
+                    new SecretKeySpec(keyParam.getKey(), "AES"));
+            this.cipher = cipher;
+            this.engine = null;
+        } catch (final GeneralSecurityException ex) {
+            final BlockCipher engine = new AESEngine();
+            engine.init(true, keyParam);
+            this.cipher = null;
+            this.engine = engine;
+        }
+    }
+
+    @Override
+    public String getAlgorithmName() {
+        // Must add "/SIC" in order to make decorating BufferedBlockCipher work
+        // correctly.
+        return "AES/SIC";
+    }
+
+    @Override
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    @Override
+    public final int processBlock(
+            final byte[] in,
+            int inOff,
+            final byte[] out,
+            int outOff)
+    throws DataLengthException, IllegalStateException {
+        final long blockCounter = this.blockCounter++;
+        long keyStreamBlock = blockCounter - keyStreamStart;
+        if (INVALID == keyStreamStart
+                || 0 > keyStreamBlock || BATCH_BLOCKS <= keyStreamBlock) {
+            computeKeyStream(blockCounter);
+            keyStreamBlock = 0;
+        }
+
+        // XOR the key stream with the plaintext producing the cipher text.
+        final int blockSize = this.blockSize;
+        final byte[] keyStream = this.keyStream;
+        final int keyStreamOff = (int) keyStreamBlock * blockSize;
+        for (int i = 0; i < blockSize; i++)
+            out[outOff + i] = (byte) (in[inOff + i] ^ keyStream[keyStreamOff + i]);
+
+        return blockSize;
+    }
+
+    /**
+     * Processes the given number of consecutive blocks in one call, starting
+     * with the block at the current block counter.
+     * This produces the same output as calling
+     * {@link #processBlock(byte[], int, byte[], int)} for each block, but
+     * XORs the input with the key stream in runs of up to a batch rather
+     * than per block.
+     * The input and output may be the same array.
+     *
+     * @param  in the array with the input blocks.
+     * @param  inOff the offset of the first input block.
+     * @param  blocks the number of blocks to process.
+     * @param  out the array for the output blocks.
+     * @param  outOff the offset of the first output block.
+     * @return The number of bytes processed.
+     */
+    public final int processBlocks(
+            final byte[] in,
+            int inOff,
+            int blocks,
+            final byte[] out,
+            int outOff)
+    throws DataLengthException, IllegalStateException {
+        final int blockSize = this.blockSize;
+        final byte[] keyStream = this.keyStream;
+        final int total = blocks * blockSize;
+        while (0 < blocks) {
+            final long blockCounter = this.blockCounter;
+            long keyStreamBlock = blockCounter - keyStreamStart;
+            if (INVALID == keyStreamStart
+                    || 0 > keyStreamBlock || BATCH_BLOCKS <= keyStreamBlock) {
+                computeKeyStream(blockCounter);
+                keyStreamBlock = 0;
+            }
+            final int run = (int) Math.min(blocks, BATCH_BLOCKS - keyStreamBlock);
+            final int length = run * blockSize;
+            final int keyStreamOff = (int) keyStreamBlock * blockSize;
+            for (int i = 0; i < length; i++)
+                out[outOff + i] = (byte) (in[inOff + i] ^ keyStream[keyStreamOff + i]);
+            this.blockCounter = blockCounter + run;
+            blocks -= run;
+            inOff += length;
+            outOff += length;
+        }
+        return total;
+    }
+
+    private void computeKeyStream(final long start) {
+        final int blockSize = this.blockSize;
+        final byte[] counters = this.counters;
+        for (int i = 0; i < BATCH_BLOCKS; i++)
+            counter(start + i, counters, i * blockSize);
+        final Cipher cipher = this.cipher;
+        if (null != cipher) {
+            try {
+                cipher.doFinal(counters, 0, counters.length, keyStream, 0);
+            } catch (final GeneralSecurityException ex) {
+                throw new IllegalStateException(ex);
+            }
+        } else {
+            final BlockCipher engine = this.engine;
+            if (null == engine)
+                throw new IllegalStateException("Not initialized!");
+            for (int off = 0; off < counters.length; off += blockSize)
+                engine.processBlock(counters, off, keyStream, off);
+        }
+        keyStreamStart = start;
+    }
+
+    /**
+     * Writes the counter block for the block with the given index to the
+     * given buffer.
+     * Like the {@link CtrBlockCipher} class, this implementation adds the
+     * index to the IV in <em>big endian</em> order.
+     *
+     * @param blockCounter the index of the block, starting at 0.
+     * @param buf the buffer for the counter block.
+     * @param off the offset of the counter block in the buffer.
+     */
+    protected void counter(long blockCounter, final byte[] buf, final int off) {
+        for (int i = blockSize; --i >= 0; ) { // big endian order!
+            blockCounter += IV[i] & 0xff;
+            buf[off + i] = (byte) blockCounter;
+            blockCounter >>>= 8;
+        }
+    }
+
+    @Override
+    public void setBlockCounter(final long blockCounter) {
+        this.blockCounter = blockCounter;
+    }
+
+    @Override
+    public long getBlockCounter() {
+        return this.blockCounter;
+    }
+
+    @Override
+    public void reset() {
+        blockCounter = 0;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.comp.zip.crypto;
+
+import edu.umd.cs.findbugs.annotations.CreatesObligation;
+import net.java.truecommons.io.ReadOnlyChannel;
+import net.java.truecommons.io.Streams;
+import org.bouncycastle.crypto.Mac;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.WillCloseWhenClosed;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Objects;
+
+/**
+ * Computes a Message Authentication Code (MAC) over the data in the decorated
+ * read-only channel while it gets read.
+ * The MAC gets updated with each byte exactly once and in order, so it is
+ * computed as a side effect of reading the data sequentially, e.g. through a
+ * {@link CipherReadOnlyChannel}, rather than in a separate pass.
+ * Data which has been skipped by positioning gets read by {@link #mac()}.
+ *
+ * @author Christian Schlichtherle
+ */
+@NotThreadSafe
+public final class MacReadOnlyChannel extends ReadOnlyChannel {
+
+    private final Mac mac;
+
+    /** The number of bytes the MAC has been updated with. */
+    private long updated;
+
+    /** The authentication code, if computed. */
+    private @CheckForNull byte[] code;
+
+    /**
+     * Constructs a new MAC read-only channel.
+     *
+     * @param mac a properly initialized MAC object.
+     * @param channel the seekable byte channel.
+     */
+    @CreatesObligation
+    public MacReadOnlyChannel(
+            final Mac mac,
+            final @WillCloseWhenClosed SeekableByteChannel channel) {
+        super(Objects.requireNonNull(channel));
+        this.mac = Objects.requireNonNull(mac);
+    }
+
+    @Override
+    public int read(final ByteBuffer dst) throws IOException {
+        final long pos = channel.position();
+        final int read = channel.read(dst);
+        if (0 < read && null == code)
+            update(dst, pos, read);
+        return read;
+    }
+
+    private void update(final ByteBuffer dst, final long pos, final int read) {
+        final long end = pos + read;
+        final long updated = this.updated;
+        if (updated < pos || end <= updated)
+            return;
+        final ByteBuffer buf = dst.duplicate();
+        buf.limit(dst.position());
+        buf.position(dst.position() - (int) (end - updated));
+        if (buf.hasArray()) {
+            mac.update(buf.array(), buf.arrayOffset() + buf.position(),
+                    buf.remaining());
+        } else {
+            final byte[] array = new byte[buf.remaining()];
+            buf.get(array);
+            mac.update(array, 0, array.length);
+        }
+        this.updated = end;
+    }
+
+    /**
+     * Returns the authentication code of the data in this MAC read-only
+     * channel.
+     * If the data has not yet been read up to the end of this channel, then
+     * the remainder gets read first.
+     * The authentication code gets computed only once, so subsequent calls
+     * return the same result.
+     *
+     * @return A byte array with the authentication code.
+     * @throws IOException on any I/O error.
+     */
+    public byte[] mac() throws IOException {
+        byte[] code = this.code;
+        if (null == code) {
+            final long position = position();
+            try {
+                final long size = size();
+                final ByteBuffer buf = ByteBuffer.allocate(
+                        (int) Math.min(Streams.BUFFER_SIZE,
+                                       Math.max(1, size - updated)));
+                channel.position(updated);
+                while (updated < size) {
+                    buf.clear();
+                    if (0 > read(buf))
+                        throw new EOFException();
+                }
+            } finally {
+                position(position);
+            }
+            code = new byte[mac.getMacSize()];
+            final int codeLength = mac.doFinal(code, 0);
+            assert codeLength == code.length;
+            this.code = code;
+        }
+        return code.clone();
+    }
+}
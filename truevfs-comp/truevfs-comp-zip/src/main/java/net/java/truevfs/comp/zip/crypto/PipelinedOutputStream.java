@@ -0,0 +1,355 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.comp.zip.crypto;
+
+import edu.umd.cs.findbugs.annotations.CreatesObligation;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.CheckForNull;
+import javax.annotation.WillCloseWhenClosed;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.NotThreadSafe;
+import net.java.truecommons.io.DecoratingOutputStream;
+
+/**
+ * Decouples writing data to the decorated output stream from the writer
+ * thread by handing off the data in segments to another thread through a
+ * bounded ring of buffers.
+ * This is useful if writing to the decorated output stream is CPU bound,
+ * e.g. if it computes a Message Authentication Code (MAC) over the data
+ * which has been encrypted by the writer thread:
+ * Then encryption and authentication run on different cores.
+ * <p>
+ * The data gets written to the decorated output stream in the same order as
+ * it has been written to this output stream.
+ * As long as less than one segment has been written, no other thread is
+ * used at all, so small outputs do not pay for the hand-off.
+ * The methods {@link #flush()} and {@link #close()} wait until all data has
+ * been written to the decorated output stream, so the decorated output
+ * stream can safely get used by the writer thread afterwards, e.g. in order
+ * to obtain the MAC.
+ * Any exception which is thrown by the decorated output stream gets rethrown
+ * by a subsequent call to any method of this output stream.
+ * If waiting in {@link #close()} gets interrupted, then any pending segments
+ * get discarded, but the decorated output stream still gets closed only after
+ * the other thread has stopped writing to it.
+ *
+ * @author Christian Schlichtherle
+ */
+@NotThreadSafe
+public final class PipelinedOutputStream extends DecoratingOutputStream {
+
+    /** The default size of a segment. */
+    public static final int SEGMENT_SIZE = 64 * 1024;
+
+    /** The default number of segments in the ring of buffers. */
+    public static final int SEGMENTS = 4;
+
+    private final Executor executor;
+    private final int segmentSize;
+    private final int segments;
+
+    /** The buffer for the current segment. */
+    private byte[] segment;
+
+    /** The number of bytes in the current segment. */
+    private int count;
+
+    private final Object lock = new Object();
+
+    @GuardedBy("lock")
+    private final Queue<Segment> pending = new ArrayDeque<>();
+
+    @GuardedBy("lock")
+    private final Queue<byte[]> free = new ArrayDeque<>();
+
+    @GuardedBy("lock")
+    private int allocated;
+
+    @GuardedBy("lock")
+    private boolean running;
+
+    @GuardedBy("lock")
+    private boolean cancelled;
+
+    @GuardedBy("lock")
+    private @CheckForNull Throwable failure;
+
+    /**
+     * Constructs a new pipelined output stream with the default segment size
+     * and number of segments which uses a shared pool of daemon threads.
+     * The pool is limited to the number of available processors, so if all
+     * of its threads are busy, then the data gets written when a thread
+     * becomes available.
+     *
+     * @param out the output stream to decorate.
+     */
+    @CreatesObligation
+    public PipelinedOutputStream(final @WillCloseWhenClosed OutputStream out) {
+        this(out, Lazy.executor, SEGMENT_SIZE, SEGMENTS);
+    }
+
+    /**
+     * Constructs a new pipelined output stream.
+     *
+     * @param out the output stream to decorate.
+     * @param executor the executor for writing to {@code out}.
+     * @param segmentSize the size of a segment.
+     * @param segments the number of segments in the ring of buffers.
+     */
+    @CreatesObligation
+    public PipelinedOutputStream(
+            final @WillCloseWhenClosed OutputStream out,
+            final Executor executor,
+            final int segmentSize,
+            final int segments) {
+        super(Objects.requireNonNull(out));
+        this.executor = Objects.requireNonNull(executor);
+        if (0 >= segmentSize || 0 >= segments)
+            throw new IllegalArgumentException();
+        this.segment = new byte[segmentSize];
+        this.segmentSize = segmentSize;
+        this.segments = segments;
+        synchronized (lock) {
+            allocated = 1;
+        }
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        if (count >= segment.length)
+            submit();
+        segment[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(final byte[] b, int off, int len) throws IOException {
+        while (0 < len) {
+            if (count >= segment.length)
+                submit();
+            final int n = Math.min(len, segment.length - count);
+            System.arraycopy(b, off, segment, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Hands off the current segment and obtains the next free buffer,
+     * blocking until one is available if all buffers are in use.
+     */
+    private void submit() throws IOException {
+        final byte[] next;
+        boolean execute = false;
+        synchronized (lock) {
+            check();
+            pending.add(new Segment(segment, count));
+            if (!running)
+                execute = running = true;
+            byte[] buf = free.poll();
+            if (null == buf && allocated < segments) {
+                allocated++;
+                buf = new byte[segmentSize];
+            }
+            if (execute)
+                execute();
+            while (null == buf) {
+                await();
+                check();
+                buf = free.poll();
+            }
+            next = buf;
+        }
+        segment = next;
+        count = 0;
+    }
+
+    @GuardedBy("lock")
+    private void execute() throws IOException {
+        try {
+            executor.execute(new Drain());
+        } catch (final RuntimeException ex) {
+            running = false;
+            discard();
+            failure = ex;
+            throw new IOException(ex);
+        }
+    }
+
+    /** Returns the buffers of all pending segments to the ring. */
+    @GuardedBy("lock")
+    private void discard() {
+        for (Segment segment; null != (segment = pending.poll()); )
+            free.add(segment.buf);
+    }
+
+    @GuardedBy("lock")
+    private void await() throws IOException {
+        try {
+            lock.wait();
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    @GuardedBy("lock")
+    private void check() throws IOException {
+        final Throwable failure = this.failure;
+        if (null == failure)
+            return;
+        if (failure instanceof IOException)
+            throw new IOException(failure.getMessage(), failure);
+        throw new IOException(failure);
+    }
+
+    /**
+     * Writes the current segment to the decorated output stream and waits
+     * until all data has been written to it.
+     */
+    private void drain() throws IOException {
+        final boolean inline;
+        synchronized (lock) {
+            check();
+            inline = pending.isEmpty() && !running;
+            if (!inline) {
+                if (0 < count) {
+                    pending.add(new Segment(segment, count));
+                    if (!running) {
+                        running = true;
+                        execute();
+                    }
+                    segment = null;
+                    count = 0;
+                }
+                while (running)
+                    await();
+                if (null == segment) {
+                    final byte[] buf = free.poll();
+                    segment = null != buf ? buf : new byte[segmentSize];
+                }
+                check();
+            }
+        }
+        if (inline && 0 < count) {
+            // Nothing has been handed off yet, so write on this thread.
+            out.write(segment, 0, count);
+            count = 0;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        drain();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            drain();
+        } finally {
+            try {
+                cancel();
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Discards all pending segments and waits until the other thread has
+     * stopped writing to the decorated output stream.
+     * This method does not throw an {@link InterruptedIOException}, but
+     * preserves the interrupt status of the current thread instead.
+     */
+    private void cancel() {
+        synchronized (lock) {
+            cancelled = true;
+            discard();
+            boolean interrupted = false;
+            while (running) {
+                try {
+                    lock.wait();
+                } catch (final InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Writes the pending segments to the decorated output stream. */
+    private final class Drain implements Runnable {
+        @Override
+        public void run() {
+            while (true) {
+                final Segment segment;
+                synchronized (lock) {
+                    segment = null != failure || cancelled
+                            ? null : pending.poll();
+                    if (null == segment) {
+                        discard();
+                        running = false;
+                        lock.notifyAll();
+                        return;
+                    }
+                }
+                try {
+                    out.write(segment.buf, 0, segment.len);
+                } catch (final Throwable ex) {
+                    synchronized (lock) {
+                        failure = ex;
+                    }
+                }
+                synchronized (lock) {
+                    free.add(segment.buf);
+                    lock.notifyAll();
+                }
+            }
+        }
+    } // Drain
+
+    private static final class Segment {
+        final byte[] buf;
+        final int len;
+
+        Segment(final byte[] buf, final int len) {
+            this.buf = buf;
+            this.len = len;
+        }
+    } // Segment
+
+    private static final class Lazy {
+        static final ThreadPoolExecutor executor;
+        static {
+            final int threads = Runtime.getRuntime().availableProcessors();
+            executor = new ThreadPoolExecutor(threads, threads,
+                    60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(final Runnable r) {
+                            final Thread t = new Thread(r,
+                                    "TrueVFS Pipelined Output Stream");
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+        }
+    } // Lazy
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.comp.zip.crypto;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import javax.annotation.CheckForNull;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Provides cryptographically strong random number generators (RNGs) for
+ * shaking the salt when writing encrypted entries or files.
+ * <p>
+ * Creating a new {@link SecureRandom} for each encrypted entry is costly:
+ * Depending on the platform, each instance may need to get seeded from the
+ * entropy source of the operating system or contend for a global lock when
+ * generating bytes.
+ * This matters when writing lots of small encrypted entries concurrently.
+ * So by default, each thread uses its own instance of a pseudo random number
+ * generator (PRNG) which gets seeded only once.
+ * <p>
+ * Cryptographic parameters may implement the {@link Provider} interface in
+ * order to inject another RNG.
+ *
+ * @author Christian Schlichtherle
+ */
+@ThreadSafe
+public final class SecureRandoms {
+
+    /**
+     * The key string for the system property which defines the algorithm of
+     * the per-thread PRNG ({@value}).
+     * If the algorithm is not available, then the platform default gets used.
+     */
+    public static final String ALGORITHM_PROPERTY_KEY
+            = "net.java.truevfs.comp.zip.crypto.SecureRandoms.algorithm";
+
+    /**
+     * The default value of the system property which defines the algorithm
+     * of the per-thread PRNG.
+     */
+    public static final String ALGORITHM_DEFAULT_VALUE = "SHA1PRNG";
+
+    /** The number of bytes for seeding each per-thread PRNG. */
+    private static final int SEED_LENGTH = 32;
+
+    private static final ThreadLocal<SecureRandom>
+            randoms = new ThreadLocal<SecureRandom>() {
+                @Override
+                protected SecureRandom initialValue() {
+                    return newSecureRandom();
+                }
+            };
+
+    private SecureRandoms() { }
+
+    /**
+     * Returns the RNG for the current thread.
+     *
+     * @return The RNG for the current thread.
+     */
+    public static SecureRandom get() {
+        return randoms.get();
+    }
+
+    /**
+     * Returns the RNG provided by the given cryptographic parameters if they
+     * implement {@link Provider} or the RNG for the current thread otherwise.
+     *
+     * @param  param the cryptographic parameters.
+     * @return The RNG to use for the given cryptographic parameters.
+     */
+    public static SecureRandom of(final @CheckForNull Object param) {
+        if (param instanceof Provider) {
+            final SecureRandom random = ((Provider) param).getSecureRandom();
+            if (null != random)
+                return random;
+        }
+        return get();
+    }
+
+    private static SecureRandom newSecureRandom() {
+        final String algorithm = System.getProperty(
+                ALGORITHM_PROPERTY_KEY, ALGORITHM_DEFAULT_VALUE);
+        final SecureRandom random;
+        try {
+            random = SecureRandom.getInstance(algorithm);
+        } catch (final NoSuchAlgorithmException ex) {
+            return new SecureRandom();
+        }
+        // Seed explicitly from the non-blocking platform default RNG before
+        // first use, so that the PRNG doesn't seed itself from a possibly
+        // blocking entropy source.
+        final byte[] seed = new byte[SEED_LENGTH];
+        new SecureRandom().nextBytes(seed);
+        random.setSeed(seed);
+        return random;
+    }
+
+    /**
+     * Implementations of this interface provide a RNG.
+     * This interface may be implemented by cryptographic parameters in order
+     * to inject another RNG than the default one for the current thread.
+     */
+    public interface Provider {
+
+        /**
+         * Returns the RNG to use or {@code null} in order to use the default
+         * RNG for the current thread.
+         *
+         * @return The RNG to use.
+         */
+        @CheckForNull SecureRandom getSecureRandom();
+    }
+}
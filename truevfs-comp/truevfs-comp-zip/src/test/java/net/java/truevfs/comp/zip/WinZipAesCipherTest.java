@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.comp.zip;
+
+import net.java.truevfs.comp.zip.crypto.CtrBlockCipher;
+import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.crypto.params.ParametersWithIV;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author Christian Schlichtherle
+ */
+public class WinZipAesCipherTest {
+
+    @Test
+    public void compareModes() {
+        final Random rnd = new Random();
+        final byte[] key = new byte[32];
+        rnd.nextBytes(key);
+        final ParametersWithIV param = new ParametersWithIV(
+                new KeyParameter(key), new byte[16]);
+
+        final CtrBlockCipher ref = new ReferenceCipher();
+        final WinZipAesCipher uut = new WinZipAesCipher();
+        ref.init(true, param);
+        uut.init(true, param);
+        final byte[] input = new byte[16];
+        final byte[] refOutput = new byte[16];
+        final byte[] uutOutput = new byte[16];
+        for (int i = 0; i < 1000; i++) {
+            if (0 == i % 100) {
+                final long blockCounter = rnd.nextInt(10000);
+                ref.setBlockCounter(blockCounter);
+                uut.setBlockCounter(blockCounter);
+            }
+            rnd.nextBytes(input);
+            ref.processBlock(input, 0, refOutput, 0);
+            uut.processBlock(input, 0, uutOutput, 0);
+            assertThat(uutOutput, equalTo(refOutput));
+        }
+    }
+
+    /** The former implementation which is based on an AES engine. */
+    private static final class ReferenceCipher extends CtrBlockCipher {
+        ReferenceCipher() { super(new AESEngine()); }
+
+        @Override
+        protected void incCounter() {
+            long blockCounter = ++this.blockCounter; // pre-increment the block counter!
+            for (int i = 0; i < blockSize; i++) { // little endian order!
+                blockCounter += IV[i] & 0xff;
+                cipherIn[i] = (byte) blockCounter;
+                blockCounter >>>= 8;
+            }
+        }
+    }
+}
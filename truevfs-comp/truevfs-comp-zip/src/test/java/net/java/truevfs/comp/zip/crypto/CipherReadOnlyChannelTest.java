@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.comp.zip.crypto;
+
+import net.java.truecommons.io.ByteBufferChannel;
+import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.crypto.params.ParametersWithIV;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author Christian Schlichtherle
+ */
+public class CipherReadOnlyChannelTest {
+
+    private static final int BUFFER_SIZE = 1024;
+
+    @Test
+    public void testRandomAccess() throws IOException {
+        final Random rnd = new Random();
+        final byte[] key = new byte[16];
+        rnd.nextBytes(key);
+        final byte[] iv = new byte[16];
+        rnd.nextBytes(iv);
+        final ParametersWithIV param = new ParametersWithIV(new KeyParameter(key), iv);
+
+        // Encrypt some data with a partial block at the end using the
+        // reference implementation.
+        final byte[] plain = new byte[10 * BUFFER_SIZE + 7];
+        rnd.nextBytes(plain);
+        final SeekableBlockCipher ref = new CtrBlockCipher(new AESEngine());
+        ref.init(true, param);
+        final int blockSize = ref.getBlockSize();
+        final byte[] padded = Arrays.copyOf(plain,
+                (plain.length + blockSize - 1) / blockSize * blockSize);
+        for (int off = 0; off < padded.length; off += blockSize)
+            ref.processBlock(padded, off, padded, off);
+        final byte[] encrypted = Arrays.copyOf(padded, plain.length);
+
+        final SeekableBlockCipher uut = new JceCtrBlockCipher();
+        uut.init(false, param);
+        try (SeekableByteChannel channel = new CipherReadOnlyChannel(uut,
+                new ByteBufferChannel(ByteBuffer.wrap(encrypted).asReadOnlyBuffer()),
+                BUFFER_SIZE)) {
+            for (int i = 0; i < 1000; i++) {
+                // Seek randomly and read heap or direct buffers of random
+                // length, sometimes beyond the end of the channel.
+                final int pos = rnd.nextInt(plain.length);
+                final int length = 1 + rnd.nextInt(3 * BUFFER_SIZE);
+                final ByteBuffer dst = rnd.nextBoolean()
+                        ? ByteBuffer.allocate(length)
+                        : ByteBuffer.allocateDirect(length);
+                channel.position(pos);
+                while (dst.hasRemaining() && 0 <= channel.read(dst)) {
+                }
+                dst.flip();
+                final byte[] read = new byte[dst.remaining()];
+                dst.get(read);
+                assertThat(read, equalTo(Arrays.copyOfRange(plain, pos,
+                        Math.min(pos + length, plain.length))));
+                assertThat(channel.position(), is((long) pos + read.length));
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.comp.zip.crypto;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author Christian Schlichtherle
+ */
+public class DerivedKeyCacheTest {
+
+    private static final byte[] SALT = { 1, 2, 3, 4, 5, 6, 7, 8 };
+    private static final byte[] PASSWORD = { 'f', 'o', 'o' };
+
+    private static DerivedKeyCache.Key key(int bits) {
+        return new DerivedKeyCache.Key("PBKDF2WithHmacSHA1", SALT, 1000, bits,
+                PASSWORD);
+    }
+
+    @Test
+    public void testKey() {
+        assertThat(key(128), equalTo(key(128)));
+        assertThat(key(128).hashCode(), is(key(128).hashCode()));
+        assertThat(key(128), not(equalTo(key(256))));
+        assertThat(new DerivedKeyCache.Key("PKCS12WithSHA256", SALT, 1000, 128,
+                PASSWORD), not(equalTo(key(128))));
+        assertThat(new DerivedKeyCache.Key("PBKDF2WithHmacSHA1", SALT, 2000, 128,
+                PASSWORD), not(equalTo(key(128))));
+        assertThat(new DerivedKeyCache.Key("PBKDF2WithHmacSHA1", SALT, 1000, 128,
+                new byte[] { 'b', 'a', 'r' }), not(equalTo(key(128))));
+    }
+
+    @Test
+    public void testGetAndPut() {
+        final DerivedKeyCache cache = new DerivedKeyCache(10, 60 * 1000);
+        assertThat(cache.get(key(128)), is(nullValue()));
+        final byte[] derived = { 42, 43, 44 };
+        cache.put(key(128), derived);
+        derived[0] = 0;
+        final byte[] cached = cache.get(key(128));
+        assertThat(cached, equalTo(new byte[] { 42, 43, 44 }));
+        cached[0] = 0;
+        assertThat(cache.get(key(128)), equalTo(new byte[] { 42, 43, 44 }));
+        cache.clear();
+        assertThat(cache.get(key(128)), is(nullValue()));
+    }
+
+    @Test
+    public void testEviction() {
+        final DerivedKeyCache cache = new DerivedKeyCache(2, 60 * 1000);
+        cache.put(key(1), new byte[] { 1 });
+        cache.put(key(2), new byte[] { 2 });
+        cache.get(key(1));
+        cache.put(key(3), new byte[] { 3 });
+        assertThat(cache.get(key(1)), equalTo(new byte[] { 1 }));
+        assertThat(cache.get(key(2)), is(nullValue()));
+        assertThat(cache.get(key(3)), equalTo(new byte[] { 3 }));
+    }
+
+    @Test
+    public void testExpiry() throws InterruptedException {
+        final DerivedKeyCache cache = new DerivedKeyCache(10, 1);
+        cache.put(key(128), new byte[] { 42 });
+        Thread.sleep(10);
+        assertThat(cache.get(key(128)), is(nullValue()));
+    }
+
+    @Test
+    public void testDisabled() {
+        final DerivedKeyCache cache = new DerivedKeyCache(10, 0);
+        cache.put(key(128), new byte[] { 42 });
+        assertThat(cache.get(key(128)), is(nullValue()));
+    }
+
+    @Test
+    public void testScope() {
+        final Object scope = new Object();
+        assertThat(DerivedKeyCache.of(scope), sameInstance(DerivedKeyCache.of(scope)));
+        assertThat(DerivedKeyCache.of(scope), not(sameInstance(DerivedKeyCache.of(new Object()))));
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.comp.zip.crypto;
+
+import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.crypto.params.ParametersWithIV;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author Christian Schlichtherle
+ */
+public class JceCtrBlockCipherTest {
+
+    @Test
+    public void compareModes() {
+        final Random rnd = new Random();
+        for (final int keyBytes : new int[] { 16, 24, 32 }) {
+            final byte[] key = new byte[keyBytes];
+            rnd.nextBytes(key);
+            final byte[] iv = new byte[16];
+            rnd.nextBytes(iv);
+            iv[15] = (byte) 0xff; // provoke a carry
+            final ParametersWithIV param = new ParametersWithIV(new KeyParameter(key), iv);
+
+            final SeekableBlockCipher ref = new CtrBlockCipher(new AESEngine()); // reference implementation
+            final SeekableBlockCipher uut = new JceCtrBlockCipher(); // unit under test
+            ref.init(true, param);
+            uut.init(true, param);
+            assertThat(uut.getBlockSize(), is(ref.getBlockSize()));
+            assertModes(ref, uut, rnd);
+        }
+    }
+
+    @Test
+    public void compareBatches() {
+        final Random rnd = new Random();
+        final byte[] key = new byte[16];
+        rnd.nextBytes(key);
+        final byte[] iv = new byte[16];
+        rnd.nextBytes(iv);
+        final ParametersWithIV param = new ParametersWithIV(new KeyParameter(key), iv);
+
+        final JceCtrBlockCipher ref = new JceCtrBlockCipher();
+        final JceCtrBlockCipher uut = new JceCtrBlockCipher();
+        ref.init(true, param);
+        uut.init(true, param);
+        final int blockSize = ref.getBlockSize();
+        for (int i = 0; i < 100; i++) {
+            // Seek randomly and process runs crossing the batch boundaries.
+            final long blockCounter = rnd.nextInt(10000);
+            final int blocks = 1 + rnd.nextInt(1000);
+            final byte[] input = new byte[blocks * blockSize];
+            rnd.nextBytes(input);
+            final byte[] refOutput = new byte[input.length];
+            ref.setBlockCounter(blockCounter);
+            for (int off = 0; off < input.length; off += blockSize)
+                ref.processBlock(input, off, refOutput, off);
+            uut.setBlockCounter(blockCounter);
+            assertThat(uut.processBlocks(input, 0, blocks, input, 0),
+                    is(input.length));
+            assertThat(input, equalTo(refOutput));
+            assertThat(uut.getBlockCounter(), is(ref.getBlockCounter()));
+        }
+    }
+
+    private static void assertModes(
+            final SeekableBlockCipher ref,
+            final SeekableBlockCipher uut,
+            final Random rnd) {
+        final int blockSize = ref.getBlockSize();
+        final byte[] input = new byte[blockSize];
+        final byte[] refOutput = new byte[blockSize];
+        final byte[] uutOutput = new byte[blockSize];
+        for (int i = 0; i < 2000; i++) {
+            if (0 == i % 100) {
+                // Seek randomly, sometimes backwards or beyond the batch.
+                final long blockCounter = rnd.nextInt(10000);
+                ref.setBlockCounter(blockCounter);
+                uut.setBlockCounter(blockCounter);
+            }
+            rnd.nextBytes(input);
+            ref.processBlock(input, 0, refOutput, 0);
+            uut.processBlock(input, 0, uutOutput, 0);
+            assertThat(uutOutput, equalTo(refOutput));
+            assertThat(uut.getBlockCounter(), is(ref.getBlockCounter()));
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.comp.zip.crypto;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Christian Schlichtherle
+ */
+public class PipelinedOutputStreamTest {
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private static byte[] data(int len) {
+        final byte[] data = new byte[len];
+        new Random(len).nextBytes(data);
+        return data;
+    }
+
+    @Test
+    public void testOrder() throws IOException {
+        final byte[] data = data(100 * 1000);
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (OutputStream out = new PipelinedOutputStream(bos, executor, 1000, 3)) {
+            final Random rnd = new Random();
+            for (int off = 0; off < data.length; ) {
+                if (rnd.nextBoolean()) {
+                    out.write(data[off++]);
+                } else {
+                    final int len = Math.min(rnd.nextInt(2500), data.length - off);
+                    out.write(data, off, len);
+                    off += len;
+                }
+            }
+            out.flush();
+            assertThat(bos.toByteArray(), equalTo(data));
+            out.write(data, 0, 10);
+        }
+        assertThat(bos.size(), is(data.length + 10));
+    }
+
+    @Test
+    public void testInline() throws IOException {
+        final byte[] data = data(100);
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final Thread writer = Thread.currentThread();
+        try (OutputStream out = new PipelinedOutputStream(
+                new OutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        write(new byte[] { (byte) b }, 0, 1);
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) {
+                        assertThat(Thread.currentThread(), sameInstance(writer));
+                        bos.write(b, off, len);
+                    }
+                },
+                executor, 1000, 3)) {
+            out.write(data);
+        }
+        assertThat(bos.toByteArray(), equalTo(data));
+    }
+
+    @Test
+    public void testFailure() throws IOException {
+        final OutputStream out = new PipelinedOutputStream(
+                new OutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        throw new IOException("test");
+                    }
+                },
+                executor, 10, 2);
+        try {
+            out.write(data(1000));
+            out.flush();
+            fail();
+        } catch (final IOException expected) {
+            assertThat(expected.getMessage(), is("test"));
+        }
+        try {
+            out.close();
+            fail();
+        } catch (final IOException expected) {
+        }
+    }
+
+    @Test
+    public void testInterruptedClose() throws Exception {
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch proceed = new CountDownLatch(1);
+        final AtomicBoolean busy = new AtomicBoolean();
+        final AtomicBoolean closedWhileBusy = new AtomicBoolean();
+        final OutputStream out = new PipelinedOutputStream(
+                new OutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        write(new byte[] { (byte) b }, 0, 1);
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len)
+                    throws IOException {
+                        busy.set(true);
+                        writing.countDown();
+                        try {
+                            proceed.await();
+                        } catch (final InterruptedException ex) {
+                            throw new InterruptedIOException();
+                        } finally {
+                            busy.set(false);
+                        }
+                    }
+
+                    @Override
+                    public void close() {
+                        closedWhileBusy.set(busy.get());
+                    }
+                },
+                executor, 10, 3);
+        out.write(data(30));
+        writing.await();
+        final Thread releaser = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (final InterruptedException ex) {
+                }
+                proceed.countDown();
+            }
+        };
+        releaser.start();
+        Thread.currentThread().interrupt();
+        try {
+            out.close();
+            fail();
+        } catch (final InterruptedIOException expected) {
+        } finally {
+            assertThat(Thread.interrupted(), is(true));
+            releaser.join();
+        }
+        assertThat(closedWhileBusy.get(), is(false));
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.comp.zip.crypto;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author Christian Schlichtherle
+ */
+public class SecureRandomsTest {
+
+    @Test
+    public void testPerThread() throws InterruptedException {
+        final SecureRandom random = SecureRandoms.get();
+        assertThat(SecureRandoms.get(), sameInstance(random));
+        final AtomicReference<SecureRandom> other = new AtomicReference<>();
+        final Thread thread = new Thread() {
+            @Override
+            public void run() {
+                other.set(SecureRandoms.get());
+            }
+        };
+        thread.start();
+        thread.join();
+        assertThat(other.get(), notNullValue());
+        assertThat(other.get(), not(sameInstance(random)));
+    }
+
+    @Test
+    public void testProvider() {
+        final SecureRandom random = new SecureRandom();
+        assertThat(SecureRandoms.of(new SecureRandoms.Provider() {
+            @Override
+            public SecureRandom getSecureRandom() {
+                return random;
+            }
+        }), sameInstance(random));
+        assertThat(SecureRandoms.of(new SecureRandoms.Provider() {
+            @Override
+            public SecureRandom getSecureRandom() {
+                return null;
+            }
+        }), sameInstance(SecureRandoms.get()));
+        assertThat(SecureRandoms.of(new Object()), sameInstance(SecureRandoms.get()));
+    }
+
+    @Test
+    public void testNextBytes() {
+        final byte[] a = new byte[16], b = new byte[16];
+        SecureRandoms.get().nextBytes(a);
+        SecureRandoms.get().nextBytes(b);
+        assertThat(a, not(equalTo(b)));
+    }
+}
@@ -18,6 +18,7 @@ import net.java.truevfs.kernel.spec.*;
 import static net.java.truevfs.kernel.spec.FsNodeName.ROOT;
 import net.java.truecommons.key.spec.KeyManager;
 import net.java.truecommons.key.spec.KeyManagerMap;
+import net.java.truevfs.comp.zip.crypto.DerivedKeyCache;
 
 /**
  * This file system controller decorates another file system controller in
@@ -134,8 +135,11 @@ public abstract class AbstractKeyController extends FsDecoratingController {
         final FsModel model = getModel();
         final URI mpu = driver.mountPointUri(model);
         final URI fsu = driver.fileSystemUri(model, name.toString());
-        if (!fsu.equals(mpu) || name.isRoot())
-            keyManager().unlink(fsu);
+        if (!fsu.equals(mpu) || name.isRoot()) {
+            final KeyManager<?> manager = keyManager();
+            manager.unlink(fsu);
+            DerivedKeyCache.of(manager).clear();
+        }
     }
 
     @Override
@@ -146,7 +150,11 @@ public abstract class AbstractKeyController extends FsDecoratingController {
         } catch (FsSyncWarningException ex) {
             builder.warn(ex);
         }
-        keyManager().release(driver.mountPointUri(getModel()));
+        // Releasing the key may reset its provider, so the derived keys must
+        // not outlive it.
+        final KeyManager<?> manager = keyManager();
+        manager.release(driver.mountPointUri(getModel()));
+        DerivedKeyCache.of(manager).clear();
         builder.check();
     }
 
@@ -6,11 +6,17 @@ package net.java.truevfs.comp.zipdriver;
 
 import edu.umd.cs.findbugs.annotations.CreatesObligation;
 import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
 import java.net.URI;
 import java.nio.charset.Charset;
+import java.util.Map;
 import java.util.Objects;
+import java.util.WeakHashMap;
 import java.util.zip.Deflater;
 import javax.annotation.CheckForNull;
+import javax.annotation.WillCloseWhenClosed;
 import javax.annotation.WillNotClose;
 import javax.annotation.concurrent.Immutable;
 import net.java.truecommons.cio.*;
@@ -51,6 +57,16 @@ implements ZipOutputStreamParameters, ZipFileParameters<E> {
     private static final Logger
             logger = new LocalizedLogger(AbstractZipDriver.class);
 
+    /**
+     * Maps entries to the input services which have provided them.
+     * The file system clones entries when looking them up, so the clones get
+     * mapped, too.
+     * Both the entries and the services are weakly referenced, so this map
+     * does not pin any of them in memory.
+     */
+    private static final Map<AbstractZipDriverEntry, Reference<ZipInputService<?>>>
+            inputs = new WeakHashMap<>();
+
     /**
      * {@inheritDoc}
      * <p>
@@ -180,12 +196,119 @@ implements ZipOutputStreamParameters, ZipFileParameters<E> {
         return local.isEncrypted();
     }
 
+    /**
+     * Whether or not the entries which shall get
+     * {@linkplain #check checked/authenticated} shall get checked in the
+     * background right after mounting the ZIP file.
+     * The results get cached per entry, so reading an entry which has been
+     * successfully checked does not require a preliminary pass over its data
+     * anymore.
+     * If checking an entry is still in progress or has failed, then it gets
+     * checked again as usual when reading it.
+     * <p>
+     * Note that this may prompt the user for the password of encrypted entries
+     * right after mounting the ZIP file.
+     * <p>
+     * The implementation in the class {@link ZipDriver} returns
+     * {@code false}.
+     *
+     * @return Whether or not the entries shall get checked in the background
+     *         right after mounting the ZIP file.
+     */
+    protected boolean getBackgroundCheck() {
+        return false;
+    }
+
+    /**
+     * Whether or not the Message Authentication Code (MAC) of an encrypted
+     * entry shall get computed while the client reads the entry rather than
+     * in a preliminary pass over its data.
+     * If this method returns {@code true} and the MAC does not match, then a
+     * {@link net.java.truevfs.comp.zip.ZipAuthenticationException} gets
+     * thrown at the end of the entry stream or when closing it.
+     * <p>
+     * The implementation in the class {@link ZipDriver} returns
+     * {@code false}.
+     *
+     * @return Whether or not the MAC of an encrypted entry shall get computed
+     *         while the client reads the entry.
+     */
+    protected boolean getStreamingCheck() {
+        return false;
+    }
+
+    /**
+     * Decorates the given input stream for reading the content of the given
+     * entry from the given input service.
+     * This gets called for each entry which gets read, even if its content
+     * gets copied raw.
+     * <p>
+     * The implementation in the class {@link ZipDriver} returns {@code in}.
+     *
+     * @param  in the input stream for reading the content of the entry.
+     * @param  local the entry to read.
+     * @param  input the origin of the entry.
+     * @return The decorated input stream.
+     * @throws IOException on any I/O error.
+     */
+    protected InputStream decorate(
+            @WillCloseWhenClosed InputStream in,
+            E local,
+            @WillNotClose ZipInputService<E> input)
+    throws IOException {
+        return in;
+    }
+
+    static void register(
+            final Iterable<? extends AbstractZipDriverEntry> entries,
+            final ZipInputService<?> input) {
+        final Reference<ZipInputService<?>> ref = new WeakReference<ZipInputService<?>>(input);
+        synchronized (inputs) {
+            for (final AbstractZipDriverEntry entry : entries)
+                inputs.put(entry, ref);
+        }
+    }
+
+    private static void register(
+            final AbstractZipDriverEntry clone,
+            final AbstractZipDriverEntry template) {
+        synchronized (inputs) {
+            final Reference<ZipInputService<?>> ref = inputs.get(template);
+            if (null != ref) inputs.put(clone, ref);
+        }
+    }
+
+    private static @CheckForNull ZipInputService<?> input(
+            final AbstractZipDriverEntry entry) {
+        final Reference<ZipInputService<?>> ref;
+        synchronized (inputs) {
+            ref = inputs.get(entry);
+        }
+        return null == ref ? null : ref.get();
+    }
+
     final boolean rdc(@WillNotClose ZipInputService<E> input, E local, AbstractZipDriverEntry peer) {
         return rdc(local, peer);
     }
 
+    /**
+     * Returns {@code true} if and only if
+     * {@link #rdc(AbstractZipDriverEntry, AbstractZipDriverEntry)} does or if
+     * both target entries are encrypted and the input service which has
+     * provided the peer target entry can copy it byte-for-byte to the given
+     * output service.
+     * The latter requires the peer target entry to be encrypted according to
+     * the WinZip AES specification and the local target entry to get
+     * encrypted with the same key strength and password, which gets verified
+     * by authenticating the peer target entry with the password for writing
+     * the local target entry.
+     * The input service remembers this decision, so that the input side of
+     * the copy operation reads the entry data accordingly.
+     */
     final boolean rdc(@WillNotClose ZipOutputService<E> output, E local, AbstractZipDriverEntry peer) {
-        return rdc(peer, local);
+        if (rdc(peer, local)) return true;
+        final ZipInputService<?> input = input(peer);
+        return null != input && input.rawCopy(peer, local, output);
     }
 
     /**
@@ -199,9 +322,17 @@ implements ZipOutputStreamParameters, ZipFileParameters<E> {
      * entry gets mutated to compare equal with the input target entry!
      * <p>
      * The implementation in the class {@link ZipDriver} returns
-     * {@code !local.isEncrypted() && !remote.isEncrypted()} in order to cover
+     * {@code !input.isEncrypted() && !output.isEncrypted()} in order to cover
      * the typical case that the cipher keys of both targets are not the same.
-     * Note that there is no safe way to explicitly test for this.
+     * Note that there is no safe way to explicitly test for this with the
+     * target entries alone.
+     * However, if this method returns {@code false} and both target entries
+     * are encrypted, then the driver still uses RDC if the input target entry
+     * is encrypted according to the WinZip AES specification and the input
+     * service which has provided it verifies that the output target entry
+     * would get encrypted with the same key strength and password.
+     * This saves decrypting, inflating, deflating and encrypting the content
+     * when copying entries between archives which share the same key.
      *
      * @param  input the input target entry for copying the contents.
      * @param  output the output target entry for copying the contents.
@@ -304,6 +435,15 @@ implements ZipOutputStreamParameters, ZipFileParameters<E> {
                 zis.getPostambleLength());
             logger.trace("junkInTheTrunk.trace", ex);
         }
+        if (getBackgroundCheck()) {
+            try {
+                zis.checkInBackground();
+            } catch (final IOException ex) {
+                logger.warn("backgroundCheck.warn",
+                        mountPointUri(model), ex.toString());
+                logger.trace("backgroundCheck.trace", ex);
+            }
+        }
         return zis;
     }
 
@@ -364,6 +504,8 @@ implements ZipOutputStreamParameters, ZipFileParameters<E> {
         final E entry;
         if (template instanceof ZipEntry) {
             entry = newEntry(name, (ZipEntry) template);
+            if (template instanceof AbstractZipDriverEntry)
+                register(entry, (AbstractZipDriverEntry) template);
         } else {
             entry = newEntry(name);
             if (null != template) {
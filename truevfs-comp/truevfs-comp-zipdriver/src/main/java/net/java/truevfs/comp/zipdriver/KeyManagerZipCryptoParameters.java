@@ -13,6 +13,7 @@ import net.java.truevfs.comp.zip.ZipCryptoParameters;
 import net.java.truevfs.comp.zip.ZipKeyException;
 import net.java.truevfs.comp.zip.ZipParameters;
 import net.java.truevfs.comp.zip.ZipParametersProvider;
+import net.java.truevfs.comp.zip.crypto.DerivedKeyCache;
 import net.java.truevfs.kernel.spec.FsModel;
 import net.java.truecommons.key.spec.KeyManager;
 import net.java.truecommons.key.spec.KeyManagerMap;
@@ -125,11 +126,18 @@ implements ZipParametersProvider, ZipCryptoParameters {
     /**
      * Adapts a {@code KeyProvider} for {@link  AesPbeParameters} obtained
      * from the {@link #get} to {@code WinZipAesParameters}.
+     * The derived keys are cached per key manager.
      */
-    private class WinZipAes implements WinZipAesParameters {
+    private class WinZipAes
+    implements WinZipAesParameters, DerivedKeyCache.Provider {
         final KeyManager<AesPbeParameters>
                 manager = keyManager(AesPbeParameters.class);
 
+        @Override
+        public DerivedKeyCache getDerivedKeyCache() {
+            return DerivedKeyCache.of(manager);
+        }
+
         @Override
         public byte[] getWritePassword(final String name)
         throws ZipKeyException {
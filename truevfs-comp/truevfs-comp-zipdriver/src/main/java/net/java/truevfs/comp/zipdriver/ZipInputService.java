@@ -8,13 +8,20 @@ import edu.umd.cs.findbugs.annotations.CreatesObligation;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import javax.annotation.CheckForNull;
 import javax.annotation.concurrent.NotThreadSafe;
 import net.java.truevfs.comp.zip.AbstractZipFile;
 import net.java.truevfs.comp.zip.ZipCryptoParameters;
 import net.java.truevfs.kernel.spec.FsInputSocketSource;
 import net.java.truevfs.kernel.spec.FsModel;
 import net.java.truecommons.cio.*;
+import net.java.truecommons.io.DecoratingInputStream;
 
 /**
  * An input service for reading ZIP files.
@@ -29,8 +36,12 @@ extends AbstractZipFile<E> implements InputService<E> {
 
     private final AbstractZipDriver<E> driver;
     private final FsModel model;
+    private final FsInputSocketSource source;
     private ZipCryptoParameters param;
 
+    /** The stream which waits for the output side to decide on RDC, if any. */
+    private @CheckForNull RawCopyInputStream pending;
+
     @CreatesObligation
     public ZipInputService(
             final FsModel model,
@@ -39,6 +50,7 @@ extends AbstractZipFile<E> implements InputService<E> {
     throws IOException {
         super(source, driver);
         this.driver = driver;
+        this.source = source;
         if (null == (this.model = model)) {
             final NullPointerException ex = new NullPointerException();
             try {
@@ -48,6 +60,7 @@ extends AbstractZipFile<E> implements InputService<E> {
             }
             throw ex;
         }
+        AbstractZipDriver.register(this, this);
     }
 
     /**
@@ -59,6 +72,15 @@ extends AbstractZipFile<E> implements InputService<E> {
         return model;
     }
 
+    /**
+     * Returns the source provided to the constructor.
+     *
+     * @return The source provided to the constructor.
+     */
+    public FsInputSocketSource getSource() {
+        return source;
+    }
+
     @Override
     protected ZipCryptoParameters getCryptoParameters() {
         ZipCryptoParameters param = this.param;
@@ -67,6 +89,28 @@ extends AbstractZipFile<E> implements InputService<E> {
         return param;
     }
 
+    @Override
+    protected boolean getStreamingCheck() {
+        return driver.getStreamingCheck();
+    }
+
+    /**
+     * Starts checking the entries for which
+     * {@link AbstractZipDriver#check} returns {@code true} in the background
+     * using a shared pool of daemon threads.
+     *
+     * @throws IOException if obtaining the parameters for decryption fails.
+     *         In this case, the remaining entries get checked as usual when
+     *         reading them.
+     */
+    void checkInBackground() throws IOException {
+        final List<E> entries = new ArrayList<>();
+        for (final E entry : this)
+            if (driver.check(entry, this))
+                entries.add(entry);
+        checkInBackground(entries, Lazy.executor);
+    }
+
     @Override
     public InputSocket<E> input(final String name) {
         Objects.requireNonNull(name);
@@ -90,14 +134,180 @@ extends AbstractZipFile<E> implements InputService<E> {
                         ? (AbstractZipDriverEntry) peer
                         : null;
                 final AbstractZipDriver<E> driver = ZipInputService.this.driver;
-                return getInputStream(
-                        local.getName(),
-                        driver.check(local, ZipInputService.this),
-                        null == zpeer
-                        || 0 == zpeer.getSize()
-                        || !driver.rdc(ZipInputService.this, local, zpeer));
+                final String name = local.getName();
+                final boolean check = driver.check(local, ZipInputService.this);
+                final InputStream in;
+                if (null == zpeer || 0 == zpeer.getSize())
+                    in = getInputStream(name, check, true);
+                else if (driver.rdc(ZipInputService.this, local, zpeer))
+                    in = getInputStream(name, check, false);
+                else if (local.isEncrypted() && zpeer.isEncrypted())
+                    in = new RawCopyInputStream(name, check);
+                else
+                    in = getInputStream(name, check, true);
+                try {
+                    return driver.decorate(in, local, ZipInputService.this);
+                } catch (final Throwable ex) {
+                    try {
+                        in.close();
+                    } catch (final Throwable ex2) {
+                        ex.addSuppressed(ex2);
+                    }
+                    throw ex;
+                }
             }
         } // Input
         return new Input();
     }
+
+    /**
+     * Returns {@code true} if and only if the given input entry, which has
+     * been provided by this input service, and the given output entry are
+     * encrypted and the input entry can get copied byte-for-byte to the given
+     * output service.
+     * This gets called on the output side of a copy operation.
+     * It requires the current thread to have created a stream for reading
+     * the input entry before, which is waiting for this decision.
+     * Otherwise, the data to copy may not be read from this input service at
+     * all, e.g. if it has been buffered.
+     *
+     * @see AbstractZipFile#isRawCopyable
+     */
+    boolean rawCopy(
+            final AbstractZipDriverEntry input,
+            final AbstractZipDriverEntry output,
+            final ZipOutputService<?> service) {
+        final String name = input.getName();
+        final RawCopyInputStream in;
+        synchronized (this) {
+            in = pending;
+            if (null == in
+                    || in.thread != Thread.currentThread()
+                    || !in.name.equals(name))
+                return false;
+            pending = null;
+        }
+        try {
+            return in.rawCopy = input.isEncrypted() && output.isEncrypted()
+                    && isRawCopyable(name, service.getCryptoParameters());
+        } catch (final IOException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads the raw or the processed data of an encrypted entry, depending on
+     * the decision of the output side of the copy operation.
+     * This decision is taken when creating the output stream, which is after
+     * this stream has been created, so both kinds of data get opened in the
+     * constructor and the stream for the data which is not needed gets closed
+     * on the first access.
+     */
+    private final class RawCopyInputStream extends DecoratingInputStream {
+        final Thread thread = Thread.currentThread();
+        final String name;
+        volatile boolean rawCopy;
+        private @CheckForNull InputStream raw, processed;
+
+        @CreatesObligation
+        RawCopyInputStream(final String name, final boolean check)
+        throws IOException {
+            this.name = name;
+            this.raw = getInputStream(name, check, false);
+            try {
+                this.processed = getInputStream(name, check, true);
+            } catch (final Throwable ex) {
+                try {
+                    raw.close();
+                } catch (final Throwable ex2) {
+                    ex.addSuppressed(ex2);
+                }
+                throw ex;
+            }
+            synchronized (ZipInputService.this) {
+                pending = this;
+            }
+        }
+
+        private InputStream in() throws IOException {
+            InputStream in = this.in;
+            if (null == in) {
+                if (null == raw) throw new IOException("Input stream has been closed!");
+                resolve();
+                final InputStream unused;
+                if (rawCopy) {
+                    in = raw;
+                    unused = processed;
+                } else {
+                    in = processed;
+                    unused = raw;
+                }
+                this.in = in;
+                raw = processed = null;
+                unused.close();
+            }
+            return in;
+        }
+
+        private void resolve() {
+            synchronized (ZipInputService.this) {
+                if (this == pending) pending = null;
+            }
+        }
+
+        @Override
+        public int read() throws IOException { return in().read(); }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return in().read(b, off, len);
+        }
+
+        @Override
+        public long skip(long n) throws IOException { return in().skip(n); }
+
+        @Override
+        public int available() throws IOException { return in().available(); }
+
+        @Override
+        public void mark(int readlimit) { }
+
+        @Override
+        public void reset() throws IOException {
+            throw new IOException("mark/reset not supported!");
+        }
+
+        @Override
+        public boolean markSupported() { return false; }
+
+        @Override
+        public void close() throws IOException {
+            final InputStream in = this.in;
+            if (null != in) {
+                in.close();
+            } else if (null != raw) {
+                resolve();
+                final InputStream raw = this.raw, processed = this.processed;
+                this.raw = this.processed = null;
+                try {
+                    raw.close();
+                } finally {
+                    processed.close();
+                }
+            }
+        }
+    } // RawCopyInputStream
+
+    private static final class Lazy {
+        static final ExecutorService executor = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable r) {
+                        final Thread t = new Thread(r, "TrueVFS ZIP Check");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+    } // Lazy
 }
@@ -57,6 +57,20 @@ public class ReadOnlySfxDriver extends ZipDriver {
         return true;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The implementation in the class {@link ReadOnlySfxDriver}
+     * returns {@code true} because this driver never updates an SFX file,
+     * so the file system manager may mount it as a frozen snapshot.
+     *
+     * @return {@code true}
+     */
+    @Override
+    public final boolean isImmutable() {
+        return true;
+    }
+
     @Override
     public final OutputService<ZipDriverEntry> newOutput(
             FsModel model,
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.driver.zip.raes;
+
+import edu.umd.cs.findbugs.annotations.CreatesObligation;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import javax.annotation.WillCloseWhenClosed;
+import javax.annotation.concurrent.NotThreadSafe;
+import net.java.truecommons.io.DecoratingInputStream;
+import net.java.truevfs.driver.zip.raes.crypto.RaesAuthenticationException;
+
+/**
+ * Waits for the authentication of the RAES file in the background when
+ * closing the decorated input stream for an entry.
+ * If the authentication fails or has been cancelled because the RAES file
+ * has been closed before, then a {@link RaesAuthenticationException} gets
+ * thrown.
+ *
+ * @see    ZipRaesDriver#getBackgroundAuthentication()
+ * @author Christian Schlichtherle
+ */
+@NotThreadSafe
+final class AwaitingInputStream extends DecoratingInputStream {
+
+    private final Future<?> authentication;
+    private boolean closed;
+
+    @CreatesObligation
+    AwaitingInputStream(
+            final @WillCloseWhenClosed InputStream in,
+            final Future<?> authentication) {
+        super(in);
+        this.authentication = authentication;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        in.close();
+        try {
+            authentication.get();
+        } catch (final CancellationException ex) {
+            // The RAES file has been closed, so the data which has been read
+            // may never get authenticated.
+            throw (IOException) new RaesAuthenticationException(
+                    "The RAES file has been closed before its authentication has been completed!")
+                    .initCause(ex);
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw (IOException) new InterruptedIOException().initCause(ex);
+        } catch (final ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            // Don't rethrow the cause because it's shared by all streams.
+            if (cause instanceof RaesAuthenticationException)
+                throw (IOException) new RaesAuthenticationException()
+                        .initCause(cause);
+            throw new IOException(cause);
+        }
+    }
+}
@@ -7,10 +7,12 @@ package net.java.truevfs.driver.zip.raes;
 import java.net.URI;
 import java.util.Objects;
 import javax.annotation.concurrent.ThreadSafe;
+import net.java.truevfs.comp.zip.crypto.DerivedKeyCache;
 import net.java.truevfs.driver.zip.raes.crypto.RaesKeyException;
 import net.java.truevfs.driver.zip.raes.crypto.RaesParameters;
 import net.java.truevfs.driver.zip.raes.crypto.RaesParametersProvider;
 import net.java.truevfs.driver.zip.raes.crypto.Type0RaesParameters;
+import net.java.truevfs.driver.zip.raes.crypto.Type1RaesParameters;
 import net.java.truecommons.key.spec.KeyManager;
 import net.java.truecommons.key.spec.KeyManagerMap;
 import net.java.truecommons.key.spec.KeyProvider;
@@ -22,7 +24,8 @@ import net.java.truecommons.key.spec.common.AesPbeParameters;
  * An adapter which provides {@link RaesParameters} by using a
  * {@link KeyManager} for {@link AesPbeParameters}.
  * <p>
- * The current implementation supports only {@link Type0RaesParameters}.
+ * The current implementation supports only {@link Type0RaesParameters} and
+ * {@link Type1RaesParameters}.
  *
  * @author Christian Schlichtherle
  */
@@ -69,23 +72,36 @@ implements RaesParametersProvider {
      * {@link KeyManager} for {@link AesPbeParameters} will getKeyManager used which
      * has been provided to the constructor.
      * <p>
+     * Otherwise, if {@code type} is assignable from
+     * {@link Type1RaesParameters}, then the same applies, but the returned
+     * parameters request a type 1 RAES file when writing.
+     * <p>
      * Otherwise, {@code null} gets returned.
      */
     @Override
     public <P extends RaesParameters> P get(Class<P> type) {
         if (type.isAssignableFrom(Type0RaesParameters.class))
             return type.cast(new Type0());
+        if (type.isAssignableFrom(Type1RaesParameters.class))
+            return type.cast(new Type1());
         return null;
     }
 
     /**
      * Adapts a {@code KeyProvider} for {@link  AesPbeParameters} obtained
      * from the {@link #manager} to {@code Type0RaesParameters}.
+     * The derived keys are cached per key manager.
      */
-    private class Type0 implements Type0RaesParameters {
+    private class Type0
+    implements Type0RaesParameters, DerivedKeyCache.Provider {
 
         private volatile KeyProvider<AesPbeParameters> provider;
 
+        @Override
+        public DerivedKeyCache getDerivedKeyCache() {
+            return DerivedKeyCache.of(manager);
+        }
+
         private KeyProvider<AesPbeParameters> provider() {
             final KeyProvider<AesPbeParameters> p = provider;
             return null != p ? p : (provider = manager.provider(raes));
@@ -135,4 +151,11 @@ implements RaesParametersProvider {
             p.setKey(k);
         }
     } // Type0
+
+    /**
+     * Adapts a {@code KeyProvider} for {@link  AesPbeParameters} obtained
+     * from the {@link #manager} to {@code Type1RaesParameters}.
+     */
+    private final class Type1 extends Type0 implements Type1RaesParameters {
+    } // Type1
 }
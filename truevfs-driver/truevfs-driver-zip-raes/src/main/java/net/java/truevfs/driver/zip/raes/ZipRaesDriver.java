@@ -5,8 +5,16 @@
 package net.java.truevfs.driver.zip.raes;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.channels.SeekableByteChannel;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
 import javax.annotation.CheckForNull;
 import javax.annotation.WillNotClose;
 import javax.annotation.concurrent.Immutable;
@@ -14,14 +22,19 @@ import net.java.truecommons.cio.Entry;
 import net.java.truecommons.cio.Entry.Type;
 import net.java.truecommons.cio.InputService;
 import net.java.truecommons.cio.OutputService;
+import net.java.truecommons.io.OneTimeSource;
+import net.java.truecommons.io.ReadOnlyChannel;
 import net.java.truecommons.shed.BitField;
 import net.java.truevfs.comp.zipdriver.JarDriver;
 import net.java.truevfs.comp.zipdriver.JarDriverEntry;
 import net.java.truevfs.comp.zipdriver.ZipInputService;
 import net.java.truevfs.comp.zipdriver.ZipOutputService;
+import net.java.truevfs.driver.zip.raes.crypto.RaesAuthenticationException;
 import net.java.truevfs.driver.zip.raes.crypto.RaesOutputStream;
 import net.java.truevfs.driver.zip.raes.crypto.RaesParameters;
+import net.java.truevfs.driver.zip.raes.crypto.RaesParametersProvider;
 import net.java.truevfs.driver.zip.raes.crypto.RaesReadOnlyChannel;
+import net.java.truevfs.driver.zip.raes.crypto.Type1RaesParameters;
 import net.java.truevfs.kernel.spec.FsAccessOption;
 import static net.java.truevfs.kernel.spec.FsAccessOption.*;
 import net.java.truevfs.kernel.spec.FsController;
@@ -90,13 +103,112 @@ public abstract class ZipRaesDriver extends JarDriver {
      */
     protected abstract long getAuthenticationTrigger();
 
+    /**
+     * Returns the value of the property {@code chunkAuthentication}.
+     * <p>
+     * If this is {@code true}, then output RAES files get written as type 1
+     * RAES files, which have a Message Authentication Code (MAC) for each
+     * chunk of the cipher text.
+     * When reading such a file, each chunk gets authenticated whenever it gets
+     * read, so the authentication trigger does not apply.
+     * <p>
+     * Otherwise, output RAES files get written as type 0 RAES files, which
+     * have a MAC for the entire cipher text only.
+     * <p>
+     * Note that input RAES files of any type are supported regardless of the
+     * value of this property.
+     * <p>
+     * The implementation in the class {@link ZipRaesDriver} returns
+     * {@code false} for compatibility with previous versions.
+     *
+     * @return The value of the property {@code chunkAuthentication}.
+     */
+    protected boolean getChunkAuthentication() { return false; }
+
+    /**
+     * Returns the value of the property {@code backgroundAuthentication}.
+     * <p>
+     * If this is {@code true} and the entire cipher text of an input RAES
+     * file needs to get authenticated according to the
+     * {@linkplain #getAuthenticationTrigger() authentication trigger}, then
+     * the central directory of the ZIP file gets parsed immediately while a
+     * background thread computes and verifies the Hash-based Message
+     * Authentication Code (HMAC).
+     * Each input stream for an entry waits for the result when it gets
+     * closed and throws a {@link RaesAuthenticationException} if the RAES
+     * file has been tampered with or has been closed before the
+     * authentication has been completed.
+     * Until the authentication has succeeded, the CRC-32 value of each entry
+     * which gets read gets checked, too.
+     * So the latency of mounting a RAES file does not depend on its size
+     * anymore, but the client may read unauthenticated data until it closes
+     * the input stream.
+     * <p>
+     * Otherwise, the HMAC gets verified before the central directory gets
+     * parsed.
+     * <p>
+     * The implementation in the class {@link ZipRaesDriver} returns
+     * {@code false}.
+     *
+     * @return The value of the property {@code backgroundAuthentication}.
+     */
+    protected boolean getBackgroundAuthentication() { return false; }
+
     @Override
     public final boolean check(JarDriverEntry local, ZipInputService<JarDriverEntry> input) {
         // Optimization: If the cipher text alias the encrypted ZIP file is
         // smaller than the authentication trigger, then its entire cipher text
         // has already been authenticated by {@link ZipRaesDriver#zipInput}.
         // Hence, checking the CRC-32 value of the entry is redundant.
-        return input.length() > getAuthenticationTrigger();
+        // However, if the cipher text gets authenticated in the background,
+        // then this is only true once the authentication has succeeded
+        // because it may get cancelled or fail.
+        return input.length() > getAuthenticationTrigger()
+                || !authenticated(input);
+    }
+
+    private static boolean authenticated(final ZipInputService<?> input) {
+        final FsInputSocketSource source = input.getSource();
+        if (!(source instanceof RaesSocketSource)) return true;
+        final Future<?> authentication
+                = ((RaesSocketSource) source).authentication;
+        if (null == authentication) return true;
+        if (!authentication.isDone() || authentication.isCancelled())
+            return false;
+        try {
+            authentication.get();
+            return true;
+        } catch (final ExecutionException ex) {
+            return false;
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * If the input RAES file gets authenticated in the background, then the
+     * implementation in the class {@link ZipRaesDriver} decorates the given
+     * input stream so that it waits for the result when it gets closed.
+     * Otherwise, it returns {@code in}.
+     *
+     * @see #getBackgroundAuthentication()
+     */
+    @Override
+    protected InputStream decorate(
+            final InputStream in,
+            final JarDriverEntry local,
+            final ZipInputService<JarDriverEntry> input) {
+        final FsInputSocketSource source = input.getSource();
+        if (source instanceof RaesSocketSource) {
+            final Future<?> authentication
+                    = ((RaesSocketSource) source).authentication;
+            if (null != authentication)
+                return new AwaitingInputStream(in, authentication);
+        }
+        return in;
     }
 
     /**
@@ -116,29 +228,106 @@ public abstract class ZipRaesDriver extends JarDriver {
             final FsModel model,
             final FsInputSocketSource source)
     throws IOException {
-        final class Source extends FsInputSocketSource {
-            Source() { super(source); }
+        return new ZipInputService<>(model,
+                new RaesSocketSource(model, source), this);
+    }
 
-            @Override
-            public SeekableByteChannel channel() throws IOException {
-                final RaesReadOnlyChannel channel = RaesReadOnlyChannel
-                        .create(raesParameters(model), source);
-                try {
-                    if (channel.size() <= getAuthenticationTrigger())
+    @SuppressWarnings("PackageVisibleInnerClass")
+    final class RaesSocketSource extends FsInputSocketSource {
+        private final FsModel model;
+        private final FsInputSocketSource source;
+
+        /** The authentication in the background, if started. */
+        volatile @CheckForNull Future<?> authentication;
+
+        RaesSocketSource(final FsModel model, final FsInputSocketSource source) {
+            super(source);
+            this.model = model;
+            this.source = source;
+        }
+
+        @Override
+        public SeekableByteChannel channel() throws IOException {
+            final RaesReadOnlyChannel channel = RaesReadOnlyChannel
+                    .create(raesParameters(model), source);
+            try {
+                if (!channel.isChunkAuthenticated()
+                        && channel.size() <= getAuthenticationTrigger()) {
+                    if (!getBackgroundAuthentication())
                         channel.authenticate();
-                    return channel;
-                } catch (final Throwable ex) {
-                    try {
-                        channel.close();
-                    } catch (final IOException ex2) {
-                        ex.addSuppressed(ex2);
-                    }
-                    throw ex;
+                    else if (null == authentication)
+                        return authenticateInBackground(channel);
+                }
+                return channel;
+            } catch (final Throwable ex) {
+                try {
+                    channel.close();
+                } catch (final IOException ex2) {
+                    ex.addSuppressed(ex2);
                 }
+                throw ex;
             }
         }
-        return new ZipInputService<>(model, new Source(), this);
-    }
+
+        /**
+         * Starts authenticating the RAES file in the background and returns
+         * a channel which cancels the authentication when it gets closed.
+         * The channel for the authentication gets opened in the current
+         * thread so that the background thread does not need to access the
+         * parent file system.
+         */
+        private SeekableByteChannel authenticateInBackground(
+                final RaesReadOnlyChannel channel)
+        throws IOException {
+            final SeekableByteChannel parent = source.channel();
+            final FutureTask<Void> task = new FutureTask<Void>(
+                    new Callable<Void>() {
+                        @Override
+                        public Void call() throws IOException {
+                            try (RaesReadOnlyChannel authenticating
+                                    = RaesReadOnlyChannel.create(
+                                        raesParameters(model),
+                                        new OneTimeSource(parent))) {
+                                authenticating.authenticate();
+                            }
+                            return null;
+                        }
+                    }) {
+                @Override
+                protected void done() {
+                    if (isCancelled()) {
+                        try {
+                            parent.close();
+                        } catch (final IOException ex) {
+                            // The authentication has been abandoned anyway.
+                        }
+                    }
+                }
+            };
+            authentication = task;
+            Lazy.executor.execute(task);
+            return new ReadOnlyChannel(channel) {
+                @Override
+                public void close() throws IOException {
+                    task.cancel(true);
+                    super.close();
+                }
+            };
+        }
+    } // RaesSocketSource
+
+    private static final class Lazy {
+        static final ExecutorService executor = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable r) {
+                        final Thread t = new Thread(r, "TrueVFS ZIP.RAES Authentication");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+    } // Lazy
 
     @Override
     protected OutputService<JarDriverEntry> newOutput(
@@ -164,7 +353,15 @@ public abstract class ZipRaesDriver extends JarDriver {
 
         @Override
         public OutputStream stream() throws IOException {
-            return RaesOutputStream.create(raesParameters(model), sink);
+            RaesParameters param = raesParameters(model);
+            if (getChunkAuthentication()
+                    && param instanceof RaesParametersProvider) {
+                final Type1RaesParameters p = ((RaesParametersProvider) param)
+                        .get(Type1RaesParameters.class);
+                if (null != p)
+                    param = p;
+            }
+            return RaesOutputStream.create(param, sink);
         }
 
         @Override
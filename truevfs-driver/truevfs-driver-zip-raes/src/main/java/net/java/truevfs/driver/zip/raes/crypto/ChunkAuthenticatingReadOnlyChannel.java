@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.driver.zip.raes.crypto;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import javax.annotation.WillCloseWhenClosed;
+import javax.annotation.concurrent.NotThreadSafe;
+import net.java.truecommons.io.ReadOnlyChannel;
+import org.bouncycastle.crypto.Mac;
+import static java.lang.Math.min;
+import static net.java.truevfs.driver.zip.raes.crypto.Constants.TYPE_1_CHUNK_MAC_LEN;
+
+/**
+ * Provides buffered random read-only access to the cipher text of a type 1
+ * RAES file.
+ * Whenever a chunk of cipher text gets loaded into the buffer, it gets
+ * authenticated using its MAC from the given table.
+ * Because the chunk does not get reloaded before its data is returned, the
+ * data read from this channel is always authenticated, even if the
+ * underlying file gets modified concurrently.
+ * <p>
+ * Note that this channel maintains its own virtual file pointer.
+ *
+ * @author Christian Schlichtherle
+ */
+@NotThreadSafe
+final class ChunkAuthenticatingReadOnlyChannel extends ReadOnlyChannel {
+
+    private static final long INVALID = Long.MIN_VALUE;
+
+    private final Mac mac;
+    private final byte[] table;
+    private final byte[] code = new byte[TYPE_1_CHUNK_MAC_LEN];
+    private final long size;
+
+    /** The virtual position of this channel. */
+    private long pos;
+
+    /** The position in the decorated channel where the chunk starts. */
+    private long chunkStart = INVALID;
+
+    /** The buffer for the authenticated chunk. */
+    private final byte[] chunk;
+
+    /** The length of the chunk in the buffer. */
+    private int chunkLength;
+
+    /**
+     * Constructs a new chunk authenticating read-only channel.
+     *
+     * @param mac the initialized MAC for the chunks.
+     * @param table the MACs of all chunks.
+     * @param chunkSize the size of all chunks except the last.
+     * @param channel the seekable byte channel with the cipher text.
+     */
+    ChunkAuthenticatingReadOnlyChannel(
+            final Mac mac,
+            final byte[] table,
+            final int chunkSize,
+            final @WillCloseWhenClosed SeekableByteChannel channel)
+    throws IOException {
+        super(channel);
+        this.mac = mac;
+        this.table = table;
+        this.chunk = new byte[chunkSize];
+        this.size = channel.size();
+        assert (size + chunkSize - 1) / chunkSize * TYPE_1_CHUNK_MAC_LEN
+                == table.length;
+    }
+
+    /**
+     * Authenticates all chunks of the cipher text.
+     *
+     * @throws RaesAuthenticationException If the computed MAC of any chunk
+     *         does not match its MAC in the table.
+     * @throws IOException on any I/O error.
+     */
+    void authenticate() throws IOException {
+        final long position = position();
+        try {
+            for (pos = 0; pos < size; pos += chunk.length)
+                positionChunk();
+        } finally {
+            position(position);
+        }
+    }
+
+    @Override
+    public int read(final ByteBuffer dst) throws IOException {
+        // Check no-op first for compatibility with FileChannel.
+        final int remaining = dst.remaining();
+        if (remaining <= 0)
+            return 0;
+
+        // Check is open and not at EOF.
+        if (position() >= size)
+            return -1;
+
+        // Read of chunk data.
+        int total = 0;
+        while (total < remaining && pos < size) {
+            positionChunk();
+            final int chunkPos = (int) (pos - chunkStart);
+            final int chunkLimit = min(remaining - total, chunkLength - chunkPos);
+            assert chunkLimit > 0;
+            dst.put(chunk, chunkPos, chunkLimit);
+            total += chunkLimit;
+            pos += chunkLimit;
+        }
+        return total;
+    }
+
+    @Override
+    public long position() throws IOException {
+        checkOpen();
+        return pos;
+    }
+
+    @Override
+    public SeekableByteChannel position(final long pos) throws IOException {
+        if (0 > pos)
+            throw new IllegalArgumentException();
+        checkOpen();
+        this.pos = pos;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        checkOpen();
+        return size;
+    }
+
+    /**
+     * Positions the chunk so that it holds the authenticated data referenced
+     * by the virtual channel pointer.
+     *
+     * @throws IOException on any I/O error.
+     *         The chunk gets invalidated in this case.
+     */
+    private void positionChunk() throws IOException {
+        final byte[] chunk = this.chunk;
+        final int chunkSize = chunk.length;
+
+        // Check position.
+        final long pos = this.pos;
+        long chunkStart = this.chunkStart;
+        if (chunkStart <= pos && pos < chunkStart + chunkSize)
+            return;
+
+        this.chunkStart = INVALID;
+        final long index = pos / chunkSize;
+        chunkStart = index * chunkSize;
+        final int chunkLength = (int) min(chunkSize, size - chunkStart);
+
+        // Fill chunk.
+        final SeekableByteChannel channel = this.channel;
+        channel.position(chunkStart);
+        final ByteBuffer buffer = ByteBuffer.wrap(chunk, 0, chunkLength);
+        do {
+            if (0 > channel.read(buffer))
+                throw new RaesAuthenticationException();
+        } while (buffer.hasRemaining());
+
+        // Authenticate chunk.
+        final Mac mac = this.mac;
+        final byte[] code = this.code;
+        mac.update(chunk, 0, chunkLength);
+        Type1RaesOutputStream.chunkMac(mac, index, code);
+        final int off = (int) index * TYPE_1_CHUNK_MAC_LEN;
+        int diff = 0;
+        for (int i = 0; i < TYPE_1_CHUNK_MAC_LEN; i++)
+            diff |= code[i] ^ table[off + i];
+        if (0 != diff)
+            throw new RaesAuthenticationException();
+
+        this.chunkStart = chunkStart;
+        this.chunkLength = chunkLength;
+    }
+}
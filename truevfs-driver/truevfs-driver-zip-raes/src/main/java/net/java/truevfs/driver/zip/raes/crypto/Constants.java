@@ -40,6 +40,44 @@ interface Constants {
                 // The KLAC (first half of 256 bit SHA output = 128 bits).
                 // The  MAC (first half of 256 bit SHA output = 128 bits).
 
+    /**
+     * The data envelope type used for password based encryption
+     * with the same salt length as the cipher key length and a Message
+     * Authentication Code (MAC) for each chunk of the cipher text.
+     * The chunk MACs, the MAC of the chunk MACs and the KLAC use separate keys
+     * which get derived from the MAC key by using an HMAC with a distinct
+     * label.
+     */
+    byte TYPE_1 = 1;
+
+    /** The length of the header before the salt and the encrypted data. */
+    int TYPE_1_HEADER_LEN_WO_SALT =
+            HEADER_MIN_LEN +
+            1 + // Cipher and MAC key strength.
+            2 + // Iteration count
+            1;  // Binary logarithm of the chunk size.
+                // The salt which's length is the cipher key length.
+                // The ciphered data which has the same length as the plain data.
+                // The chunk MACs (first half of 256 bit SHA output = 128 bits each).
+                // The KLAC (first half of 256 bit SHA output = 128 bits).
+                // The chunk MACs MAC (first half of 256 bit SHA output = 128 bits).
+
+    /**
+     * The length of the authentication code of each chunk in a type 1 RAES
+     * file.
+     */
+    int TYPE_1_CHUNK_MAC_LEN = 16;
+
+    /**
+     * The minimum binary logarithm of the chunk size in a type 1 RAES file.
+     */
+    int TYPE_1_MIN_CHUNK_SHIFT = 9;
+
+    /**
+     * The maximum binary logarithm of the chunk size in a type 1 RAES file.
+     */
+    int TYPE_1_MAX_CHUNK_SHIFT = 24;
+
     /**
      * The block size of the Advanced Encryption Specification (AES) Algorithm
      * in bits ({@value #AES_BLOCK_SIZE_BITS}).
@@ -22,4 +22,14 @@ public class RaesAuthenticationException extends RaesException {
     public RaesAuthenticationException() {
         super("Authenticated file content has been tampered with!");
     }
+
+    /**
+     * Constructs a RAES exception with
+     * the given detail message.
+     *
+     * @param msg the detail message.
+     */
+    public RaesAuthenticationException(String msg) {
+        super(msg);
+    }
 }
\ No newline at end of file
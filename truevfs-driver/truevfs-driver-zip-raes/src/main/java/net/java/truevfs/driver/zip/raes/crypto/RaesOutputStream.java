@@ -75,7 +75,9 @@ public abstract class RaesOutputStream extends DecoratingOutputStream {
         RaesParameters p = param;
         while (null != p) {
             // HC SVNT DRACONES!
-            if (p instanceof Type0RaesParameters) {
+            if (p instanceof Type1RaesParameters) {
+                return new Type1RaesOutputStream((Type1RaesParameters) p, sink);
+            } else if (p instanceof Type0RaesParameters) {
                 return new Type0RaesOutputStream((Type0RaesParameters) p, sink);
             } else if (p instanceof RaesParametersProvider) {
                 p = ((RaesParametersProvider) p).get(RaesParameters.class);
@@ -125,6 +125,10 @@ public abstract class RaesReadOnlyChannel extends ReadOnlyChannel {
                 return new Type0RaesReadOnlyChannel(
                         parameters(Type0RaesParameters.class, param),
                         channel);
+            case 1:
+                return new Type1RaesReadOnlyChannel(
+                        parameters(Type0RaesParameters.class, param),
+                        channel);
             default:
                 throw new RaesException("Unknown RAES type: " + type);
         }
@@ -156,6 +160,22 @@ public abstract class RaesReadOnlyChannel extends ReadOnlyChannel {
      */
     public abstract AesKeyStrength getKeyStrength();
 
+    /**
+     * Returns {@code true} if and only if this channel authenticates each
+     * chunk of the encrypted data whenever it gets read.
+     * In this case, all data read from this channel is already authenticated
+     * and calling {@link #authenticate} is redundant.
+     * <p>
+     * The implementation in the class {@link RaesReadOnlyChannel} returns
+     * {@code false}.
+     *
+     * @return {@code true} if and only if this channel authenticates each
+     *         chunk of the encrypted data whenever it gets read.
+     */
+    public boolean isChunkAuthenticated() {
+        return false;
+    }
+
     /**
      * Authenticates all encrypted data in this read only file.
      * It is safe to call this method multiple times to detect if the file
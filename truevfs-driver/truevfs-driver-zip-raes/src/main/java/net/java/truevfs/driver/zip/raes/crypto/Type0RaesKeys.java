@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.driver.zip.raes.crypto;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import javax.annotation.CheckForNull;
+import javax.annotation.concurrent.Immutable;
+import net.java.truecommons.key.spec.common.AesKeyStrength;
+import net.java.truecommons.key.spec.util.SuspensionPenalty;
+import net.java.truevfs.comp.zip.crypto.DerivedKeyCache;
+import static net.java.truevfs.driver.zip.raes.crypto.Constants.AES_BLOCK_SIZE_BITS;
+import static net.java.truevfs.driver.zip.raes.crypto.Constants.TYPE_1;
+import org.bouncycastle.crypto.Mac;
+import org.bouncycastle.crypto.PBEParametersGenerator;
+import static org.bouncycastle.crypto.PBEParametersGenerator.PKCS12PasswordToBytes;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.generators.PKCS12ParametersGenerator;
+import org.bouncycastle.crypto.macs.HMac;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.crypto.params.ParametersWithIV;
+
+/**
+ * Derives and verifies the cipher and MAC parameters for reading a type 0 or
+ * type 1 RAES file.
+ * If the given RAES parameters implement {@link DerivedKeyCache.Provider},
+ * then the derived keys get cached by the password.
+ *
+ * @author Christian Schlichtherle
+ */
+@Immutable
+final class Type0RaesKeys {
+
+    private static final int IV_BYTES = AES_BLOCK_SIZE_BITS / 8;
+
+    /** The parameters for the AES cipher in CTR mode. */
+    final ParametersWithIV aesCtrParam;
+
+    /** The parameters for the SHA-256 HMAC. */
+    final KeyParameter sha256MacParam;
+
+    /**
+     * Derives and verifies the cipher and MAC parameters.
+     *
+     * @param param the RAES parameters for prompting the password.
+     * @param type the type of the RAES file.
+     * @param salt the salt.
+     * @param iCount the iteration count.
+     * @param keyStrength the key strength.
+     * @param length the cipher text length.
+     * @param passwdVerifier the first half of the KLAC.
+     */
+    Type0RaesKeys(
+            final Type0RaesParameters param,
+            final byte type,
+            final byte[] salt,
+            final int iCount,
+            final AesKeyStrength keyStrength,
+            final long length,
+            final ByteBuffer passwdVerifier)
+    throws RaesKeyException {
+        final int keyStrengthBits = keyStrength.getBits();
+        final int keyStrengthBytes = keyStrength.getBytes();
+
+        // Lookup or derive cipher and MAC parameters.
+        final DerivedKeyCache cache = cache(param);
+        final PBEParametersGenerator
+                gen = new PKCS12ParametersGenerator(new SHA256Digest());
+        DerivedKeyCache.Key cacheKey;
+        ParametersWithIV aesCtrParam;
+        KeyParameter sha256MacParam;
+        boolean cached;
+        long lastTry = 0; // don't enforce suspension on first prompt!
+        do {
+            final char[] pwc = param.getPasswordForReading(0 != lastTry);
+            assert null != pwc;
+            final byte[] pwb = PKCS12PasswordToBytes(pwc);
+            Arrays.fill(pwc, (char) 0);
+
+            cacheKey = null == cache ? null
+                    : new DerivedKeyCache.Key("PKCS12WithSHA256",
+                        salt, iCount, keyStrengthBits, pwb);
+            final byte[] key = null == cache ? null : cache.get(cacheKey);
+            cached = null != key;
+            if (cached) {
+                aesCtrParam = new ParametersWithIV(
+                        new KeyParameter(key, 0, keyStrengthBytes),
+                        key, keyStrengthBytes, IV_BYTES);
+                sha256MacParam = new KeyParameter(
+                        key, keyStrengthBytes + IV_BYTES, keyStrengthBytes);
+                Arrays.fill(key, (byte) 0);
+            } else {
+                gen.init(pwb, salt, iCount);
+                aesCtrParam = (ParametersWithIV) gen.generateDerivedParameters(
+                        keyStrengthBits, AES_BLOCK_SIZE_BITS);
+                sha256MacParam = (KeyParameter) gen.generateDerivedMacParameters(
+                        keyStrengthBits);
+            }
+            Arrays.fill(pwb, (byte) 0);
+
+            lastTry = SuspensionPenalty.enforce(lastTry);
+        } while (!verify(type, aesCtrParam, sha256MacParam, length, passwdVerifier));
+        this.aesCtrParam = aesCtrParam;
+        this.sha256MacParam = sha256MacParam;
+
+        // Cache cipher and MAC parameters.
+        if (null != cache && !cached) {
+            final byte[] cipherKey = ((KeyParameter) aesCtrParam.getParameters()).getKey();
+            final byte[] iv = aesCtrParam.getIV();
+            final byte[] macKey = sha256MacParam.getKey();
+            final byte[] buf = new byte[keyStrengthBytes + IV_BYTES + keyStrengthBytes];
+            System.arraycopy(cipherKey, 0, buf, 0, keyStrengthBytes);
+            System.arraycopy(iv, 0, buf, keyStrengthBytes, IV_BYTES);
+            System.arraycopy(macKey, 0, buf, keyStrengthBytes + IV_BYTES, keyStrengthBytes);
+            cache.put(cacheKey, buf);
+            Arrays.fill(buf, (byte) 0);
+        }
+    }
+
+    private static @CheckForNull DerivedKeyCache cache(final RaesParameters param) {
+        return param instanceof DerivedKeyCache.Provider
+                ? ((DerivedKeyCache.Provider) param).getDerivedKeyCache()
+                : null;
+    }
+
+    /** Computes and verifies the KLAC. */
+    private static boolean verify(
+            final byte type,
+            final ParametersWithIV aesCtrParam,
+            final KeyParameter sha256MacParam,
+            final long length,
+            final ByteBuffer passwdVerifier) {
+        final Mac klac = new HMac(new SHA256Digest());
+        klac.init(TYPE_1 == type
+                ? Type1RaesOutputStream.macParam(sha256MacParam,
+                    Type1RaesOutputStream.KLAC_LABEL)
+                : sha256MacParam);
+
+        // Update the KLAC with the cipher key.
+        // This is actually redundant, but it's part of the spec, so it
+        // cannot get changed anymore.
+        final byte[] cipherKey = ((KeyParameter) aesCtrParam.getParameters()).getKey();
+        klac.update(cipherKey, 0, cipherKey.length);
+        final byte[] buf = new byte[klac.getMacSize()];
+        RaesOutputStream.klac(klac, length, buf);
+        return passwdVerifier.equals(ByteBuffer.wrap(buf, 0, buf.length / 2));
+    }
+}
@@ -10,10 +10,11 @@ import net.java.truecommons.io.Sink;
 import net.java.truecommons.key.spec.common.AesKeyStrength;
 import net.java.truevfs.comp.zip.crypto.BufferedPartialBlockCipher;
 import net.java.truevfs.comp.zip.crypto.CipherOutputStream;
-import net.java.truevfs.comp.zip.crypto.CtrBlockCipher;
+import net.java.truevfs.comp.zip.crypto.JceCtrBlockCipher;
+import net.java.truevfs.comp.zip.crypto.PipelinedOutputStream;
+import net.java.truevfs.comp.zip.crypto.SecureRandoms;
 import org.bouncycastle.crypto.*;
 import org.bouncycastle.crypto.digests.SHA256Digest;
-import org.bouncycastle.crypto.engines.AESEngine;
 import org.bouncycastle.crypto.generators.PKCS12ParametersGenerator;
 import org.bouncycastle.crypto.io.MacOutputStream;
 import org.bouncycastle.crypto.macs.HMac;
@@ -24,7 +25,6 @@ import org.bouncycastle.util.io.TeeOutputStream;
 import javax.annotation.concurrent.NotThreadSafe;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.security.SecureRandom;
 import java.util.Arrays;
 
 import static net.java.truevfs.driver.zip.raes.crypto.Constants.*;
@@ -50,6 +50,9 @@ final class Type0RaesOutputStream extends RaesOutputStream {
     /** The message authentication code (MAC). */
     private final Mac mac;
 
+    /** The pipeline for computing the MAC on another thread. */
+    private final PipelinedOutputStream pos;
+
     /** The cipher key and cipher text length authentication code (KLAC). */
     private final Mac klac;
 
@@ -78,7 +81,7 @@ final class Type0RaesOutputStream extends RaesOutputStream {
 
         // Shake the salt.
         final byte[] salt = new byte[keyStrengthBytes];
-        new SecureRandom().nextBytes(salt);
+        SecureRandoms.of(param).nextBytes(salt);
 
         // Init digest for key generation and KLAC.
         final Digest digest = new SHA256Digest();
@@ -101,8 +104,7 @@ final class Type0RaesOutputStream extends RaesOutputStream {
 
         // Init cipher.
         final BufferedBlockCipher cipher = new BufferedPartialBlockCipher(
-                new CtrBlockCipher( // or new SICBlockCipher(
-                    new AESEngine()));
+                new JceCtrBlockCipher()); // or new CtrBlockCipher(new AESEngine())
         cipher.init(true, aesCtrParam);
 
         // Init MAC.
@@ -122,11 +124,12 @@ final class Type0RaesOutputStream extends RaesOutputStream {
 
         // Init chain of output streams as Encrypt-then-MAC.
         final OutputStream out = sink.stream();
+        this.pos = new PipelinedOutputStream(new MacOutputStream(mac));
         try {
             final LittleEndianOutputStream leos =
                     this.leos = new LittleEndianOutputStream(out);
             this.out = new CipherOutputStream(cipher,
-                    new TeeOutputStream(leos, new MacOutputStream(mac)));
+                    new TeeOutputStream(leos, pos));
 
             // Write data envelope header.
             leos.writeInt(SIGNATURE);
@@ -160,6 +163,7 @@ final class Type0RaesOutputStream extends RaesOutputStream {
 
         // Flush partial block to out, if any.
         ((CipherOutputStream) out).finish();
+        pos.flush();
 
         final long trailer = leos.size();
 
@@ -8,24 +8,18 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.SeekableByteChannel;
-import java.util.Arrays;
 import javax.annotation.WillCloseWhenClosed;
 import javax.annotation.concurrent.NotThreadSafe;
 import net.java.truecommons.io.IntervalReadOnlyChannel;
 import net.java.truecommons.io.MutableBuffer;
 import net.java.truevfs.comp.zip.crypto.CipherReadOnlyChannel;
-import net.java.truevfs.comp.zip.crypto.CtrBlockCipher;
+import net.java.truevfs.comp.zip.crypto.JceCtrBlockCipher;
 import net.java.truevfs.comp.zip.crypto.SeekableBlockCipher;
-import static net.java.truevfs.driver.zip.raes.crypto.Constants.AES_BLOCK_SIZE_BITS;
+import static net.java.truevfs.driver.zip.raes.crypto.Constants.TYPE_0;
 import static net.java.truevfs.driver.zip.raes.crypto.Constants.TYPE_0_HEADER_LEN_WO_SALT;
 import net.java.truecommons.key.spec.common.AesKeyStrength;
-import net.java.truecommons.key.spec.util.SuspensionPenalty;
 import org.bouncycastle.crypto.Mac;
-import org.bouncycastle.crypto.PBEParametersGenerator;
-import static org.bouncycastle.crypto.PBEParametersGenerator.PKCS12PasswordToBytes;
 import org.bouncycastle.crypto.digests.SHA256Digest;
-import org.bouncycastle.crypto.engines.AESEngine;
-import org.bouncycastle.crypto.generators.PKCS12ParametersGenerator;
 import org.bouncycastle.crypto.macs.HMac;
 import org.bouncycastle.crypto.params.KeyParameter;
 import org.bouncycastle.crypto.params.ParametersWithIV;
@@ -76,7 +70,6 @@ final class Type0RaesReadOnlyChannel extends RaesReadOnlyChannel {
                     + keyStrengthOrdinal);
         }
         final int keyStrengthBytes = keyStrength.getBytes();
-        final int keyStrengthBits = keyStrength.getBits();
         this.keyStrength = keyStrength;
 
         final int iCount = header.getUShort();
@@ -91,9 +84,9 @@ final class Type0RaesReadOnlyChannel extends RaesReadOnlyChannel {
                 .allocate(keyStrengthBytes)
                 .load(channel);
 
-        // Init KLAC and footer.
-        final Mac klac = new HMac(new SHA256Digest());
-        final MutableBuffer footer = MutableBuffer.allocate(klac.getMacSize());
+        // Init footer.
+        final MutableBuffer footer = MutableBuffer
+                .allocate(new SHA256Digest().getDigestSize());
 
         // Init start, end and size of encrypted data.
         final long start = channel.position();
@@ -117,44 +110,16 @@ final class Type0RaesReadOnlyChannel extends RaesReadOnlyChannel {
         final ByteBuffer passwdVerifier = footer.flip().buffer();
 
         // Derive cipher and MAC parameters.
-        final PBEParametersGenerator
-                gen = new PKCS12ParametersGenerator(new SHA256Digest());
-        ParametersWithIV aesCtrParam;
-        KeyParameter sha256MacParam;
-        byte[] buf;
-        long lastTry = 0; // don't enforce suspension on first prompt!
-        do {
-            final char[] pwc = param.getPasswordForReading(0 != lastTry);
-            assert null != pwc;
-            final byte[] pwb = PKCS12PasswordToBytes(pwc);
-            Arrays.fill(pwc, (char) 0);
-
-            gen.init(pwb, salt.array(), iCount);
-            aesCtrParam = (ParametersWithIV) gen.generateDerivedParameters(
-                    keyStrengthBits, AES_BLOCK_SIZE_BITS);
-            sha256MacParam = (KeyParameter) gen.generateDerivedMacParameters(
-                    keyStrengthBits);
-            Arrays.fill(pwb, (byte) 0);
-
-            lastTry = SuspensionPenalty.enforce(lastTry);
-
-            // Compute and verify KLAC.
-            klac.init(sha256MacParam);
-
-            // Update the KLAC with the cipher key.
-            // This is actually redundant, but it's part of the spec, so it
-            // cannot get changed anymore.
-            final byte[] cipherKey = ((KeyParameter) aesCtrParam.getParameters()).getKey();
-            klac.update(cipherKey, 0, cipherKey.length);
-            buf = new byte[klac.getMacSize()];
-            RaesOutputStream.klac(klac, length, buf);
-        } while (!passwdVerifier.equals(ByteBuffer.wrap(buf, 0, buf.length / 2)));
+        final Type0RaesKeys keys = new Type0RaesKeys(param, TYPE_0,
+                salt.array(), iCount, keyStrength, length, passwdVerifier);
+        final ParametersWithIV aesCtrParam = keys.aesCtrParam;
+        final KeyParameter sha256MacParam = keys.sha256MacParam;
 
         // Init parameters for authenticate().
         this.sha256MacParam = sha256MacParam;
 
         // Init cipher and channel.
-        final SeekableBlockCipher cipher = new CtrBlockCipher(new AESEngine());
+        final SeekableBlockCipher cipher = new JceCtrBlockCipher();
         cipher.init(false, aesCtrParam);
         this.channel = new CipherReadOnlyChannel(cipher,
                 new IntervalReadOnlyChannel(channel.position(start), length));
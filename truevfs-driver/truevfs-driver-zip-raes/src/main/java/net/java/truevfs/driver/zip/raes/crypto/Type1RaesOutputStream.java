@@ -0,0 +1,302 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.driver.zip.raes.crypto;
+
+import edu.umd.cs.findbugs.annotations.DischargesObligation;
+import net.java.truecommons.io.LittleEndianOutputStream;
+import net.java.truecommons.io.Sink;
+import net.java.truecommons.key.spec.common.AesKeyStrength;
+import net.java.truevfs.comp.zip.crypto.BufferedPartialBlockCipher;
+import net.java.truevfs.comp.zip.crypto.CipherOutputStream;
+import net.java.truevfs.comp.zip.crypto.JceCtrBlockCipher;
+import net.java.truevfs.comp.zip.crypto.PipelinedOutputStream;
+import net.java.truevfs.comp.zip.crypto.SecureRandoms;
+import org.bouncycastle.crypto.*;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.generators.PKCS12ParametersGenerator;
+import org.bouncycastle.crypto.macs.HMac;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.crypto.params.ParametersWithIV;
+import org.bouncycastle.util.io.TeeOutputStream;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static net.java.truevfs.driver.zip.raes.crypto.Constants.*;
+
+/**
+ * Writes a type 1 RAES file.
+ *
+ * @author  Christian Schlichtherle
+ */
+@NotThreadSafe
+final class Type1RaesOutputStream extends RaesOutputStream {
+
+    /**
+     * The iteration count for the derived keys of the cipher, KLAC and MAC.
+     */
+    static final int ITERATION_COUNT = Type0RaesOutputStream.ITERATION_COUNT;
+
+    /** The binary logarithm of the chunk size, which is 64 KB. */
+    static final int CHUNK_SHIFT = 16;
+
+    /** The label for deriving the key of the chunk MACs. */
+    static final String CHUNK_MAC_LABEL = "RAES type 1 chunk MAC";
+
+    /** The label for deriving the key of the MAC for the chunk MACs. */
+    static final String TABLE_MAC_LABEL = "RAES type 1 table MAC";
+
+    /** The label for deriving the key of the KLAC. */
+    static final String KLAC_LABEL = "RAES type 1 KLAC";
+
+    private boolean finished;
+
+    /** The key strength. */
+    private final AesKeyStrength keyStrength;
+
+    /** The message authentication code (MAC) for the chunk MACs. */
+    private final Mac mac;
+
+    /** The cipher key and cipher text length authentication code (KLAC). */
+    private final Mac klac;
+
+    /** The output stream for the chunk MACs. */
+    private final ChunkMacOutputStream chunks;
+
+    /** The pipeline for computing the chunk MACs on another thread. */
+    private final PipelinedOutputStream pos;
+
+    /**
+     * The low level data output stream.
+     * Used for writing the header and footer.
+     **/
+    private final LittleEndianOutputStream leos;
+
+    /** The offset where the encrypted application data starts. */
+    private long start;
+
+    Type1RaesOutputStream(
+            final Type1RaesParameters param,
+            final Sink sink)
+    throws IOException {
+        assert null != param;
+        assert null != sink;
+
+        // Init key strength.
+        final AesKeyStrength keyStrength = param.getKeyStrength();
+        final int keyStrengthOrdinal = keyStrength.ordinal();
+        final int keyStrengthBits = keyStrength.getBits();
+        final int keyStrengthBytes = keyStrength.getBytes();
+        this.keyStrength = keyStrength;
+
+        // Shake the salt.
+        final byte[] salt = new byte[keyStrengthBytes];
+        SecureRandoms.of(param).nextBytes(salt);
+
+        // Init digest for key generation and KLAC.
+        final Digest digest = new SHA256Digest();
+        assert digest.getDigestSize() >= keyStrengthBytes;
+
+        // Init password.
+        final char[] pwdChars = param.getPasswordForWriting();
+        final byte[] pwdBytes = PBEParametersGenerator.PKCS12PasswordToBytes(pwdChars);
+        Arrays.fill(pwdChars, (char) 0);
+
+        // Derive cipher and MAC parameters.
+        final PBEParametersGenerator gen = new PKCS12ParametersGenerator(digest);
+        gen.init(pwdBytes, salt, ITERATION_COUNT);
+        final ParametersWithIV
+                aesCtrParam = (ParametersWithIV) gen.generateDerivedParameters(
+                    keyStrengthBits, AES_BLOCK_SIZE_BITS);
+        final CipherParameters
+                sha256HMmacParam = gen.generateDerivedMacParameters(keyStrengthBits);
+        Arrays.fill(pwdBytes, (byte) 0);
+
+        // Init cipher.
+        final BufferedBlockCipher cipher = new BufferedPartialBlockCipher(
+                new JceCtrBlockCipher());
+        cipher.init(true, aesCtrParam);
+
+        // Init MAC.
+        final Mac mac = this.mac = new HMac(digest);
+        mac.init(macParam(sha256HMmacParam, TABLE_MAC_LABEL));
+
+        // Init chunk MAC.
+        final Mac chunkMac = new HMac(new SHA256Digest()); // cannot reuse digest!
+        chunkMac.init(macParam(sha256HMmacParam, CHUNK_MAC_LABEL));
+
+        // Init KLAC.
+        final Mac klac = this.klac = new HMac(new SHA256Digest()); // cannot reuse digest!
+        klac.init(macParam(sha256HMmacParam, KLAC_LABEL)); // resets the digest
+
+        // Update the KLAC with the cipher key.
+        final byte[] cipherKey = ((KeyParameter) aesCtrParam.getParameters())
+                .getKey();
+        klac.update(cipherKey, 0, cipherKey.length);
+
+        // Init chain of output streams as Encrypt-then-MAC.
+        final OutputStream out = sink.stream();
+        final ChunkMacOutputStream chunks = this.chunks
+                = new ChunkMacOutputStream(chunkMac, 1 << CHUNK_SHIFT);
+        final PipelinedOutputStream pos = this.pos
+                = new PipelinedOutputStream(chunks);
+        try {
+            final LittleEndianOutputStream leos =
+                    this.leos = new LittleEndianOutputStream(out);
+            this.out = new CipherOutputStream(cipher,
+                    new TeeOutputStream(leos, pos));
+
+            // Write data envelope header.
+            leos.writeInt(SIGNATURE);
+            leos.writeByte(TYPE_1);
+            leos.writeByte(keyStrengthOrdinal);
+            leos.writeShort(ITERATION_COUNT);
+            leos.writeByte(CHUNK_SHIFT);
+            leos.write(salt);
+
+            // Init start.
+            this.start = leos.size();
+            assert TYPE_1_HEADER_LEN_WO_SALT + salt.length == start;
+        } catch (final Throwable ex) {
+            try {
+                out.close();
+            } catch (final IOException ex2) {
+                ex.addSuppressed(ex2);
+            }
+            throw ex;
+        }
+    }
+
+    @Override
+    public AesKeyStrength getKeyStrength() {
+        return keyStrength;
+    }
+
+    /**
+     * Derives the key for the MAC with the given label from the given MAC
+     * parameters.
+     * Each MAC in a type 1 RAES file uses its own key so that no MAC can get
+     * substituted for another.
+     */
+    static KeyParameter macParam(
+            final CipherParameters sha256MacParam,
+            final String label) {
+        final Mac mac = new HMac(new SHA256Digest());
+        mac.init(sha256MacParam);
+        final byte[] bytes = label.getBytes(StandardCharsets.US_ASCII);
+        mac.update(bytes, 0, bytes.length);
+        final byte[] key = new byte[mac.getMacSize()];
+        mac.doFinal(key, 0);
+        return new KeyParameter(key);
+    }
+
+    /**
+     * Updates the given chunk MAC with the given index of the chunk and
+     * finishes it, writing the first half of the result to {@code buf}.
+     * The chunk MAC must already have been initialized and updated with the
+     * cipher text of the chunk.
+     */
+    static void chunkMac(final Mac mac, long index, final byte[] buf) {
+        for (int i = 0; i < 8; i++) {
+            mac.update((byte) index);
+            index >>= 8;
+        }
+        final byte[] code = new byte[mac.getMacSize()];
+        mac.doFinal(code, 0);
+        System.arraycopy(code, 0, buf, 0, TYPE_1_CHUNK_MAC_LEN);
+    }
+
+    private void finish() throws IOException {
+        if (finished)
+            return;
+        finished = true;
+
+        // Flush partial block to out, if any.
+        ((CipherOutputStream) out).finish();
+        pos.flush();
+
+        final long trailer = leos.size();
+        final long length = trailer - start; // message length
+
+        // Write the chunk MACs to the data envelope footer.
+        final byte[] table = chunks.finish();
+        leos.write(table);
+
+        final Mac mac = this.mac;
+        assert mac.getMacSize() == klac.getMacSize();
+        final byte[] buf = new byte[mac.getMacSize()]; // MAC buffer
+
+        // Compute and write the first half of the KLAC to the data envelope footer.
+        klac(klac, length, buf);
+        leos.write(buf, 0, buf.length / 2);
+
+        // Compute and write the first half of the MAC of the chunk MACs to
+        // the data envelope footer.
+        mac.update(table, 0, table.length);
+        klac(mac, length, buf);
+        leos.write(buf, 0, buf.length / 2);
+
+        assert leos.size() - trailer == table.length + buf.length;
+    }
+
+    @Override
+    @DischargesObligation
+    public void close() throws IOException {
+        finish();
+        out.close();
+    }
+
+    /**
+     * Computes the MAC for each chunk of the cipher text written to it.
+     */
+    private static final class ChunkMacOutputStream extends OutputStream {
+        private final ByteArrayOutputStream table = new ByteArrayOutputStream();
+        private final byte[] code = new byte[TYPE_1_CHUNK_MAC_LEN];
+        private final Mac mac;
+        private final int chunkSize;
+        private long index;
+        private int count;
+
+        ChunkMacOutputStream(final Mac mac, final int chunkSize) {
+            this.mac = mac;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        public void write(int b) {
+            mac.update((byte) b);
+            if (++count == chunkSize)
+                next();
+        }
+
+        @Override
+        public void write(final byte[] b, int off, int len) {
+            while (0 < len) {
+                final int n = Math.min(len, chunkSize - count);
+                mac.update(b, off, n);
+                off += n;
+                len -= n;
+                if ((count += n) == chunkSize)
+                    next();
+            }
+        }
+
+        private void next() {
+            chunkMac(mac, index++, code);
+            table.write(code, 0, code.length);
+            count = 0;
+        }
+
+        byte[] finish() {
+            if (0 < count)
+                next();
+            return table.toByteArray();
+        }
+    } // ChunkMacOutputStream
+}
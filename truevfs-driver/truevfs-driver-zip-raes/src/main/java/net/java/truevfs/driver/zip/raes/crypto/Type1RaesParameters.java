@@ -0,0 +1,23 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.driver.zip.raes.crypto;
+
+/**
+ * The parameters of this interface are used with RAES <i>type 1</i> files.
+ * Type 1 RAES files use the same password based encryption as type 0 RAES
+ * files, but authenticate the cipher text in chunks so that any chunk can get
+ * authenticated on its own when it gets read.
+ * <p>
+ * When writing a RAES file, an implementation of this interface requests a
+ * type 1 RAES file.
+ * Because this interface extends {@link Type0RaesParameters}, an
+ * implementation can get used for reading type 0 RAES files, too.
+ * <p>
+ * Implementations do not need to be safe for multi-threading.
+ *
+ * @author  Christian Schlichtherle
+ */
+public interface Type1RaesParameters extends Type0RaesParameters {
+}
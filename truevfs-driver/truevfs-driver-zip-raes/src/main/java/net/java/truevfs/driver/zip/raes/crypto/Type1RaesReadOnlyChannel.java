@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.driver.zip.raes.crypto;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import javax.annotation.WillCloseWhenClosed;
+import javax.annotation.concurrent.NotThreadSafe;
+import net.java.truecommons.io.IntervalReadOnlyChannel;
+import net.java.truecommons.io.MutableBuffer;
+import net.java.truevfs.comp.zip.crypto.CipherReadOnlyChannel;
+import net.java.truevfs.comp.zip.crypto.JceCtrBlockCipher;
+import net.java.truevfs.comp.zip.crypto.SeekableBlockCipher;
+import static net.java.truevfs.driver.zip.raes.crypto.Constants.*;
+import net.java.truecommons.key.spec.common.AesKeyStrength;
+import org.bouncycastle.crypto.Mac;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.macs.HMac;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.crypto.params.ParametersWithIV;
+
+/**
+ * Reads a type 1 RAES file.
+ * <p>
+ * In addition to the KLAC, the constructor authenticates the table of chunk
+ * MACs, which is proportional to the cipher text length divided by the chunk
+ * size.
+ * Thereafter, each chunk of cipher text gets authenticated whenever it gets
+ * read, so {@link #authenticate()} is redundant for this type.
+ *
+ * @author Christian Schlichtherle
+ */
+@NotThreadSafe
+final class Type1RaesReadOnlyChannel extends RaesReadOnlyChannel {
+
+    /** The key strength. */
+    private final AesKeyStrength keyStrength;
+
+    private final ChunkAuthenticatingReadOnlyChannel chunks;
+
+    Type1RaesReadOnlyChannel(
+            final Type0RaesParameters param,
+            final @WillCloseWhenClosed SeekableByteChannel channel)
+    throws IOException {
+        assert null != param;
+        assert null != channel;
+
+        // Load header data.
+        final MutableBuffer header = MutableBuffer
+                .allocate(TYPE_1_HEADER_LEN_WO_SALT)
+                .littleEndian()
+                .load(channel.position(0));
+        final int type = header.position(4).getUByte();
+        assert 1 == type;
+
+        // Check key size, iteration count and chunk size.
+        final int keyStrengthOrdinal = header.getUByte();
+        final AesKeyStrength keyStrength;
+        try {
+            keyStrength = AesKeyStrength.values()[keyStrengthOrdinal];
+            assert keyStrength.ordinal() == keyStrengthOrdinal;
+        } catch (final ArrayIndexOutOfBoundsException ex) {
+            throw new RaesException(
+                    "Unknown index for cipher key strength: "
+                    + keyStrengthOrdinal);
+        }
+        final int keyStrengthBytes = keyStrength.getBytes();
+        this.keyStrength = keyStrength;
+
+        final int iCount = header.getUShort();
+        if (1024 > iCount)
+            throw new RaesException(
+                    "Iteration count must be 1024 or greater, but is "
+                    + iCount
+                    + "!");
+
+        final int chunkShift = header.getUByte();
+        if (TYPE_1_MIN_CHUNK_SHIFT > chunkShift
+                || TYPE_1_MAX_CHUNK_SHIFT < chunkShift)
+            throw new RaesException(
+                    "Binary logarithm of chunk size must be in the range from "
+                    + TYPE_1_MIN_CHUNK_SHIFT + " to " + TYPE_1_MAX_CHUNK_SHIFT
+                    + ", but is "
+                    + chunkShift
+                    + "!");
+        final int chunkSize = 1 << chunkShift;
+
+        // Load salt.
+        final MutableBuffer salt = MutableBuffer
+                .allocate(keyStrengthBytes)
+                .load(channel);
+
+        // Init footer.
+        final MutableBuffer footer = MutableBuffer
+                .allocate(new SHA256Digest().getDigestSize());
+
+        // Init start, end and size of encrypted data and chunk MACs.
+        // Every chunk is followed by its MAC in the table, so the number of
+        // chunks is the quotient of the remaining length and the chunk size
+        // plus the length of its MAC, rounded up.
+        final long start = channel.position();
+        final long end = channel.size() - footer.limit();
+        final long remaining = end - start;
+        if (0 > remaining) {
+            // Wrap an EOFException so that a caller can identify this issue.
+            throw new RaesException("False positive Type 1 RAES file is too short!",
+                    new EOFException());
+        }
+        final long count = (remaining + chunkSize + TYPE_1_CHUNK_MAC_LEN - 1)
+                / (chunkSize + TYPE_1_CHUNK_MAC_LEN);
+        final long length = remaining - count * TYPE_1_CHUNK_MAC_LEN;
+        if (0 < count && length <= (count - 1) * chunkSize
+                || Integer.MAX_VALUE < count * TYPE_1_CHUNK_MAC_LEN)
+            throw new RaesException("Invalid length of Type 1 RAES file!");
+
+        // Load chunk MACs and authentication code.
+        final MutableBuffer table = MutableBuffer
+                .allocate((int) (count * TYPE_1_CHUNK_MAC_LEN))
+                .load(channel.position(start + length));
+        footer.load(channel).position(footer.limit() / 2);
+        if (channel.position() != channel.size()) {
+            // This should never happen unless someone is writing to the
+            // end of the file concurrently!
+            throw new RaesException(
+                    "Expected end of file after data envelope trailer!");
+        }
+        final ByteBuffer authenticationCode = footer.slice().buffer();
+        final ByteBuffer passwdVerifier = footer.flip().buffer();
+
+        // Derive cipher and MAC parameters.
+        final Type0RaesKeys keys = new Type0RaesKeys(param, TYPE_1,
+                salt.array(), iCount, keyStrength, length, passwdVerifier);
+        final ParametersWithIV aesCtrParam = keys.aesCtrParam;
+        final KeyParameter sha256MacParam = keys.sha256MacParam;
+
+        // Authenticate chunk MACs.
+        final Mac mac = new HMac(new SHA256Digest());
+        mac.init(Type1RaesOutputStream.macParam(sha256MacParam,
+                Type1RaesOutputStream.TABLE_MAC_LABEL));
+        mac.update(table.array(), 0, table.limit());
+        final byte[] buf = new byte[mac.getMacSize()];
+        RaesOutputStream.klac(mac, length, buf);
+        if (!authenticationCode.equals(ByteBuffer.wrap(buf, 0, buf.length / 2)))
+            throw new RaesAuthenticationException();
+
+        // Init cipher and channel.
+        final SeekableBlockCipher cipher = new JceCtrBlockCipher();
+        cipher.init(false, aesCtrParam);
+        final Mac chunkMac = new HMac(new SHA256Digest());
+        chunkMac.init(Type1RaesOutputStream.macParam(sha256MacParam,
+                Type1RaesOutputStream.CHUNK_MAC_LABEL));
+        this.chunks = new ChunkAuthenticatingReadOnlyChannel(
+                chunkMac, table.array(), chunkSize,
+                new IntervalReadOnlyChannel(channel.position(start), length));
+        this.channel = new CipherReadOnlyChannel(cipher, chunks);
+
+        // Commit key strength.
+        param.setKeyStrength(keyStrength);
+    }
+
+    @Override
+    public AesKeyStrength getKeyStrength() {
+        return keyStrength;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @return {@code true}
+     */
+    @Override
+    public boolean isChunkAuthenticated() {
+        return true;
+    }
+
+    @Override
+    public void authenticate() throws IOException {
+        chunks.authenticate();
+    }
+}
@@ -15,7 +15,8 @@
  * encrypt and authenticate the <i>pay load</i> data when reading or writing
  * files of this type.
  * <p>
- * Currently, only Type-0 is specified, but more types may be added in future.
+ * Currently, Type-0 and Type-1 are specified, but more types may be added in
+ * future.
  * Note that it is an error for an implementation to process an unknown type.
  * <p>
  * RAES features <b>transparent random read access</b> to the encrypted data.
@@ -65,7 +66,7 @@
  *
  * <h3>RAES types</h3>
  * <p>
- * As said, RAES currently defines only <i>Type-0</i> files.
+ * As said, RAES currently defines <i>Type-0</i> and <i>Type-1</i> files.
  * Type-0 has the following specifications:
  * <ul>
  * <li>The encryption scheme is password based according to
@@ -109,6 +110,24 @@
  * Assuming a worst-case overhead for the deflater's algorithm of 100%, the
  * minimum number of compressed bytes for the first 512 bytes of a key file
  * should be no less than 2 * 256 / 8 = 64 bytes.
+ * <p>
+ * Type-1 has the same specifications as Type-0, but replaces the MAC on the
+ * full cipher text with a MAC for each chunk of the cipher text:
+ * <ul>
+ * <li>The iteration count in the header is followed by the binary logarithm
+ *     of the chunk size, which is 64 KB when writing. </li>
+ * <li>The cipher text is followed by a table with the first half of the
+ *     MAC of each chunk, where the MAC is computed on the cipher text of the
+ *     chunk and its index in little endian order. </li>
+ * <li>The footer contains the KLAC and the first half of the MAC on the
+ *     table and the cipher text length in little endian order. </li>
+ * </ul>
+ * <p>
+ * The MAC on the table is authenticated together with the KLAC, which takes
+ * time proportional to the number of chunks only.
+ * Thereafter, each chunk gets authenticated whenever it gets read, so any
+ * data read from a Type-1 file is fully authenticated without processing the
+ * full cipher text first.
  */
 @javax.annotation.Nonnull @javax.annotation.ParametersAreNonnullByDefault
 package net.java.truevfs.driver.zip.raes.crypto;
\ No newline at end of file
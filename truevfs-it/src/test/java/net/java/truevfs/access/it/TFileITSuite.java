@@ -206,6 +206,31 @@ extends ConfiguredClientTestBase<D> {
         archive.rm();
     }
 
+    @Test
+    public void testMissingArchive() throws IOException {
+        final TFile entry = new TFile(archive, "entry");
+        final TFile inner = new TFile(archive, "inner" + getExtension());
+        final FsController controller = controller(entry.getNodePath());
+        for (final TFile file : new TFile[] { archive, entry, inner }) {
+            assertFalse(file.exists());
+            assertFalse(file.isDirectory());
+            assertFalse(file.isFile());
+            assertEquals(0, file.length());
+        }
+        assertFalse(controller.getModel().isMounted());
+
+        // The missing archive file must not get remembered.
+        createTestFile(entry);
+        assertTrue(archive.isDirectory());
+        assertTrue(entry.isFile());
+        assertFalse(inner.exists());
+        umount();
+        assertTrue(entry.isFile());
+        archive.rm_r();
+        assertFalse(archive.exists());
+        assertFalse(entry.exists());
+    }
+
     private void assertFalsePositive(final TFile file) throws IOException {
         assert file.isArchive();
 
@@ -1440,4 +1465,45 @@ extends ConfiguredClientTestBase<D> {
 
         assertNull(archive.list());
     }
+
+    @Test
+    public void testBatch() throws IOException {
+        final TFile entry1 = new TFile(archive, "entry1");
+        final TFile entry2 = new TFile(archive, "entry2");
+
+        createTestFile(entry1);
+        umount();
+
+        try {
+            TVFS.batch(archive, new TVFS.Batch<Void, RuntimeException>() {
+                @Override
+                public Void call() throws IOException {
+                    for (int i = 0; i < 3; i++) {
+                        try (OutputStream out = new TFileOutputStream(entry1)) {
+                            out.write(i);
+                        }
+                    }
+                    createTestFile(entry2);
+                    throw new IllegalStateException();
+                }
+            });
+            fail();
+        } catch (final IllegalStateException expected) {
+        }
+        assertThat(archive.list(), is(new String[] { "entry1" }));
+        verifyTestFile(entry1);
+
+        assertThat(TVFS.batch(archive, new TVFS.Batch<Boolean, RuntimeException>() {
+            @Override
+            public Boolean call() throws IOException {
+                entry1.rm();
+                createTestFile(entry2);
+                return true;
+            }
+        }), is(true));
+        assertThat(archive.list(), is(new String[] { "entry2" }));
+        verifyTestFile(entry2);
+        entry2.rm();
+        umount();
+    }
 }
@@ -1526,4 +1526,47 @@ extends ConfiguredClientTestBase<D> {
 
         assertNull(listFiles(archive));
     }
+
+    @Test
+    public void testWatchService() throws IOException {
+        final TPath entry = archive.resolve("entry");
+        createDirectory(archive);
+        try (final WatchService watcher = archive.getFileSystem().newWatchService()) {
+            final WatchKey key = archive.register(watcher,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+            assertSame(archive, key.watchable());
+
+            createTestFile(entry);
+            assertWatchEvent(watcher, key, StandardWatchEventKinds.ENTRY_CREATE, "entry");
+            createTestFile(entry);
+            assertWatchEvent(watcher, key, StandardWatchEventKinds.ENTRY_MODIFY, "entry");
+            delete(entry);
+            assertWatchEvent(watcher, key, StandardWatchEventKinds.ENTRY_DELETE, "entry");
+
+            key.cancel();
+            assertFalse(key.isValid());
+            createTestFile(entry);
+            assertNull(watcher.poll());
+        }
+        delete(entry);
+        delete(archive);
+    }
+
+    private static void assertWatchEvent(
+            final WatchService watcher,
+            final WatchKey key,
+            final WatchEvent.Kind<Path> kind,
+            final String name) {
+        assertSame(key, watcher.poll());
+        final List<WatchEvent<?>> events = new ArrayList<>();
+        for (final WatchEvent<?> event : key.pollEvents())
+            if (StandardWatchEventKinds.OVERFLOW != event.kind())
+                events.add(event);
+        assertThat(events.size(), is(1));
+        assertSame(kind, events.get(0).kind());
+        assertEquals(name, events.get(0).context().toString());
+        assertTrue(key.reset());
+    }
 }
@@ -7,13 +7,29 @@ package net.java.truevfs.comp.zip.it;
 import net.java.truecommons.key.spec.common.AesKeyStrength;
 import net.java.truevfs.comp.zip.*;
 
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.charset.Charset;
 import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.ZipException;
 
-import static org.junit.Assert.assertSame;
+import static java.nio.file.Files.newByteChannel;
+import static java.nio.file.Files.newOutputStream;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.junit.Assert.*;
 
 /**
  * @author Christian Schlichtherle
@@ -94,24 +110,196 @@ public final class WinZipAesIT extends ZipITSuite {
     @Override
     public void testBadGetCheckedInputStream() { }
 
-    private static final class WinZipAesCryptoParameters
+    @Test
+    public void testStreamingCheck() throws IOException {
+        final byte[] data = createRandomEntry();
+        try (ZipFile zf = newZipFile(getFile())) {
+            zf.setStreamingCheck(true);
+            try (InputStream in = zf.getCheckedInputStream("entry")) {
+                assertArrayEquals(data, readFully(in));
+            }
+        }
+
+        tamper();
+        try (ZipFile zf = newZipFile(getFile())) {
+            zf.setStreamingCheck(true);
+            // No pre-check, so opening the entry succeeds.
+            final InputStream in = zf.getCheckedInputStream("entry");
+            try {
+                readFully(in);
+                fail("Expected ZipAuthenticationException!");
+            } catch (final ZipAuthenticationException expected) {
+            }
+            try {
+                in.close();
+                fail("Expected ZipAuthenticationException!");
+            } catch (final ZipAuthenticationException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void testBackgroundCheck() throws Exception {
+        createRandomEntry();
+        try (ZipFile zf = newZipFile(getFile())) {
+            checkInBackground(zf);
+            // The successful result is cached, so tampering goes undetected.
+            tamper();
+            try (InputStream in = zf.getCheckedInputStream("entry")) {
+                readFully(in);
+            }
+        }
+
+        try (ZipFile zf = newZipFile(getFile())) {
+            checkInBackground(zf);
+            // The failed result is not cached, so the entry gets checked again.
+            try {
+                zf.getCheckedInputStream("entry");
+                fail("Expected ZipAuthenticationException!");
+            } catch (final ZipAuthenticationException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void testCloseWaitsForBackgroundCheck() throws Exception {
+        createRandomEntry();
+        final CountDownLatch prompting = new CountDownLatch(1);
+        final AtomicBoolean prompted = new AtomicBoolean();
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            try (ZipFile zf = newZipFile(getFile())) {
+                zf.setCryptoParameters(new WinZipAesCryptoParameters() {
+                    @Override
+                    public byte[] getReadPassword(String name, boolean invalid)
+                    throws ZipKeyException {
+                        prompting.countDown();
+                        // Ignore the interrupt from cancelling the check.
+                        final long until = System.currentTimeMillis() + 300;
+                        for (long wait; 0 < (wait = until - System.currentTimeMillis()); ) {
+                            try {
+                                Thread.sleep(wait);
+                            } catch (final InterruptedException ex) {
+                            }
+                        }
+                        prompted.set(true);
+                        return super.getReadPassword(name, invalid);
+                    }
+                });
+                zf.checkInBackground(zf, executor);
+                prompting.await();
+            }
+            assertTrue(prompted.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRawCopyable() throws IOException {
+        createRandomEntry();
+        try (ZipFile zf = newZipFile(getFile())) {
+            assertTrue(zf.isRawCopyable("entry",
+                    new WinZipAesCryptoParameters()));
+            assertFalse(zf.isRawCopyable("entry",
+                    new WinZipAesCryptoParameters(
+                        "other secret", AesKeyStrength.BITS_128)));
+            assertFalse(zf.isRawCopyable("entry",
+                    new WinZipAesCryptoParameters(
+                        "top secret", AesKeyStrength.BITS_256)));
+            assertFalse(zf.isRawCopyable("entry", null));
+            assertFalse(zf.isRawCopyable("missing",
+                    new WinZipAesCryptoParameters()));
+        }
+    }
+
+    @Test
+    public void testRawCopyWithoutExtraField() throws IOException {
+        final ZipEntry entry = newEntry("entry");
+        entry.setMethod(99); // WinZip AES
+        entry.setCrc(0);
+        entry.setSize(1);
+        entry.setCompressedSize(1);
+        try (ZipOutputStream zos = newZipOutputStream(new ByteArrayOutputStream())) {
+            try {
+                zos.putNextEntry(entry, false);
+                fail("Expected ZipException!");
+            } catch (final ZipException expected) {
+            }
+        }
+    }
+
+    private static void checkInBackground(final ZipFile zf)
+    throws IOException, InterruptedException {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            zf.checkInBackground(zf, executor);
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+    }
+
+    private byte[] createRandomEntry() throws IOException {
+        final byte[] data = new byte[10 * 1024];
+        new Random().nextBytes(data);
+        try (ZipOutputStream zos = newZipOutputStream(newOutputStream(getFile()))) {
+            zos.putNextEntry(newEntry("entry"));
+            zos.write(data);
+        }
+        return data;
+    }
+
+    /** Flips a byte in the middle of the encrypted entry data. */
+    private void tamper() throws IOException {
+        try (SeekableByteChannel channel = newByteChannel(getFile(), READ, WRITE)) {
+            final ByteBuffer buf = ByteBuffer.allocate(1);
+            channel.position(5 * 1024).read(buf);
+            buf.put(0, (byte) ~buf.get(0)).rewind();
+            channel.position(5 * 1024).write(buf);
+        }
+    }
+
+    private static byte[] readFully(final InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buf = new byte[1000];
+        for (int read; -1 != (read = in.read(buf)); )
+            out.write(buf, 0, read);
+        return out.toByteArray();
+    }
+
+    private static class WinZipAesCryptoParameters
     implements WinZipAesParameters {
+        private final String password;
+        private final AesKeyStrength keyStrength;
+
+        WinZipAesCryptoParameters() {
+            this("top secret", AesKeyStrength.BITS_128);
+        }
+
+        WinZipAesCryptoParameters(
+                final String password,
+                final AesKeyStrength keyStrength) {
+            this.password = password;
+            this.keyStrength = keyStrength;
+        }
+
         @Override
         public byte[] getWritePassword(String name) throws ZipKeyException {
-            return "top secret".getBytes();
+            return password.getBytes();
         }
 
         @Override
         public byte[] getReadPassword(final String name, final boolean invalid)
         throws ZipKeyException {
             if (invalid) throw new ZipKeyException("Unknown password.");
-            return "top secret".getBytes();
+            return password.getBytes();
         }
 
         @Override
         public AesKeyStrength getKeyStrength(String name)
         throws ZipKeyException {
-            return AesKeyStrength.BITS_128;
+            return keyStrength;
         }
 
         @Override
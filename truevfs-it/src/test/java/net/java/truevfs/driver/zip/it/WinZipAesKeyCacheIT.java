@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.driver.zip.it;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.java.truecommons.key.spec.AbstractKeyManagerMap;
+import net.java.truecommons.key.spec.KeyManager;
+import net.java.truecommons.key.spec.KeyManagerMap;
+import net.java.truecommons.key.spec.common.AesPbeParameters;
+import net.java.truecommons.key.spec.prompting.PromptingKey;
+import net.java.truevfs.access.TArchiveDetector;
+import net.java.truevfs.access.TConfig;
+import net.java.truevfs.access.TFile;
+import net.java.truevfs.access.TFileInputStream;
+import net.java.truevfs.access.TFileOutputStream;
+import net.java.truevfs.access.TVFS;
+import net.java.truevfs.comp.zip.crypto.DerivedKeyCache;
+import net.java.truevfs.comp.zipdriver.TestKeyManager;
+import net.java.truevfs.comp.zipdriver.ZipDriver;
+import static net.java.truevfs.kernel.spec.FsAccessOption.ENCRYPT;
+import static org.hamcrest.CoreMatchers.*;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the interaction of the derived key cache with key prompting.
+ *
+ * @author Christian Schlichtherle
+ */
+public final class WinZipAesKeyCacheIT {
+
+    private static final byte[] DATA = { 'f', 'o', 'o' };
+
+    private final CountingView view = new CountingView();
+    private final KeyManager<AesPbeParameters> manager
+            = new TestKeyManager<>(view);
+    private final DerivedKeyCache cache = DerivedKeyCache.of(manager);
+
+    private Path temp;
+    private TConfig config;
+
+    @Before
+    public void setUp() throws IOException {
+        temp = Files.createTempDirectory("tzp");
+        config = TConfig.open();
+        config.setArchiveDetector(new TArchiveDetector("zip", new ZipDriver() {
+            final KeyManagerMap map = new AbstractKeyManagerMap() {
+                @Override
+                public Map<Class<?>, KeyManager<?>> get() {
+                    return Collections.<Class<?>, KeyManager<?>>singletonMap(
+                            AesPbeParameters.class, manager);
+                }
+            };
+
+            @Override
+            public KeyManagerMap getKeyManagerMap() { return map; }
+        }));
+        config.setAccessPreference(ENCRYPT, true);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try {
+            TVFS.umount();
+        } finally {
+            config.close();
+            Files.deleteIfExists(temp.resolve("a.zip"));
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void write(final TFile file) throws IOException {
+        try (final OutputStream out = new TFileOutputStream(file)) {
+            out.write(DATA);
+        }
+    }
+
+    private static byte[] read(final TFile file) throws IOException {
+        final byte[] buf = new byte[DATA.length];
+        try (final InputStream in = new TFileInputStream(file)) {
+            int off = 0;
+            for (int n; off < buf.length
+                    && 0 <= (n = in.read(buf, off, buf.length - off)); )
+                off += n;
+            assertThat(in.read(), is(-1));
+        }
+        return buf;
+    }
+
+    @Test
+    public void testReleasingTheKeyForcesAFreshPromptAndDerivation()
+    throws IOException {
+        final TFile archive = new TFile(temp.toFile(), "a.zip");
+        final TFile entry = new TFile(archive, "x");
+        write(entry);
+        TVFS.umount(archive);
+        assertThat(cache.size(), is(0));
+
+        final int prompts = view.reads.get();
+        assertThat(read(entry), equalTo(DATA));
+        assertThat(view.reads.get(), is(prompts + 1));
+        assertThat(cache.size(), is(1));
+
+        // The key provider still has the key, so there is no prompt and the
+        // derived key is looked up by the password.
+        assertThat(read(entry), equalTo(DATA));
+        assertThat(view.reads.get(), is(prompts + 1));
+        assertThat(cache.size(), is(1));
+
+        // Releasing the key resets the key provider and clears the cache.
+        TVFS.umount(archive);
+        assertThat(cache.size(), is(0));
+        assertThat(read(entry), equalTo(DATA));
+        assertThat(view.reads.get(), is(prompts + 2));
+        assertThat(cache.size(), is(1));
+    }
+
+    @Test
+    public void testWrongPasswordDoesNotHitTheCache() throws IOException {
+        final TFile archive = new TFile(temp.toFile(), "a.zip");
+        final TFile entry = new TFile(archive, "x");
+        write(entry);
+        TVFS.umount(archive);
+        assertThat(read(entry), equalTo(DATA));
+        assertThat(cache.size(), is(1));
+
+        // Change the password which the key provider returns without
+        // releasing it.
+        // The cached key must not be found for the wrong password, so
+        // reading needs to prompt again until the right password is entered.
+        view.password = "wrong".toCharArray();
+        view.retry = "top secret".toCharArray();
+        manager.unlink(archive.getNodePath().getMountPoint().toHierarchicalUri());
+        final int prompts = view.reads.get();
+        assertThat(read(entry), equalTo(DATA));
+        assertThat(view.reads.get(), is(prompts + 2));
+    }
+
+    /** Enters a password and counts the prompts for reading. */
+    private static final class CountingView
+    implements PromptingKey.View<AesPbeParameters> {
+        final AtomicInteger reads = new AtomicInteger();
+        volatile char[] password = "top secret".toCharArray();
+        volatile char[] retry;
+
+        @Override
+        public void promptKeyForWriting(
+                PromptingKey.Controller<AesPbeParameters> controller) {
+            controller.setKeyClone(key(password));
+        }
+
+        @Override
+        public void promptKeyForReading(
+                PromptingKey.Controller<AesPbeParameters> controller,
+                boolean invalid) {
+            reads.incrementAndGet();
+            controller.setKeyClone(key(invalid && null != retry
+                    ? retry : password));
+        }
+
+        private static AesPbeParameters key(final char[] password) {
+            final AesPbeParameters key = new AesPbeParameters();
+            key.setPassword(password);
+            return key;
+        }
+    }
+}
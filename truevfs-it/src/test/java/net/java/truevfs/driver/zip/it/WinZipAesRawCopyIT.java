@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.driver.zip.it;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import net.java.truecommons.key.spec.AbstractKeyManagerMap;
+import net.java.truecommons.key.spec.KeyManager;
+import net.java.truecommons.key.spec.KeyManagerMap;
+import net.java.truecommons.key.spec.common.AesPbeParameters;
+import net.java.truecommons.key.spec.prompting.PromptingKey;
+import net.java.truevfs.access.TArchiveDetector;
+import net.java.truevfs.access.TConfig;
+import net.java.truevfs.access.TFile;
+import net.java.truevfs.access.TFileInputStream;
+import net.java.truevfs.access.TFileOutputStream;
+import net.java.truevfs.access.TVFS;
+import net.java.truevfs.comp.zip.ZipEntry;
+import net.java.truevfs.comp.zip.ZipFile;
+import net.java.truevfs.comp.zipdriver.TestKeyManager;
+import net.java.truevfs.comp.zipdriver.ZipDriver;
+import static net.java.truevfs.kernel.spec.FsAccessOption.ENCRYPT;
+import static org.hamcrest.CoreMatchers.*;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests copying WinZip AES encrypted entries between archive files which
+ * share the same key.
+ *
+ * @author Christian Schlichtherle
+ */
+public final class WinZipAesRawCopyIT {
+
+    private static final byte[] DATA = "Hello World!".getBytes();
+
+    private final KeyManager<AesPbeParameters> manager
+            = new TestKeyManager<>(new PasswordView());
+
+    private Path temp;
+    private TConfig config;
+
+    @Before
+    public void setUp() throws IOException {
+        temp = Files.createTempDirectory("tzp");
+        config = TConfig.open();
+        config.setArchiveDetector(new TArchiveDetector("zip", new ZipDriver() {
+            final KeyManagerMap map = new AbstractKeyManagerMap() {
+                @Override
+                public Map<Class<?>, KeyManager<?>> get() {
+                    return Collections.<Class<?>, KeyManager<?>>singletonMap(
+                            AesPbeParameters.class, manager);
+                }
+            };
+
+            @Override
+            public KeyManagerMap getKeyManagerMap() { return map; }
+        }));
+        config.setAccessPreference(ENCRYPT, true);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try {
+            TVFS.umount();
+        } finally {
+            config.close();
+            Files.deleteIfExists(temp.resolve("a.zip"));
+            Files.deleteIfExists(temp.resolve("b.zip"));
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @Test
+    public void testCopyWithSameKeyDoesNotReencrypt() throws IOException {
+        final TFile a = new TFile(temp.toFile(), "a.zip");
+        final TFile b = new TFile(temp.toFile(), "b.zip");
+        try (final OutputStream out = new TFileOutputStream(new TFile(a, "x"))) {
+            out.write(DATA);
+        }
+        TVFS.umount(a);
+
+        new TFile(a, "x").cp(new TFile(b, "x"));
+        TVFS.umount();
+
+        // Encrypting again would use a new random salt, so the entry data
+        // in both archive files is only equal if it got copied raw.
+        final byte[] source = raw(temp.resolve("a.zip"), "x");
+        final byte[] destination = raw(temp.resolve("b.zip"), "x");
+        assertTrue(Arrays.equals(source, destination));
+
+        final ByteArrayOutputStream content = new ByteArrayOutputStream();
+        try (final InputStream in = new TFileInputStream(new TFile(b, "x"))) {
+            for (int c; 0 <= (c = in.read()); ) content.write(c);
+        }
+        assertThat(content.toByteArray(), equalTo(DATA));
+    }
+
+    /** Returns the encrypted and deflated data of the named entry. */
+    private static byte[] raw(final Path archive, final String name)
+    throws IOException {
+        try (final RawZipFile zip = new RawZipFile(archive)) {
+            final ZipEntry entry = zip.entry(name);
+            assertTrue(entry.isEncrypted());
+            return zip.raw(name);
+        }
+    }
+
+    /** Provides access to the raw entry data. */
+    private static final class RawZipFile extends ZipFile {
+        RawZipFile(Path file) throws IOException { super(file); }
+
+        byte[] raw(final String name) throws IOException {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (final InputStream in = getInputStream(name, false, false)) {
+                for (int c; 0 <= (c = in.read()); ) out.write(c);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    /** Always enters the same password. */
+    private static final class PasswordView
+    implements PromptingKey.View<AesPbeParameters> {
+        @Override
+        public void promptKeyForWriting(
+                PromptingKey.Controller<AesPbeParameters> controller) {
+            controller.setKeyClone(key());
+        }
+
+        @Override
+        public void promptKeyForReading(
+                PromptingKey.Controller<AesPbeParameters> controller,
+                boolean invalid) {
+            controller.setKeyClone(key());
+        }
+
+        private static AesPbeParameters key() {
+            final AesPbeParameters key = new AesPbeParameters();
+            key.setPassword("top secret".toCharArray());
+            return key;
+        }
+    }
+}
@@ -17,6 +17,13 @@ import net.java.truecommons.key.spec.prompting.TestView;
 public final class TestZipRaesDriver extends SafeZipRaesDriver {
 
     private final TestKeyManagerMap keyManagerMap = new TestKeyManagerMap();
+    private final boolean backgroundAuthentication;
+
+    public TestZipRaesDriver() { this(false); }
+
+    public TestZipRaesDriver(final boolean backgroundAuthentication) {
+        this.backgroundAuthentication = backgroundAuthentication;
+    }
 
     @Override
     public IoBufferPool getPool() { return FsTestConfig.get().getPool(); }
@@ -25,4 +32,7 @@ public final class TestZipRaesDriver extends SafeZipRaesDriver {
     public KeyManagerMap getKeyManagerMap() { return keyManagerMap; }
 
     public TestView<AesPbeParameters> getView() { return keyManagerMap.getView(); }
+
+    @Override
+    protected boolean getBackgroundAuthentication() { return backgroundAuthentication; }
 }
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.driver.zip.raes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.concurrent.CountDownLatch;
+import net.java.truecommons.cio.DecoratingInputSocket;
+import net.java.truecommons.cio.Entry;
+import net.java.truecommons.cio.IoBuffer;
+import net.java.truecommons.cio.OutputSocket;
+import net.java.truecommons.io.ReadOnlyChannel;
+import net.java.truevfs.comp.zipdriver.JarDriverEntry;
+import net.java.truevfs.comp.zipdriver.ZipInputService;
+import net.java.truevfs.comp.zipdriver.ZipOutputService;
+import net.java.truevfs.driver.zip.raes.crypto.RaesAuthenticationException;
+import net.java.truevfs.kernel.spec.FsAccessOptions;
+import net.java.truevfs.kernel.spec.FsInputSocketSource;
+import net.java.truevfs.kernel.spec.FsModel;
+import net.java.truevfs.kernel.spec.FsMountPoint;
+import net.java.truevfs.kernel.spec.FsOutputSocketSink;
+import net.java.truevfs.kernel.spec.FsTestModel;
+import static org.hamcrest.CoreMatchers.*;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the authentication of RAES files in the background.
+ *
+ * @author Christian Schlichtherle
+ */
+public final class ZipRaesBackgroundAuthenticationTest {
+
+    private static final byte[] DATA = { 'f', 'o', 'o' };
+
+    private final TestZipRaesDriver driver = new TestZipRaesDriver(true);
+    private final FsModel model = new FsTestModel(
+            FsMountPoint.create(URI.create("tzp:file:/archive.tzp!/")),
+            new FsTestModel(FsMountPoint.create(URI.create("file:/")), null));
+
+    /** Blocks the authentication in the background until it's released. */
+    private final CountDownLatch authentication = new CountDownLatch(1);
+
+    private IoBuffer buffer;
+
+    @Before
+    public void setUp() throws IOException {
+        buffer = driver.getPool().allocate();
+        try (final ZipOutputService<JarDriverEntry> output
+                = new ZipOutputService<>(model,
+                    driver.new RaesSocketSink(model,
+                        new FsOutputSocketSink(FsAccessOptions.NONE,
+                            buffer.output())),
+                    null, driver)) {
+            try (final OutputStream out = output
+                    .output(driver.newEntry("entry"))
+                    .stream(null)) {
+                out.write(DATA);
+            }
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        authentication.countDown();
+        buffer.release();
+    }
+
+    /**
+     * Returns a new input service for the RAES file.
+     * The second channel which gets opened for it is the channel for the
+     * authentication in the background, so reading it blocks until the
+     * authentication gets released.
+     */
+    private ZipInputService<JarDriverEntry> newInput() throws IOException {
+        return driver.newZipInput(model, new FsInputSocketSource(
+                FsAccessOptions.NONE,
+                new DecoratingInputSocket<IoBuffer>(buffer.input()) {
+                    int channels;
+
+                    @Override
+                    public SeekableByteChannel channel(
+                            final OutputSocket<? extends Entry> peer)
+                    throws IOException {
+                        final SeekableByteChannel channel
+                                = socket().channel(peer);
+                        return 2 != ++channels ? channel
+                                : new ReadOnlyChannel(channel) {
+                                    @Override
+                                    public int read(ByteBuffer dst)
+                                    throws IOException {
+                                        await();
+                                        return channel.read(dst);
+                                    }
+                                };
+                    }
+                }));
+    }
+
+    private void await() throws InterruptedIOException {
+        try {
+            authentication.await();
+        } catch (final InterruptedException ex) {
+            throw (InterruptedIOException) new InterruptedIOException()
+                    .initCause(ex);
+        }
+    }
+
+    private static byte[] read(final InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int c; 0 <= (c = in.read()); )
+            out.write(c);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testClosingTheArchiveBeforeTheAuthenticationFails()
+    throws IOException {
+        final InputStream in;
+        try (final ZipInputService<JarDriverEntry> input = newInput()) {
+            // The authentication is still pending, so the CRC-32 value of
+            // the entry needs to get checked.
+            assertTrue(driver.check(input.entry("entry"), input));
+            in = input.input("entry").stream(null);
+            assertThat(read(in), equalTo(DATA));
+        }
+        try {
+            in.close();
+            fail("Expected RaesAuthenticationException!");
+        } catch (final RaesAuthenticationException expected) {
+        }
+    }
+
+    @Test
+    public void testCheckingIsRedundantAfterTheAuthentication()
+    throws IOException {
+        authentication.countDown();
+        try (final ZipInputService<JarDriverEntry> input = newInput()) {
+            // Closing the stream waits for the authentication.
+            try (final InputStream in = input.input("entry").stream(null)) {
+                assertThat(read(in), equalTo(DATA));
+            }
+            assertFalse(driver.check(input.entry("entry"), input));
+        }
+    }
+}
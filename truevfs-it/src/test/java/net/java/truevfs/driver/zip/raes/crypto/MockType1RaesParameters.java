@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.driver.zip.raes.crypto;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import net.java.truecommons.key.spec.common.AesKeyStrength;
+
+/**
+ * @author Christian Schlichtherle
+ */
+@NotThreadSafe
+public final class MockType1RaesParameters implements Type1RaesParameters {
+
+    private final MockType0RaesParameters param = new MockType0RaesParameters();
+
+    @Override
+    public char[] getPasswordForWriting() {
+        return param.getPasswordForWriting();
+    }
+
+    @Override
+    public char[] getPasswordForReading(boolean invalid) {
+        return param.getPasswordForReading(invalid);
+    }
+
+    @Override
+    public AesKeyStrength getKeyStrength() {
+        return param.getKeyStrength();
+    }
+
+    @Override
+    public void setKeyStrength(AesKeyStrength keyStrength) {
+        param.setKeyStrength(keyStrength);
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.driver.zip.raes.crypto;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import static java.nio.file.Files.*;
+import java.nio.file.Path;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import java.util.Arrays;
+import java.util.Random;
+import net.java.truecommons.io.AbstractSink;
+import net.java.truecommons.io.AbstractSource;
+import org.bouncycastle.crypto.params.KeyParameter;
+import static org.hamcrest.CoreMatchers.*;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Christian Schlichtherle
+ */
+public final class Type1RaesIT {
+
+    private static final int CHUNK_SIZE = 1 << Type1RaesOutputStream.CHUNK_SHIFT;
+
+    private final Random rnd = new Random();
+    private Path cipherFile;
+
+    @Before
+    public void setUp() throws IOException {
+        cipherFile = createTempFile("tzp", null);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        deleteIfExists(cipherFile);
+    }
+
+    private byte[] write(final int length) throws IOException {
+        final byte[] plain = new byte[length];
+        rnd.nextBytes(plain);
+        try (final RaesOutputStream out = RaesOutputStream.create(
+                new MockType1RaesParameters(),
+                new AbstractSink() {
+                    @Override
+                    public OutputStream stream() throws IOException {
+                        return newOutputStream(cipherFile);
+                    }
+                })) {
+            out.write(plain);
+        }
+        return plain;
+    }
+
+    private RaesReadOnlyChannel read() throws IOException {
+        return RaesReadOnlyChannel.create(
+                new MockType0RaesParameters(),
+                new AbstractSource() {
+                    @Override
+                    public SeekableByteChannel channel() throws IOException {
+                        return newByteChannel(cipherFile);
+                    }
+                });
+    }
+
+    private void flip(final long position) throws IOException {
+        try (final SeekableByteChannel channel
+                = newByteChannel(cipherFile, READ, WRITE)) {
+            final ByteBuffer buf = ByteBuffer.allocate(1);
+            channel.position(position).read(buf);
+            buf.put(0, (byte) ~buf.get(0)).rewind();
+            channel.position(position).write(buf);
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        for (final int length : new int[] {
+                0, 1, CHUNK_SIZE - 1, CHUNK_SIZE, CHUNK_SIZE + 1,
+                3 * CHUNK_SIZE + 4711 }) {
+            final byte[] plain = write(length);
+            try (final RaesReadOnlyChannel channel = read()) {
+                assertTrue(channel.isChunkAuthenticated());
+                assertThat(channel.size(), is((long) length));
+                final ByteBuffer buf = ByteBuffer.allocate(length);
+                while (buf.hasRemaining() && 0 <= channel.read(buf)) {
+                }
+                assertThat(buf.array(), equalTo(plain));
+                channel.authenticate();
+            }
+        }
+    }
+
+    @Test
+    public void testRandomAccess() throws IOException {
+        final byte[] plain = write(5 * CHUNK_SIZE + 123);
+        try (final RaesReadOnlyChannel channel = read()) {
+            for (int i = 0; i < 100; i++) {
+                final int position = rnd.nextInt(plain.length);
+                final int length = Math.min(
+                        rnd.nextInt(2 * CHUNK_SIZE), plain.length - position);
+                final ByteBuffer buf = ByteBuffer.allocate(length);
+                channel.position(position);
+                while (buf.hasRemaining() && 0 <= channel.read(buf)) {
+                }
+                for (int j = 0; j < length; j++)
+                    assertThat(buf.get(j), is(plain[position + j]));
+            }
+        }
+    }
+
+    @Test
+    public void testTamperedChunk() throws IOException {
+        final byte[] plain = write(3 * CHUNK_SIZE);
+        final int keyBytes;
+        try (final RaesReadOnlyChannel channel = read()) {
+            keyBytes = channel.getKeyStrength().getBytes();
+        }
+        flip(Constants.TYPE_1_HEADER_LEN_WO_SALT + keyBytes + CHUNK_SIZE + 42); // second chunk
+        try (final RaesReadOnlyChannel channel = read()) {
+            // The first chunk is still fine.
+            final ByteBuffer buf = ByteBuffer.allocate(CHUNK_SIZE);
+            while (buf.hasRemaining() && 0 <= channel.read(buf)) {
+            }
+            assertThat(buf.array(), equalTo(Arrays.copyOf(plain, CHUNK_SIZE)));
+            buf.clear();
+            try {
+                channel.read(buf);
+                fail();
+            } catch (final RaesAuthenticationException expected) {
+            }
+            // The third chunk is still fine.
+            buf.clear();
+            channel.position(2 * CHUNK_SIZE).read(buf);
+            try {
+                channel.authenticate();
+                fail();
+            } catch (final RaesAuthenticationException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void testTamperedTable() throws IOException {
+        write(2 * CHUNK_SIZE);
+        flip(size(cipherFile) - 32 - 1); // last chunk MAC
+        try {
+            read().close();
+            fail();
+        } catch (final RaesAuthenticationException expected) {
+        }
+    }
+
+    @Test
+    public void testSeparateMacKeys() {
+        final KeyParameter param = new KeyParameter(new byte[32]);
+        final byte[] chunk = Type1RaesOutputStream.macParam(param,
+                Type1RaesOutputStream.CHUNK_MAC_LABEL).getKey();
+        final byte[] table = Type1RaesOutputStream.macParam(param,
+                Type1RaesOutputStream.TABLE_MAC_LABEL).getKey();
+        final byte[] klac = Type1RaesOutputStream.macParam(param,
+                Type1RaesOutputStream.KLAC_LABEL).getKey();
+        for (final byte[] key : new byte[][] { chunk, table, klac })
+            assertFalse(Arrays.equals(key, param.getKey()));
+        assertFalse(Arrays.equals(chunk, table));
+        assertFalse(Arrays.equals(chunk, klac));
+        assertFalse(Arrays.equals(table, klac));
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.driver.zip.raes.it;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Random;
+import net.java.truevfs.access.TFile;
+import net.java.truevfs.access.TFileInputStream;
+import net.java.truevfs.access.TFileOutputStream;
+import net.java.truevfs.access.it.TFileITSuite;
+import net.java.truevfs.driver.zip.raes.TestZipRaesDriver;
+import static org.junit.Assert.*;
+import org.junit.Ignore;
+import org.junit.Test;
+
+/**
+ * Tests the ZIP.RAES driver with authentication in the background.
+ *
+ * @author Christian Schlichtherle
+ */
+public final class ZipRaesBackgroundAuthenticationIT
+extends TFileITSuite<TestZipRaesDriver> {
+
+    @Override
+    protected String getExtensionList() {
+        return "tzp";
+    }
+
+    @Override
+    protected TestZipRaesDriver newArchiveDriver() {
+        return new TestZipRaesDriver(true);
+    }
+
+    @Test
+    public void testTampering() throws IOException {
+        final TFile archive = getArchive();
+        final TFile entry = new TFile(archive, "entry");
+        final byte[] data = new byte[10 * 1024];
+        new Random().nextBytes(data);
+        try (OutputStream out = new TFileOutputStream(entry)) {
+            out.write(data);
+        }
+        umount();
+
+        // Flip a byte in the middle of the entry data.
+        try (RandomAccessFile raf = new RandomAccessFile(archive, "rw")) {
+            raf.seek(5 * 1024);
+            final int b = raf.read();
+            raf.seek(5 * 1024);
+            raf.write(~b);
+        }
+
+        // Mounting doesn't wait for the authentication, so opening and
+        // reading the entry succeeds.
+        final InputStream in = new TFileInputStream(entry);
+        final byte[] buf = new byte[data.length];
+        while (0 <= in.read(buf)) {
+        }
+        try {
+            in.close();
+            fail("Expected IOException!");
+        } catch (final IOException expected) {
+        }
+        umount();
+    }
+
+    /**
+     * Skipped because appending to RAES encrypted ZIP files is not possible
+     * by design.
+     */
+    @Ignore
+    @Override
+    public void testGrowing() { }
+}
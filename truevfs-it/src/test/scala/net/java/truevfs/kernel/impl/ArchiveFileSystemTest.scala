@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.kernel.impl
+
+import java.net._
+
+import net.java.truecommons.cio.Entry.Type._
+import net.java.truecommons.cio.Entry.{Access, Size}
+import net.java.truecommons.cio.{Entry, _}
+import net.java.truecommons.shed.BitField
+import net.java.truevfs.kernel.impl.ArchiveFileSystemTest._
+import net.java.truevfs.kernel.spec.FsAccessOptions._
+import net.java.truevfs.kernel.spec._
+import net.java.truevfs.kernel.spec.mock._
+import org.junit.runner._
+import org.scalatest.Matchers._
+import org.scalatest._
+import org.scalatest.junit._
+
+import scala.collection.JavaConverters._
+
+/** @author Christian Schlichtherle */
+@RunWith(classOf[JUnitRunner])
+class ArchiveFileSystemTest extends WordSpec {
+
+  "An archive file system mounted from an archive" when {
+    "not yet accessed" should {
+      "look up file entries without the write lock" in {
+        val fs = newFileSystem
+        fs.model.readLocked {
+          val cn = fs node (NONE, name("a/b/c"))
+          cn should not be None
+          cn.get isType FILE should be (true)
+          fs node (NONE, name("d")) should not be None
+        }
+      }
+
+      "look up missing entries without the write lock" in {
+        val fs = newFileSystem
+        fs.model.readLocked {
+          fs node (NONE, name("x")) should be (None)
+          fs node (NONE, name("a/x")) should be (None)
+          intercept[java.nio.file.NoSuchFileException] {
+            fs checkAccess (NONE, name("x"), NO_ACCESS)
+          }
+        }
+      }
+
+      "check access to implied directories without the write lock" in {
+        val fs = newFileSystem
+        fs.model.readLocked {
+          fs checkAccess (NONE, name("a/b"), NO_ACCESS)
+        }
+      }
+
+      "require the write lock to look up a directory" in {
+        val fs = newFileSystem
+        fs.model.readLocked {
+          intercept[NeedsWriteLockException] { fs node (NONE, name("a")) }
+          intercept[NeedsWriteLockException] { fs node (NONE, FsNodeName.ROOT) }
+        }
+      }
+    }
+
+    "accessed with the write lock" should {
+      "link the members of all directories" in {
+        val fs = newFileSystem
+        fs.model.writeLocked {
+          members(fs, FsNodeName.ROOT) should be (Set("a", "d"))
+          members(fs, name("a")) should be (Set("b"))
+          members(fs, name("a/b")) should be (Set("c"))
+          fs node (NONE, name("a/b")) map (_ isType DIRECTORY) should be (Some(true))
+          fs.size should be (5)
+        }
+      }
+    }
+
+    "not modified" should {
+      "share immutable snapshots of its nodes" in {
+        val fs = newFileSystem
+        fs.model.writeLocked {
+          for (path <- Seq("", "a", "a/b", "a/b/c", "d")) {
+            val cn = (fs node (NONE, name(path))).get
+            (fs node (NONE, name(path))).get should be theSameInstanceAs cn
+            intercept[UnsupportedOperationException] { cn setKey FILE }
+            intercept[UnsupportedOperationException] { cn put (FILE, new E(path, FILE)) }
+            if (cn isType DIRECTORY)
+              intercept[UnsupportedOperationException] { cn.getMembers add "x" }
+          }
+        }
+      }
+    }
+
+    "modified" should {
+      "return new mutable clones of its nodes" in {
+        val fs = newFileSystem
+        fs.model.writeLocked {
+          val snapshot = (fs node (NONE, name("d"))).get
+          fs setTime (NONE, name("d"), BitField.of(Access.WRITE), 1000L) should be (true)
+          val cn = (fs node (NONE, name("d"))).get
+          cn should not be theSameInstanceAs (snapshot)
+          (fs node (NONE, name("d"))).get should not be theSameInstanceAs (cn)
+          cn getTime Access.WRITE should be (1000L)
+          snapshot getTime Access.WRITE should not be (1000L)
+          cn setKey FILE
+        }
+      }
+    }
+  }
+
+  "An archive file system mounted from placeholder entries" when {
+    "adopting the entries of an archive" should {
+      "replace the placeholders if the entries match their templates" in {
+        val (fs, placeholders) = newPlaceholderFileSystem
+        fs.model.writeLocked {
+          val d = entry("d", 3, 1000)
+          fs adopt (container(Seq(entry("a/b/c", 3, 1000), d)), placeholders) should be (true)
+          placeholders should be ('empty)
+          (fs.iterator find (_.getName == "d")).get getEntry () should be theSameInstanceAs d
+        }
+      }
+
+      "reject the entries if their names don't match" in {
+        val (fs, placeholders) = newPlaceholderFileSystem
+        fs.model.writeLocked {
+          fs adopt (container(Seq(entry("a/b/c", 3, 1000), entry("e", 3, 1000))), placeholders) should be (false)
+          fs adopt (container(Seq(entry("a/b/c", 3, 1000))), placeholders) should be (false)
+          placeholders.size should be (2)
+        }
+      }
+
+      "reject the entries if their sizes or times don't match" in {
+        val (fs, placeholders) = newPlaceholderFileSystem
+        fs.model.writeLocked {
+          fs adopt (container(Seq(entry("a/b/c", 3, 1000), entry("d", 4, 1000))), placeholders) should be (false)
+          fs adopt (container(Seq(entry("a/b/c", 3, 1000), entry("d", 3, 2000))), placeholders) should be (false)
+          placeholders.size should be (2)
+        }
+      }
+    }
+  }
+}
+
+private object ArchiveFileSystemTest {
+
+  type E = MockArchiveDriverEntry
+
+  private val NO_ACCESS = BitField.noneOf(classOf[Access])
+
+  def name(path: String) = FsNodeName create URI.create(path)
+
+  def members(fs: ArchiveFileSystem[E], name: FsNodeName) =
+    (fs node (NONE, name)).get.getMembers.asScala.toSet
+
+  /** Returns a new file system with the entries `a/b/c` and `d`, so that the
+    * directories `a` and `a/b` are only implied by their members.
+    */
+  def newFileSystem =
+    ArchiveFileSystem(newModel, container(Seq(new E("a/b/c", FILE), new E("d", FILE))), new E("", DIRECTORY), None)
+
+  /** Returns a new file system with the placeholder entries `a/b/c` and `d`
+    * and the identity map of these placeholders to their templates.
+    */
+  def newPlaceholderFileSystem = {
+    val placeholders = new java.util.IdentityHashMap[E, Entry]
+    for (template <- Seq(entry("a/b/c", 3, 1000), entry("d", 3, 1000)))
+      placeholders put (new E(template.getName, FILE, template), template)
+    val fs = ArchiveFileSystem(newModel, container(placeholders.keySet.asScala.toSeq), new E("", DIRECTORY), None)
+    (fs, placeholders)
+  }
+
+  def newModel = {
+    val parent = new DefaultModel(FsMountPoint create URI.create("file:/"), null)
+    new ArchiveModel[E](new MockArchiveDriver,
+      new DefaultModel(FsMountPoint create URI.create("mok:file:/archive.mok!/"), parent)) {
+      override def touch(options: AccessOptions) { }
+    }
+  }
+
+  def entry(name: String, size: Long, time: Long) = {
+    val entry = new E(name, FILE)
+    entry setSize (Size.DATA, size)
+    entry setTime (Access.WRITE, time)
+    entry
+  }
+
+  def container(entries: Seq[E]) = new Container[E] {
+    override def size = entries.size
+    override def iterator = entries.iterator.asJava
+    override def entry(name: String) = entries find (_.getName == name) orNull
+    override def close() { }
+  }
+}
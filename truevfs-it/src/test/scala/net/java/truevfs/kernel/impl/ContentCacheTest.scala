@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.kernel.impl
+
+import java.io._
+import java.lang.management._
+import java.nio.file._
+
+import net.java.truevfs.access._
+import net.java.truevfs.kernel.impl.ContentCacheTest._
+import net.java.truevfs.kernel.impl.ZipFixture._
+import org.junit.runner._
+import org.scalatest.Matchers._
+import org.scalatest._
+import org.scalatest.junit._
+
+/** @author Christian Schlichtherle */
+@RunWith(classOf[JUnitRunner])
+class ContentCacheTest extends WordSpec {
+
+  "The content cache" when {
+    "reading an entry for the first time" should {
+      "miss" in {
+        withContentCache { dir =>
+          val archive = new TFile(dir, "a.zip")
+          write(new TFile(archive, "x"), "foo")
+          TVFS umount archive
+          val misses = ContentCache.misses
+          read(new TFile(archive, "x")) should be ("foo")
+          ContentCache.misses should be (misses + 1)
+        }
+      }
+    }
+
+    "reading an unchanged entry again" should {
+      "hit, even after a remount" in {
+        withContentCache { dir =>
+          val archive = new TFile(dir, "a.zip")
+          write(new TFile(archive, "x"), "foo")
+          TVFS umount archive
+          read(new TFile(archive, "x")) should be ("foo")
+          val hits = ContentCache.hits
+          read(new TFile(archive, "x")) should be ("foo")
+          TVFS umount archive
+          read(new TFile(archive, "x")) should be ("foo")
+          ContentCache.hits should be (hits + 2)
+        }
+      }
+    }
+
+    "an entry gets written" should {
+      "invalidate its record" in {
+        withContentCache { dir =>
+          val archive = new TFile(dir, "a.zip")
+          write(new TFile(archive, "x"), "foo")
+          TVFS umount archive
+          read(new TFile(archive, "x")) should be ("foo")
+          write(new TFile(archive, "x"), "bar")
+          read(new TFile(archive, "x")) should be ("bar")
+          TVFS umount archive
+          read(new TFile(archive, "x")) should be ("bar")
+        }
+      }
+    }
+
+    "a third party replaces an entry with the same sizes and time" should {
+      "invalidate its record" in {
+        withContentCache { dir =>
+          val archive = new TFile(dir, "a.zip")
+          val other = new TFile(dir, "b.zip")
+          for ((file, content) <- Seq(archive -> "foo", other -> "bar")) {
+            val entry = new TFile(file, "x")
+            write(entry, content)
+            entry setLastModified 1000000000000L
+          }
+          TVFS umount ()
+          read(new TFile(archive, "x")) should be ("foo")
+          TVFS umount archive
+          val file = new File(dir, "a.zip").toPath
+          Files size file should be (Files size new File(dir, "b.zip").toPath)
+          Files copy (new File(dir, "b.zip").toPath, file, StandardCopyOption.REPLACE_EXISTING)
+
+          read(new TFile(archive, "x")) should be ("bar")
+        }
+      }
+    }
+
+    "loaded" should {
+      "publish its statistics with the platform MBean server" in {
+        ContentCache.hits // initialize
+        val hits = ManagementFactory.getPlatformMBeanServer getAttribute (
+          CacheStatisticsMXBean name "ContentCache", "Hits")
+        hits.asInstanceOf[Long] should be (ContentCache.hits)
+      }
+    }
+  }
+}
+
+private object ContentCacheTest {
+
+  /** Runs the given function with the content cache enabled. */
+  def withContentCache(fun: File => Unit) {
+    val maximumBytes = ContentCache.maximumBytes
+    ContentCache.maximumBytes = 1024 * 1024
+    try {
+      withZipDriver { (dir, _) => fun(dir) }
+    } finally {
+      ContentCache.maximumBytes = maximumBytes
+    }
+  }
+}
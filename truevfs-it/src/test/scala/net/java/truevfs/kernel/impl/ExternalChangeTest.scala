@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.kernel.impl
+
+import java.io._
+import java.nio.file._
+import java.nio.file.attribute._
+
+import net.java.truevfs.access._
+import net.java.truevfs.kernel.impl.ExternalChangeTest._
+import net.java.truevfs.kernel.impl.ZipFixture._
+import org.junit.runner._
+import org.scalatest.Matchers._
+import org.scalatest._
+import org.scalatest.junit._
+
+/** Tests the detection of changes to an archive file by a third party.
+  *
+  * @author Christian Schlichtherle
+  */
+@RunWith(classOf[JUnitRunner])
+class ExternalChangeTest extends WordSpec {
+
+  "A mounted archive file" when {
+    "not changed by a third party" should {
+      "not get mounted again" in {
+        withChangeDetection { (dir, driver) =>
+          val archive = new TFile(dir, "a.zip")
+          write(new TFile(archive, "x"), "foo")
+          TVFS umount archive
+          driver.inputs set 0
+          read(new TFile(archive, "x")) should be ("foo")
+          read(new TFile(archive, "x")) should be ("foo")
+          new TFile(archive, "x").exists should be (true)
+          driver.inputs.get should be (1)
+        }
+      }
+    }
+
+    "replaced by a third party" should {
+      "get mounted again" in {
+        withChangeDetection { (dir, driver) =>
+          val archive = new TFile(dir, "a.zip")
+          write(new TFile(archive, "x"), "foo")
+          write(new TFile(new TFile(dir, "b.zip"), "y"), "bar!")
+          TVFS umount ()
+          read(new TFile(archive, "x")) should be ("foo")
+          replace(dir, "a.zip", "b.zip", 0)
+
+          new TFile(archive, "x").exists should be (false)
+          read(new TFile(archive, "y")) should be ("bar!")
+        }
+      }
+    }
+
+    "replaced by a third party with a file of the same size" should {
+      "get mounted again if the last modification time has changed" in {
+        withChangeDetection { (dir, driver) =>
+          val archive = new TFile(dir, "a.zip")
+          write(new TFile(archive, "x"), "foo")
+          write(new TFile(new TFile(dir, "b.zip"), "x"), "bar")
+          TVFS umount ()
+          read(new TFile(archive, "x")) should be ("foo")
+          Files size new File(dir, "a.zip").toPath should be (Files size new File(dir, "b.zip").toPath)
+          replace(dir, "a.zip", "b.zip", 10000)
+
+          read(new TFile(archive, "x")) should be ("bar")
+        }
+      }
+    }
+
+    "replaced by a third party while change detection is disabled" should {
+      "not get mounted again" in {
+        withChangeDetection { (dir, driver) =>
+          TargetArchiveController.checkIntervalMillis = -1
+          val archive = new TFile(dir, "a.zip")
+          write(new TFile(archive, "x"), "foo")
+          write(new TFile(new TFile(dir, "b.zip"), "y"), "bar!")
+          TVFS umount ()
+          read(new TFile(archive, "x")) should be ("foo")
+          replace(dir, "a.zip", "b.zip", 0)
+
+          new TFile(archive, "x").exists should be (true)
+        }
+      }
+    }
+  }
+}
+
+private object ExternalChangeTest {
+
+  /** Runs the given function with a counting ZIP driver and external change
+    * detection upon each access.
+    */
+  def withChangeDetection(fun: (File, CountingZipDriver) => Unit) {
+    val checkIntervalMillis = TargetArchiveController.checkIntervalMillis
+    TargetArchiveController.checkIntervalMillis = 0
+    try {
+      withZipDriver(fun)
+    } finally {
+      TargetArchiveController.checkIntervalMillis = checkIntervalMillis
+    }
+  }
+
+  /** Replaces the target file with a copy of the source file, like a third
+    * party would do, and shifts the last modification time of the target
+    * file by the given number of milliseconds.
+    */
+  def replace(dir: File, target: String, source: String, shiftMillis: Long) {
+    val path = new File(dir, target).toPath
+    val time = (Files getLastModifiedTime path).toMillis
+    Files copy (new File(dir, source).toPath, path, StandardCopyOption.REPLACE_EXISTING)
+    if (0 != shiftMillis)
+      Files setLastModifiedTime (path, FileTime fromMillis time + shiftMillis)
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.kernel.impl
+
+import java.io._
+import java.lang.management._
+import java.net._
+import java.nio.file._
+import java.security._
+import java.util.concurrent.atomic._
+import java.util.zip._
+
+import net.java.truecommons.cio.Entry.Access._
+import net.java.truecommons.cio.Entry.Size._
+import net.java.truecommons.cio.Entry.Type
+import net.java.truecommons.cio.Entry.Type._
+import net.java.truevfs.access._
+import net.java.truevfs.kernel.impl.FalsePositiveCacheTest._
+import net.java.truevfs.kernel.impl.ZipFixture._
+import net.java.truevfs.kernel.spec._
+import net.java.truevfs.kernel.spec.mock._
+import org.junit.runner._
+import org.scalatest.Matchers._
+import org.scalatest._
+import org.scalatest.junit._
+
+/** @author Christian Schlichtherle */
+@RunWith(classOf[JUnitRunner])
+class FalsePositiveCacheTest extends WordSpec {
+
+  "The false positive cache" when {
+    "a file has been rejected with a specific exception" should {
+      "return the cause until the file changes" in {
+        val mp = newMountPoint
+        val cause = new ZipException
+        FalsePositiveCache add (mp, node(FILE, 100, 1000), cause)
+        val hits = FalsePositiveCache.hits
+        FalsePositiveCache lookup (mp, node(FILE, 100, 1000)) should be (Some(cause))
+        FalsePositiveCache.hits should be (hits + 1)
+        FalsePositiveCache lookup (mp, node(FILE, 100, 2000)) should be (None)
+        FalsePositiveCache lookup (mp, node(FILE, 100, 1000)) should be (None)
+      }
+    }
+
+    "a file has been rejected with a possibly transient exception" should {
+      "not cache it" in {
+        for (cause <- Seq(
+          new IOException,
+          new AccessDeniedException("foo.zip"),
+          new InterruptedIOException,
+          new ConnectException,
+          new ZipException { initCause(new GeneralSecurityException) }
+        )) {
+          val mp = newMountPoint
+          FalsePositiveCache add (mp, node(FILE, 100, 1000), cause)
+          FalsePositiveCache lookup (mp, node(FILE, 100, 1000)) should be (None)
+        }
+      }
+    }
+
+    "loaded" should {
+      "publish its statistics with the platform MBean server" in {
+        val mp = newMountPoint
+        FalsePositiveCache lookup (mp, node(FILE, 100, 1000))
+        val misses = ManagementFactory.getPlatformMBeanServer getAttribute (
+          CacheStatisticsMXBean name "FalsePositiveCache", "Misses")
+        misses.asInstanceOf[Long] should be > 0L
+      }
+    }
+  }
+
+  "A prospective archive file" when {
+    "mounting it fails with a specific exception" should {
+      "not get mounted again" in {
+        withZipDriver { (dir, driver) =>
+          Files write (new File(dir, "a.zip").toPath, "foo".getBytes("UTF-8"))
+          val archive = new TFile(dir, "a.zip")
+          val hits = FalsePositiveCache.hits
+          new TFile(archive, "x").exists should be (false)
+          TVFS umount archive
+          new TFile(archive, "x").exists should be (false)
+          driver.inputs.get should be (1)
+          FalsePositiveCache.hits should be > hits
+        }
+      }
+    }
+
+    "being a directory" should {
+      "not get mounted again" in {
+        withZipDriver { (dir, driver) =>
+          val file = new File(dir, "a.zip")
+          Files createDirectory file.toPath
+          try {
+            Files write (new File(file, "x").toPath, "foo".getBytes("UTF-8"))
+            val archive = new TFile(file)
+            new TFile(archive, "x").exists should be (true)
+            TVFS umount archive
+            read(new TFile(archive, "x")) should be ("foo")
+            driver.inputs.get should be (1)
+          } finally {
+            new File(file, "x") delete ()
+          }
+        }
+      }
+    }
+
+    "mounting it fails with a transient exception" should {
+      "get mounted again" in {
+        withZipDriver { (dir, driver) =>
+          val archive = new TFile(dir, "a.zip")
+          write(new TFile(archive, "x"), "foo")
+          TVFS umount archive
+          driver.failure = Some(() => new AccessDeniedException(archive.getPath))
+          new TFile(archive, "x").exists should be (false)
+          TVFS umount archive
+          new TFile(archive, "x").exists should be (true)
+          driver.inputs.get should be (2)
+        }
+      }
+    }
+
+    "written by the kernel" should {
+      "get removed from the cache" in {
+        withZipDriver { (dir, driver) =>
+          val archive = new TFile(dir, "a.zip")
+          val mp = new TFile(archive, "x").getNodePath.getMountPoint
+          FalsePositiveCache add (mp, node(FILE, 100, 1000), new ZipException)
+          write(new TFile(archive, "x"), "foo")
+          TVFS umount archive
+          FalsePositiveCache lookup (mp, node(FILE, 100, 1000)) should be (None)
+        }
+      }
+    }
+  }
+}
+
+private object FalsePositiveCacheTest {
+
+  private val count = new AtomicInteger
+
+  /** Returns a new mount point for each call so that the tests don't
+    * interfere via the global cache.
+    */
+  def newMountPoint = FsMountPoint create URI.create(
+    "mok:file:/false-positive-" + (count incrementAndGet ()) + ".mok!/")
+
+  def node(tµpe: Type, size: Long, time: Long) = {
+    val entry = new MockArchiveDriverEntry("", tµpe)
+    entry setSize (DATA, size)
+    entry setTime (WRITE, time)
+    val node = new FsCovariantNode[MockArchiveDriverEntry]("")
+    node put (tµpe, entry)
+    node
+  }
+}
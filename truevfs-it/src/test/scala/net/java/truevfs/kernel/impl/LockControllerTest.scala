@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.kernel.impl
+
+import java.io._
+import java.net._
+import java.util.concurrent._
+import java.util.concurrent.atomic._
+
+import net.java.truecommons.cio.Entry._
+import net.java.truecommons.cio.{Entry, _}
+import net.java.truecommons.shed.BitField
+import net.java.truecommons.shed.ConcurrencyUtils
+import net.java.truecommons.shed.ConcurrencyUtils.TaskFactory
+import net.java.truevfs.kernel.impl.LockControllerTest._
+import net.java.truevfs.kernel.spec.FsSyncOptions._
+import net.java.truevfs.kernel.spec._
+import net.java.truevfs.kernel.spec.mock._
+import org.junit.runner._
+import org.scalatest.Matchers._
+import org.scalatest._
+import org.scalatest.junit._
+
+/** @author Christian Schlichtherle */
+@RunWith(classOf[JUnitRunner])
+class LockControllerTest extends WordSpec {
+
+  "A lock controller" when {
+    "syncing sequentially" should {
+      "sync each time" in {
+        val controller = newController
+        controller sync SYNC
+        controller sync SYNC
+        controller.syncs.get should be (2)
+      }
+    }
+
+    "a sync fails" should {
+      "not share the outcome with subsequent requests" in {
+        val controller = newController
+        controller.onSync = { () =>
+          if (1 == controller.syncs.get) throw new IOException
+        }
+        intercept[IOException] { controller sync SYNC }
+        controller sync SYNC
+        controller.syncs.get should be (2)
+      }
+    }
+
+    "many threads request a sync while another sync is in progress" should {
+      "coalesce their requests into at most one follow-up sync" in {
+        val threads = 8
+        val controller = newController
+        val lock = controller.model.lock
+        controller.onSync = { () =>
+          // Hold the write lock until all other threads have drawn their
+          // tickets and are waiting for it.
+          if (1 == controller.syncs.get)
+            while (lock.getQueueLength < threads - 1) Thread sleep 1
+        }
+        runConcurrently(threads) { _ => controller sync SYNC }
+        controller.syncs.get should be <= 2
+      }
+    }
+  }
+}
+
+private object LockControllerTest {
+
+  type E = MockArchiveDriverEntry
+
+  def newController = {
+    val parent = new DefaultModel(FsMountPoint create URI.create("file:/"), null)
+    val model = new ArchiveModel[E](new MockArchiveDriver,
+      new DefaultModel(FsMountPoint create URI.create("mok:file:/archive.mok!/"), parent)) {
+      override def touch(options: AccessOptions) { }
+    }
+    new CountingController(model)
+      with ArchiveModelAspect[E]
+      with LockController[E]
+  }
+
+  def runConcurrently(numThreads: Int)(fun: Int => Unit) {
+    ConcurrencyUtils start (
+      numThreads,
+      new TaskFactory {
+        override def newTask(threadNum: Int) = new Callable[Unit] {
+          override def call() { fun(threadNum) }
+        }
+      }
+    ) join ()
+  }
+
+  /** Counts the sync requests which make it through to the archive file. */
+  class CountingController(override val model: ArchiveModel[E])
+  extends ArchiveController[E] {
+
+    val syncs = new AtomicInteger
+
+    @volatile var onSync: () => Unit = { () => }
+
+    override def node(options: AccessOptions, name: FsNodeName): Option[FsNode] = None
+    override def checkAccess(options: AccessOptions, name: FsNodeName, types: BitField[Access]) { }
+    override def setReadOnly(options: AccessOptions, name: FsNodeName) { }
+    override def setTime(options: AccessOptions, name: FsNodeName, times: Map[Access, Long]) = false
+    override def setTime(options: AccessOptions, name: FsNodeName, types: BitField[Access], value: Long) = false
+    override def input(options: AccessOptions, name: FsNodeName): AnyInputSocket = throw new UnsupportedOperationException
+    override def output(options: AccessOptions, name: FsNodeName, template: Option[Entry]): AnyOutputSocket = throw new UnsupportedOperationException
+    override def make(options: AccessOptions, name: FsNodeName, tµpe: Type, template: Option[Entry]) { }
+    override def unlink(options: AccessOptions, name: FsNodeName) { }
+
+    override def sync(options: SyncOptions) {
+      syncs incrementAndGet ()
+      onSync()
+    }
+  }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.kernel.impl
+
+import java.io._
+import java.net._
+import java.nio.file._
+
+import net.java.truecommons.cio.Entry.Access._
+import net.java.truecommons.cio.Entry.Size._
+import net.java.truecommons.cio.Entry.Type._
+import net.java.truecommons.cio.{Entry, _}
+import net.java.truevfs.access._
+import net.java.truevfs.kernel.impl.MountCacheTest._
+import net.java.truevfs.kernel.impl.ZipFixture._
+import net.java.truevfs.kernel.spec._
+import net.java.truevfs.kernel.spec.mock._
+import org.junit.runner._
+import org.scalatest.Matchers._
+import org.scalatest._
+import org.scalatest.junit._
+
+import scala.collection.JavaConverters._
+
+/** @author Christian Schlichtherle */
+@RunWith(classOf[JUnitRunner])
+class MountCacheTest extends WordSpec {
+
+  "A mount cache" when {
+    "loading a saved record" should {
+      "return the entry table if the archive file has not changed" in {
+        withTempDir { dir =>
+          val cache = new MountCache(dir, Long.MaxValue)
+          cache save (mountPoint("a"), Driver, node(100, 1000), archive("x", "y/z"))
+          val entries = (cache load (mountPoint("a"), Driver, node(100, 1000))).get
+          entries map (_.getName) should be (Seq("x", "y/z"))
+          entries.head getSize DATA should be (3)
+          entries.head.getType should be (FILE)
+        }
+      }
+
+      "return None if the archive file has changed" in {
+        withTempDir { dir =>
+          val cache = new MountCache(dir, Long.MaxValue)
+          cache save (mountPoint("a"), Driver, node(100, 1000), archive("x"))
+          cache load (mountPoint("a"), Driver, node(101, 1000)) should be (None)
+          cache load (mountPoint("a"), Driver, node(100, 1001)) should be (None)
+          cache load (mountPoint("b"), Driver, node(100, 1000)) should be (None)
+        }
+      }
+
+      "return None if the record has been removed" in {
+        withTempDir { dir =>
+          val cache = new MountCache(dir, Long.MaxValue)
+          cache save (mountPoint("a"), Driver, node(100, 1000), archive("x"))
+          cache remove mountPoint("a")
+          cache load (mountPoint("a"), Driver, node(100, 1000)) should be (None)
+        }
+      }
+    }
+
+    "exceeding its maximum size" should {
+      "evict the least recently used records" in {
+        val length = withTempDir { dir =>
+          new MountCache(dir, Long.MaxValue) save (mountPoint("a"), Driver, node(100, 1000), archive("x"))
+          dir.listFiles.head.length
+        }
+        withTempDir { dir =>
+          val cache = new MountCache(dir, 2 * length)
+          cache save (mountPoint("a"), Driver, node(100, 1000), archive("x"))
+          cache save (mountPoint("b"), Driver, node(100, 1000), archive("x"))
+          cache load (mountPoint("a"), Driver, node(100, 1000)) should not be None
+          cache save (mountPoint("c"), Driver, node(100, 1000), archive("x"))
+          dir.listFiles.length should be (2)
+          cache load (mountPoint("a"), Driver, node(100, 1000)) should not be None
+          cache load (mountPoint("b"), Driver, node(100, 1000)) should be (None)
+          cache load (mountPoint("c"), Driver, node(100, 1000)) should not be None
+        }
+      }
+
+      "account for removed records" in {
+        val length = withTempDir { dir =>
+          new MountCache(dir, Long.MaxValue) save (mountPoint("a"), Driver, node(100, 1000), archive("x"))
+          dir.listFiles.head.length
+        }
+        withTempDir { dir =>
+          val cache = new MountCache(dir, 2 * length)
+          cache save (mountPoint("a"), Driver, node(100, 1000), archive("x"))
+          cache save (mountPoint("b"), Driver, node(100, 1000), archive("x"))
+          cache remove mountPoint("b")
+          cache save (mountPoint("c"), Driver, node(100, 1000), archive("x"))
+          cache load (mountPoint("a"), Driver, node(100, 1000)) should not be None
+          cache load (mountPoint("c"), Driver, node(100, 1000)) should not be None
+        }
+      }
+    }
+  }
+
+  "An archive file" when {
+    "mounted from the mount cache" should {
+      "not get read until the contents of an entry get accessed" in {
+        withMountCache { (dir, driver) =>
+          val archive = new TFile(dir, "a.zip")
+          write(new TFile(archive, "x"), "foo")
+          TVFS umount archive
+          new TFile(archive, "x").exists should be (true) // saves the record
+          TVFS umount archive
+          driver.inputs set 0
+
+          new TFile(archive, "x").exists should be (true)
+          new TFile(archive, "y").exists should be (false)
+          driver.inputs.get should be (0)
+          read(new TFile(archive, "x")) should be ("foo")
+          driver.inputs.get should be (1)
+          TVFS umount archive
+        }
+      }
+    }
+
+    "modified by a third party without changing its size or time" should {
+      "get mounted again from the archive file" in {
+        withMountCache { (dir, driver) =>
+          val archive = new TFile(dir, "a.zip")
+          val other = new TFile(dir, "b.zip")
+          write(new TFile(archive, "x"), "foo")
+          write(new TFile(other, "y"), "foo")
+          TVFS umount ()
+          new TFile(archive, "x").exists should be (true) // saves the record
+          TVFS umount archive
+          val file = new File(dir, "a.zip").toPath
+          val time = Files getLastModifiedTime file
+          Files size file should be (Files size new File(dir, "b.zip").toPath)
+          Files copy (new File(dir, "b.zip").toPath, file, StandardCopyOption.REPLACE_EXISTING)
+          Files setLastModifiedTime (file, time)
+
+          new TFile(archive, "x").exists should be (true) // stale record
+          intercept[NoSuchFileException] { read(new TFile(archive, "x")) }
+          new TFile(archive, "x").exists should be (false)
+          read(new TFile(archive, "y")) should be ("foo")
+          TVFS umount archive
+        }
+      }
+    }
+  }
+}
+
+private object MountCacheTest {
+
+  type E = MockArchiveDriverEntry
+
+  val Driver = new MockArchiveDriver
+
+  def mountPoint(name: String) =
+    FsMountPoint create URI.create("mok:file:/" + name + ".mok!/")
+
+  def node(size: Long, time: Long) = {
+    val entry = new E("", FILE)
+    entry setSize (DATA, size)
+    entry setTime (WRITE, time)
+    val node = new FsCovariantNode[E]("")
+    node put (FILE, entry)
+    node
+  }
+
+  def archive(names: String*) = {
+    val entries = names map { name =>
+      val entry = new E(name, FILE)
+      entry setSize (DATA, 3)
+      entry setTime (WRITE, 1000)
+      entry
+    }
+    new Container[E] {
+      override def size = entries.size
+      override def iterator = entries.iterator.asJava
+      override def entry(name: String) = entries find (_.getName == name) orNull
+      override def close() { }
+    }
+  }
+
+  /** Runs the given function with the mount cache enabled and a counting ZIP
+    * driver for the extension `zip`.
+    */
+  def withMountCache(fun: (File, CountingZipDriver) => Unit) {
+    withTempDir { cacheDir =>
+      val instance = MountCache.instance
+      MountCache.instance = Some(new MountCache(cacheDir, Long.MaxValue))
+      try {
+        withZipDriver(fun)
+      } finally {
+        MountCache.instance = instance
+      }
+    }
+  }
+}
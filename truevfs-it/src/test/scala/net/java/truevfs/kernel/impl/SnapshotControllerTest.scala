@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.kernel.impl
+
+import java.io._
+import java.net._
+import java.nio.file._
+
+import net.java.truecommons.cio.Entry.Access._
+import net.java.truecommons.cio.Entry.Type._
+import net.java.truecommons.cio.Entry._
+import net.java.truecommons.services._
+import net.java.truecommons.shed.BitField
+import net.java.truevfs.access._
+import net.java.truevfs.driver.file._
+import net.java.truevfs.driver.sfx._
+import net.java.truevfs.kernel.impl.SnapshotControllerTest._
+import net.java.truevfs.kernel.impl.ZipFixture._
+import net.java.truevfs.kernel.spec.FsAccessOptions._
+import net.java.truevfs.kernel.spec.FsSyncOptions.{SYNC, UMOUNT}
+import net.java.truevfs.kernel.spec._
+import org.junit.runner._
+import org.scalatest.Matchers._
+import org.scalatest._
+import org.scalatest.junit._
+
+import scala.collection.JavaConverters._
+
+/** @author Christian Schlichtherle */
+@RunWith(classOf[JUnitRunner])
+class SnapshotControllerTest extends WordSpec {
+
+  "The read-only SFX driver" should {
+    "declare its archive files to be immutable" in {
+      new ReadOnlySfxDriver().isImmutable should be (true)
+    }
+  }
+
+  "A snapshot controller" when {
+    "reading an SFX file" should {
+      "look up and read its entries" in {
+        withSfxController { controller =>
+          controller node (NONE, name("x")) isType FILE should be (true)
+          controller node (NONE, name("y")) should be (null)
+          controller checkAccess (NONE, name("x"), BitField.of(READ))
+          val in = controller input (NONE, name("x")) stream null
+          try {
+            scala.io.Source.fromInputStream(in, "UTF-8").mkString should be ("foo")
+          } finally {
+            in close ()
+          }
+        }
+      }
+    }
+
+    "modifying an SFX file" should {
+      "consistently fail with an FsReadOnlyFileSystemException" in {
+        withSfxController { controller =>
+          val x = name("x")
+          intercept[FsReadOnlyFileSystemException] {
+            controller checkAccess (NONE, x, BitField.of(WRITE))
+          }
+          intercept[FsReadOnlyFileSystemException] {
+            controller setReadOnly (NONE, x)
+          }
+          intercept[FsReadOnlyFileSystemException] {
+            controller setTime (NONE, x, BitField.of(WRITE), 0)
+          }
+          intercept[FsReadOnlyFileSystemException] {
+            controller setTime (NONE, x, Map(WRITE -> java.lang.Long.valueOf(0)).asJava)
+          }
+          intercept[FsReadOnlyFileSystemException] {
+            controller output (NONE, x, null) stream null
+          }
+          intercept[FsReadOnlyFileSystemException] {
+            controller make (NONE, name("y"), FILE, null)
+          }
+          intercept[FsReadOnlyFileSystemException] {
+            controller unlink (NONE, x)
+          }
+          controller node (NONE, x) should not be (null)
+        }
+      }
+    }
+
+    "syncing with an open stream" should {
+      "fail unless forced to close it" in {
+        withSfxController { controller =>
+          val in = controller input (NONE, name("x")) stream null
+          try {
+            intercept[FsSyncException] { controller sync SYNC }
+            controller node (NONE, name("x")) should not be (null)
+          } finally {
+            in close ()
+          }
+        }
+      }
+    }
+  }
+}
+
+private object SnapshotControllerTest {
+
+  def name(path: String) = FsNodeName create URI.create(path)
+
+  /** Runs the given function with a controller for an SFX file with the
+    * entry `x`.
+    */
+  def withSfxController(fun: FsController => Unit) {
+    withZipDriver { (dir, _) =>
+      val zip = new TFile(dir, "a.zip")
+      write(new TFile(zip, "x"), "foo")
+      TVFS umount zip
+      val sfx = new File(dir, "a.exe")
+      val out = new FileOutputStream(sfx)
+      try {
+        out write "MZ - some executable code".getBytes("US-ASCII")
+        Files copy (new File(dir, "a.zip").toPath, out)
+      } finally {
+        out close ()
+      }
+      val drivers = new FsSimpleCompositeDriver(new Container[java.util.Map[FsScheme, FsDriver]] {
+        override def get = Map[FsScheme, FsDriver](
+          FsScheme.create("file") -> new FileDriver,
+          FsScheme.create("exe") -> new ReadOnlySfxDriver
+        ).asJava
+      })
+      val controller = new DefaultManager controller (drivers,
+        FsMountPoint create URI.create("exe:" + sfx.toURI + "!/"))
+      try {
+        fun(controller)
+      } finally {
+        controller sync UMOUNT
+      }
+    }
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.kernel.impl
+
+import net.java.truevfs.access._
+import net.java.truevfs.kernel.impl.SnapshotOptionTest._
+import net.java.truevfs.kernel.impl.ZipFixture._
+import net.java.truevfs.kernel.spec.FsAccessOption._
+import org.junit.runner._
+import org.scalatest.Matchers._
+import org.scalatest._
+import org.scalatest.junit._
+
+/** Tests the semantics of the access option `SNAPSHOT`.
+  *
+  * @author Christian Schlichtherle
+  */
+@RunWith(classOf[JUnitRunner])
+class SnapshotOptionTest extends WordSpec {
+
+  "Reading an archive file with the access option SNAPSHOT" when {
+    "there are no pending changes" should {
+      "return the committed entries" in {
+        withCommittedArchive { archive =>
+          snapshot { read(new TFile(archive, "x")) } should be ("foo")
+          snapshot { new TFile(archive, "y").exists } should be (false)
+        }
+      }
+    }
+
+    "a writer has pending changes" should {
+      "return the last committed version of a modified entry" in {
+        withCommittedArchive { archive =>
+          write(new TFile(archive, "x"), "bar")
+          snapshot { read(new TFile(archive, "x")) } should be ("foo")
+          read(new TFile(archive, "x")) should be ("bar")
+        }
+      }
+
+      "not show a new entry" in {
+        withCommittedArchive { archive =>
+          write(new TFile(archive, "y"), "bar")
+          snapshot { new TFile(archive, "y").exists } should be (false)
+          new TFile(archive, "y").exists should be (true)
+        }
+      }
+
+      "still show a deleted entry" in {
+        withCommittedArchive { archive =>
+          new TFile(archive, "x").rm()
+          snapshot { read(new TFile(archive, "x")) } should be ("foo")
+          new TFile(archive, "x").exists should be (false)
+        }
+      }
+    }
+
+    "the pending changes have been committed" should {
+      "return the new version" in {
+        withCommittedArchive { archive =>
+          write(new TFile(archive, "x"), "bar")
+          TVFS umount archive
+          snapshot { read(new TFile(archive, "x")) } should be ("bar")
+        }
+      }
+    }
+  }
+}
+
+private object SnapshotOptionTest {
+
+  /** Runs the given function with an archive file which contains the
+    * committed entry `x` with the content `foo`.
+    */
+  def withCommittedArchive(fun: TFile => Unit) {
+    withZipDriver { (dir, _) =>
+      val archive = new TFile(dir, "a.zip")
+      write(new TFile(archive, "x"), "foo")
+      TVFS umount archive
+      fun(archive)
+    }
+  }
+
+  /** Applies the given operation with the access preference `SNAPSHOT`. */
+  def snapshot[A](operation: => A): A = {
+    val config = TConfig.open()
+    try {
+      config setAccessPreference (SNAPSHOT, true)
+      operation
+    } finally {
+      config close ()
+    }
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.kernel.impl
+
+import java.io._
+import java.nio.file._
+import java.util.concurrent.atomic._
+
+import net.java.truecommons.shed.BitField
+import net.java.truevfs.access._
+import net.java.truevfs.comp.zipdriver._
+import net.java.truevfs.kernel.spec._
+
+/** Provides a counting ZIP driver and some utilities for tests which access
+  * ZIP files in a temporary directory.
+  *
+  * @author Christian Schlichtherle
+  */
+private object ZipFixture {
+
+  def withTempDir[A](fun: File => A): A = {
+    val dir = Files.createTempDirectory("truevfs").toFile
+    try {
+      fun(dir)
+    } finally {
+      for (file <- Option(dir.listFiles) getOrElse Array()) file delete ()
+      dir delete ()
+    }
+  }
+
+  /** Runs the given function with a temporary directory and a counting ZIP
+    * driver for the extension `zip`.
+    */
+  def withZipDriver(fun: (File, CountingZipDriver) => Unit) {
+    withTempDir { dir =>
+      val driver = new CountingZipDriver
+      val config = TConfig.open()
+      try {
+        config setArchiveDetector new TArchiveDetector("zip", driver)
+        try {
+          fun(dir, driver)
+        } finally {
+          TVFS umount ()
+        }
+      } finally {
+        config close ()
+      }
+    }
+  }
+
+  def write(file: TFile, content: String) {
+    val out = new TFileOutputStream(file)
+    try {
+      out write (content getBytes "UTF-8")
+    } finally {
+      out close ()
+    }
+  }
+
+  def read(file: TFile) = {
+    val in = new TFileInputStream(file)
+    try {
+      scala.io.Source.fromInputStream(in, "UTF-8").mkString
+    } finally {
+      in close ()
+    }
+  }
+
+  /** Counts the input services which get created for reading archive files.
+    * If `failure` is set, then the next attempt fails with the exception
+    * returned from it instead.
+    */
+  final class CountingZipDriver extends ZipDriver {
+
+    val inputs = new AtomicInteger
+
+    @volatile var failure: Option[() => IOException] = None
+
+    override def newInput(
+      model: FsModel,
+      options: BitField[FsAccessOption],
+      controller: FsController,
+      name: FsNodeName
+    ) = {
+      inputs incrementAndGet ()
+      failure foreach { f => failure = None; throw f() }
+      super.newInput(model, options, controller, name)
+    }
+  }
+}
@@ -36,6 +36,14 @@ private trait ArchiveController[E <: FsArchiveEntry] {
   def unlink(options: AccessOptions, name: FsNodeName)
   def sync(options: SyncOptions)
 
+  /** Invalidates any data which has been cached for the given entries
+    * because the target archive file has been changed by a third party.
+    * The default implementation does nothing.
+    *
+    * @param paths the normalized paths of the changed entries.
+    */
+  def invalidate(paths: collection.Set[String]) { }
+
   /** Two archive controllers are considered equal if and only if they are
     * identical.
     *
@@ -40,6 +40,34 @@ extends ArchiveModelAspect[E] with Iterable[FsCovariantNode[E]] { fs =>
   /** Whether or not this file system has been modified. */
   private var touched: Boolean = _
 
+  /** The paths of the entries loaded from the source archive which have not
+    * yet been linked into their parent directories.
+    */
+  private var unlinked = List[String]()
+
+  /** The paths of all directories which are implied by the unlinked paths
+    * or `null` if all paths have been linked.
+    */
+  private var implied: collection.mutable.HashSet[String] = _
+
+  /** The shared snapshots of the nodes which have been looked up or `null`
+    * once this file system has been modified.
+    * This map gets populated by concurrent readers, so it needs to be
+    * thread-safe.
+    */
+  private var snapshots = new java.util.concurrent.ConcurrentHashMap[String, Some[FsCovariantNode[E]]]
+
+  /** The committed versions of the nodes which have been modified since this
+    * file system has been mounted, mapped from their paths, or `null` if this
+    * file system has not been mounted from an archive.
+    * A value of `None` means that the node did not exist in the archive.
+    * The nodes which are not contained in this map are still in their
+    * committed version.
+    * This map is read by the readers with the access option `SNAPSHOT`, so
+    * it's guarded by the read/write lock of the archive model.
+    */
+  private var committed = new java.util.HashMap[String, Option[FsCovariantNode[E]]]
+
   def this(model: ArchiveModel[E]) {
     this(model, new EntryTable[E](OVERHEAD_SIZE))
     val root = newEntry(RootPath, DIRECTORY, None)
@@ -48,6 +76,8 @@ extends ArchiveModelAspect[E] with Iterable[FsCovariantNode[E]] { fs =>
       root.setTime(access, time)
     master.add(RootPath, root)
     touched = true
+    snapshots = null
+    committed = null
   }
 
   def this(model: ArchiveModel[E], archive: Container[E], rootTemplate: Entry) {
@@ -55,29 +85,95 @@ extends ArchiveModelAspect[E] with Iterable[FsCovariantNode[E]] { fs =>
     this(model, new EntryTable[E](archive.size + OVERHEAD_SIZE))
     // Load entries from source archive.
     var paths = List[String]()
+    val implied = new collection.mutable.HashSet[String]
     val normalizer = new PathNormalizer(SEPARATOR_CHAR)
     for (ae <- archive) {
-      val path = cutTrailingSeparators(
-        normalizer.normalize(
-          ae.getName.replace('\\', SEPARATOR_CHAR)), // fix illegal Windoze file name separators
-        SEPARATOR_CHAR)
+      val path = normalizedPath(ae.getName, normalizer)
       master.add(path, ae)
-      if (isValidEntryName(path))
+      if (isValidEntryName(path)) {
         paths ::= path
+        var pp = parentPath(path)
+        while ((implied add pp) && !isRoot(pp))
+          pp = parentPath(pp)
+      }
     }
     // Setup root file system entry, potentially replacing its previous
     // mapping from the source archive.
     master.add(RootPath, newEntry(RootPath, DIRECTORY, Some(rootTemplate)))
-    // Now perform a file system check to create missing parent directories
-    // and populate directories with their members - this must be done
-    // separately!
-    for (path <- paths)
-      fix(path)
+    // Defer the file system check which creates missing parent directories
+    // and populates directories with their members until a directory gets
+    // accessed, so that looking up a file entry by its name doesn't need to
+    // pay for it.
+    this.unlinked = paths
+    this.implied = implied
   }
 
+  /** Performs a file system check to create missing parent directories and
+    * populate directories with their members unless this has been done
+    * before.
+    * This modifies the master entry table, so it requires the write lock.
+    *
+    * @throws NeedsWriteLockException if the file system check has not been
+    *         done before and the write lock is not held by the current
+    *         thread.
+    */
+  def link() {
+    if (null ne implied) {
+      checkWriteLockedByCurrentThread()
+      for (path <- unlinked)
+        fix(path)
+      unlinked = Nil
+      implied = null
+    }
+  }
+
+  /** Returns `true` if and only if the given path is a directory which is
+    * implied by an unlinked path.
+    */
+  private def isImplied(path: String) = (null ne implied) && (implied contains path)
+
   private def fullPath(name: FsNodeName) = path(name).toString
 
-  /** Called from a constructor in order to fix the parent directories of the
+  /** Replaces the given placeholder entries in this file system with the
+    * equally named and typed entries from the given archive.
+    * This is used to bind a file system which has been mounted from a
+    * [[net.java.truevfs.kernel.impl.MountCache]] to the archive file once
+    * it gets accessed.
+    * Either all placeholder entries get replaced or none.
+    *
+    * @param  archive the archive entry container with the entries to adopt.
+    * @param  placeholders the identity map of the placeholder entries to the
+    *         templates which they have been created from.
+    *         The entries from the given archive must have the same sizes and
+    *         times than these templates.
+    * @return `true` if and only if each placeholder entry has been replaced
+    *         by exactly one matching entry from the given archive.
+    */
+  def adopt(archive: Container[E], placeholders: java.util.Map[E, _ <: Entry]): Boolean = {
+    val normalizer = new PathNormalizer(SEPARATOR_CHAR)
+    var adoptions = List[(FsCovariantNode[E], E)]()
+    var count = 0
+    for (ae <- archive) {
+      val path = normalizedPath(ae.getName, normalizer)
+      if (!isRoot(path)) {
+        master.get(path) match {
+          case Some(cn) if matches(placeholders get (cn get ae.getType), ae) =>
+            adoptions ::= cn -> ae
+            count += 1
+          case _ =>
+            return false
+        }
+      }
+    }
+    if (count != placeholders.size) return false
+    if (null ne snapshots) snapshots clear ()
+    for ((cn, ae) <- adoptions)
+      if (null eq (placeholders remove (cn put (ae.getType, ae))))
+        return false // redundant entry - the file system is unusable now!
+    true
+  }
+
+  /** Called from `link` in order to fix the parent directories of the
     * file system entry identified by `name`, ensuring that all parent
     * directories of the file system entry exist and that they contain the
     * respective member entry.
@@ -100,34 +196,130 @@ extends ArchiveModelAspect[E] with Iterable[FsCovariantNode[E]] { fs =>
         case Some(x) if x.isType(DIRECTORY) => x
         case _ => master.add(pp, newEntry(pp, DIRECTORY, None))
       }
-      pcn.add(mn)
-      fix(pp)
+      // If the member is already present, then its parent directories have
+      // been fixed before.
+      if (pcn.add(mn))
+        fix(pp)
     }
   }
 
-  override def size: Int = master.size
+  override def size: Int = { link(); master.size }
 
-  def iterator: Iterator[FsCovariantNode[E]] = master.iterator
+  def iterator: Iterator[FsCovariantNode[E]] = { link(); master.iterator }
 
   /** Returns a covariant file system node or `None` if no file system
     * node exists for the given name.
+    * If the access option `SNAPSHOT` is set, then the node gets returned in
+    * its version from the archive this file system has been mounted from,
+    * regardless of any subsequent modifications.
     * Modifying the returned object graph is either not supported (i.e. throws
     * an [[java.lang.UnsupportedOperationException]] or does not have any
     * visible side effect on this file system.
     *
+    * As long as this file system has not been modified, the returned node is
+    * an immutable snapshot which gets cached and shared by subsequent calls
+    * for the same name, so that repeatedly looking up a node does not need
+    * to allocate any memory.
+    * Once this file system gets modified, all snapshots get discarded and
+    * this method returns a new clone upon each call.
+    *
     * @param  name the name of the file system entry to look up.
     * @return A covariant file system node or `None` if no file system
     *         node exists for the given name.
     */
-  def node(options: AccessOptions, name: FsNodeName): Option[FsCovariantNode[E]] = {
-    master.get(name.getPath) match {
-      case Some(cn) => Some(cn.clone(driver))
+  def node(options: AccessOptions, name: FsNodeName): Option[FsCovariantNode[E]] =
+    if (options get SNAPSHOT) committedNode(name.getPath) else node(name.getPath)
+
+  private def committedNode(path: String): Option[FsCovariantNode[E]] = {
+    val committed = this.committed
+    if (null eq committed) return None
+    val preimage = committed get path
+    if (null ne preimage) preimage else node(path)
+  }
+
+  /** Reverts the sizes and times of the given entry from the archive this
+    * file system has been mounted from to their committed values.
+    * This is required because modifying a node may modify its entries in
+    * place, which are shared with the archive.
+    *
+    * @param ae an entry from the archive this file system has been mounted
+    *        from.
+    */
+  def revert(ae: E) {
+    val committed = this.committed
+    if (null eq committed) return
+    val preimage = committed get normalizedPath(ae.getName)
+    if (null eq preimage) return
+    preimage foreach { cn =>
+      val ce = cn get ae.getType
+      if (null ne ce) {
+        for (size <- ALL_SIZES)
+          ae setSize (size, ce getSize size)
+        for (access <- ALL_ACCESS)
+          ae setTime (access, ce getTime access)
+      }
+    }
+  }
+
+  private def node(path: String): Option[FsCovariantNode[E]] = {
+    val snapshots = this.snapshots
+    if (null ne snapshots) {
+      val snapshot = snapshots get path
+      if (null ne snapshot) return snapshot
+    }
+    if (null ne implied) {
+      master.get(path) match {
+        case Some(cn) if !cn.isType(DIRECTORY) && !isImplied(path) =>
+          return share(path, cn)
+        case None if !isImplied(path) =>
+          return None
+        case _ =>
+          link()
+      }
+    }
+    master.get(path) match {
+      case Some(cn) => share(path, cn)
       case None => None
     }
   }
 
+  private def share(path: String, cn: FsCovariantNode[E]) = {
+    val snapshots = this.snapshots
+    if (null ne snapshots) {
+      val snapshot = Some(cn snapshot driver)
+      snapshots put (path, snapshot)
+      snapshot
+    } else {
+      Some(cn clone driver)
+    }
+  }
+
+  /** Marks this file system as modified and discards all snapshots.
+    * This must get called before any node or archive entry in this file
+    * system gets modified.
+    */
+  private def modify(options: AccessOptions) {
+    touch(options)
+    snapshots = null
+  }
+
+  /** Preserves the committed version of the node with the given path unless
+    * it has been modified before.
+    * This must get called after `modify` and before the node or its archive
+    * entries get modified.
+    */
+  private def preserve(path: String) {
+    val committed = this.committed
+    if ((null ne committed) && !(committed containsKey path))
+      committed put (path, master get path map (_ snapshot driver))
+  }
+
   def checkAccess(options: AccessOptions, name: FsNodeName, types: BitField[Access]) {
-    if (master.get(name.getPath).isEmpty)
+    val path = name.getPath
+    if (options get SNAPSHOT) {
+      if (committedNode(path).isEmpty)
+        throw new NoSuchFileException(fullPath(name))
+    } else if (master.get(path).isEmpty && !isImplied(path))
       throw new NoSuchFileException(fullPath(name))
   }
 
@@ -137,12 +329,14 @@ extends ArchiveModelAspect[E] with Iterable[FsCovariantNode[E]] { fs =>
   }
 
   def setTime(options: AccessOptions, name: FsNodeName, times: Map[Access, Long]): Boolean = {
+    link()
     val cn = master.get(name.getPath) match {
       case Some(x) => x
       case _ => throw new NoSuchFileException(fullPath(name))
     }
     // HC SVNT DRACONES!
-    touch(options)
+    modify(options)
+    preserve(name.getPath)
     val ae = cn.getEntry
     var ok = true
     for ((access, value) <- times)
@@ -154,12 +348,14 @@ extends ArchiveModelAspect[E] with Iterable[FsCovariantNode[E]] { fs =>
     if (0 > value)
       throw new IllegalArgumentException(fullPath(name)
                                          + " (negative access time)")
+    link()
     val cn = master.get(name.getPath) match {
       case Some(ce) => ce
       case _ => throw new NoSuchFileException(fullPath(name))
     }
     // HC SVNT DRACONES!
-    touch(options)
+    modify(options)
+    preserve(name.getPath)
     val ae = cn.getEntry
     var ok = true
     for (tµpe <- types)
@@ -197,6 +393,7 @@ extends ArchiveModelAspect[E] with Iterable[FsCovariantNode[E]] { fs =>
     */
   def make(options: AccessOptions, name: FsNodeName, tµpe: Type, template: Option[Entry]): Make = {
     require(null ne tµpe)
+    link()
     if (FILE.ne(tµpe) && DIRECTORY.ne(tµpe)) // TODO: Add support for other types.
       throw new FileSystemException(fullPath(name), null,
                                     "Can only create file or directory entries, but not a " + typeName(tµpe) + " entry!")
@@ -271,7 +468,7 @@ extends ArchiveModelAspect[E] with Iterable[FsCovariantNode[E]] { fs =>
     }
 
     def commit() {
-      touch(options)
+      modify(options)
       val size = commit(segments)
       assert(2 <= size)
       val mae = segments.head.entry.getEntry
@@ -287,6 +484,8 @@ extends ArchiveModelAspect[E] with Iterable[FsCovariantNode[E]] { fs =>
             val pcn = parentSegments.head.entry
             val pae = pcn.get(DIRECTORY)
             val mae = mcn.getEntry
+            preserve(mcn.getName)
+            preserve(pcn.getName)
             master.add(mcn.getName, mae)
             if (master.get(pcn.getName).get.add(mn.get)
                 && UNKNOWN != pae.getTime(WRITE)) // never touch ghost directories!
@@ -317,6 +516,7 @@ extends ArchiveModelAspect[E] with Iterable[FsCovariantNode[E]] { fs =>
     * @throws IOException on any I/O error.
     */
   def unlink(options: AccessOptions, name: FsNodeName) {
+    link()
     // Test.
     val np = name.getPath
     val mcn = master.get(np) match {
@@ -335,7 +535,11 @@ extends ArchiveModelAspect[E] with Iterable[FsCovariantNode[E]] { fs =>
     }
 
     // Notify listener and modify.
-    touch(options)
+    modify(options)
+    splitter.split(np)
+    val pp = splitter.getParentPath
+    preserve(np)
+    preserve(pp)
     master.remove(np);
     {
       // See http://java.net/jira/browse/TRUEZIP-144 :
@@ -350,8 +554,6 @@ extends ArchiveModelAspect[E] with Iterable[FsCovariantNode[E]] { fs =>
       for (tµpe <- ALL_ACCESS)
         mae.setTime(tµpe, UNKNOWN)
     }
-    splitter.split(np)
-    val pp = splitter.getParentPath
     val pcn = master.get(pp).get
     val ok = pcn.remove(splitter.getMemberName)
     assert(ok, "The parent directory of \"" + fullPath(name)
@@ -407,6 +609,29 @@ extends ArchiveModelAspect[E] with Iterable[FsCovariantNode[E]] { fs =>
 private object ArchiveFileSystem {
   private val RootPath = ROOT.getPath
 
+  /** Returns the normalized path of the given archive entry name for use
+    * as a key in the master archive entry table.
+    *
+    * @param  name the archive entry name.
+    * @param  normalizer the path normalizer to use.
+    * @return The normalized path.
+    */
+  def normalizedPath(name: String, normalizer: PathNormalizer = new PathNormalizer(SEPARATOR_CHAR)): String = {
+    cutTrailingSeparators(
+      normalizer.normalize(
+        name.replace('\\', SEPARATOR_CHAR)), // fix illegal Windoze file name separators
+      SEPARATOR_CHAR)
+  }
+
+  /** Returns `true` if and only if the given template is not `null` and has
+    * the same sizes and times than the given archive entry.
+    */
+  private def matches(template: Entry, ae: Entry) = {
+    (null ne template) &&
+      (Size.values forall { s => (template getSize s) == (ae getSize s) }) &&
+      (Access.values forall { a => (template getTime a) == (ae getTime a) })
+  }
+
   /** Returns a new empty archive file system and ensures its integrity.
     * Only the root directory is created with its last modification time set
     * to the system's current time.
@@ -454,6 +679,14 @@ private object ArchiveFileSystem {
     }
   }
 
+  /** Returns the parent path of the given normalized path.
+    * This is equivalent to, but faster than using a `Splitter`.
+    */
+  private def parentPath(path: String) = {
+    val i = path lastIndexOf SEPARATOR_CHAR
+    if (0 <= i) path substring (0, i) else RootPath
+  }
+
   private def typeName(entry: FsCovariantNode[_ <: Entry]): String = {
     val types = entry.getTypes
     if (1 == types.cardinality)
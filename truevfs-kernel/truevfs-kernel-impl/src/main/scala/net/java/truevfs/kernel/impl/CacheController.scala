@@ -65,6 +65,9 @@ extends ArchiveController[E] {
     class Input extends DelegatingInputSocket[Entry] {
       override def socket(): AnyInputSocket = {
         assert(writeLockedByCurrentThread)
+        // The cache may hold data which has not yet been committed.
+        if (options get SNAPSHOT)
+          return CacheController.super.input(options, name)
         var cache = caches get name
         if (null eq cache) {
             if (!(options get CACHE))
@@ -117,6 +120,19 @@ extends ArchiveController[E] {
     if (caches.isEmpty) mounted = false
   }
 
+  abstract override def invalidate(paths: collection.Set[String]) {
+    assert(writeLockedByCurrentThread)
+    val i = caches.values.iterator
+    while (i.hasNext) {
+      val cache = i next ()
+      if (paths contains cache.name.getPath) {
+        i remove ()
+        cache clear ()
+      }
+    }
+    super.invalidate(paths)
+  }
+
   private def syncCacheEntries(options: SyncOptions) {
     // HC SVNT DRACONES!
     if (0 >= caches.size()) return
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.kernel.impl
+
+import java.lang.management._
+import javax.management._
+
+/** The management interface for the statistics of a global cache in the
+  * kernel.
+  *
+  * @author Christian Schlichtherle
+  */
+private trait CacheStatisticsMXBean {
+
+  /** Returns the number of lookups which have found a valid entry. */
+  def getHits: Long
+
+  /** Returns the number of lookups which have not found a valid entry. */
+  def getMisses: Long
+
+  /** Returns the current number of entries. */
+  def getSize: Int
+}
+
+private object CacheStatisticsMXBean {
+
+  /** Returns the object name for the statistics of the given cache.
+    * The domain is the name of this package and the type is the simple name
+    * of the cache, e.g.
+    * `net.java.truevfs.kernel.impl:type=FalsePositiveCache`.
+    */
+  def name(cache: String) = new ObjectName(
+    classOf[CacheStatisticsMXBean].getPackage.getName + ":type=" + cache)
+
+  /** Registers the given statistics of the given cache with the platform
+    * MBean server.
+    * This is a best effort method, so any failure gets ignored, e.g. if
+    * another class loader has registered the statistics of its own copy of
+    * the cache already.
+    */
+  def register(cache: String, statistics: CacheStatisticsMXBean) {
+    try {
+      ManagementFactory.getPlatformMBeanServer registerMBean (statistics, name(cache))
+    } catch {
+      case _: JMException | _: SecurityException =>
+    }
+  }
+}
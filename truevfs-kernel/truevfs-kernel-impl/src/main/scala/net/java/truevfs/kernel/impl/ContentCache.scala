@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.kernel.impl
+
+import java.io._
+import java.util.concurrent.atomic._
+import java.util.concurrent.locks._
+import javax.annotation.concurrent._
+
+import net.java.truecommons.cio.Entry.Access._
+import net.java.truecommons.cio.Entry.Size._
+import net.java.truecommons.cio.Entry._
+import net.java.truecommons.cio._
+import net.java.truecommons.io._
+import net.java.truevfs.kernel.spec._
+
+import scala.{None, Option, Some}
+
+/** A global, bounded cache for the decoded contents of small archive entries.
+  *
+  * Reading an archive entry usually requires to decompress and maybe decrypt
+  * its data.
+  * For applications which repeatedly read the same small entries from many
+  * archive files, this cache stores their decoded contents in memory, keyed
+  * by the mount point of the archive file and the name of the entry.
+  * A record gets validated against the size and last modification time of
+  * the archive file in its parent file system and the data size, the storage
+  * size and the last modification time of the entry in the input archive.
+  * So a record remains valid when the archive file gets remounted without
+  * being changed, but gets invalidated when the archive file gets changed,
+  * even if a third party preserves the sizes and time of the entry.
+  * When an entry gets written, its record gets removed.
+  *
+  * The total size of the cached contents is bounded.
+  * If it exceeds the configured maximum, then the least recently used records
+  * get evicted.
+  *
+  * This cache is disabled by default.
+  * To enable it, set the system property with the key string
+  * `maximumBytesPropertyKey` to a positive number of bytes.
+  * Only entries with a known data size up to the value of the system
+  * property with the key string `maximumEntryBytesPropertyKey` get cached.
+  *
+  * The hit and miss counts and the number of records get published as a
+  * [[CacheStatisticsMXBean]] with the platform MBean server.
+  *
+  * @author Christian Schlichtherle
+  */
+@ThreadSafe
+private object ContentCache extends LockAspect[Lock] {
+
+  /** The key string for the system property which holds the maximum total
+    * size of the cached contents in bytes.
+    */
+  val maximumBytesPropertyKey: String = ContentCache.getClass.getName.stripSuffix("$") + ".maximumBytes"
+
+  /** The default value for the maximum total size of the cached contents in
+    * bytes, which disables this cache.
+    */
+  val maximumBytesDefaultValue: Long = 0
+
+  /** The key string for the system property which holds the maximum size of
+    * the contents of a single entry in bytes.
+    */
+  val maximumEntryBytesPropertyKey: String = ContentCache.getClass.getName.stripSuffix("$") + ".maximumEntryBytes"
+
+  /** The default value for the maximum size of the contents of a single entry
+    * in bytes.
+    */
+  val maximumEntryBytesDefaultValue: Long = 64 * 1024
+
+  /** The maximum total size of the cached contents in bytes.
+    * This is only mutable for testing.
+    */
+  @volatile var maximumBytes: Long =
+    java.lang.Long getLong (maximumBytesPropertyKey, maximumBytesDefaultValue)
+
+  private val maximumEntryBytesProperty =
+    java.lang.Long getLong (maximumEntryBytesPropertyKey, maximumEntryBytesDefaultValue)
+
+  private def maximumEntryBytes = math.min(maximumBytes, maximumEntryBytesProperty)
+
+  override val lock: Lock = new ReentrantLock
+
+  private[this] val hitCount, missCount = new AtomicLong
+
+  /** The total size of the cached contents - guarded by the lock. */
+  private[this] var bytes = 0L
+
+  private[this] val records =
+    new java.util.LinkedHashMap[(FsMountPoint, String), Record](16, 0.75f, true)
+
+  /** Returns `true` if and only if this cache is enabled. */
+  def enabled: Boolean = 0 < maximumBytes
+
+  /** Returns the number of lookups which have found a valid record. */
+  def hits: Long = hitCount get ()
+
+  /** Returns the number of lookups which have not found a valid record. */
+  def misses: Long = missCount get ()
+
+  /** Returns the total size of the cached contents in bytes. */
+  def size: Long = locked { bytes }
+
+  CacheStatisticsMXBean register ("ContentCache", new CacheStatisticsMXBean {
+    override def getHits = hits
+    override def getMisses = misses
+    override def getSize = locked { records.size }
+  })
+
+  /** Decorates the given input service so that the contents of its entries
+    * get read through this cache unless this cache is disabled or the size
+    * or last modification time of the archive file is unknown.
+    * Only reading an entry without a peer output socket gets cached, because
+    * the peer may want to copy the raw entry data instead.
+    *
+    * @param mountPoint the mount point of the archive file.
+    * @param archive the node for the archive file in its parent file system
+    *        at the time the input service has been created.
+    * @param input the input service for the archive file.
+    */
+  def decorate[E <: FsArchiveEntry](mountPoint: FsMountPoint, archive: Entry, input: InputService[E]): InputService[E] = {
+    val generation = Generation(archive getSize DATA, archive getTime WRITE)
+    if (enabled && UNKNOWN != generation.size && UNKNOWN != generation.time)
+      new CachingInputService(mountPoint, generation, input)
+    else
+      input
+  }
+
+  /** Removes the record for the given entry, if any.
+    *
+    * @param mountPoint the mount point of the archive file.
+    * @param name the name of the entry.
+    */
+  def remove(mountPoint: FsMountPoint, name: String) {
+    if (!enabled) return
+    locked {
+      val record = records remove ((mountPoint, name))
+      if (null ne record) bytes -= record.content.length
+    }
+  }
+
+  private def content(mountPoint: FsMountPoint, generation: Generation, socket: InputSocket[_ <: FsArchiveEntry]): Option[Array[Byte]] = {
+    val entry = socket target ()
+    val key = (mountPoint, entry.getName)
+    val result = locked { Option(records get key) } match {
+      case Some(record) if record matches (generation, entry) =>
+        Some(record.content)
+      case _ =>
+        None
+    }
+    if (result.isDefined) {
+      hitCount incrementAndGet ()
+      return result
+    }
+    missCount incrementAndGet ()
+    val size = entry getSize DATA
+    if (UNKNOWN == size || maximumEntryBytes < size) return None
+    val content = {
+      val out = new ByteArrayOutputStream(size.toInt)
+      Streams copy (socket stream null, out)
+      out.toByteArray
+    }
+    if (size == content.length) add(key, Record(generation, entry, content))
+    Some(content)
+  }
+
+  private def add(key: (FsMountPoint, String), record: Record) {
+    locked {
+      val old = records put (key, record)
+      if (null ne old) bytes -= old.content.length
+      bytes += record.content.length
+      val i = records.values.iterator
+      while (maximumBytes < bytes && i.hasNext) {
+        bytes -= i.next.content.length
+        i remove ()
+      }
+    }
+  }
+
+  private final class CachingInputService[E <: FsArchiveEntry]
+  (mountPoint: FsMountPoint, generation: Generation, input: InputService[E])
+  extends DecoratingInputService[E](input) {
+
+    override def input(name: String): InputSocket[E] = {
+      final class Input extends AbstractInputSocket[E] {
+        private[this] val socket = container input name
+
+        override def target() = socket target ()
+
+        override def stream(peer: AnyOutputSocket) = {
+          if (null ne peer) socket stream peer
+          else content(mountPoint, generation, socket) match {
+            case Some(content) => new ByteArrayInputStream(content)
+            case None => socket stream peer
+          }
+        }
+
+        override def channel(peer: AnyOutputSocket) = {
+          if (null ne peer) socket channel peer
+          else content(mountPoint, generation, socket) match {
+            case Some(content) =>
+              new ByteBufferChannel(java.nio.ByteBuffer.wrap(content).asReadOnlyBuffer)
+            case None => socket channel peer
+          }
+        }
+      }
+      new Input
+    }
+  }
+
+  /** The size and last modification time of an archive file. */
+  private final case class Generation(size: Long, time: Long)
+
+  private final case class Record(generation: Generation, size: Long, storage: Long, time: Long, content: Array[Byte]) {
+    def matches(generation: Generation, entry: Entry) =
+      this.generation == generation &&
+        size == (entry getSize DATA) &&
+        storage == (entry getSize STORAGE) &&
+        time == (entry getTime WRITE)
+  }
+
+  private object Record {
+    def apply(generation: Generation, entry: Entry, content: Array[Byte]): Record =
+      Record(generation, entry getSize DATA, entry getSize STORAGE, entry getTime WRITE, content)
+  }
+}
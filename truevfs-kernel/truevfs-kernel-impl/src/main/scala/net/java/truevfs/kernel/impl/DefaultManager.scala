@@ -47,6 +47,13 @@ extends FsAbstractManager
     // The FalsePositiveArchiveController decorates the FrontController
     // so that the decorated controller (chain) does not need to resolve
     // operations on false positive archive files.
+    // An immutable archive file system is a frozen snapshot, so it doesn't
+    // need any locking, syncing or caching in the controller chain.
+    if (context.isImmutable)
+      return new FalsePositiveArchiveController(
+        context decorate
+          new ArchiveControllerAdapter(parent,
+            new SnapshotController(context, model, parent)))
     new FalsePositiveArchiveController(
       new FrontController(
         context decorate
@@ -55,19 +62,20 @@ extends FsAbstractManager
   }
 
   override def controller(driver: FsCompositeDriver, mountPoint: FsMountPoint): FsController = {
-    try {
-      readLocked { controller0(driver, mountPoint) }
-    } catch {
-      case ex: NeedsWriteLockException =>
-        if (readLockedByCurrentThread) {
-          throw ex
-        }
-        writeLocked { controller0(driver, mountPoint) }
+    // Look up the controller with the read lock first and only create it
+    // with the write lock if it doesn't exist - this avoids throwing a
+    // NeedsWriteLockException for the common case.
+    readLocked { lookup(mountPoint) } getOrElse {
+      if (readLockedByCurrentThread) throw NeedsWriteLockException()
+      writeLocked { controller0(driver, mountPoint) }
     }
   }
 
+  private def lookup(mountPoint: FsMountPoint) =
+    controllers get mountPoint flatMap { l => Option(l.get) }
+
   private def controller0(driver: FsCompositeDriver, mountPoint: FsMountPoint): FsController = {
-    controllers get mountPoint flatMap { l => Option(l.get) } match {
+    lookup(mountPoint) match {
       case Some(c) => c
       case None =>
         checkWriteLockedByCurrentThread()
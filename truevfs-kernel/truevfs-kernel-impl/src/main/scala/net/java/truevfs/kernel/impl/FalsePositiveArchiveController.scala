@@ -68,10 +68,38 @@ private final class FalsePositiveArchiveController(controller: FsController)
 
   private lazy val path = getMountPoint.getPath
 
-  override def node(options: AccessOptions, name: FsNodeName): FsNode = apply(name)(_ node (options, _))
+  override def node(options: AccessOptions, name: FsNodeName): FsNode = {
+    if (state ne TryChild) {
+      apply(name)(_ node (options, _))
+    } else if (!getModel.isMounted &&
+        null == (getParent node (options, parent(ROOT)))) {
+      // Fast path for a prospective archive file which does not exist in the
+      // parent file system: Mounting it would only throw a
+      // FalsePositiveArchiveException in order to get here anyway.
+      if (name.isRoot) null else getParent node (options, parent(name))
+    } else {
+      // Avoid to allocate a closure unless the archive file turns out to be
+      // a false positive.
+      try {
+        controller node (options, name)
+      } catch {
+        case ex: FalsePositiveArchiveException =>
+          recover(ex)(name)(_ node (options, _))
+      }
+    }
+  }
 
-  override def checkAccess(options: AccessOptions, name: FsNodeName, types: BitField[Access]): Unit = {
-    apply(name)(_ checkAccess (options, _, types))
+  override def checkAccess(options: AccessOptions, name: FsNodeName, types: BitField[Access]) {
+    if (state ne TryChild) {
+      apply(name)(_ checkAccess (options, _, types))
+    } else {
+      try {
+        controller checkAccess (options, name, types)
+      } catch {
+        case ex: FalsePositiveArchiveException =>
+          recover(ex)(name)(_ checkAccess (options, _, types))
+      }
+    }
   }
 
   override def setReadOnly(options: AccessOptions, name: FsNodeName): Unit = apply(name)(_ setReadOnly (options, _))
@@ -174,17 +202,27 @@ private final class FalsePositiveArchiveController(controller: FsController)
   }
 
   private def apply[V](name: FsNodeName)(operation: Operation[V]): V = {
-    var state = this.state
+    val state = this.state
     try {
       state(name)(operation)
     } catch {
-      case ex: PersistentFalsePositiveArchiveException =>
+      case ex: FalsePositiveArchiveException =>
         assert(state eq TryChild)
-        state = UseParent(ex)
+        recover(ex)(name)(operation)
+    }
+  }
+
+  /** Retries the given operation with the parent file system controller
+    * after it has failed with the given exception while trying the child file
+    * system controller.
+    */
+  private def recover[V](ex: FalsePositiveArchiveException)(name: FsNodeName)(operation: Operation[V]): V = {
+    ex match {
+      case ex: PersistentFalsePositiveArchiveException =>
+        val state = UseParent(ex)
         this.state = state
         state(name)(operation)
-      case ex: FalsePositiveArchiveException =>
-        assert(state eq TryChild)
+      case _ =>
         UseParent(ex)(name)(operation)
     }
   }
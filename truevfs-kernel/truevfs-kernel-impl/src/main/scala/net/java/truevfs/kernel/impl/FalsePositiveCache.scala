@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.kernel.impl
+
+import java.io._
+import java.net._
+import java.nio.file._
+import java.security._
+import java.util.concurrent.atomic._
+import java.util.concurrent.locks._
+import javax.annotation.concurrent._
+
+import net.java.truecommons.cio.Entry.Access._
+import net.java.truecommons.cio.Entry.Size._
+import net.java.truecommons.cio.Entry.Type._
+import net.java.truecommons.cio.Entry._
+import net.java.truevfs.kernel.spec._
+
+import scala.{None, Option, Some}
+
+/** A bounded cache of prospective archive files which have been detected to
+  * be persistent false positives, e.g. a regular file or directory named
+  * `foo.zip`.
+  *
+  * Without this cache, the kernel would retry to mount such a file whenever
+  * its file system controller gets recreated, e.g. after it's been garbage
+  * collected.
+  * With this cache, the mount attempt gets skipped as long as the size and
+  * last modification time of the file in its parent file system remain
+  * unchanged.
+  *
+  * Only definite false positives get cached: A directory or a file which
+  * the archive driver has rejected with a specific exception, e.g. a
+  * `ZipException`.
+  * Failures which may be transient do not get cached, so that the next
+  * mount attempt gets retried.
+  * This applies to failures which are reported by a plain
+  * [[java.io.IOException]] or which are caused by a
+  * [[java.security.GeneralSecurityException]], e.g. if the user has
+  * cancelled prompting for a key, a [[java.nio.file.FileSystemException]],
+  * e.g. if access to the file has been denied, an
+  * [[java.io.InterruptedIOException]] or a network failure.
+  *
+  * The hit and miss counts get published as a [[CacheStatisticsMXBean]]
+  * with the platform MBean server.
+  *
+  * The maximum number of entries can get configured by setting the system
+  * property with the key string `maximumSizePropertyKey`.
+  * If it's exceeded, the least recently used entries get evicted.
+  *
+  * @author Christian Schlichtherle
+  */
+@ThreadSafe
+private object FalsePositiveCache extends LockAspect[Lock] {
+
+  /** The key string for the system property which holds the maximum number
+    * of entries in this cache.
+    */
+  val maximumSizePropertyKey: String = FalsePositiveCache.getClass.getName.stripSuffix("$") + ".maximumSize"
+
+  /** The default value for the maximum number of entries in this cache. */
+  val maximumSizeDefaultValue: Int = 10000
+
+  private val maximumSize =
+    math.max(0, Integer getInteger (maximumSizePropertyKey, maximumSizeDefaultValue))
+
+  override val lock: Lock = new ReentrantLock
+
+  private[this] val hitCount, missCount = new AtomicLong
+
+  private[this] val entries =
+    new java.util.LinkedHashMap[FsMountPoint, Record](16, 0.75f, true) {
+      override def removeEldestEntry(eldest: java.util.Map.Entry[FsMountPoint, Record]) =
+        size > maximumSize
+    }
+
+  /** Returns the number of lookups which have found a valid entry. */
+  def hits: Long = hitCount get ()
+
+  /** Returns the number of lookups which have not found a valid entry. */
+  def misses: Long = missCount get ()
+
+  /** Returns the current number of entries. */
+  def size: Int = locked { entries.size }
+
+  CacheStatisticsMXBean register ("FalsePositiveCache", new CacheStatisticsMXBean {
+    override def getHits = hits
+    override def getMisses = misses
+    override def getSize = FalsePositiveCache.this.size
+  })
+
+  /** Looks up the cause of the mount failure of the given prospective
+    * archive file.
+    *
+    * @param  mountPoint the mount point of the prospective archive file.
+    * @param  node the node for the prospective archive file in its parent
+    *         file system.
+    * @return The cause of the mount failure or `None` if the prospective
+    *         archive file is not known to be a false positive or has been
+    *         changed since.
+    */
+  def lookup(mountPoint: FsMountPoint, node: FsNode): Option[IOException] = {
+    val result = locked { Option(entries get mountPoint) } flatMap { record =>
+      if (record matches node) {
+        Some(record.cause)
+      } else {
+        remove(mountPoint)
+        None
+      }
+    }
+    (if (result.isDefined) hitCount else missCount) incrementAndGet ()
+    result
+  }
+
+  /** Adds the given prospective archive file to this cache unless its size
+    * or last modification time is unknown or it's not a definite false
+    * positive.
+    *
+    * @param mountPoint the mount point of the prospective archive file.
+    * @param node the node for the prospective archive file in its parent
+    *        file system.
+    * @param cause the cause of the mount failure.
+    */
+  def add(mountPoint: FsMountPoint, node: FsNode, cause: IOException) {
+    val size = node getSize DATA
+    val time = node getTime WRITE
+    if (UNKNOWN == size || UNKNOWN == time || !isDefinite(node, cause)) return
+    locked { entries put (mountPoint, Record(size, time, cause)) }
+  }
+
+  /** Removes the given prospective archive file from this cache.
+    *
+    * @param mountPoint the mount point of the prospective archive file.
+    */
+  def remove(mountPoint: FsMountPoint) {
+    locked { entries remove mountPoint }
+  }
+
+  /** Returns `true` if and only if the given node is a directory or the
+    * given cause is a specific exception which is not possibly transient.
+    */
+  private def isDefinite(node: FsNode, cause: IOException) = {
+    (node isType DIRECTORY) && !(node isType FILE) ||
+      (cause.getClass ne classOf[IOException]) && !isTransient(cause)
+  }
+
+  private def isTransient(cause: Throwable): Boolean = {
+    cause match {
+      case null => false
+      case _: GeneralSecurityException
+         | _: FileSystemException
+         | _: InterruptedIOException
+         | _: SocketException
+         | _: UnknownHostException => true
+      case _ => isTransient(cause.getCause)
+    }
+  }
+
+  private final case class Record(size: Long, time: Long, cause: IOException) {
+    def matches(node: FsNode) =
+      size == (node getSize DATA) && time == (node getTime WRITE)
+  }
+}
@@ -78,9 +78,9 @@ extends BasicArchiveController[E] with MountState[E] {
 
   private final class MountedFileSystem(fs: ArchiveFileSystem[E]) extends MountState[E] {
 
-    def autoMount(options: AccessOptions, autoCreate: Boolean): ArchiveFileSystem[E] = fs
+    val fileSystem: Option[ArchiveFileSystem[E]] = Some(fs)
 
-    def fileSystem: Option[ArchiveFileSystem[E]]  = Some(fs)
+    def autoMount(options: AccessOptions, autoCreate: Boolean): ArchiveFileSystem[E] = fs
 
     def fileSystem_=(fileSystem: Option[ArchiveFileSystem[E]]) {
       fileSystem match {
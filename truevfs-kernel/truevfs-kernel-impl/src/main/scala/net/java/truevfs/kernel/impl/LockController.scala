@@ -13,6 +13,7 @@ import net.java.truecommons.cio.Entry._;
 import net.java.truevfs.kernel.impl.LockingStrategy._
 import java.io._
 import java.nio.channels._
+import java.util.concurrent.atomic._
 import javax.annotation.concurrent._
 import scala.Option
 
@@ -33,6 +34,17 @@ import scala.Option
   * This controller will then pause the current thread for a small random
   * amount of milliseconds before retrying the operation.
   *
+  * Finally, this controller coalesces concurrent `sync` requests in a
+  * ''group commit'' style:
+  * Each request draws a ticket before acquiring the write lock.
+  * Once it has acquired the write lock, the request completes immediately if
+  * a sync with the same options has succeeded which started after the ticket
+  * had been drawn, because this sync has already covered any changes made by
+  * the requesting thread.
+  * So if N threads request a sync while another sync is in progress, then
+  * only the first of them actually performs a follow-up sync and the others
+  * complete without rewriting the target archive file again.
+  *
   * @see    LockingStrategy
   * @author Christian Schlichtherle
   */
@@ -41,6 +53,17 @@ private trait LockController[E <: FsArchiveEntry]
 extends ArchiveController[E] {
   controller: ArchiveModelAspect[E] =>
 
+  /** The number of sync requests drawn so far. */
+  private[this] val syncTickets = new AtomicLong
+
+  /** The ticket covered by the last successful sync - guarded by the write
+    * lock.
+    */
+  private[this] var syncedTicket = 0L
+
+  /** The options of the last successful sync - guarded by the write lock. */
+  private[this] var syncedOptions: SyncOptions = _
+
   abstract override def node(options: AccessOptions, name: FsNodeName) =
     timedReadOrWriteLocked(super.node(options, name))
 
@@ -92,16 +115,37 @@ extends ArchiveController[E] {
   abstract override def unlink(options: AccessOptions, name: FsNodeName) =
     timedLocked(writeLock)(super.unlink(options, name))
 
-  abstract override def sync(options: SyncOptions) =
-    timedLocked(writeLock)(super.sync(options))
+  abstract override def sync(options: SyncOptions) {
+    val ticket = syncTickets incrementAndGet ()
+    timedLocked(writeLock) {
+      if (syncedTicket < ticket || syncedOptions != options) {
+        val covered = syncTickets get ()
+        super.sync(options)
+        syncedTicket = covered
+        syncedOptions = options
+      }
+    }
+  }
 
+  /** Applies the given operation with the read lock if the archive file
+    * system is mounted.
+    * Otherwise, mounting it requires the write lock anyway, so the operation
+    * gets applied with the write lock straight away instead of having to
+    * throw and catch a `NeedsWriteLockException`.
+    * The latter is still the fallback if the read lock does not suffice for
+    * any other reason.
+    */
   private def timedReadOrWriteLocked[V](operation: => V) = {
-    try {
-      timedLocked(readLock)(operation)
-    } catch {
-      case ex: NeedsWriteLockException =>
-        if (readLockedByCurrentThread) throw ex
-        timedLocked(writeLock)(operation)
+    if (mounted || readLockedByCurrentThread) {
+      try {
+        timedLocked(readLock)(operation)
+      } catch {
+        case ex: NeedsWriteLockException =>
+          if (readLockedByCurrentThread) throw ex
+          timedLocked(writeLock)(operation)
+      }
+    } else {
+      timedLocked(writeLock)(operation)
     }
   }
 
@@ -110,9 +154,24 @@ extends ArchiveController[E] {
     override def close = deadLocked(writeLock)(in.close)
   }
 
+  /** Note that the entry data gets written without holding any lock, so
+    * concurrent writers of distinct entries only contend for the write lock
+    * when opening and closing their streams.
+    * In order to keep the time spent in `close` short, any buffered entry
+    * data gets flushed before the write lock gets acquired.
+    */
   private class LockOutputStream(out: OutputStream)
   extends DecoratingOutputStream(out) {
-    override def close = deadLocked(writeLock)(out.close)
+    override def close() {
+      try {
+        out flush ()
+      } catch {
+        // The stream may have been forcibly closed by a concurrent sync.
+        // Any persistent I/O error gets reported by close() anyway.
+        case _: IOException =>
+      }
+      deadLocked(writeLock)(out close ())
+    }
   }
 
   private class LockSeekableChannel(channel: SeekableByteChannel)
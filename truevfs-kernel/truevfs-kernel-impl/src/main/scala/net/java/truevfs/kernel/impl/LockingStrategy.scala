@@ -4,7 +4,6 @@
  */
 package net.java.truevfs.kernel.impl
 
-import java.util._
 import java.util.concurrent._
 import java.util.concurrent.locks._
 import javax.annotation.concurrent._
@@ -58,17 +57,19 @@ private abstract class LockingStrategy {
     * @throws NeedsLockRetryException See above.
     */
   def apply[V](lock: Lock)(operation: => V): V = {
-    val account = accounts.get
-    if (0 < account.lockCount) {
+    val current = accounts.get
+    if (null ne current) {
       acquire(lock)
-      account.lockCount += 1
+      current.lockCount += 1
       try {
         operation
       } finally {
-        account.lockCount -= 1
+        current.lockCount -= 1
         lock unlock ()
       }
     } else {
+      val account = new Account
+      accounts set account
       try {
         while (true) {
           try {
@@ -81,7 +82,7 @@ private abstract class LockingStrategy {
               lock unlock ()
             }
           } catch {
-            case _: NeedsLockRetryException => account arbitrate ()
+            case _: NeedsLockRetryException => arbitrate()
           }
         }
         throw new AssertionError("dead code")
@@ -95,26 +96,31 @@ private abstract class LockingStrategy {
 private object LockingStrategy {
   private val arbitrateMaxMillis = 100
   val acquireTimeoutMillis = arbitrateMaxMillis
-  private val accounts = new ThreadLocalAccount
 
-  private final class ThreadLocalAccount extends ThreadLocal[Account] {
-    override def initialValue = Account(ThreadLocalRandom.current)
-  }
+  /** The accounts of the threads which are currently executing `apply`.
+    * An account only exists while its thread holds at least one lock, so
+    * the many short-lived threads of a large thread pool do not leave behind
+    * any thread local state once they have left the kernel.
+    */
+  private val accounts = new ThreadLocal[Account]
 
-  private case class Account(rnd: Random) {
+  private final class Account {
     var lockCount = 0
+  }
 
-    def arbitrate() {
-      try {
-        Thread sleep (1 + (rnd nextInt arbitrateMaxMillis))
-      } catch {
-        case _: InterruptedException =>
-          Thread.currentThread.interrupt() // restore
-      }
+  private def arbitrate() {
+    try {
+      Thread sleep (1 + (ThreadLocalRandom.current nextInt arbitrateMaxMillis))
+    } catch {
+      case _: InterruptedException =>
+        Thread.currentThread.interrupt() // restore
     }
   }
 
-  def lockCount = accounts.get.lockCount
+  def lockCount = {
+    val account = accounts.get
+    if (null ne account) account.lockCount else 0
+  }
 
   /** Acquires the given lock using `Lock.tryLock()`. */
   object fastLocked extends LockingStrategy {
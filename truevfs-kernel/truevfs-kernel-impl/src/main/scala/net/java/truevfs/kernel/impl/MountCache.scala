@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.kernel.impl
+
+import java.io._
+import java.nio.file._
+import java.nio.file.StandardCopyOption._
+import java.security._
+import java.util.concurrent.locks._
+import javax.annotation.concurrent._
+
+import net.java.truecommons.cio.Entry.Access._
+import net.java.truecommons.cio.Entry.Size._
+import net.java.truecommons.cio.Entry.Type._
+import net.java.truecommons.cio.Entry._
+import net.java.truecommons.cio._
+import net.java.truecommons.shed.Paths._
+import net.java.truevfs.kernel.spec._
+
+import scala.{None, Option, Some}
+
+/** A persistent cache for the entry tables of archive files.
+  *
+  * Mounting an archive file requires to read its entire central directory or
+  * even all of its entries.
+  * For large, read-mostly archive files, this cache stores a compact record of
+  * the entry table of each archive file in a directory.
+  * The record is keyed by the mount point of the archive file and gets
+  * validated against the size and last modification time of the archive file
+  * in its parent file system.
+  * If the record is valid, the archive file system gets mounted from it
+  * without reading the archive file.
+  * The archive file then gets opened lazily upon the first access to the
+  * contents of any of its entries.
+  *
+  * The total size of the records in the cache directory is bounded.
+  * If it exceeds the configured maximum, then the least recently used records
+  * get deleted.
+  * The cache directory gets scanned only once per instance.
+  * Afterwards, the total size and the order of the records get tracked in
+  * memory, so that saving a record does not need to list the directory again.
+  * Records which get written by another process meanwhile are not accounted
+  * for until the next scan.
+  *
+  * This cache is disabled by default.
+  * To enable it, set the system property with the key string
+  * `directoryPropertyKey` to the path name of the cache directory.
+  *
+  * @param  directory the cache directory.
+  * @param  maximumBytes the maximum total size of the records in the cache
+  *         directory.
+  * @author Christian Schlichtherle
+  */
+@ThreadSafe
+private final class MountCache(directory: File, maximumBytes: Long)
+extends LockAspect[Lock] {
+  import MountCache._
+
+  override val lock: Lock = new ReentrantLock
+
+  /** The lengths of the records in the cache directory in least recently
+    * used order or `null` if the cache directory has not yet been scanned -
+    * guarded by `lock`.
+    */
+  private[this] var index: java.util.LinkedHashMap[String, java.lang.Long] = _
+
+  /** The total length of the records in the index - guarded by `lock`. */
+  private[this] var total = 0L
+
+  /** Loads the cached entry table of the given archive file.
+    *
+    * @param  mountPoint the mount point of the archive file.
+    * @param  driver the archive driver for the archive file.
+    * @param  node the node for the archive file in its parent file system.
+    * @return The cached entry table or `None` if no valid record exists.
+    */
+  def load(mountPoint: FsMountPoint, driver: AnyArchiveDriver, node: FsNode): Option[IndexedSeq[CachedEntry]] = {
+    val file = record(mountPoint)
+    try {
+      val in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))
+      try {
+        if (Magic != in.readInt
+          || Version != in.readInt
+          || mountPoint.toString != in.readUTF
+          || driver.getClass.getName != in.readUTF
+          || (node getSize DATA) != in.readLong
+          || (node getTime WRITE) != in.readLong)
+          return None
+        val entries = IndexedSeq.fill(in.readInt) {
+          val name = in.readUTF
+          val tµpe = if (in.readBoolean) DIRECTORY else FILE
+          val sizes = Array.fill(Sizes.length)(in.readLong)
+          val times = Array.fill(Accesses.length)(in.readLong)
+          new CachedEntry(name, tµpe, sizes, times)
+        }
+        file setLastModified System.currentTimeMillis // least recently used
+        locked { if (null ne index) index get file.getName }
+        Some(entries)
+      } finally {
+        in close ()
+      }
+    } catch {
+      case _: IOException => None
+    }
+  }
+
+  /** Saves the entry table of the given archive file.
+    * Archive files which contain entries other than files and directories or
+    * which contain redundant entries do not get cached.
+    * This is a best effort method, so any I/O errors get ignored.
+    *
+    * @param mountPoint the mount point of the archive file.
+    * @param driver the archive driver for the archive file.
+    * @param node the node for the archive file in its parent file system.
+    * @param archive the entries of the archive file.
+    */
+  def save(mountPoint: FsMountPoint, driver: AnyArchiveDriver, node: FsNode, archive: Container[_ <: FsArchiveEntry]) {
+    val size = node getSize DATA
+    val time = node getTime WRITE
+    if (UNKNOWN == size || UNKNOWN == time) return
+    var entries = List[FsArchiveEntry]()
+    var keys = Set[(Type, String)]()
+    val i = archive.iterator
+    while (i.hasNext) {
+      val ae = i.next
+      val tµpe = ae.getType
+      if (FILE.ne(tµpe) && DIRECTORY.ne(tµpe)) return
+      val path = ArchiveFileSystem normalizedPath ae.getName
+      if (!isRoot(path)) {
+        val key = (tµpe, path)
+        if (keys contains key) return
+        keys += key
+        entries ::= ae
+      }
+    }
+    try {
+      directory mkdirs ()
+      val temp = File createTempFile ("mount", ".tmp", directory)
+      try {
+        val out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))
+        try {
+          out writeInt Magic
+          out writeInt Version
+          out writeUTF mountPoint.toString
+          out writeUTF driver.getClass.getName
+          out writeLong size
+          out writeLong time
+          out writeInt entries.size
+          for (ae <- entries.reverse) {
+            out writeUTF ae.getName
+            out writeBoolean (DIRECTORY eq ae.getType)
+            for (s <- Sizes) out writeLong (ae getSize s)
+            for (a <- Accesses) out writeLong (ae getTime a)
+          }
+        } finally {
+          out close ()
+        }
+        val file = record(mountPoint)
+        Files move (temp.toPath, file.toPath, REPLACE_EXISTING, ATOMIC_MOVE)
+        locked {
+          scan()
+          account(file.getName, file.length)
+          evict()
+        }
+      } finally {
+        temp delete ()
+      }
+    } catch {
+      case _: IOException => // UTFDataFormatException, AtomicMoveNotSupportedException et al
+    }
+  }
+
+  /** Removes the record for the given archive file, if any.
+    *
+    * @param mountPoint the mount point of the archive file.
+    */
+  def remove(mountPoint: FsMountPoint) {
+    val file = record(mountPoint)
+    file delete ()
+    locked { if (null ne index) account(file.getName, 0) }
+  }
+
+  private def record(mountPoint: FsMountPoint) =
+    new File(directory, digest(mountPoint.toString) + Suffix)
+
+  /** Populates the index from the cache directory unless this has been done
+    * before.
+    */
+  private def scan() {
+    if (null ne index) return
+    index = new java.util.LinkedHashMap[String, java.lang.Long](16, 0.75f, true)
+    total = 0
+    val records = directory listFiles new FileFilter {
+      def accept(file: File) = file.getName endsWith Suffix
+    }
+    if (null eq records) return
+    for (file <- records sortBy { _.lastModified })
+      account(file.getName, file.length)
+  }
+
+  /** Updates the index with the given length of the named record.
+    * A zero length removes the record from the index.
+    */
+  private def account(name: String, length: Long) {
+    val old = if (0 < length) index put (name, length) else index remove name
+    total += length - (if (null ne old) old.longValue else 0)
+  }
+
+  /** Deletes the least recently used records until their total length does
+    * not exceed the maximum anymore.
+    */
+  private def evict() {
+    val i = index.entrySet.iterator
+    while (total > maximumBytes && i.hasNext) {
+      val entry = i.next
+      new File(directory, entry.getKey) delete ()
+      total -= entry.getValue
+      i remove ()
+    }
+  }
+}
+
+private object MountCache {
+
+  /** The key string for the system property which holds the path name of
+    * the cache directory.
+    */
+  val directoryPropertyKey: String = classOf[MountCache].getName + ".directory"
+
+  /** The key string for the system property which holds the maximum total
+    * size of the records in the cache directory in bytes.
+    */
+  val maximumBytesPropertyKey: String = classOf[MountCache].getName + ".maximumBytes"
+
+  /** The default value for the maximum total size of the records in the cache
+    * directory in bytes.
+    */
+  val maximumBytesDefaultValue: Long = 64L * 1024 * 1024
+
+  /** The mount cache or `None` if it's disabled.
+    * This is only mutable for testing.
+    */
+  @volatile var instance: Option[MountCache] =
+    Option(System getProperty directoryPropertyKey) map { path =>
+      new MountCache(new File(path),
+        java.lang.Long getLong (maximumBytesPropertyKey, maximumBytesDefaultValue))
+    }
+
+  private val Magic = 0x5456464d // "TVFM"
+  private val Version = 1
+  private val Suffix = ".mount"
+  private val Sizes = Size.values
+  private val Accesses = Access.values
+
+  private def digest(string: String) = {
+    val md = MessageDigest getInstance "SHA-1"
+    val sb = new StringBuilder
+    for (b <- md digest (string getBytes "UTF-8"))
+      sb append "%02x".format(b & 0xff)
+    sb.toString
+  }
+
+  /** A template for creating an archive entry from a record.
+    *
+    * @param getName the name of the archive entry.
+    * @param getType the type of the archive entry.
+    */
+  final class CachedEntry(val getName: String, val getType: Type, sizes: Array[Long], times: Array[Long])
+  extends Entry {
+    override def getSize(tµpe: Size) = sizes(tµpe.ordinal)
+    override def getTime(tµpe: Access) = times(tµpe.ordinal)
+    override def isPermitted(tµpe: Access, entity: Entity): java.lang.Boolean = null
+  }
+}
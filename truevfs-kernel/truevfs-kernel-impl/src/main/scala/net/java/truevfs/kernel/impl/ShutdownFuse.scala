@@ -4,6 +4,7 @@
  */
 package net.java.truevfs.kernel.impl
 
+import java.util.concurrent.locks.ReentrantLock
 import javax.annotation.concurrent.ThreadSafe
 
 import net.java.truevfs.kernel.impl.ShutdownFuse._
@@ -22,6 +23,8 @@ private final class ShutdownFuse private (registry: ThreadRegistry)(hook: => Uni
   @volatile
   private[this] var _armed: Boolean = _
 
+  private[this] val _lock = new ReentrantLock
+
   private[this] val _thread = new Thread {
     override def run() {
       // HC SVNT DRACONES!
@@ -56,7 +59,16 @@ private final class ShutdownFuse private (registry: ThreadRegistry)(hook: => Uni
 
   @inline
   private[this] def onCondition(condition: => Boolean)(block: => Unit) {
-    if (condition) { synchronized { if (condition) { block } } }
+    if (condition) {
+      // Don't use a monitor here: The hook may run a lengthy sync and a
+      // monitor would pin the current thread to its carrier thread, if any.
+      _lock lock ()
+      try {
+        if (condition) { block }
+      } finally {
+        _lock unlock ()
+      }
+    }
   }
 
   /** For testing only! */
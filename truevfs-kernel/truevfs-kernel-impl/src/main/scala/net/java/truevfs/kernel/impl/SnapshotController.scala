@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.kernel.impl
+
+import java.io._
+import java.nio.channels._
+import java.nio.file._
+import java.util.concurrent.atomic._
+import javax.annotation.concurrent._
+
+import net.java.truecommons.cio.Entry.Access._
+import net.java.truecommons.cio.Entry.Type._
+import net.java.truecommons.cio.Entry._
+import net.java.truecommons.cio._
+import net.java.truecommons.io._
+import net.java.truecommons.shed._
+import net.java.truevfs.kernel.impl.SnapshotController._
+import net.java.truevfs.kernel.spec.FsAccessOption._
+import net.java.truevfs.kernel.spec.FsSyncOption._
+import net.java.truevfs.kernel.spec._
+
+import scala.{None, Option, Some}
+
+/** Provides read-only access to an immutable target archive file.
+  *
+  * This controller gets used instead of the entire controller chain of
+  * `DefaultManager` if the archive driver declares its archive files to be
+  * [[net.java.truevfs.kernel.spec.FsArchiveDriver#isImmutable immutable]]
+  * for the lifetime of their mount.
+  * Upon the first access, the archive file system gets mounted and linked as
+  * a frozen snapshot.
+  * Thereafter, looking up nodes does not acquire any lock, and reading entries
+  * only serializes the actual read operations on the target archive file.
+  * There is no resource accounting other than counting the open streams and
+  * channels, no selective entry caching and no need to sync before any
+  * operation.
+  * Any attempt to modify the file system fails with an
+  * [[net.java.truevfs.kernel.spec.FsReadOnlyFileSystemException]].
+  *
+  * Syncing this controller discards the snapshot and closes the target
+  * archive file.
+  * If any streams or channels are open, then this fails unless the option
+  * `FORCE_CLOSE_IO` is set.
+  * Unlike the regular controller chain, this controller does not wait for
+  * other threads to close their streams or channels.
+  *
+  * This controller is an emitter of
+  * [[net.java.truevfs.kernel.impl.FalsePositiveArchiveException]]s.
+  *
+  * @tparam E the type of the archive entries.
+  * @author Christian Schlichtherle
+  */
+@ThreadSafe
+private final class SnapshotController[E <: FsArchiveEntry]
+(_driver: FsArchiveDriver[E], _model: FsModel, parent: FsController)
+extends ArchiveController[E] with ArchiveModelAspect[E] {
+
+  assert(null ne parent)
+
+  override val model: ArchiveModel[E] = new SnapshotModel(_driver, _model)
+  require(model.getParent eq parent.getModel, "Parent/member mismatch!")
+
+  /** The entry name of the target archive file in the parent file system. */
+  private[this] val name = mountPoint.getPath.getNodeName
+  assert(null ne name)
+
+  /** The mounted snapshot or `null` if the file system is not mounted. */
+  @volatile private[this] var _snapshot: Snapshot[E] = _
+
+  private def snapshot: Snapshot[E] = {
+    val snapshot = _snapshot
+    if (null ne snapshot) snapshot
+    else writeLocked { Option(_snapshot) getOrElse mount() }
+  }
+
+  private def mount(): Snapshot[E] = {
+    // HC SVNT DRACONES!
+    val pn = {
+      try {
+        parent node (MOUNT_OPTIONS, name)
+      } catch {
+        case ex: FalsePositiveArchiveException =>
+          throw new AssertionError(ex)
+        case inaccessibleEntry: IOException =>
+          throw new FalsePositiveArchiveException(inaccessibleEntry)
+      }
+    }
+    if (null eq pn)
+      throw new FalsePositiveArchiveException(
+        new NoSuchFileException(name.toString))
+    FalsePositiveCache lookup (mountPoint, pn) foreach { cause =>
+      throw new PersistentFalsePositiveArchiveException(new IOException(cause))
+    }
+    val is = {
+      try {
+        driver newInput (model, MOUNT_OPTIONS, parent, name)
+      } catch {
+        case ex: FalsePositiveArchiveException =>
+          throw new AssertionError(ex)
+        case ex: IOException =>
+          if (pn isType SPECIAL) throw new FalsePositiveArchiveException(ex)
+          FalsePositiveCache add (mountPoint, pn, ex)
+          throw new PersistentFalsePositiveArchiveException(ex)
+      }
+    }
+    val fs = ArchiveFileSystem(model, is, pn, None)
+    fs link () // freeze
+    val snapshot = new Snapshot(fs,
+      new LockInputService(new DisconnectingInputService(
+        ContentCache decorate (mountPoint, pn, is))))
+    _snapshot = snapshot
+    mounted = true
+    snapshot
+  }
+
+  /** Applies the given operation to the current snapshot.
+    * If the snapshot gets concurrently synced, then the operation gets
+    * retried with a new snapshot.
+    */
+  private def apply[V](operation: Snapshot[E] => V): V = {
+    while (true) {
+      val snapshot = this.snapshot
+      try {
+        return operation(snapshot)
+      } catch {
+        case ex: ClosedInputException =>
+          if (snapshot eq _snapshot) throw ex
+      }
+    }
+    throw new AssertionError("unreachable statement")
+  }
+
+  private def readOnly(): Nothing = {
+    snapshot // detect false positive archive files!
+    throw new FsReadOnlyFileSystemException(mountPoint)
+  }
+
+  def node(options: AccessOptions, name: FsNodeName): Option[FsNode] =
+    snapshot.fs node (options, name)
+
+  def checkAccess(options: AccessOptions, name: FsNodeName, types: BitField[Access]) {
+    val fs = snapshot.fs
+    if (types get WRITE)
+      throw new FsReadOnlyFileSystemException(mountPoint)
+    fs checkAccess (options, name, types)
+  }
+
+  def setReadOnly(options: AccessOptions, name: FsNodeName) { readOnly() }
+
+  def setTime(options: AccessOptions, name: FsNodeName, times: Map[Access, Long]): Boolean = readOnly()
+
+  def setTime(options: AccessOptions, name: FsNodeName, types: BitField[Access], value: Long): Boolean = readOnly()
+
+  def input(options: AccessOptions, name: FsNodeName): AnyInputSocket = {
+    require(null ne options)
+    require(null ne name)
+
+    final class Input extends AbstractInputSocket[E] {
+      def target(): E = apply(entry)
+
+      override def stream(peer: AnyOutputSocket): InputStream = apply { snapshot =>
+        val in = snapshot.input input entry(snapshot).getName stream peer
+        new SnapshotInputStream(snapshot.resources, in)
+      }
+
+      override def channel(peer: AnyOutputSocket): SeekableByteChannel = apply { snapshot =>
+        val channel = snapshot.input input entry(snapshot).getName channel peer
+        new SnapshotSeekableChannel(snapshot.resources, channel)
+      }
+
+      def entry(snapshot: Snapshot[E]): E = {
+        snapshot.fs node (options, name) match {
+          case Some(cn) =>
+            val ae = cn get FILE
+            if (null eq ae)
+              throw new FileSystemException(path(name).toString, null,
+                                            "Expected a FILE entry, but is a " + cn.getTypes + " entry!")
+            ae
+          case _ => throw new NoSuchFileException(path(name).toString)
+        }
+      }
+    }
+    new Input
+  }: AnyInputSocket
+
+  def output(options: AccessOptions, name: FsNodeName, template: Option[Entry]): AnyOutputSocket = {
+    final class Output extends AbstractOutputSocket[E] {
+      def target(): E = readOnly()
+
+      override def stream(peer: AnyInputSocket): OutputStream = readOnly()
+
+      override def channel(peer: AnyInputSocket): SeekableByteChannel = readOnly()
+    }
+    new Output
+  }: AnyOutputSocket
+
+  def make(options: AccessOptions, name: FsNodeName, tµpe: Type, template: Option[Entry]) { readOnly() }
+
+  def unlink(options: AccessOptions, name: FsNodeName) { readOnly() }
+
+  def sync(options: SyncOptions) {
+    writeLocked {
+      val snapshot = _snapshot
+      if (null ne snapshot) {
+        val builder = new FsSyncExceptionBuilder
+        val open = snapshot.resources get ()
+        if (0 != open) {
+          val ex = new FsOpenResourceException(0, open)
+          if (!(options get FORCE_CLOSE_IO))
+            throw builder fail new FsSyncException(mountPoint, ex)
+          builder warn new FsSyncWarningException(mountPoint, ex)
+        }
+        _snapshot = null
+        try {
+          snapshot.input close ()
+        } catch {
+          case ex: IOException =>
+            builder warn new FsSyncWarningException(mountPoint, ex)
+        }
+        mounted = false
+        builder check ()
+      }
+    }
+  }
+}
+
+private object SnapshotController {
+  private val MOUNT_OPTIONS = BitField.of(CACHE)
+
+  /** A mounted snapshot.
+    *
+    * @param fs the frozen archive file system.
+    * @param input the thread-safe input service for the target archive file.
+    */
+  private final class Snapshot[E <: FsArchiveEntry]
+  (val fs: ArchiveFileSystem[E], val input: LockInputService[E]) {
+
+    /** The number of open streams and channels. */
+    val resources = new AtomicInteger
+  }
+
+  private final class SnapshotModel[E <: FsArchiveEntry](driver: FsArchiveDriver[E], model: FsModel)
+  extends ArchiveModel(driver, model) {
+    override def touch(options: AccessOptions) {
+      throw new FsReadOnlyFileSystemException(getMountPoint)
+    }
+  }
+
+  private trait SnapshotResource extends Closeable {
+    def resources: AtomicInteger
+
+    private[this] val closed = new AtomicBoolean
+
+    resources incrementAndGet ()
+
+    abstract override def close() {
+      if (closed compareAndSet (false, true)) resources decrementAndGet ()
+      super.close()
+    }
+  }
+
+  private final class SnapshotInputStream(val resources: AtomicInteger, in: InputStream)
+  extends DecoratingInputStream(in) with SnapshotResource
+
+  private final class SnapshotSeekableChannel(val resources: AtomicInteger, channel: SeekableByteChannel)
+  extends DecoratingSeekableChannel(channel) with SnapshotResource
+}
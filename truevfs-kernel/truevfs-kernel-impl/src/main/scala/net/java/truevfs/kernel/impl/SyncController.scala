@@ -40,11 +40,28 @@ private trait SyncController[E <: FsArchiveEntry]
 extends ArchiveController[E] {
   controller: ArchiveModelAspect[E] =>
 
-  abstract override def node(options: AccessOptions, name: FsNodeName) =
-    apply(super.node(options, name))
+  // The following two methods get called very frequently, so they avoid to
+  // allocate a closure unless a sync is required.
+
+  abstract override def node(options: AccessOptions, name: FsNodeName) = {
+    try {
+      super.node(options, name)
+    } catch {
+      case opEx: NeedsSyncException =>
+        sync(opEx)
+        apply(super.node(options, name))
+    }
+  }
 
-  abstract override def checkAccess(options: AccessOptions, name: FsNodeName, types: BitField[Access]) =
-    apply(super.checkAccess(options, name, types))
+  abstract override def checkAccess(options: AccessOptions, name: FsNodeName, types: BitField[Access]) {
+    try {
+      super.checkAccess(options, name, types)
+    } catch {
+      case opEx: NeedsSyncException =>
+        sync(opEx)
+        apply(super.checkAccess(options, name, types))
+    }
+  }
 
   abstract override def setReadOnly(options: AccessOptions, name: FsNodeName) =
     apply(super.setReadOnly(options, name))
@@ -128,20 +145,26 @@ extends ArchiveController[E] {
       try {
         return operation
       } catch {
-        case opEx: NeedsSyncException =>
-          checkWriteLockedByCurrentThread
-          try {
-            doSync(SYNC)
-          } catch {
-            case syncEx: FsSyncException =>
-              syncEx addSuppressed opEx
-              throw syncEx
-          }
+        case opEx: NeedsSyncException => sync(opEx)
       }
     }
     throw new AssertionError("unreachable statement")
   }
 
+  /** Syncs the super class controller because the given exception has been
+    * thrown by a file system operation.
+    */
+  private def sync(opEx: NeedsSyncException) {
+    checkWriteLockedByCurrentThread
+    try {
+      doSync(SYNC)
+    } catch {
+      case syncEx: FsSyncException =>
+        syncEx addSuppressed opEx
+        throw syncEx
+    }
+  }
+
   abstract override def sync(options: SyncOptions) {
     assert(writeLockedByCurrentThread)
     assert(!readLockedByCurrentThread)
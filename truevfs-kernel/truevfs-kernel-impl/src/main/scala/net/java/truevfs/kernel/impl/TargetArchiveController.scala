@@ -66,13 +66,43 @@ extends FileSystemArchiveController[E] with ArchiveModelAspect[E] {
    */
   private[this] var _outputArchive: Option[OutputArchive[E]] = None
 
+  /**
+   * The identity map of the placeholder entries to their templates if the
+   * (virtual) archive file system has been mounted from the [[MountCache]]
+   * and the target archive file has not yet been opened.
+   */
+  private[this] var _placeholders: Option[java.util.Map[E, Entry]] = None
+
+  /**
+   * Whether or not the root directory has been unlinked, so that the target
+   * archive file is about to get deleted and aborting the pending changes
+   * does not need to restore its committed entries.
+   */
+  private[this] var _unlinked = false
+
+  /**
+   * The stamp of the target archive file in the parent file system at the
+   * time it has been mounted if external change detection is enabled.
+   */
+  private[this] var _stamp: Option[Stamp] = None
+
+  /** The time of the last check for an external change in milliseconds. */
+  @volatile private[this] var _checked = 0L
+
+  /**
+   * Whether or not the target archive file has been changed by a third
+   * party since it has been mounted.
+   */
+  @volatile private[this] var _stale = false
+
   assert(invariants)
 
   private def invariants = {
     val fs = fileSystem
     assert(_inputArchive.isEmpty || fs.isDefined)
     assert(_outputArchive.isEmpty || fs.isDefined)
-    assert(fs.isEmpty || _inputArchive.isDefined || _outputArchive.isDefined)
+    assert(_placeholders.isEmpty || _inputArchive.isEmpty && _outputArchive.isEmpty)
+    assert(fs.isEmpty || _inputArchive.isDefined || _outputArchive.isDefined || _placeholders.isDefined)
     // This is effectively the same than the last three assertions, but is
     // harder to trace in the field on failure.
     //assert null != fs == (null != ia || null != oa);
@@ -80,12 +110,48 @@ extends FileSystemArchiveController[E] with ArchiveModelAspect[E] {
   }
 
   private def inputArchive = {
+    _placeholders foreach adopt
     _inputArchive match {
       case Some(ia) if !ia.clutch.isOpen => throw NeedsSyncException()
       case x => x
     }
   }
 
+  /**
+   * Opens the target archive file for a file system which has been mounted
+   * from the mount cache and replaces its placeholder entries with the
+   * entries from the input archive.
+   *
+   * If the entries of the target archive file don't match the placeholder
+   * entries, then the record gets removed from the mount cache and a sync
+   * gets requested, so that the archive file system gets mounted again from
+   * the target archive file.
+   *
+   * @throws IOException if the target archive file cannot get opened.
+   * @throws NeedsSyncException if the entries of the target archive file
+   *         don't match the placeholder entries.
+   */
+  private def adopt(placeholders: java.util.Map[E, Entry]) {
+    def mismatch() = {
+      MountCache.instance foreach { _ remove mountPoint }
+      _stale = true
+      NeedsSyncException()
+    }
+    val pn = parent node (MOUNT_OPTIONS, name)
+    if (null eq pn) throw mismatch()
+    val is = driver newInput (model, MOUNT_OPTIONS, parent, name)
+    if (!(fileSystem.get adopt (is, placeholders))) {
+      try {
+        is close ()
+      } catch {
+        case _: IOException => // ignore
+      }
+      throw mismatch()
+    }
+    _placeholders = None
+    inputArchive = Some(new InputArchive(mountPoint, pn, is))
+  }
+
   private def inputArchive_=(ia: Option[InputArchive[E]]) {
     assert(ia.isEmpty || _inputArchive.isEmpty)
     ia foreach { _ => mounted = true }
@@ -117,9 +183,11 @@ extends FileSystemArchiveController[E] with ArchiveModelAspect[E] {
     // HC SVNT DRACONES!
 
     // Check parent file system node.
+    // The access option SNAPSHOT only applies to the archive file system
+    // which contains the node, so it must not apply to its parent.
     val pn = {
       try {
-        parent node (options, name)
+        parent node (options clear SNAPSHOT, name)
       } catch {
         case ex: FalsePositiveArchiveException =>
           throw new AssertionError(ex)
@@ -142,10 +210,33 @@ extends FileSystemArchiveController[E] with ArchiveModelAspect[E] {
             new NoSuchFileException(name.toString))
         }
       } else {
+        // Skip the mount attempt for a known false positive archive file.
+        // Wrap the cached cause so that it doesn't accumulate any
+        // suppressed exceptions.
+        FalsePositiveCache lookup (mountPoint, pn) foreach { cause =>
+          throw new PersistentFalsePositiveArchiveException(new IOException(cause))
+        }
         // ro must be init first because the parent archive
         // controller could be a FileController and on Windows this
         // property changes to TRUE once a file is opened for reading!
         val ro = optionalReadOnlyCause()
+        // Only cache archive files in a non-federated file system: The last
+        // modification time of an archive entry has a resolution of up to
+        // two seconds, which is too coarse for validating a record.
+        val cache = MountCache.instance filter { _ => null eq parent.getModel.getParent }
+        cache flatMap { _ load (mountPoint, driver, pn) } match {
+          case Some(templates) =>
+            val placeholders = new java.util.IdentityHashMap[E, Entry](templates.size * 4 / 3 + 1)
+            for (template <- templates)
+              placeholders put (driver newEntry (template.getName, template.getType, template), template)
+            val fs = ArchiveFileSystem(model, new PlaceholderContainer(placeholders.keySet), pn, ro)
+            _placeholders = Some(placeholders)
+            mounted = true
+            fileSystem = Some(fs)
+            stamp(pn)
+            return
+          case None =>
+        }
         val is = {
           try {
             driver newInput (model, MOUNT_OPTIONS, parent, name)
@@ -154,12 +245,15 @@ extends FileSystemArchiveController[E] with ArchiveModelAspect[E] {
               throw new AssertionError(ex)
             case ex: IOException =>
               if (pn isType SPECIAL) throw new FalsePositiveArchiveException(ex)
+              FalsePositiveCache add (mountPoint, pn, ex)
               throw new PersistentFalsePositiveArchiveException(ex)
           }
         }
         val fs = ArchiveFileSystem(model, is, pn, ro)
-        inputArchive = Some(new InputArchive(is))
+        inputArchive = Some(new InputArchive(mountPoint, pn, is))
         assert(mounted)
+        cache foreach { _ save (mountPoint, driver, pn, is) }
+        stamp(pn)
         fs
       }
     }
@@ -168,6 +262,63 @@ extends FileSystemArchiveController[E] with ArchiveModelAspect[E] {
     fileSystem = Some(fs)
   }
 
+  /**
+   * Records the stamp of the given parent file system node for detecting
+   * external changes to the target archive file.
+   * Only archive files in a non-federated file system get checked, because
+   * an enclosing archive file already gets checked itself.
+   */
+  private def stamp(pn: FsNode) {
+    if (checkIntervalMillis < 0 || (null ne parent.getModel.getParent)) return
+    _stamp = Some(Stamp(pn))
+    _checked = System.currentTimeMillis
+  }
+
+  /**
+   * Checks if the target archive file has been changed by a third party
+   * since it has been mounted.
+   * The check gets done at most once per configured interval and compares
+   * the size, the last modification time and the creation time of the target
+   * archive file with its stamp.
+   * The creation time detects a file which has been replaced by a third
+   * party who has preserved its size and last modification time, provided
+   * that the parent file system supports it.
+   * A file system with pending changes does not get checked because it's
+   * going to overwrite the target archive file anyway.
+   *
+   * @throws NeedsSyncException if the target archive file has been changed.
+   */
+  private def checkExternalChange() {
+    if (_stamp.isEmpty || _outputArchive.isDefined) return
+    if (!_stale) {
+      val now = System.currentTimeMillis
+      if (now - _checked < checkIntervalMillis) return
+      _checked = now
+      val current = {
+        try {
+          Option(parent node (MOUNT_OPTIONS, name)) map { Stamp(_) }
+        } catch {
+          case ex: FalsePositiveArchiveException =>
+            throw new AssertionError(ex)
+          case _: IOException => None
+        }
+      }
+      if (current == _stamp) return
+      _stale = true
+    }
+    throw NeedsSyncException()
+  }
+
+  override def node(options: AccessOptions, name: FsNodeName): Option[FsNode] = {
+    checkExternalChange()
+    super.node(options, name)
+  }
+
+  override def checkAccess(options: AccessOptions, name: FsNodeName, types: BitField[Access]) {
+    checkExternalChange()
+    super.checkAccess(options, name, types)
+  }
+
   private def optionalReadOnlyCause() = {
     try {
       parent checkAccess (MOUNT_OPTIONS, name, WRITE_ACCESS)
@@ -224,6 +375,7 @@ extends FileSystemArchiveController[E] with ArchiveModelAspect[E] {
   }
 
   def output(options: AccessOptions, entry: E): OutputSocket[E] = {
+    ContentCache remove (mountPoint, entry.getName)
     final class Output extends AbstractOutputSocket[E] {
       lazy val socket: OutputSocket[E] = outputArchive(options) output entry
 
@@ -247,10 +399,16 @@ extends FileSystemArchiveController[E] with ArchiveModelAspect[E] {
     }
   }
 
+  override def unlink(options: AccessOptions, name: FsNodeName) {
+    super.unlink(options, name)
+    if (name.isRoot) _unlinked = true
+  }
+
   def sync(options: SyncOptions) {
     try {
       val builder = new FsSyncExceptionBuilder
-      if (!(options get ABORT_CHANGES)) copy(builder)
+      if (options get ABORT_CHANGES) restore(builder) else copy(builder)
+      if (_stale) refresh(builder)
       close(options, builder)
       builder check ()
     } finally {
@@ -320,6 +478,93 @@ extends FileSystemArchiveController[E] with ArchiveModelAspect[E] {
     }
   }
 
+  /**
+   * Restores the committed entries from the input archive to the output
+   * archive in order to abort all pending changes.
+   * Otherwise, closing the output archive would truncate the target archive
+   * file to the entries which have been written to it so far.
+   * The entry data gets copied in raw format if the driver supports it.
+   *
+   * @param handler the strategy for assembling sync exceptions.
+   */
+  private def restore(handler: FsSyncExceptionBuilder) {
+    if (_unlinked) return
+
+    val is = _inputArchive match {
+      case Some(ia) =>
+        val clutch = ia.clutch
+        if (!clutch.isOpen) return
+        clutch
+      case _ =>
+        return
+    }
+
+    val os = _outputArchive match {
+      case Some(oa) =>
+        val clutch = oa.clutch
+        if (!clutch.isOpen) return
+        clutch
+      case _ =>
+        return
+    }
+
+    val fs = fileSystem.get
+    for (ae <- is) {
+      val aen = ae.getName
+      try {
+        if (null ne (os entry aen))
+          throw new FileSystemException(mountPoint.toString, aen,
+                                        "Cannot restore the committed version of this entry because it has already been overwritten!")
+        fs revert ae
+        if (DIRECTORY eq ae.getType) os.output(ae).stream(null).close()
+        else IoSockets.copy(is.input(aen), os.output(ae))
+      } catch {
+        case ex: IOException =>
+          throw handler fail new FsSyncException(mountPoint, ex)
+      }
+    }
+  }
+
+  /**
+   * Compares the entries in the file system with the entries in the target
+   * archive file which has been changed by a third party and invalidates any
+   * data which has been cached for the changed or deleted entries.
+   * This enables to remount the target archive file without discarding the
+   * cached data for the unchanged entries.
+   *
+   * @param handler the strategy for assembling sync exceptions.
+   */
+  private def refresh(handler: FsSyncExceptionBuilder) {
+    val stamps = new java.util.HashMap[String, Stamp]
+    for (fs <- fileSystem; cn <- fs; ae <- cn.getEntries)
+      stamps put (ArchiveFileSystem normalizedPath ae.getName, Stamp(ae))
+    val changed = new collection.mutable.HashSet[String]
+    try {
+      val is = driver newInput (model, MOUNT_OPTIONS, parent, name)
+      try {
+        for (ae <- is) {
+          val path = ArchiveFileSystem normalizedPath ae.getName
+          if ((stamps remove path) != Stamp(ae)) changed += path
+        }
+      } finally {
+        is close ()
+      }
+    } catch {
+      case ex: FalsePositiveArchiveException =>
+        throw new AssertionError(ex)
+      case _: IOException =>
+        // The target archive file has been deleted or is not an archive file
+        // anymore, so invalidate everything.
+    }
+    changed ++= stamps.keySet
+    try {
+      invalidate(changed)
+    } catch {
+      case ex: IOException =>
+        handler warn new FsSyncWarningException(mountPoint, ex)
+    }
+  }
+
   /**
    * Discards the file system, closes the input archive and finally the
    * output archive.
@@ -348,6 +593,8 @@ extends FileSystemArchiveController[E] with ArchiveModelAspect[E] {
       inputArchive = None
     }
     _outputArchive.foreach { oa =>
+      MountCache.instance foreach { _ remove mountPoint }
+      FalsePositiveCache remove mountPoint
       try {
         oa close ()
       } catch {
@@ -359,6 +606,10 @@ extends FileSystemArchiveController[E] with ArchiveModelAspect[E] {
       }
       outputArchive = None
     }
+    _placeholders = None
+    _unlinked = false
+    _stamp = None
+    _stale = false
     fileSystem = None
     if (options get ABORT_CHANGES) mounted = false
   }
@@ -372,6 +623,15 @@ extends FileSystemArchiveController[E] with ArchiveModelAspect[E] {
       case _        => return
     }
 
+    // If the target archive file has been changed by a third party, then
+    // fail the test.
+    checkExternalChange()
+
+    // If our intention is reading the committed version of the entry, then
+    // pass the test because it's either present in the input archive or
+    // the file system reports that it doesn't exist.
+    if ((options get SNAPSHOT) && (intention eq READ)) return
+
     // If GROWing and the driver supports the respective access method,
     // then pass the test.
     if (options.get(GROW)) {
@@ -427,9 +687,38 @@ private object TargetArchiveController {
   private val MOUNT_OPTIONS = BitField.of(CACHE)
   private val WRITE_ACCESS = BitField.of(WRITE)
 
+  /** The key string for the system property which holds the minimum interval
+    * in milliseconds between two checks if a target archive file has been
+    * changed by a third party since it has been mounted.
+    * If the value is zero, then the check gets done upon each access.
+    * If the value is negative, then external change detection is disabled.
+    */
+  val checkIntervalMillisPropertyKey: String =
+    classOf[TargetArchiveController[_]].getName + ".checkIntervalMillis"
+
+  /** The default value for the minimum interval in milliseconds between two
+    * checks for external changes, which disables external change detection.
+    */
+  val checkIntervalMillisDefaultValue: Long = -1
+
+  /** The minimum interval in milliseconds between two checks for external
+    * changes.
+    * This is only mutable for testing.
+    */
+  @volatile var checkIntervalMillis: Long =
+    java.lang.Long getLong (checkIntervalMillisPropertyKey, checkIntervalMillisDefaultValue)
+
+  /** The properties of an entry which get compared for detecting a change. */
+  private final case class Stamp(size: Long, storage: Long, time: Long, created: Long)
+
+  private object Stamp {
+    def apply(entry: Entry): Stamp =
+      Stamp(entry getSize DATA, entry getSize STORAGE, entry getTime WRITE, entry getTime CREATE)
+  }
+
   private final class InputArchive[E <: FsArchiveEntry]
-  (val driverProduct: InputService[E])
-  extends LockInputService(new DisconnectingInputService(driverProduct)) {
+  (mountPoint: FsMountPoint, archive: Entry, val driverProduct: InputService[E])
+  extends LockInputService(new DisconnectingInputService(ContentCache decorate (mountPoint, archive, driverProduct))) {
     def clutch: DisconnectingInputService[E] = container.asInstanceOf[DisconnectingInputService[E]]
   }
 
@@ -439,6 +728,20 @@ private object TargetArchiveController {
     def clutch: DisconnectingOutputService[E] = container.asInstanceOf[DisconnectingOutputService[E]]
   }
 
+  /** A container for the placeholder entries of a file system which gets
+    * mounted from the mount cache.
+    *
+    * @tparam E the type of the entries.
+    */
+  private final class PlaceholderContainer[E <: Entry](entries: java.util.Collection[E])
+  extends Container[E] {
+    override def size = entries.size
+    override def iterator: java.util.Iterator[E] = entries.iterator
+    override def entry(name: String): E =
+      entries find { _.getName == name } getOrElse null.asInstanceOf[E]
+    override def close() { }
+  }
+
   /** A dummy input archive to substitute for `None` when copying.
     *
     * @tparam E the type of the entries.
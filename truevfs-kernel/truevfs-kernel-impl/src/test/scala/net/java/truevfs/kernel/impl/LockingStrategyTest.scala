@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.kernel.impl
+
+import java.util.concurrent._
+import java.util.concurrent.locks._
+
+import net.java.truevfs.kernel.impl.LockingStrategy._
+import org.junit.runner.RunWith
+import org.scalatest.Matchers._
+import org.scalatest.WordSpec
+import org.scalatest.junit.JUnitRunner
+
+/**
+ * @author Christian Schlichtherle
+ */
+@RunWith(classOf[JUnitRunner])
+class LockingStrategyTest extends WordSpec {
+
+  "A locking strategy" when {
+    "not applied" should {
+      "not account any locks" in {
+        lockCount should be (0)
+      }
+    }
+
+    "applied recursively" should {
+      "account the locks held by the current thread" in {
+        val lock1, lock2 = new ReentrantLock
+        timedLocked(lock1) {
+          lockCount should be (1)
+          fastLocked(lock2) {
+            lockCount should be (2)
+          }
+          lockCount should be (1)
+        }
+        lockCount should be (0)
+      }
+
+      "stop accounting when the operation fails" in {
+        val lock = new ReentrantLock
+        intercept[IllegalStateException] {
+          timedLocked(lock) { throw new IllegalStateException }
+        }
+        lockCount should be (0)
+        lock.isLocked should be (false)
+      }
+    }
+
+    "applied to a lock held by another thread" should {
+      "release all locks and retry the operation" in {
+        val lock1, lock2 = new ReentrantLock
+        val locked = new CountDownLatch(1)
+        val release = new CountDownLatch(1)
+        val other = new Thread {
+          override def run() {
+            lock2 lock ()
+            try {
+              locked countDown ()
+              release await ()
+            } finally {
+              lock2 unlock ()
+            }
+          }
+        }
+        other start ()
+        locked await ()
+        var attempts = 0
+        timedLocked(lock1) {
+          attempts += 1
+          // The first attempt must fail because the other thread still
+          // holds the lock.
+          if (1 < attempts) release countDown ()
+          fastLocked(lock2) {
+            lockCount should be (2)
+          }
+        }
+        other join ()
+        attempts should be > 1
+        lockCount should be (0)
+      }
+    }
+  }
+}
@@ -91,4 +91,21 @@ public enum FsAccessOption {
      * to the caller.
      */
     ENCRYPT,
+
+    /**
+     * Expresses a preference to read the last committed version of an archive
+     * entry, i.e. its version as of the last sync of its archive file,
+     * regardless of any pending changes.
+     * This enables readers to look up and read archive entries while a writer
+     * is busy updating the same archive file without forcing a sync of the
+     * pending changes and without seeing them until they get committed by the
+     * next sync.
+     * <p>
+     * This option only applies to the archive file which contains the
+     * entry, not to its parent archive files, if any.
+     * Note that this option may get ignored by file system drivers.
+     * Furthermore, if this happens, there may be no direct feedback available
+     * to the caller.
+     */
+    SNAPSHOT,
 }
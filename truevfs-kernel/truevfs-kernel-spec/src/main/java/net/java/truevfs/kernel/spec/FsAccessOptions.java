@@ -23,10 +23,10 @@ public final class FsAccessOptions {
 
     /**
      * The mask of access preferences, which is
-     * <code>{@link BitField}.of({@link FsAccessOption#CACHE}, {@link FsAccessOption#CREATE_PARENTS}, {@link FsAccessOption#STORE}, {@link FsAccessOption#COMPRESS}, {@link FsAccessOption#GROW}, {@link FsAccessOption#ENCRYPT})</code>.
+     * <code>{@link BitField}.of({@link FsAccessOption#CACHE}, {@link FsAccessOption#CREATE_PARENTS}, {@link FsAccessOption#STORE}, {@link FsAccessOption#COMPRESS}, {@link FsAccessOption#GROW}, {@link FsAccessOption#ENCRYPT}, {@link FsAccessOption#SNAPSHOT})</code>.
      */
     public static final BitField<FsAccessOption> ACCESS_PREFERENCES_MASK
-            = BitField.of(CACHE, CREATE_PARENTS, GROW, STORE, COMPRESS, ENCRYPT);
+            = BitField.of(CACHE, CREATE_PARENTS, GROW, STORE, COMPRESS, ENCRYPT, SNAPSHOT);
 
     /**
      * Converts the given array to a bit field of output options.
@@ -139,6 +139,27 @@ extends FsDriver {
      */
     public boolean getRedundantMetaDataSupport() { return false; }
 
+    /**
+     * Returns {@code true} if and only if the archive files accessed by this
+     * archive driver are immutable for the lifetime of their mount.
+     * If the return value is {@code true}, then the file system manager may
+     * mount an archive file as a frozen snapshot which gets accessed
+     * concurrently without any read/write locking, resource accounting or
+     * entry caching.
+     * Any attempt to modify such a file system fails with an
+     * {@link FsReadOnlyFileSystemException}.
+     * <p>
+     * This is an immutable property - multiple calls must return the same
+     * value.
+     * <p>
+     * The default value of this property is {@code false} as defined by the
+     * implementation in the class {@link FsArchiveDriver}.
+     *
+     * @return {@code true} if and only if the archive files accessed by this
+     *         archive driver are immutable for the lifetime of their mount.
+     */
+    public boolean isImmutable() { return false; }
+
     /**
      * Returns the pool for allocating temporary I/O buffers.
      * <p>
@@ -27,7 +27,8 @@ extends FsAbstractNode implements Cloneable {
     private final String name;
     private EnumMap<Type, E> map = new EnumMap<>(Type.class);
     private @Nullable Type key;
-    private @Nullable LinkedHashSet<String> members;
+    private @Nullable Set<String> members;
+    private boolean immutable;
 
     /**
      * Constructs a new covariant file system node with the given path.
@@ -43,8 +44,33 @@ extends FsAbstractNode implements Cloneable {
      *         entries.
      * @return A deep clone of this covariant file system node.
      */
+    public FsCovariantNode<E> clone(FsArchiveDriver<E> driver) {
+        return clone(driver, false);
+    }
+
+    /**
+     * Returns an immutable snapshot of this covariant file system node.
+     * Unlike a {@link #clone clone}, a snapshot may get shared by any number
+     * of readers, even concurrently:
+     * Any attempt to modify the key, the map or the set of members of the
+     * returned node fails with an {@link UnsupportedOperationException}.
+     * However, the mapped archive entries must not get modified either,
+     * because this is not checked.
+     * <p>
+     * If this node is a snapshot itself, then it gets returned.
+     *
+     * @param  driver the archive driver to use for cloning the mapped archive
+     *         entries.
+     * @return An immutable snapshot of this covariant file system node.
+     */
+    public FsCovariantNode<E> snapshot(FsArchiveDriver<E> driver) {
+        return immutable ? this : clone(driver, true);
+    }
+
     @SuppressWarnings("unchecked")
-    public FsCovariantNode<E> clone(final FsArchiveDriver<E> driver) {
+    private FsCovariantNode<E> clone(
+            final FsArchiveDriver<E> driver,
+            final boolean immutable) {
         final FsCovariantNode<E> clone;
         try {
             clone = (FsCovariantNode<E>) super.clone();
@@ -57,9 +83,20 @@ extends FsAbstractNode implements Cloneable {
             cloneMap.put(mapping.getKey(),
                     driver.newEntry(entry.getName(), entry.getType(), entry));
         }
-        final LinkedHashSet<String> members = this.members;
-        if (null != members)
-            clone.members = (LinkedHashSet<String>) members.clone();
+        final Set<String> members = this.members;
+        if (immutable) {
+            clone.members = isType(DIRECTORY)
+                    ? Collections.unmodifiableSet(null != members
+                        ? new LinkedHashSet<>(members)
+                        : Collections.<String>emptySet())
+                    : null;
+            clone.immutable = true;
+        } else {
+            clone.members = null != members
+                    ? new LinkedHashSet<>(members)
+                    : null;
+            clone.immutable = false;
+        }
         return clone;
     }
 
@@ -102,7 +139,10 @@ extends FsAbstractNode implements Cloneable {
      *        {@link #getEntry()}, {@link #getSize(Size)},
      *        {@link #getTime(Access)} et al shall get forwarded.
      */
-    public void setKey(@Nullable Type key) { this.key = key; }
+    public void setKey(@Nullable Type key) {
+        checkMutable();
+        this.key = key;
+    }
 
     /**
      * Maps the given type to the given archive entry.
@@ -114,6 +154,7 @@ extends FsAbstractNode implements Cloneable {
      * @return The previously mapped archive entry.
      */
     public @Nullable E put(Type type, E entry) {
+        checkMutable();
         return map.put(key = type, entry);
     }
 
@@ -123,7 +164,10 @@ extends FsAbstractNode implements Cloneable {
      * @param type the type to remove.
      * @return The previously mapped archive entry.
      */
-    public @Nullable E remove(Type type) { return map.remove(type); }
+    public @Nullable E remove(Type type) {
+        checkMutable();
+        return map.remove(type);
+    }
 
     /**
      * Returns the archive entry for the given type.
@@ -147,7 +191,12 @@ extends FsAbstractNode implements Cloneable {
      *
      * @return a collection of the mapped entries
      */
-    public Collection<E> getEntries() { return map.values(); }
+    public Collection<E> getEntries() {
+        final Collection<E> entries = map.values();
+        return immutable
+                ? Collections.unmodifiableCollection(entries)
+                : entries;
+    }
 
     /**
      * Returns a set of the mapped types.
@@ -194,6 +243,7 @@ extends FsAbstractNode implements Cloneable {
      */
     @Override
     public @Nullable Set<String> getMembers() {
+        if (immutable) return members;
         if (!isType(DIRECTORY)) return members = null;
         final Set<String> m = members;
         return null != m ? m : (members = new LinkedHashSet<>());
@@ -222,4 +272,10 @@ extends FsAbstractNode implements Cloneable {
      *         not implement a directory.
      */
     public boolean remove(String member) { return getMembers().remove(member); }
+
+    private void checkMutable() {
+        if (immutable)
+            throw new UnsupportedOperationException(
+                    "This is an immutable snapshot!");
+    }
 }
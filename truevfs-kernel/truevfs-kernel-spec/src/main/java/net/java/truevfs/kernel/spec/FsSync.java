@@ -9,7 +9,22 @@ import net.java.truecommons.shed.Filter;
 import net.java.truecommons.shed.Visitor;
 import net.java.truevfs.kernel.spec.sl.FsManagerLocator;
 
+import javax.annotation.CheckForNull;
 import javax.inject.Provider;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.util.Objects.requireNonNull;
 
@@ -21,6 +36,8 @@ public final class FsSync {
     private Provider<FsManager> managerProvider = FsManagerLocator.SINGLETON;
     private Filter<? super FsController> filter = Filter.ACCEPT_ANY;
     private BitField<FsSyncOption> options = FsSyncOptions.NONE;
+    private int parallelism = 1;
+    private @CheckForNull Executor executor;
 
     public FsSync manager(final FsManager manager) {
         requireNonNull(manager);
@@ -42,6 +59,41 @@ public final class FsSync {
         return this;
     }
 
+    /**
+     * Sets the maximum number of file system controllers which get
+     * {@link FsController#sync sync()}ed concurrently.
+     * The default value is one, which makes {@link #run()} sync all
+     * controllers one after another on the caller's thread.
+     * This property is ignored if an {@link #executor executor} is set.
+     *
+     * @param  parallelism the maximum number of concurrent syncs.
+     * @return {@code this}
+     * @throws IllegalArgumentException if {@code parallelism} is less than
+     *         one.
+     */
+    public FsSync parallelism(final int parallelism) {
+        if (1 > parallelism)
+            throw new IllegalArgumentException(parallelism + " < 1");
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Sets the executor for {@link FsController#sync sync()}ing the file
+     * system controllers concurrently.
+     * If this property is set, then the executor determines the level of
+     * parallelism.
+     * Otherwise, a private thread pool of the configured
+     * {@link #parallelism parallelism} gets created for each run.
+     *
+     * @param  executor the executor for syncing the file system controllers.
+     * @return {@code this}
+     */
+    public FsSync executor(final Executor executor) {
+        this.executor = requireNonNull(executor);
+        return this;
+    }
+
     /**
      * Invokes {@link FsController#sync sync()} on all managed file system
      * controllers which are accepted by the configured file system controller
@@ -51,6 +103,10 @@ public final class FsSync {
      * over all managed file system controllers in order to ensure that all
      * controllers get synced, even if a controller fails with an
      * {@link FsSyncException}.
+     * <p>
+     * If a {@link #parallelism parallelism} greater than one or an
+     * {@link #executor executor} is configured, then this method delegates to
+     * {@link #runAsync()} and waits uninterruptibly for its result.
      *
      * @throws FsSyncWarningException if <em>only</em> warning conditions
      *         apply.
@@ -60,27 +116,264 @@ public final class FsSync {
      * @throws FsSyncException if any error conditions apply.
      */
     public void run() throws FsSyncException {
+        if (null == executor && 1 == parallelism) {
+
+            final class SyncVisitor implements Visitor<FsController, RuntimeException> {
+
+                final FsSyncExceptionBuilder builder = new FsSyncExceptionBuilder();
+
+                @Override
+                public void visit(final FsController controller) {
+                    try {
+                        controller.sync(options);
+                    } catch (FsSyncException e) {
+                        builder.warn(e);
+                    }
+                }
 
-        final class SyncVisitor implements Visitor<FsController, RuntimeException> {
+                void check() throws FsSyncException {
+                    builder.check();
+                }
+            }
 
-            final FsSyncExceptionBuilder builder = new FsSyncExceptionBuilder();
+            manager().accept(filter, new SyncVisitor()).check();
+        } else {
+            await(runAsync());
+        }
+    }
+
+    /**
+     * Asynchronously invokes {@link FsController#sync sync()} on all managed
+     * file system controllers which are accepted by the configured file system
+     * controller filter.
+     * <p>
+     * The mount point hierarchy gets respected: A file system controller gets
+     * synced only after all accepted controllers of its child file systems
+     * have been synced.
+     * Controllers with no parent/child relationship, e.g. sibling archive
+     * files, get synced concurrently using the configured
+     * {@link #executor executor} or a private thread pool of the configured
+     * {@link #parallelism parallelism}.
+     * <p>
+     * Once all controllers have been synced, the managed controllers get
+     * visited again in order to assemble the resulting {@link FsSyncException}
+     * with an {@link FsSyncExceptionBuilder}, so any
+     * {@link FsManager#accept decorating file system manager} observes the
+     * same sequence of events as for {@link #run()}.
+     * Controllers which have been created in the meantime get synced then,
+     * too.
+     * <p>
+     * Cancelling the returned future does not abort any pending syncs.
+     *
+     * @return A future for the result of the synchronization.
+     *         Its {@link Future#get() get()} method throws an
+     *         {@link ExecutionException} with an {@link FsSyncException} as
+     *         its cause if any warning or error conditions apply.
+     */
+    public Future<Void> runAsync() {
+
+        final class CollectVisitor implements Visitor<FsController, RuntimeException> {
+
+            final List<FsController> controllers = new ArrayList<>();
 
             @Override
-            public void visit(final FsController controller) {
+            public void visit(FsController controller) {
+                controllers.add(controller);
+            }
+        }
+
+        return new ParallelSync(
+                manager().accept(filter, new CollectVisitor()).controllers)
+                .start();
+    }
+
+    private FsManager manager() { return managerProvider.get(); }
+
+    private static void await(final Future<Void> future)
+    throws FsSyncException {
+        boolean interrupted = false;
+        try {
+            while (true) {
                 try {
-                    controller.sync(options);
-                } catch (FsSyncException e) {
-                    builder.warn(e);
+                    future.get();
+                    return;
+                } catch (InterruptedException ex) {
+                    interrupted = true;
                 }
             }
+        } catch (final ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof FsSyncException)
+                throw (FsSyncException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new AssertionError(cause);
+        } finally {
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
 
-            void check() throws FsSyncException {
-                builder.check();
+    /**
+     * Syncs a list of file system controllers in reverse hierarchical order
+     * of their mount points.
+     */
+    private final class ParallelSync {
+
+        final Map<FsMountPoint, SyncTask> tasks;
+        final AtomicInteger remaining;
+        final @CheckForNull ExecutorService pool;
+        final Executor executor;
+        final FutureTask<Void> result;
+
+        ParallelSync(final List<FsController> controllers) {
+            final Map<FsMountPoint, SyncTask> tasks = new LinkedHashMap<>(
+                    controllers.size() * 4 / 3 + 1);
+            for (final FsController controller : controllers) {
+                final SyncTask task = new SyncTask(controller);
+                tasks.put(task.mountPoint, task);
+            }
+            for (final SyncTask task : tasks.values()) {
+                for (   FsMountPoint mp = task.mountPoint.getParent();
+                        null != mp;
+                        mp = mp.getParent()) {
+                    final SyncTask parent = tasks.get(mp);
+                    if (null != parent) {
+                        task.parent = parent;
+                        parent.pending.incrementAndGet();
+                        break;
+                    }
+                }
+            }
+            this.tasks = tasks;
+            this.remaining = new AtomicInteger(tasks.size());
+            final Executor executor = FsSync.this.executor;
+            if (null != executor) {
+                this.pool = null;
+                this.executor = executor;
+            } else {
+                this.executor = this.pool = Executors.newFixedThreadPool(
+                        parallelism, SyncThreadFactory.INSTANCE);
+            }
+            this.result = new FutureTask<>(new Callable<Void>() {
+                @Override
+                public Void call() throws FsSyncException {
+                    check();
+                    return null;
+                }
+            });
+        }
+
+        Future<Void> start() {
+            // Collect the leaves first: Submitting a task may trigger the
+            // submission of its parent task before this loop has finished.
+            final List<SyncTask> leaves = new ArrayList<>();
+            for (final SyncTask task : tasks.values())
+                if (0 == task.pending.get())
+                    leaves.add(task);
+            if (leaves.isEmpty())
+                finish();
+            else
+                for (final SyncTask task : leaves)
+                    submit(task);
+            return result;
+        }
+
+        void submit(final SyncTask task) {
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException ex) {
+                task.run();
+            }
+        }
+
+        void done(final SyncTask task) {
+            final SyncTask parent = task.parent;
+            if (null != parent && 0 == parent.pending.decrementAndGet())
+                submit(parent);
+            if (0 == remaining.decrementAndGet())
+                finish();
+        }
+
+        void finish() {
+            if (null != pool)
+                pool.shutdown();
+            result.run();
+        }
+
+        void check() throws FsSyncException {
+
+            final class CheckVisitor implements Visitor<FsController, RuntimeException> {
+
+                final FsSyncExceptionBuilder builder = new FsSyncExceptionBuilder();
+
+                @Override
+                public void visit(final FsController controller) {
+                    final SyncTask task = tasks.get(
+                            controller.getModel().getMountPoint());
+                    try {
+                        if (null != task && task.controller == controller) {
+                            final Throwable failure = task.failure;
+                            if (null != failure) {
+                                if (failure instanceof FsSyncException)
+                                    throw (FsSyncException) failure;
+                                if (failure instanceof RuntimeException)
+                                    throw (RuntimeException) failure;
+                                throw (Error) failure;
+                            }
+                        } else {
+                            controller.sync(options);
+                        }
+                    } catch (FsSyncException e) {
+                        builder.warn(e);
+                    }
+                }
             }
+
+            manager().accept(filter, new CheckVisitor()).builder.check();
         }
 
-        manager().accept(filter, new SyncVisitor()).check();
+        /** Syncs a single file system controller. */
+        final class SyncTask implements Runnable {
+
+            final FsController controller;
+            final FsMountPoint mountPoint;
+            final AtomicInteger pending = new AtomicInteger();
+            @CheckForNull SyncTask parent;
+            volatile @CheckForNull Throwable failure;
+
+            SyncTask(final FsController controller) {
+                this.controller = controller;
+                this.mountPoint = controller.getModel().getMountPoint();
+            }
+
+            @Override
+            public void run() {
+                try {
+                    controller.sync(options);
+                } catch (FsSyncException | RuntimeException | Error ex) {
+                    failure = ex;
+                } finally {
+                    done(this);
+                }
+            }
+        }
     }
 
-    private FsManager manager() { return managerProvider.get(); }
+    private static final class SyncThreadFactory implements ThreadFactory {
+
+        static final SyncThreadFactory INSTANCE = new SyncThreadFactory();
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            final Thread t = new Thread(r,
+                    FsSync.class.getSimpleName() + '-' + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
 }
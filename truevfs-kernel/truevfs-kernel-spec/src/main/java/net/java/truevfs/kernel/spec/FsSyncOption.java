@@ -59,8 +59,11 @@ public enum FsSyncOption {
 
     /**
      * If this option is set, all pending changes are aborted.
-     * This option is only meaningful immediately before the file system itself
-     * gets deleted and should not of used by client applications.
+     * An existing archive file gets restored to its last committed version.
+     * This option is meaningful immediately before the file system itself
+     * gets deleted or in order to roll back a batch of changes, e.g. by
+     * {@code TVFS.batch}.
+     * It should not of used by client applications otherwise.
      */
     ABORT_CHANGES,
 
@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.kernel.spec;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import net.java.truecommons.shed.BitField;
+import net.java.truecommons.shed.Filter;
+import net.java.truecommons.shed.Visitor;
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * @author Christian Schlichtherle
+ */
+public class FsSyncTest {
+
+    private static final String[] MOUNT_POINTS = {
+        "file:/",
+        "zip:file:/a.zip!/",
+        "zip:zip:file:/a.zip!/b.zip!/",
+        "zip:zip:file:/a.zip!/c.zip!/",
+        "zip:zip:zip:file:/a.zip!/c.zip!/d.zip!/",
+        "zip:file:/e.zip!/",
+        "zip:file:/f.zip!/",
+    };
+
+    @Test
+    public void testSequentialRun() throws FsSyncException {
+        final TestManager manager = new TestManager(null);
+        new FsSync().manager(manager).run();
+        assertThat(manager.synced.size(), is(MOUNT_POINTS.length));
+    }
+
+    @Test
+    public void testParallelRun() throws FsSyncException {
+        final TestManager manager = new TestManager(null);
+        new FsSync().manager(manager).parallelism(4).run();
+        assertThat(manager.synced.size(), is(MOUNT_POINTS.length));
+    }
+
+    @Test
+    public void testRunAsyncWithExecutor() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final TestManager manager = new TestManager(null);
+            new FsSync()
+                    .manager(manager)
+                    .executor(executor)
+                    .runAsync()
+                    .get(10, TimeUnit.SECONDS);
+            assertThat(manager.synced.size(), is(MOUNT_POINTS.length));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testFilter() throws FsSyncException {
+        final TestManager manager = new TestManager(null);
+        new FsSync()
+                .manager(manager)
+                .filter(FsControllerFilter.forPrefix(
+                    FsMountPoint.create(URI.create("zip:file:/a.zip!/"))))
+                .parallelism(4)
+                .run();
+        assertThat(manager.synced.size(), is(4));
+    }
+
+    @Test
+    public void testExceptionAggregation() throws InterruptedException {
+        final FsMountPoint failing = FsMountPoint.create(
+                URI.create("zip:zip:file:/a.zip!/b.zip!/"));
+        final TestManager manager = new TestManager(failing);
+        try {
+            new FsSync().manager(manager).parallelism(4).runAsync().get();
+            fail();
+        } catch (final ExecutionException ex) {
+            final FsSyncException cause = (FsSyncException) ex.getCause();
+            assertThat(cause.getMessage(), is(failing.toString()));
+        }
+        assertThat(manager.synced.size(), is(MOUNT_POINTS.length - 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIllegalParallelism() {
+        new FsSync().parallelism(0);
+    }
+
+    private static final class TestManager extends FsAbstractManager {
+
+        final List<FsController> controllers = new ArrayList<>();
+        final Set<FsMountPoint> synced = Collections.newSetFromMap(
+                new ConcurrentHashMap<FsMountPoint, Boolean>());
+        final FsMountPoint failing;
+
+        TestManager(final FsMountPoint failing) {
+            this.failing = failing;
+            for (final String mp : MOUNT_POINTS)
+                controllers.add(newController(
+                        FsMountPoint.create(URI.create(mp))));
+        }
+
+        FsController newController(final FsMountPoint mountPoint) {
+            final FsModel model = new FsAbstractModel(mountPoint,
+                    null == mountPoint.getParent()
+                        ? null
+                        : controller(null, mountPoint.getParent()).getModel()) {
+
+                volatile boolean mounted = true;
+
+                @Override
+                public boolean isMounted() { return mounted; }
+
+                @Override
+                public void setMounted(boolean mounted) {
+                    this.mounted = mounted;
+                }
+            };
+            return (FsController) Proxy.newProxyInstance(
+                    FsController.class.getClassLoader(),
+                    new Class<?>[] { FsController.class },
+                    new InvocationHandler() {
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args)
+                        throws Throwable {
+                            switch (method.getName()) {
+                                case "getModel":
+                                    return model;
+                                case "sync":
+                                    sync(model);
+                                    return null;
+                                case "hashCode":
+                                    return System.identityHashCode(proxy);
+                                case "equals":
+                                    return proxy == args[0];
+                                default:
+                                    throw new UnsupportedOperationException();
+                            }
+                        }
+                    });
+        }
+
+        void sync(final FsModel model) throws FsSyncException {
+            final FsMountPoint mp = model.getMountPoint();
+            for (final FsController c : controllers) {
+                final FsMountPoint cmp = c.getModel().getMountPoint();
+                if (mp.equals(cmp.getParent()))
+                    assertTrue(synced.contains(cmp) || cmp.equals(failing));
+            }
+            if (mp.equals(failing))
+                throw new FsSyncException(mp, new Exception());
+            model.setMounted(false);
+            synced.add(mp);
+        }
+
+        @Override
+        public FsModel newModel(FsDriver context, FsMountPoint mountPoint, FsModel parent) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public FsController newController(FsArchiveDriver<? extends FsArchiveEntry> context, FsModel model, FsController parent) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public FsController controller(FsCompositeDriver driver, FsMountPoint mountPoint) {
+            for (final FsController c : controllers)
+                if (c.getModel().getMountPoint().equals(mountPoint))
+                    return c;
+            throw new IllegalArgumentException();
+        }
+
+        @Override
+        public <X extends Exception, V extends Visitor<? super FsController, X>> V accept(
+                final Filter<? super FsController> filter,
+                final V visitor)
+        throws X {
+            final List<FsController> list = new ArrayList<>(controllers);
+            Collections.sort(list, new FsControllerComparator());
+            for (final FsController c : list)
+                if (filter.accept(c))
+                    visitor.visit(c);
+            return visitor;
+        }
+    }
+}